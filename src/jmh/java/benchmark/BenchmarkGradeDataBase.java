@@ -0,0 +1,46 @@
+package benchmark;
+
+import api.InMemoryGradeDataBase;
+
+/**
+ * Builds in-memory data bases with a team of generated members, so that the benchmarks measure
+ * the use cases themselves rather than the network.
+ */
+final class BenchmarkGradeDataBase {
+    static final String[] COURSES = {"CSC207", "CSC236", "CSC258", "CSC263", "MAT223", "MAT237", "STA247"};
+    private static final int GRADE_RANGE = 101;
+
+    private BenchmarkGradeDataBase() {
+    }
+
+    /**
+     * Returns an InMemoryGradeDataBase signed in as the first member of a team of generated members,
+     * each with a generated history of grades.
+     * @param teamSize the number of members of the team.
+     * @param historyLength the number of grades of every member.
+     * @return the data base.
+     */
+    static InMemoryGradeDataBase create(int teamSize, int historyLength) {
+        final InMemoryGradeDataBase.InMemoryGradeDataBaseBuilder builder = InMemoryGradeDataBase.builder();
+        final String[] members = new String[teamSize];
+        for (int i = 0; i < teamSize; i++) {
+            members[i] = "member" + i;
+            for (int j = 0; j < historyLength; j++) {
+                builder.grade(members[i], course(j), (i * 31 + j * 17) % GRADE_RANGE);
+            }
+        }
+        return builder.team("benchmark", members).signedInAs(members[0]).build();
+    }
+
+    /**
+     * Returns the course of the j-th grade in a generated history; courses repeat with a term suffix
+     * once every course has been taken.
+     */
+    static String course(int j) {
+        final String course = COURSES[j % COURSES.length];
+        if (j < COURSES.length) {
+            return course;
+        }
+        return course + "-" + j / COURSES.length;
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * Benchmarks building the entities with their builders. Run with -prof gc to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityBenchmark {
+
+    @Param({"4", "64"})
+    private int teamSize;
+
+    private String[] members;
+    private int next;
+
+    /**
+     * Builds the member names.
+     */
+    @Setup
+    public void setUp() {
+        members = new String[teamSize];
+        for (int i = 0; i < teamSize; i++) {
+            members[i] = "member" + i;
+        }
+    }
+
+    /**
+     * Benchmarks Grade.builder().
+     * @return the grade.
+     */
+    @Benchmark
+    public Grade buildGrade() {
+        next = (next + 1) % members.length;
+        return Grade.builder().username(members[next]).course("CSC207").grade(next).build();
+    }
+
+    /**
+     * Benchmarks Team.builder().
+     * @return the team.
+     */
+    @Benchmark
+    public Team buildTeam() {
+        return Team.builder().name("benchmark").members(members.clone()).build();
+    }
+}
@@ -0,0 +1,100 @@
+package benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import api.GradeResponseDecoder;
+import entity.Grade;
+import entity.Team;
+
+/**
+ * Benchmarks decoding the responses MongoGradeDataBase reads, from canned payloads of different sizes,
+ * next to building a JSONObject from the same payload as the old parsing did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GradeResponseDecoderBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int historyLength;
+
+    @Param({"4", "64"})
+    private int teamSize;
+
+    private String gradePayload;
+    private String gradesPayload;
+    private String teamPayload;
+
+    /**
+     * Builds the canned payloads.
+     */
+    @Setup
+    public void setUp() {
+        final JSONArray grades = new JSONArray();
+        for (int j = 0; j < historyLength; j++) {
+            grades.put(new JSONObject()
+                    .put("username", "member0")
+                    .put("course", BenchmarkGradeDataBase.course(j))
+                    .put("grade", j % 101));
+        }
+        gradesPayload = new JSONObject().put("status_code", 200).put("grades", grades).toString();
+        gradePayload = new JSONObject().put("status_code", 200).put("grade", grades.getJSONObject(0)).toString();
+
+        final JSONArray members = new JSONArray();
+        for (int i = 0; i < teamSize; i++) {
+            members.put("member" + i);
+        }
+        teamPayload = new JSONObject()
+                .put("status_code", 200)
+                .put("team", new JSONObject().put("name", "benchmark").put("members", members))
+                .toString();
+    }
+
+    /**
+     * Benchmarks decoding a single grade.
+     * @return the grade.
+     */
+    @Benchmark
+    public Grade decodeGrade() {
+        return GradeResponseDecoder.decodeGrade(new StringReader(gradePayload), "member0", "CSC207");
+    }
+
+    /**
+     * Benchmarks decoding a grade history.
+     * @return the grades.
+     */
+    @Benchmark
+    public Grade[] decodeGrades() {
+        return GradeResponseDecoder.decodeGrades(new StringReader(gradesPayload));
+    }
+
+    /**
+     * Benchmarks decoding a team.
+     * @return the team.
+     */
+    @Benchmark
+    public Team decodeTeam() {
+        return GradeResponseDecoder.decodeTeam(new StringReader(teamPayload));
+    }
+
+    /**
+     * Benchmarks parsing a grade history into a JSONObject tree, for comparison.
+     * @return the parsed payload.
+     */
+    @Benchmark
+    public JSONObject parseGradesWithJsonObject() {
+        return new JSONObject(gradesPayload);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import api.InMemoryGradeDataBase;
+import entity.Grade;
+import usecase.GetAverageGradeUseCase;
+import usecase.GetTopGradeUseCase;
+
+/**
+ * Benchmarks the team use cases against an in-memory data base.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UseCaseBenchmark {
+    private static final String COURSE = "CSC207";
+    // The use cases only read the grades in COURSE, which is the first course of every history.
+    private static final int HISTORY_LENGTH = 1;
+
+    @Param({"4", "16", "64"})
+    private int teamSize;
+
+    private GetAverageGradeUseCase getAverageGradeUseCase;
+    private GetTopGradeUseCase getTopGradeUseCase;
+
+    /**
+     * Builds the data base and the use cases.
+     */
+    @Setup
+    public void setUp() {
+        final InMemoryGradeDataBase gradeDataBase = BenchmarkGradeDataBase.create(teamSize, HISTORY_LENGTH);
+        getAverageGradeUseCase = new GetAverageGradeUseCase(gradeDataBase);
+        getTopGradeUseCase = new GetTopGradeUseCase(gradeDataBase);
+    }
+
+    /**
+     * Benchmarks GetAverageGradeUseCase.getAverageGrade.
+     * @return the average grade.
+     */
+    @Benchmark
+    public float averageGrade() {
+        return getAverageGradeUseCase.getAverageGrade(COURSE);
+    }
+
+    /**
+     * Benchmarks GetTopGradeUseCase.findTopGrade.
+     * @return the top grade.
+     */
+    @Benchmark
+    public Grade topGrade() {
+        return getTopGradeUseCase.findTopGrade(COURSE);
+    }
+}
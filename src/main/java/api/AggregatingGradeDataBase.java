@@ -0,0 +1,476 @@
+package api;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import org.json.JSONException;
+
+import entity.CourseAggregate;
+import entity.Grade;
+import entity.GradeIndex;
+import entity.Team;
+
+/**
+ * A GradeDataBase that keeps the running count, sum, lowest and highest grade of your team
+ * in every course it has been asked about, so that team averages and top grades can be answered
+ * without looking up every member again.
+ * <p>
+ * The aggregates are updated as grades pass through this data base, including grades logged
+ * through it, and are dropped when the team changes. An aggregate that is not held yet is
+ * computed from scratch the first time it is asked for.
+ * <p>
+ * Grades logged by teammates elsewhere never pass through this data base, so an aggregate is only
+ * answered from for a maximum age. After that it is computed again, which also checks the team again.
+ * <p>
+ * The grade histories that pass through this data base are kept in a GradeIndex. An aggregate is computed
+ * from the index, without any lookups, when it holds the history of every team member and none of them
+ * is older than the maximum age.
+ * <p>
+ * The asynchronous methods update the aggregates and the index the same way once their futures complete.
+ * They are sent through the asynchronous methods of the data base behind this one when it has them, and
+ * otherwise its blocking methods are called on the executor.
+ */
+public class AggregatingGradeDataBase implements GradeDataBase, AsyncGradeDataBase {
+    public static final long DEFAULT_MAX_AGE_MILLIS = CachingGradeDataBase.DEFAULT_REFRESH_AFTER_MILLIS;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final GradeDataBase delegate;
+    private final AsyncGradeDataBase asyncDelegate;
+    private final Executor executor;
+    private final String username;
+    private final long maxAgeNanos;
+    private final LongSupplier ticker;
+
+    // The state below is guarded by this.
+    private String[] members;
+    private Map<String, Integer> memberIndexes = new HashMap<>();
+    private final Map<String, CourseState> courses = new HashMap<>();
+    private long rosterVersion;
+    private final GradeIndex index = new GradeIndex();
+    // When the lookup of each history held in the index started, from the ticker.
+    private final Map<String, Long> historyLoadedAt = new HashMap<>();
+
+    /**
+     * Creates an AggregatingGradeDataBase in front of the given data base.
+     * @param delegate the data base to read through to.
+     * @param executor the executor for the lookups of a cold aggregate, or null to run them one after the other.
+     */
+    public AggregatingGradeDataBase(GradeDataBase delegate, Executor executor) {
+        this(delegate, executor, null);
+    }
+
+    /**
+     * Creates an AggregatingGradeDataBase in front of the given data base.
+     * @param delegate the data base to read through to.
+     * @param executor the executor for the lookups of a cold aggregate, or null to run them one after the other.
+     * @param username the username whose grades logGrade logs, or null if it is not known. Without it,
+     *                 logging a grade makes the aggregate of its course cold instead of updating it.
+     */
+    public AggregatingGradeDataBase(GradeDataBase delegate, Executor executor, String username) {
+        this(delegate, executor, username, DEFAULT_MAX_AGE_MILLIS, System::nanoTime);
+    }
+
+    /**
+     * Creates an AggregatingGradeDataBase in front of the given data base.
+     * @param delegate the data base to read through to.
+     * @param executor the executor for the lookups of a cold aggregate and for the blocking calls of the
+     *                 asynchronous methods, or null to run them one after the other on the calling thread.
+     * @param username the username whose grades logGrade logs, or null if it is not known.
+     * @param maxAgeMillis how long an aggregate is answered from before it is computed again.
+     * @param ticker the source of the current time in nanoseconds.
+     */
+    public AggregatingGradeDataBase(GradeDataBase delegate, Executor executor, String username,
+                                    long maxAgeMillis, LongSupplier ticker) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("maxAgeMillis must not be negative");
+        }
+        this.delegate = delegate;
+        if (executor == null) {
+            this.executor = Runnable::run;
+        }
+        else {
+            this.executor = executor;
+        }
+        this.asyncDelegate = AsyncGradeDataBase.of(delegate, this.executor);
+        this.username = username;
+        this.maxAgeNanos = maxAgeMillis * NANOS_PER_MILLI;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Returns the aggregate of your team's grades in a course. It is answered from the maintained
+     * state when there is one younger than the maximum age, then from the indexed grade histories
+     * when they are all younger than that, and otherwise computed by looking up the team and every
+     * team member.
+     * @param course is the course.
+     * @return the aggregate of the team's grades in the course.
+     */
+    public CourseAggregate getCourseAggregate(String course) {
+        synchronized (this) {
+            final CourseState state = courses.get(course);
+            if (state != null && ticker.getAsLong() - state.computedAt < maxAgeNanos) {
+                return state.snapshot(course, members.length);
+            }
+        }
+
+        // The version is read before the team, so that a team change while the team is looked up keeps
+        // the aggregate computed for the old team from being stored.
+        final long seenVersion;
+        synchronized (this) {
+            seenVersion = rosterVersion;
+        }
+        final Team team = delegate.getMyTeam();
+        final long version = adoptTeam(team, seenVersion);
+        final String[] teamMembers = team.getMembers();
+        synchronized (this) {
+            final CourseState indexed = indexedState(course, teamMembers);
+            if (indexed != null) {
+                return keep(course, indexed, version, teamMembers.length);
+            }
+        }
+        final long computedAt = ticker.getAsLong();
+        final Map<String, Grade> grades = delegate.getGrades(Arrays.asList(teamMembers), course, executor);
+
+        final CourseState state = new CourseState(computedAt);
+        for (int i = 0; i < teamMembers.length; i++) {
+            final Grade grade = grades.get(teamMembers[i]);
+            if (grade != null) {
+                state.update(teamMembers[i], i, grade.getGrade());
+            }
+        }
+        return keep(course, state, version, teamMembers.length);
+    }
+
+    private synchronized CourseAggregate keep(String course, CourseState state, long version, int teamSize) {
+        if (version == rosterVersion) {
+            courses.put(course, state);
+        }
+        return state.snapshot(course, teamSize);
+    }
+
+    // Computes the state of a course from the index if it holds a young enough history of every member.
+    private CourseState indexedState(String course, String[] teamMembers) {
+        final long now = ticker.getAsLong();
+        long oldest = now;
+        for (String member : teamMembers) {
+            final Long loadedAt = historyLoadedAt.get(member);
+            if (loadedAt == null || now - loadedAt >= maxAgeNanos) {
+                return null;
+            }
+            oldest = Math.min(oldest, loadedAt);
+        }
+        final CourseState state = new CourseState(oldest);
+        for (int i = 0; i < teamMembers.length; i++) {
+            final Grade grade = index.getGrade(teamMembers[i], course);
+            if (grade != null) {
+                state.update(teamMembers[i], i, grade.getGrade());
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Updates the maintained aggregates with a grade seen somewhere else.
+     * Grades of students outside the team, or in courses without an aggregate yet, are ignored.
+     * @param grade is the grade.
+     */
+    public synchronized void observe(Grade grade) {
+        if (grade == null) {
+            return;
+        }
+        final CourseState state = courses.get(grade.getCourse());
+        final Integer index = memberIndexes.get(grade.getUsername());
+        if (state != null && index != null) {
+            state.update(grade.getUsername(), index, grade.getGrade());
+        }
+    }
+
+    @Override
+    public Grade getGrade(String username, String course) {
+        final Grade grade = delegate.getGrade(username, course);
+        observe(grade);
+        return grade;
+    }
+
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor bulkExecutor) {
+        final Map<String, Grade> grades = delegate.getGrades(usernames, course, bulkExecutor);
+        for (Grade grade : grades.values()) {
+            observe(grade);
+        }
+        return grades;
+    }
+
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor bulkExecutor) throws JSONException {
+        final long loadedAt = ticker.getAsLong();
+        final Map<String, Grade[]> grades = delegate.getGrades(usernames, bulkExecutor);
+        for (Map.Entry<String, Grade[]> entry : grades.entrySet()) {
+            loadHistory(entry.getKey(), entry.getValue(), loadedAt);
+            observeAll(entry.getValue());
+        }
+        return grades;
+    }
+
+    @Override
+    public Grade[] getGrades(String username) throws JSONException {
+        final long loadedAt = ticker.getAsLong();
+        final Grade[] grades = delegate.getGrades(username);
+        loadHistory(username, grades, loadedAt);
+        observeAll(grades);
+        return grades;
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String username) {
+        return delegate.getCachedGrades(username);
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        return afterLog(course, grade, delegate.logGrade(course, grade));
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        return checkRoster(delegate.getMyTeam());
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        try {
+            return delegate.formTeam(name);
+        }
+        finally {
+            synchronized (this) {
+                resetRoster(null);
+            }
+        }
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        try {
+            return delegate.joinTeam(name);
+        }
+        finally {
+            synchronized (this) {
+                resetRoster(null);
+            }
+        }
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        try {
+            delegate.leaveTeam();
+        }
+        finally {
+            synchronized (this) {
+                resetRoster(null);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String student, String course) {
+        return asyncDelegate.getGradeAsync(student, course).thenApply(grade -> {
+            observe(grade);
+            return grade;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String student) {
+        final long loadedAt = ticker.getAsLong();
+        return asyncDelegate.getGradesAsync(student).thenApply(grades -> {
+            loadHistory(student, grades, loadedAt);
+            observeAll(grades);
+            return grades;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return asyncDelegate.logGradeAsync(course, grade).thenApply(logged -> afterLog(course, grade, logged));
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        return asyncDelegate.getMyTeamAsync().thenApply(this::checkRoster);
+    }
+
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        return asyncDelegate.formTeamAsync(name).whenComplete((formed, failure) -> dropRoster());
+    }
+
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return asyncDelegate.joinTeamAsync(name).whenComplete((joined, failure) -> dropRoster());
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return asyncDelegate.leaveTeamAsync().whenComplete((ignored, failure) -> dropRoster());
+    }
+
+    // Updates the aggregates and the index with a logged grade.
+    private Grade afterLog(String course, int grade, Grade logged) {
+        if (logged != null && logged.getUsername() != null) {
+            forgetHistory(logged.getUsername());
+            observe(logged);
+        }
+        else if (username != null) {
+            forgetHistory(username);
+            observe(Grade.builder().username(username).course(course).grade(grade).build());
+        }
+        else {
+            synchronized (this) {
+                historyLoadedAt.clear();
+                courses.remove(course);
+            }
+        }
+        return logged;
+    }
+
+    // Starts over with the team's members when the team has changed.
+    private synchronized Team checkRoster(Team team) {
+        adoptTeam(team, rosterVersion);
+        return team;
+    }
+
+    /**
+     * Starts over with the team's members when the team has changed, and returns the roster version the
+     * team belongs to. That is the version seen before the team was looked up, or the one after the reset
+     * to this team if nothing else changed the roster in between; otherwise the seen version is out of
+     * date, and an aggregate computed for the team is not kept.
+     */
+    private synchronized long adoptTeam(Team team, long seenVersion) {
+        if (members == null || !Arrays.equals(members, team.getMembers())) {
+            final boolean unchanged = rosterVersion == seenVersion;
+            resetRoster(team.getMembers());
+            if (unchanged) {
+                return rosterVersion;
+            }
+        }
+        return seenVersion;
+    }
+
+    private synchronized void dropRoster() {
+        resetRoster(null);
+    }
+
+    private synchronized void loadHistory(String student, Grade[] history, long loadedAt) {
+        index.load(student, history);
+        historyLoadedAt.put(student, loadedAt);
+    }
+
+    // The index no longer holds the full history of a student who logged a grade since it was loaded.
+    private synchronized void forgetHistory(String student) {
+        index.unload(student);
+        historyLoadedAt.remove(student);
+    }
+
+    private void observeAll(Grade[] grades) {
+        for (Grade grade : grades) {
+            observe(grade);
+        }
+    }
+
+    private void resetRoster(String[] newMembers) {
+        rosterVersion++;
+        courses.clear();
+        members = newMembers;
+        memberIndexes = new HashMap<>();
+        if (newMembers != null) {
+            for (int i = 0; i < newMembers.length; i++) {
+                memberIndexes.put(newMembers[i], i);
+            }
+        }
+    }
+
+    /**
+     * The running aggregate of one course. Updates are O(1), except when the current lowest or
+     * highest grade is replaced by a less extreme one and the extremes have to be found again.
+     */
+    private static final class CourseState {
+        // When the lookups the state was computed from started, from the ticker.
+        private final long computedAt;
+        private final Map<String, Integer> grades = new HashMap<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private long sum;
+        private int min;
+        private int max;
+        private String minUsername;
+        private String maxUsername;
+
+        CourseState(long computedAt) {
+            this.computedAt = computedAt;
+        }
+
+        void update(String username, int index, int grade) {
+            final Integer old = grades.put(username, grade);
+            indexes.put(username, index);
+            if (old == null) {
+                sum += grade;
+            }
+            else {
+                sum += grade - old;
+            }
+
+            if (username.equals(maxUsername) && grade < max || username.equals(minUsername) && grade > min) {
+                recomputeExtremes();
+                return;
+            }
+            if (maxUsername == null || isBetter(grade, index, max, maxUsername, true)) {
+                max = grade;
+                maxUsername = username;
+            }
+            if (minUsername == null || isBetter(grade, index, min, minUsername, false)) {
+                min = grade;
+                minUsername = username;
+            }
+        }
+
+        /**
+         * Ties go to the team member who comes first in the team, as in GetTopGradeUseCase.
+         */
+        private boolean isBetter(int grade, int index, int current, String currentUsername, boolean highest) {
+            if (grade == current) {
+                return index < indexes.get(currentUsername);
+            }
+            return highest == grade > current;
+        }
+
+        private void recomputeExtremes() {
+            maxUsername = null;
+            minUsername = null;
+            for (Map.Entry<String, Integer> entry : grades.entrySet()) {
+                final int grade = entry.getValue();
+                final int index = indexes.get(entry.getKey());
+                if (maxUsername == null || isBetter(grade, index, max, maxUsername, true)) {
+                    max = grade;
+                    maxUsername = entry.getKey();
+                }
+                if (minUsername == null || isBetter(grade, index, min, minUsername, false)) {
+                    min = grade;
+                    minUsername = entry.getKey();
+                }
+            }
+        }
+
+        CourseAggregate snapshot(String course, int teamSize) {
+            Grade top = null;
+            if (maxUsername != null) {
+                top = Grade.builder().username(maxUsername).course(course).grade(max).build();
+            }
+            return new CourseAggregate(course, teamSize, grades.size(), sum, min, top);
+        }
+    }
+}
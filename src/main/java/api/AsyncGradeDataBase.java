@@ -0,0 +1,78 @@
+package api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * AsyncGradeDataBase is the non-blocking counterpart of GradeDataBase.
+ * Every method returns straight away with a future that completes once the API has answered,
+ * so a single thread can have many requests in flight at the same time.
+ * The futures complete exceptionally with the same exceptions the GradeDataBase methods throw.
+ */
+public interface AsyncGradeDataBase {
+    /**
+     * A method that returns the grade of a student in a course.
+     * @param username is the username of the student.
+     * @param course is the course that the student is taking.
+     * @return a future for the grade of the student in the course.
+     */
+    CompletableFuture<Grade> getGradeAsync(String username, String course);
+
+    /**
+     * A method that logs the grade of a student in a course.
+     * @param course is the course that the student is taking.
+     * @param grade is the grade of the student in the course.
+     * @return a future for the grade of the student in the course.
+     */
+    CompletableFuture<Grade> logGradeAsync(String course, int grade);
+
+    /**
+     * A method that returns the grades of a student in all courses.
+     * @param username is the username of the student.
+     * @return a future for the grades of the student in all courses.
+     */
+    CompletableFuture<Grade[]> getGradesAsync(String username);
+
+    /**
+     * A method that forms a team with the given name.
+     * @param name is the name of the team.
+     * @return a future for the team that was formed.
+     */
+    CompletableFuture<Team> formTeamAsync(String name);
+
+    /**
+     * A method that joins a team with the given name.
+     * @param name is the name of the team.
+     * @return a future for the team that was joined.
+     */
+    CompletableFuture<Team> joinTeamAsync(String name);
+
+    /**
+     * A method that returns the team that the student is in.
+     * @return a future for the team that the student is in.
+     */
+    CompletableFuture<Team> getMyTeamAsync();
+
+    /**
+     * A method that leaves the team that the student is in.
+     * @return a future that completes once the student has left the team.
+     */
+    CompletableFuture<Void> leaveTeamAsync();
+
+    /**
+     * Returns an AsyncGradeDataBase for the given GradeDataBase. If it is already asynchronous it is
+     * returned as is; otherwise its blocking methods are run on the given executor.
+     * @param gradeDataBase the data base to make asynchronous.
+     * @param executor the executor to run blocking calls on.
+     * @return an AsyncGradeDataBase backed by the given data base.
+     */
+    static AsyncGradeDataBase of(GradeDataBase gradeDataBase, Executor executor) {
+        if (gradeDataBase instanceof AsyncGradeDataBase) {
+            return (AsyncGradeDataBase) gradeDataBase;
+        }
+        return new BlockingAsyncGradeDataBase(gradeDataBase, executor);
+    }
+}
@@ -0,0 +1,61 @@
+package api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * Adapts a blocking GradeDataBase (such as a test stub) to the AsyncGradeDataBase interface
+ * by running each call on an executor.
+ */
+public class BlockingAsyncGradeDataBase implements AsyncGradeDataBase {
+    private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+
+    /**
+     * Creates an adapter that runs the calls to the data base on the executor.
+     * @param gradeDataBase the blocking data base to adapt.
+     * @param executor the executor to run the blocking calls on.
+     */
+    public BlockingAsyncGradeDataBase(GradeDataBase gradeDataBase, Executor executor) {
+        this.gradeDataBase = gradeDataBase;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+        return CompletableFuture.supplyAsync(() -> gradeDataBase.getGrade(username, course), executor);
+    }
+
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return CompletableFuture.supplyAsync(() -> gradeDataBase.logGrade(course, grade), executor);
+    }
+
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String username) {
+        return CompletableFuture.supplyAsync(() -> gradeDataBase.getGrades(username), executor);
+    }
+
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> gradeDataBase.formTeam(name), executor);
+    }
+
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> gradeDataBase.joinTeam(name), executor);
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        return CompletableFuture.supplyAsync(gradeDataBase::getMyTeam, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return CompletableFuture.runAsync(gradeDataBase::leaveTeam, executor);
+    }
+}
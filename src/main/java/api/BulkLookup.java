@@ -0,0 +1,185 @@
+package api;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Helpers for the bulk lookups of GradeDataBase: starting one lookup per username and
+ * collecting the results into a map in the order the usernames were given.
+ */
+final class BulkLookup {
+
+    private BulkLookup() {
+    }
+
+    /**
+     * Runs the lookup for every username on the executor and collects the results.
+     * @param usernames the usernames to look up.
+     * @param lookup the lookup to run for every username.
+     * @param executor the executor to run the lookups on.
+     * @param <T> the type of the lookup result.
+     * @return the results by username, leaving out usernames that have no grade.
+     */
+    static <T> Map<String, T> run(Collection<String> usernames, Function<String, T> lookup, Executor executor) {
+        final Map<String, CompletableFuture<T>> pending = new LinkedHashMap<>();
+        for (String username : usernames) {
+            pending.put(username, CompletableFuture.supplyAsync(() -> lookup.apply(username), executor));
+        }
+        return collect(pending);
+    }
+
+    /**
+     * Runs the lookup for every username on the executor and collects the results, like run, but stops
+     * as soon as a result satisfies stopWhen: lookups that have not started are skipped, and those in
+     * flight are cancelled.
+     * @param usernames the usernames to look up.
+     * @param lookup the lookup to run for every username.
+     * @param executor the executor to run the lookups on.
+     * @param stopWhen the test for a result that makes the others unnecessary.
+     * @param <T> the type of the lookup result.
+     * @return the results by username, leaving out usernames that have no grade or were not looked up.
+     */
+    static <T> Map<String, T> run(Collection<String> usernames, Function<String, T> lookup, Executor executor,
+                                  Predicate<T> stopWhen) {
+        final Map<String, CompletableFuture<T>> pending = new LinkedHashMap<>();
+        final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        for (String username : usernames) {
+            if (stopped.isDone()) {
+                // With an executor that runs the lookups straight away, the rest are never started.
+                break;
+            }
+            final CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> lookup.apply(username), executor);
+            stopOn(future, stopWhen, stopped);
+            pending.put(username, future);
+        }
+        return collect(pending, stopped);
+    }
+
+    /**
+     * Waits for the lookups and collects the results, like collect, but stops waiting as soon as a
+     * result satisfies stopWhen, cancelling the lookups still in flight.
+     * @param pending the lookups in flight by username.
+     * @param stopWhen the test for a result that makes the others unnecessary.
+     * @param <T> the type of the lookup result.
+     * @return the results by username, leaving out usernames that have no grade or were not waited for.
+     */
+    static <T> Map<String, T> collect(Map<String, CompletableFuture<T>> pending, Predicate<T> stopWhen) {
+        final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        for (CompletableFuture<T> future : pending.values()) {
+            stopOn(future, stopWhen, stopped);
+        }
+        return collect(pending, stopped);
+    }
+
+    private static <T> void stopOn(CompletableFuture<T> future, Predicate<T> stopWhen,
+                                   CompletableFuture<Void> stopped) {
+        future.thenAccept(value -> {
+            if (value != null && stopWhen.test(value)) {
+                stopped.complete(null);
+            }
+        });
+    }
+
+    private static <T> Map<String, T> collect(Map<String, CompletableFuture<T>> pending,
+                                              CompletableFuture<Void> stopped) {
+        try {
+            // Wait for every lookup to finish, one way or another, unless one of them stops the rest.
+            final CompletableFuture<Void> all = CompletableFuture.allOf(
+                    pending.values().toArray(new CompletableFuture<?>[0])).exceptionally(failure -> null);
+            CompletableFuture.anyOf(all, stopped).get();
+        }
+        catch (InterruptedException event) {
+            for (CompletableFuture<T> future : pending.values()) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(event);
+        }
+        catch (ExecutionException event) {
+            throw rethrow(unwrap(event));
+        }
+        final Map<String, CompletableFuture<T>> done = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<T>> entry : pending.entrySet()) {
+            if (entry.getValue().isDone()) {
+                done.put(entry.getKey(), entry.getValue());
+            }
+            else {
+                entry.getValue().cancel(true);
+            }
+        }
+        return collect(done);
+    }
+
+    /**
+     * Waits for every lookup and collects the results. A GradeNotFoundException only leaves the
+     * username out of the result; any other failure cancels the remaining lookups and is rethrown
+     * as it would have been by the single lookup.
+     * @param pending the lookups in flight by username.
+     * @param <T> the type of the lookup result.
+     * @return the results by username, leaving out usernames that have no grade.
+     */
+    static <T> Map<String, T> collect(Map<String, CompletableFuture<T>> pending) {
+        final Map<String, T> result = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, CompletableFuture<T>> entry : pending.entrySet()) {
+                try {
+                    final T value = entry.getValue().get();
+                    if (value != null) {
+                        result.put(entry.getKey(), value);
+                    }
+                }
+                catch (ExecutionException event) {
+                    if (!(unwrap(event) instanceof GradeNotFoundException)) {
+                        throw rethrow(unwrap(event));
+                    }
+                }
+            }
+        }
+        catch (InterruptedException event) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(event);
+        }
+        finally {
+            for (CompletableFuture<T> future : pending.values()) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the failure of a lookup without the ExecutionException or CompletionException around it.
+     * @param failure the failure as reported by the future.
+     * @return the failure of the lookup itself.
+     */
+    static Throwable unwrap(Throwable failure) {
+        Throwable cause = failure;
+        while ((cause instanceof ExecutionException || cause instanceof CompletionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Returns the failure of a lookup as an unchecked exception to throw, throwing errors straight away.
+     * @param cause the failure of the lookup.
+     * @return the exception to throw.
+     */
+    static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException(cause);
+    }
+}
@@ -0,0 +1,81 @@
+package api;
+
+/**
+ * A snapshot of the counters kept by a CachingGradeDataBase, used to size the cache.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long refreshCount;
+    private final long size;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long refreshCount, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.refreshCount = refreshCount;
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" + "hitCount=" + hitCount
+                + ", missCount=" + missCount
+                + ", evictionCount=" + evictionCount
+                + ", refreshCount=" + refreshCount
+                + ", size=" + size + '}';
+    }
+
+    /**
+     * Returns the number of lookups that were answered from the cache, including stale answers.
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that had to wait for the data base behind the cache.
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries dropped because the cache was full.
+     * @return the number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of background refreshes started for stale entries.
+     * @return the number of refreshes.
+     */
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Returns the number of entries in the cache when the snapshot was taken.
+     * @return the number of entries.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     * @return the hit rate, or 0 if there have been no lookups.
+     */
+    public double getHitRate() {
+        final long total = hitCount + missCount;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) hitCount / total;
+    }
+}
@@ -0,0 +1,643 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * A GradeDataBase that remembers the grades it reads from another GradeDataBase.
+ * Entries are kept in least-recently-used order up to a maximum count. Once an entry is older than
+ * the refresh time it is still returned straight away, but reloaded in the background; once it is
+ * older than the expiry time it is dropped and the caller waits for a fresh value.
+ * Logging a grade through this data base drops the entries it may have changed.
+ * <p>
+ * The team returned by getMyTeam is kept as well, until it expires or the team is changed
+ * through formTeam, joinTeam or leaveTeam on this data base.
+ * <p>
+ * The asynchronous methods share the same entries. A hit completes straight away; a miss is sent through
+ * the asynchronous methods of the data base behind the cache when it has them, and otherwise its blocking
+ * methods are called on the async executor, and the value is stored once it arrives.
+ */
+public class CachingGradeDataBase implements GradeDataBase, AsyncGradeDataBase {
+    // Defaults for the size of the cache and the age of its entries.
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_REFRESH_AFTER_MILLIS = 60 * 1000L;
+    public static final long DEFAULT_EXPIRE_AFTER_MILLIS = 10 * 60 * 1000L;
+    public static final long DEFAULT_TEAM_EXPIRE_AFTER_MILLIS = 5 * 60 * 1000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    // The generation passed to put for a refresh, which does not check the generation.
+    private static final long NO_GENERATION = -1;
+
+    private final GradeDataBase delegate;
+    private final AsyncGradeDataBase asyncDelegate;
+    private final int maxEntries;
+    private final long refreshAfterNanos;
+    private final long expireAfterNanos;
+    private final long teamExpireAfterNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier ticker;
+    private final Map<Key, CacheEntry> entries;
+    // Bumped on every invalidation, so that loads of missing entries started before it are not stored after it.
+    private long generation;
+
+    private final Object teamLock = new Object();
+    private Team team;
+    private long teamLoadedAt;
+    private long teamGeneration;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+
+    CachingGradeDataBase(CachingGradeDataBaseBuilder builder) {
+        this.delegate = builder.delegate;
+        this.asyncDelegate = AsyncGradeDataBase.of(builder.delegate, builder.asyncExecutor);
+        this.maxEntries = builder.maxEntries;
+        this.refreshAfterNanos = builder.refreshAfterMillis * NANOS_PER_MILLI;
+        this.expireAfterNanos = builder.expireAfterMillis * NANOS_PER_MILLI;
+        this.teamExpireAfterNanos = builder.teamExpireAfterMillis * NANOS_PER_MILLI;
+        this.refreshExecutor = builder.refreshExecutor;
+        this.ticker = builder.ticker;
+        this.entries = new LinkedHashMap<Key, CacheEntry>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                if (size() > maxEntries) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Grade getGrade(String username, String course) {
+        return (Grade) get(new Key(username, course), () -> delegate.getGrade(username, course));
+    }
+
+    @Override
+    public Grade[] getGrades(String username) throws JSONException {
+        // A copy, so that a caller changing the array does not change the cached history.
+        return ((Grade[]) get(new Key(username, null), () -> delegate.getGrades(username))).clone();
+    }
+
+    /**
+     * Answers the students whose grade is cached straight away and asks the data base behind
+     * the cache for the others in a single bulk call.
+     */
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        final Map<String, Object> cached = new HashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for (String username : usernames) {
+            final Object value = getIfPresent(new Key(username, course), () -> delegate.getGrade(username, course));
+            if (value == null) {
+                misses.add(username);
+            }
+            else {
+                cached.put(username, value);
+            }
+        }
+        if (!misses.isEmpty()) {
+            missCount.add(misses.size());
+            final long loadGeneration = currentGeneration();
+            final Map<String, Grade> loaded = delegate.getGrades(misses, course, executor);
+            for (Map.Entry<String, Grade> entry : loaded.entrySet()) {
+                put(new Key(entry.getKey(), course), null, new CacheEntry(entry.getValue(), ticker.getAsLong()),
+                        loadGeneration);
+            }
+            cached.putAll(loaded);
+        }
+        return inOrder(usernames, cached);
+    }
+
+    /**
+     * Answers the students whose grade history is cached straight away and asks the data base behind
+     * the cache for the others in a single bulk call.
+     */
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        final Map<String, Object> cached = new HashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for (String username : usernames) {
+            final Object value = getIfPresent(new Key(username, null), () -> delegate.getGrades(username));
+            if (value == null) {
+                misses.add(username);
+            }
+            else {
+                cached.put(username, value);
+            }
+        }
+        if (!misses.isEmpty()) {
+            missCount.add(misses.size());
+            final long loadGeneration = currentGeneration();
+            final Map<String, Grade[]> loaded = delegate.getGrades(misses, executor);
+            for (Map.Entry<String, Grade[]> entry : loaded.entrySet()) {
+                put(new Key(entry.getKey(), null), null, new CacheEntry(entry.getValue(), ticker.getAsLong()),
+                        loadGeneration);
+            }
+            cached.putAll(loaded);
+        }
+        final Map<String, Grade[]> histories = inOrder(usernames, cached);
+        for (Map.Entry<String, Grade[]> entry : histories.entrySet()) {
+            entry.setValue(entry.getValue().clone());
+        }
+        return histories;
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String username) {
+        final CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(new Key(username, null));
+        }
+        if (entry != null && ticker.getAsLong() - entry.loadedAt < expireAfterNanos) {
+            return ((Grade[]) entry.value).clone();
+        }
+        return delegate.getCachedGrades(username);
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        return forgetLogged(course, delegate.logGrade(course, grade));
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        invalidateTeam();
+        final Team formed = delegate.formTeam(name);
+        if (formed != null) {
+            storeTeam(formed, currentTeamGeneration());
+        }
+        return formed;
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        try {
+            return delegate.joinTeam(name);
+        }
+        finally {
+            invalidateTeam();
+        }
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        synchronized (teamLock) {
+            if (team != null && ticker.getAsLong() - teamLoadedAt < teamExpireAfterNanos) {
+                hitCount.increment();
+                return team;
+            }
+        }
+        missCount.increment();
+        final long loadGeneration = currentTeamGeneration();
+        final Team loaded = delegate.getMyTeam();
+        storeTeam(loaded, loadGeneration);
+        return loaded;
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        try {
+            delegate.leaveTeam();
+        }
+        finally {
+            invalidateTeam();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+        return getAsync(new Key(username, course), () -> delegate.getGrade(username, course),
+            () -> asyncDelegate.getGradeAsync(username, course));
+    }
+
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String username) {
+        return getAsync(new Key(username, null), () -> delegate.getGrades(username),
+            () -> asyncDelegate.getGradesAsync(username)).thenApply(Grade[]::clone);
+    }
+
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return asyncDelegate.logGradeAsync(course, grade).thenApply(logged -> forgetLogged(course, logged));
+    }
+
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        invalidateTeam();
+        final long formGeneration = currentTeamGeneration();
+        return asyncDelegate.formTeamAsync(name).thenApply(formed -> {
+            if (formed != null) {
+                storeTeam(formed, formGeneration);
+            }
+            return formed;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return asyncDelegate.joinTeamAsync(name).whenComplete((joined, failure) -> invalidateTeam());
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        synchronized (teamLock) {
+            if (team != null && ticker.getAsLong() - teamLoadedAt < teamExpireAfterNanos) {
+                hitCount.increment();
+                return CompletableFuture.completedFuture(team);
+            }
+        }
+        missCount.increment();
+        final long loadGeneration = currentTeamGeneration();
+        return asyncDelegate.getMyTeamAsync().thenApply(loaded -> {
+            storeTeam(loaded, loadGeneration);
+            return loaded;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return asyncDelegate.leaveTeamAsync().whenComplete((ignored, failure) -> invalidateTeam());
+    }
+
+    /**
+     * Drops the cached team, so that the next getMyTeam asks the data base behind the cache.
+     */
+    public void invalidateTeam() {
+        synchronized (teamLock) {
+            teamGeneration++;
+            team = null;
+        }
+    }
+
+    /**
+     * Drops the cached grade of a student in a course, along with the student's cached grade history.
+     * @param username is the username of the student.
+     * @param course is the course.
+     */
+    public void invalidate(String username, String course) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(new Key(username, course));
+            entries.remove(new Key(username, null));
+        }
+    }
+
+    /**
+     * Drops every cached grade in a course and every cached grade history.
+     * @param course is the course.
+     */
+    public void invalidateCourse(String course) {
+        synchronized (entries) {
+            generation++;
+            final Iterator<Key> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                final Key key = keys.next();
+                if (key.course == null || key.course.equals(course)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached entry.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+        invalidateTeam();
+    }
+
+    /**
+     * Returns a snapshot of the hit, miss, eviction and refresh counts of this cache.
+     * @return the cache statistics.
+     */
+    public CacheStats stats() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), refreshCount.sum(), size);
+    }
+
+    private Object get(Key key, Supplier<Object> loader) {
+        final Object cached = getIfPresent(key, loader);
+        if (cached != null) {
+            return cached;
+        }
+        missCount.increment();
+        final long loadGeneration = currentGeneration();
+        final Object value = loader.get();
+        put(key, null, new CacheEntry(value, ticker.getAsLong()), loadGeneration);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> getAsync(Key key, Supplier<Object> loader, Supplier<CompletableFuture<T>> load) {
+        final Object cached = getIfPresent(key, loader);
+        if (cached != null) {
+            return CompletableFuture.completedFuture((T) cached);
+        }
+        missCount.increment();
+        final long loadGeneration = currentGeneration();
+        return load.get().thenApply(value -> {
+            put(key, null, new CacheEntry(value, ticker.getAsLong()), loadGeneration);
+            return value;
+        });
+    }
+
+    /**
+     * Drops the entries a logged grade may have changed.
+     * @return the logged grade.
+     */
+    private Grade forgetLogged(String course, Grade logged) {
+        if (logged != null && logged.getUsername() != null) {
+            invalidate(logged.getUsername(), course);
+        }
+        else {
+            // We do not know whose grade it was, so drop everything the new grade could be part of.
+            invalidateCourse(course);
+        }
+        return logged;
+    }
+
+    /**
+     * Returns the cached value if it has not expired, starting a background refresh if it is stale.
+     * @return the cached value, or null on a miss.
+     */
+    private Object getIfPresent(Key key, Supplier<Object> loader) {
+        final long now = ticker.getAsLong();
+        final CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            final long age = now - entry.loadedAt;
+            if (age < expireAfterNanos) {
+                hitCount.increment();
+                if (age >= refreshAfterNanos) {
+                    refreshInBackground(key, entry, loader);
+                }
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    private void refreshInBackground(Key key, CacheEntry stale, Supplier<Object> loader) {
+        synchronized (stale) {
+            if (stale.refreshing) {
+                return;
+            }
+            stale.refreshing = true;
+        }
+        refreshCount.increment();
+        refreshExecutor.execute(() -> {
+            boolean stored = false;
+            try {
+                stored = put(key, stale, new CacheEntry(loader.get(), ticker.getAsLong()), NO_GENERATION);
+            }
+            catch (Throwable event) {
+                // Keep serving the stale value until it expires; the next hit will try again.
+            }
+            finally {
+                if (!stored) {
+                    synchronized (stale) {
+                        stale.refreshing = false;
+                    }
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Map<String, T> inOrder(Collection<String> usernames, Map<String, Object> values) {
+        final Map<String, T> result = new LinkedHashMap<>();
+        for (String username : usernames) {
+            final Object value = values.get(username);
+            if (value != null) {
+                result.put(username, (T) value);
+            }
+        }
+        return result;
+    }
+
+    private long currentTeamGeneration() {
+        synchronized (teamLock) {
+            return teamGeneration;
+        }
+    }
+
+    private void storeTeam(Team loaded, long loadGeneration) {
+        synchronized (teamLock) {
+            if (teamGeneration == loadGeneration) {
+                team = loaded;
+                teamLoadedAt = ticker.getAsLong();
+            }
+        }
+    }
+
+    private long currentGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Stores a loaded entry, unless the cache was invalidated while it was loading.
+     * A refresh only replaces the entry it was started for, which an invalidation of its key removes,
+     * so it is not held back by invalidations of other keys and is passed NO_GENERATION.
+     * @return whether the entry was stored.
+     */
+    private boolean put(Key key, CacheEntry expected, CacheEntry fresh, long loadGeneration) {
+        synchronized (entries) {
+            if (expected == null && generation != loadGeneration
+                    || expected != null && entries.get(key) != expected) {
+                return false;
+            }
+            entries.put(key, fresh);
+            return true;
+        }
+    }
+
+    /**
+     * Returns a new CachingGradeDataBaseBuilder instance.
+     * @param delegate the data base to read through to.
+     * @return a new CachingGradeDataBaseBuilder instance.
+     */
+    public static CachingGradeDataBaseBuilder builder(GradeDataBase delegate) {
+        return new CachingGradeDataBaseBuilder(delegate);
+    }
+
+    /**
+     * The key of a cache entry: a grade in a course, or the whole grade history when course is null.
+     */
+    private static final class Key {
+        private final String username;
+        private final String course;
+
+        Key(String username, String course) {
+            this.username = username;
+            this.course = course;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return username.equals(key.username) && Objects.equals(course, key.course);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * username.hashCode() + Objects.hashCode(course);
+        }
+    }
+
+    /**
+     * A cached value and the time it was loaded at.
+     */
+    private static final class CacheEntry {
+        private final Object value;
+        private final long loadedAt;
+        private boolean refreshing;
+
+        CacheEntry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Represents a builder for creating instances of a CachingGradeDataBase.
+     */
+    public static class CachingGradeDataBaseBuilder {
+        private final GradeDataBase delegate;
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private long refreshAfterMillis = DEFAULT_REFRESH_AFTER_MILLIS;
+        private long expireAfterMillis = DEFAULT_EXPIRE_AFTER_MILLIS;
+        private long teamExpireAfterMillis = DEFAULT_TEAM_EXPIRE_AFTER_MILLIS;
+        private Executor refreshExecutor;
+        private Executor asyncExecutor = Runnable::run;
+        private LongSupplier ticker = System::nanoTime;
+
+        CachingGradeDataBaseBuilder(GradeDataBase delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Sets the maximum number of entries; the least recently used entry is evicted beyond it.
+         * @param maxEntriesInput the maximum number of entries.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder maxEntries(int maxEntriesInput) {
+            this.maxEntries = maxEntriesInput;
+            return this;
+        }
+
+        /**
+         * Sets the age after which an entry is still returned, but reloaded in the background.
+         * @param refreshAfterMillisInput the refresh age in milliseconds.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder refreshAfterMillis(long refreshAfterMillisInput) {
+            this.refreshAfterMillis = refreshAfterMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the age after which an entry is no longer returned.
+         * @param expireAfterMillisInput the time to live in milliseconds.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder expireAfterMillis(long expireAfterMillisInput) {
+            this.expireAfterMillis = expireAfterMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets how long the team returned by getMyTeam is kept when it is not changed through this data base.
+         * @param teamExpireAfterMillisInput the time to live of the team in milliseconds.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder teamExpireAfterMillis(long teamExpireAfterMillisInput) {
+            this.teamExpireAfterMillis = teamExpireAfterMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the executor that reloads stale entries.
+         * @param refreshExecutorInput the executor for background refreshes.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder refreshExecutor(Executor refreshExecutorInput) {
+            this.refreshExecutor = refreshExecutorInput;
+            return this;
+        }
+
+        /**
+         * Sets the executor that the asynchronous methods call the data base behind the cache on when it
+         * is not asynchronous itself. By default they call it on the calling thread.
+         * @param asyncExecutorInput the executor for blocking calls made by the asynchronous methods.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder asyncExecutor(Executor asyncExecutorInput) {
+            this.asyncExecutor = asyncExecutorInput;
+            return this;
+        }
+
+        /**
+         * Sets the source of the current time in nanoseconds, so that tests can control it.
+         * @param tickerInput the time source.
+         * @return the CachingGradeDataBaseBuilder instance.
+         */
+        public CachingGradeDataBaseBuilder ticker(LongSupplier tickerInput) {
+            this.ticker = tickerInput;
+            return this;
+        }
+
+        /**
+         * Builds a new CachingGradeDataBase instance.
+         * @return a new CachingGradeDataBase instance.
+         */
+        public CachingGradeDataBase build() {
+            if (refreshAfterMillis > expireAfterMillis) {
+                throw new IllegalArgumentException("refreshAfterMillis must not be greater than expireAfterMillis");
+            }
+            if (refreshExecutor == null) {
+                refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "grade-cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return new CachingGradeDataBase(this);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * A GradeDataBase that lets concurrent identical reads share one request to another GradeDataBase.
+ * While a getGrade, getGrades or getMyTeam call is in flight, callers asking for the same thing wait
+ * for it and receive the same result, or the same exception, instead of sending a request of their own.
+ * Once the request has finished, the next caller sends a new one; nothing is remembered.
+ * <p>
+ * Bulk lookups join the requests in flight for the students they ask for and send a single bulk
+ * request for the others. Writes are passed on as they are.
+ * <p>
+ * The asynchronous reads share requests in flight with the blocking ones and with each other, and are
+ * sent through the asynchronous methods of the data base behind this one when it has them; otherwise
+ * its blocking methods are called on the calling thread.
+ */
+public class CoalescingGradeDataBase implements GradeDataBase, AsyncGradeDataBase {
+    private static final String TEAM_KEY = "team";
+
+    private final GradeDataBase delegate;
+    private final AsyncGradeDataBase asyncDelegate;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public CoalescingGradeDataBase(GradeDataBase delegate) {
+        this.delegate = delegate;
+        this.asyncDelegate = AsyncGradeDataBase.of(delegate, Runnable::run);
+    }
+
+    /**
+     * Returns the number of reads that were sent to the data base behind this one.
+     * @return the number of requests.
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * Returns the number of reads that were answered by a request another caller already had in flight.
+     * @return the number of duplicate requests suppressed.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    @Override
+    public Grade getGrade(String username, String course) {
+        return (Grade) coalesce(gradeKey(username, course), () -> delegate.getGrade(username, course));
+    }
+
+    @Override
+    public Grade[] getGrades(String username) throws JSONException {
+        return (Grade[]) coalesce(historyKey(username), () -> delegate.getGrades(username));
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        return (Team) coalesce(TEAM_KEY, delegate::getMyTeam);
+    }
+
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        return coalesceAll(usernames, username -> gradeKey(username, course),
+            misses -> delegate.getGrades(misses, course, executor));
+    }
+
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        return coalesceAll(usernames, CoalescingGradeDataBase::historyKey,
+            misses -> delegate.getGrades(misses, executor));
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String username) {
+        return delegate.getCachedGrades(username);
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        return delegate.logGrade(course, grade);
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        return delegate.formTeam(name);
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        return delegate.joinTeam(name);
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        delegate.leaveTeam();
+    }
+
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+        return coalesceAsync(gradeKey(username, course), () -> asyncDelegate.getGradeAsync(username, course));
+    }
+
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String username) {
+        return coalesceAsync(historyKey(username), () -> asyncDelegate.getGradesAsync(username));
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        return coalesceAsync(TEAM_KEY, asyncDelegate::getMyTeamAsync);
+    }
+
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return asyncDelegate.logGradeAsync(course, grade);
+    }
+
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        return asyncDelegate.formTeamAsync(name);
+    }
+
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return asyncDelegate.joinTeamAsync(name);
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return asyncDelegate.leaveTeamAsync();
+    }
+
+    private Object coalesce(String key, Supplier<Object> load) {
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedCount.increment();
+            return await(existing);
+        }
+        requestCount.increment();
+        try {
+            final Object value = load.get();
+            finish(key, mine);
+            mine.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error event) {
+            finish(key, mine);
+            mine.completeExceptionally(event);
+            throw event;
+        }
+    }
+
+    /**
+     * Like coalesce, but hands out a future instead of waiting for the request in flight.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> coalesceAsync(String key, Supplier<CompletableFuture<T>> load) {
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedCount.increment();
+            return existing.thenApply(value -> (T) value);
+        }
+        requestCount.increment();
+        final CompletableFuture<T> request;
+        try {
+            request = load.get();
+        }
+        catch (RuntimeException | Error event) {
+            finish(key, mine);
+            mine.completeExceptionally(event);
+            throw event;
+        }
+        request.whenComplete((value, failure) -> {
+            finish(key, mine);
+            if (failure == null) {
+                mine.complete(value);
+            }
+            else {
+                mine.completeExceptionally(BulkLookup.unwrap(failure));
+            }
+        });
+        return request;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Map<String, T> coalesceAll(Collection<String> usernames, Function<String, String> keys,
+                                           Function<List<String>, Map<String, T>> load) {
+        final Map<String, CompletableFuture<Object>> pending = new LinkedHashMap<>();
+        final Map<String, CompletableFuture<Object>> mine = new LinkedHashMap<>();
+        for (String username : usernames) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            final CompletableFuture<Object> existing = inFlight.putIfAbsent(keys.apply(username), future);
+            if (existing == null) {
+                mine.put(username, future);
+                pending.put(username, future);
+            }
+            else {
+                coalescedCount.increment();
+                pending.put(username, existing);
+            }
+        }
+
+        if (!mine.isEmpty()) {
+            requestCount.add(mine.size());
+            try {
+                final Map<String, T> loaded = load.apply(new ArrayList<>(mine.keySet()));
+                for (Map.Entry<String, CompletableFuture<Object>> entry : mine.entrySet()) {
+                    finish(keys.apply(entry.getKey()), entry.getValue());
+                    final T value = loaded.get(entry.getKey());
+                    if (value == null) {
+                        entry.getValue().completeExceptionally(new GradeNotFoundException(
+                                "No grade could be found for username: " + entry.getKey()));
+                    }
+                    else {
+                        entry.getValue().complete(value);
+                    }
+                }
+            }
+            catch (RuntimeException | Error event) {
+                for (Map.Entry<String, CompletableFuture<Object>> entry : mine.entrySet()) {
+                    finish(keys.apply(entry.getKey()), entry.getValue());
+                    entry.getValue().completeExceptionally(event);
+                }
+                throw event;
+            }
+        }
+
+        // Unlike BulkLookup.collect, a failure must not cancel requests other callers are waiting for.
+        final Map<String, T> result = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<Object>> entry : pending.entrySet()) {
+            try {
+                result.put(entry.getKey(), (T) await(entry.getValue()));
+            }
+            catch (GradeNotFoundException event) {
+                // Students without a grade are left out of the result, as for any bulk lookup.
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stops new callers from joining a request, before its result is handed out.
+     */
+    private void finish(String key, CompletableFuture<Object> future) {
+        inFlight.remove(key, future);
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        }
+        catch (RuntimeException event) {
+            throw BulkLookup.rethrow(BulkLookup.unwrap(event));
+        }
+    }
+
+    private static String gradeKey(String username, String course) {
+        return "grade\u0000" + username + "\u0000" + course;
+    }
+
+    private static String historyKey(String username) {
+        return "grades\u0000" + username;
+    }
+}
@@ -0,0 +1,249 @@
+package api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many requests are in flight at the same time, adapting the limit to how the API copes.
+ * The limit grows by about one for every limit's worth of requests that succeed quickly while it is
+ * in use (additive increase), and shrinks by a factor when a request fails or is slower than the
+ * latency threshold (multiplicative decrease). Requests over the limit wait in a queue, in order.
+ * <p>
+ * Every permit that is acquired must be given back with exactly one of onSuccess, onDropped or onIgnore.
+ */
+public class ConcurrencyLimiter {
+    // Defaults for the limit and how it adapts.
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 64;
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 2_000L;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long maxLatencyNanos;
+
+    // Guarded by this.
+    private double limit;
+    private int inFlight;
+    private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+
+    ConcurrencyLimiter(ConcurrencyLimiterBuilder builder) {
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoffRatio = builder.backoffRatio;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxLatencyMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+    }
+
+    /**
+     * Returns the number of requests currently allowed in flight.
+     * @return the current limit.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     * @return the number of permits held.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the number of requests waiting for a permit.
+     * @return the queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns a future that completes once a permit has been acquired; it is already complete
+     * if one is free. The permit is granted on the thread that gives the previous one back.
+     * @return a future for the permit.
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (waiting.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                permit.complete(null);
+            }
+            else {
+                waiting.addLast(permit);
+            }
+        }
+        return permit;
+    }
+
+    /**
+     * Waits until a permit has been acquired.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        final CompletableFuture<Void> permit = acquireAsync();
+        try {
+            permit.get();
+        }
+        catch (InterruptedException event) {
+            if (!permit.cancel(false)) {
+                // The permit was granted just as the thread was interrupted.
+                onIgnore();
+            }
+            throw event;
+        }
+        catch (ExecutionException event) {
+            throw new IllegalStateException(event.getCause());
+        }
+    }
+
+    /**
+     * Gives a permit back after a request succeeded.
+     * @param latencyNanos how long the request took.
+     */
+    public void onSuccess(long latencyNanos) {
+        synchronized (this) {
+            if (latencyNanos > maxLatencyNanos) {
+                decrease();
+            }
+            else if (inFlight * 2 >= limit) {
+                // Only grow while the limit is actually being used.
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        release();
+    }
+
+    /**
+     * Gives a permit back after a request failed or was throttled.
+     */
+    public void onDropped() {
+        synchronized (this) {
+            decrease();
+        }
+        release();
+    }
+
+    /**
+     * Gives a permit back without learning anything from it, e.g. when the request was cancelled.
+     */
+    public void onIgnore() {
+        release();
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    private void release() {
+        final List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            while (!waiting.isEmpty() && inFlight < (int) limit) {
+                final CompletableFuture<Void> next = waiting.pollFirst();
+                if (!next.isCancelled()) {
+                    inFlight++;
+                    granted.add(next);
+                }
+            }
+        }
+        for (CompletableFuture<Void> permit : granted) {
+            if (!permit.complete(null)) {
+                // Cancelled after it was taken off the queue.
+                release();
+            }
+        }
+    }
+
+    /**
+     * Returns a new ConcurrencyLimiterBuilder instance.
+     * @return a new ConcurrencyLimiterBuilder instance.
+     */
+    public static ConcurrencyLimiterBuilder builder() {
+        return new ConcurrencyLimiterBuilder();
+    }
+
+    /**
+     * Represents a builder for creating instances of a ConcurrencyLimiter.
+     */
+    public static class ConcurrencyLimiterBuilder {
+        private int initialLimit = DEFAULT_INITIAL_LIMIT;
+        private int minLimit = DEFAULT_MIN_LIMIT;
+        private int maxLimit = DEFAULT_MAX_LIMIT;
+        private double backoffRatio = DEFAULT_BACKOFF_RATIO;
+        private long maxLatencyMillis = DEFAULT_MAX_LATENCY_MILLIS;
+
+        ConcurrencyLimiterBuilder() {
+        }
+
+        /**
+         * Sets the number of requests allowed in flight to begin with.
+         * @param initialLimitInput the initial limit.
+         * @return the ConcurrencyLimiterBuilder instance.
+         */
+        public ConcurrencyLimiterBuilder initialLimit(int initialLimitInput) {
+            this.initialLimit = initialLimitInput;
+            return this;
+        }
+
+        /**
+         * Sets the lowest the limit can shrink to.
+         * @param minLimitInput the minimum limit, at least 1.
+         * @return the ConcurrencyLimiterBuilder instance.
+         */
+        public ConcurrencyLimiterBuilder minLimit(int minLimitInput) {
+            this.minLimit = minLimitInput;
+            return this;
+        }
+
+        /**
+         * Sets the highest the limit can grow to.
+         * @param maxLimitInput the maximum limit.
+         * @return the ConcurrencyLimiterBuilder instance.
+         */
+        public ConcurrencyLimiterBuilder maxLimit(int maxLimitInput) {
+            this.maxLimit = maxLimitInput;
+            return this;
+        }
+
+        /**
+         * Sets the factor the limit is multiplied by when a request fails or is too slow.
+         * @param backoffRatioInput the backoff ratio, between 0 and 1.
+         * @return the ConcurrencyLimiterBuilder instance.
+         */
+        public ConcurrencyLimiterBuilder backoffRatio(double backoffRatioInput) {
+            this.backoffRatio = backoffRatioInput;
+            return this;
+        }
+
+        /**
+         * Sets the latency above which a successful request still counts as a sign of overload.
+         * @param maxLatencyMillisInput the latency threshold in milliseconds.
+         * @return the ConcurrencyLimiterBuilder instance.
+         */
+        public ConcurrencyLimiterBuilder maxLatencyMillis(long maxLatencyMillisInput) {
+            this.maxLatencyMillis = maxLatencyMillisInput;
+            return this;
+        }
+
+        /**
+         * Builds a new ConcurrencyLimiter instance.
+         * @return a new ConcurrencyLimiter instance.
+         */
+        public ConcurrencyLimiter build() {
+            if (minLimit < 1 || maxLimit < minLimit) {
+                throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= maxLimit");
+            }
+            return new ConcurrencyLimiter(this);
+        }
+    }
+}
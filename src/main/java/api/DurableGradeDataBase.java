@@ -0,0 +1,419 @@
+package api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * A GradeDataBase whose logGrade cannot lose a grade while the grade API is down. The grade is
+ * appended to a GradeWriteAheadLog and logGrade returns as soon as it is on the disk; the log is
+ * then replayed to another GradeDataBase in order, in the background. While the API cannot take
+ * grades, the replay is retried with exponential backoff and grades keep being accepted (offline
+ * mode). Entries are dropped from the log once the API has accepted them.
+ * <p>
+ * Only a grade the API refuses as invalid, with a 400 or 422 status_code, is dropped, counted as
+ * rejected and handed to the rejection listeners, so that it does not hold up the grades after it.
+ * Any other failure, such as a network error, a 5xx or 429 answer, or an answer that cannot be decoded,
+ * keeps the grade in the log to be sent again. Since an entry is only dropped after it was answered,
+ * a crash in between sends it again; logging the same grade twice is harmless.
+ * <p>
+ * When the username of the signed-in user is known, reads of that user's grades show the grades still
+ * in the log over the ones the API answers with, so that the user sees their own grades as soon as
+ * logGrade returns. Other reads and team changes are passed on as they are.
+ */
+public class DurableGradeDataBase implements GradeDataBase, AutoCloseable {
+    public static final long DEFAULT_MIN_BACKOFF_MILLIS = 1_000L;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 60_000L;
+    // The status codes with which the grade API refuses a grade as invalid.
+    private static final int BAD_REQUEST = 400;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final GradeDataBase delegate;
+    private final GradeWriteAheadLog log;
+    private final String username;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ScheduledExecutorService replayExecutor;
+    private final AtomicBoolean replayScheduled = new AtomicBoolean();
+
+    // Guarded by this.
+    private long backoffMillis;
+
+    private volatile boolean offline;
+
+    private final LongAdder replayedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final List<Consumer<Grade>> rejectionListeners = new CopyOnWriteArrayList<>();
+
+    DurableGradeDataBase(DurableGradeDataBaseBuilder builder) {
+        this.delegate = builder.delegate;
+        this.log = builder.log;
+        this.username = builder.username;
+        this.minBackoffMillis = builder.minBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.replayExecutor = builder.replayExecutor;
+        this.backoffMillis = minBackoffMillis;
+    }
+
+    /**
+     * Appends the grade to the write-ahead log and returns once it is on the disk.
+     * The grade reaches the grade API in the background; the returned grade holds the username
+     * of the signed-in user if it is known, the course and the grade.
+     * @throws UncheckedIOException if the grade could not be written to the log.
+     */
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        try {
+            log.append(course, grade);
+        }
+        catch (IOException event) {
+            throw new UncheckedIOException(event);
+        }
+        scheduleReplay(0);
+        return Grade.builder().username(username).course(course).grade(grade).build();
+    }
+
+    /**
+     * Sends the grades in the log to the grade API in order, until the log is empty or the API
+     * cannot take a grade. This is what the background replay runs; calling it directly does not wait
+     * for the backoff.
+     * @return the number of grades still in the log.
+     */
+    public synchronized int replay() {
+        try {
+            for (GradeWriteAheadLog.Entry entry : log.pending()) {
+                try {
+                    delegate.logGrade(entry.getCourse(), entry.getGrade());
+                    replayedCount.increment();
+                }
+                catch (RuntimeException event) {
+                    if (!isRefused(event)) {
+                        offline = true;
+                        return log.getPendingCount();
+                    }
+                    // The API refused the grade as invalid; sending it again would not help.
+                    rejectedCount.increment();
+                    final Grade rejected = Grade.builder()
+                            .username(username)
+                            .course(entry.getCourse())
+                            .grade(entry.getGrade())
+                            .build();
+                    for (Consumer<Grade> listener : rejectionListeners) {
+                        listener.accept(rejected);
+                    }
+                }
+                // The API took the grade, so it can take grades again.
+                offline = false;
+                log.confirm(entry.getSeq());
+            }
+        }
+        catch (IOException event) {
+            // The entries stay in the log and are sent again on the next replay.
+            return log.getPendingCount();
+        }
+        offline = false;
+        backoffMillis = minBackoffMillis;
+        return log.getPendingCount();
+    }
+
+    private void scheduleReplay(long delayMillis) {
+        if (!replayScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        replayExecutor.schedule(() -> {
+            replayScheduled.set(false);
+            if (replay() > 0) {
+                final long delay;
+                synchronized (this) {
+                    delay = backoffMillis;
+                    backoffMillis = Math.min(maxBackoffMillis, backoffMillis * 2);
+                }
+                scheduleReplay(delay);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isRefused(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof GradeApiException) {
+                final int statusCode = ((GradeApiException) cause).getStatusCode();
+                return statusCode == BAD_REQUEST || statusCode == UNPROCESSABLE_ENTITY;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the last replay stopped because the grade API could not take a grade.
+     * @return true while offline.
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Returns the number of logged grades the grade API has not confirmed yet.
+     * @return the number of pending grades.
+     */
+    public int getPendingCount() {
+        return log.getPendingCount();
+    }
+
+    /**
+     * Returns the number of grades sent to the grade API from the log.
+     * @return the number of replayed grades.
+     */
+    public long getReplayedCount() {
+        return replayedCount.sum();
+    }
+
+    /**
+     * Returns the number of grades the grade API refused as invalid and that were dropped from the log.
+     * @return the number of rejected grades.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Adds a listener to tell about every grade the grade API refuses as invalid, after it is dropped
+     * from the log. Listeners are called on the replay thread, one after the other, and should return quickly.
+     * @param listener the listener, which gets the refused grade.
+     */
+    public void addRejectionListener(Consumer<Grade> listener) {
+        rejectionListeners.add(listener);
+    }
+
+    /**
+     * Returns the write-ahead log behind this data base.
+     * @return the log.
+     */
+    public GradeWriteAheadLog getLog() {
+        return log;
+    }
+
+    /**
+     * Stops the background replay and closes the log. Grades still in the log are sent the next time it is opened.
+     * @throws IOException if the log cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        replayExecutor.shutdownNow();
+        synchronized (this) {
+            log.close();
+        }
+    }
+
+    @Override
+    public Grade getGrade(String student, String course) {
+        final Map<String, Integer> pending = pendingGrades(student);
+        if (pending.containsKey(course)) {
+            return Grade.builder().username(student).course(course).grade(pending.get(course)).build();
+        }
+        return delegate.getGrade(student, course);
+    }
+
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        final Map<String, Integer> pending = pendingGrades(username);
+        final Map<String, Grade> grades = delegate.getGrades(usernames, course, executor);
+        if (!pending.containsKey(course) || !usernames.contains(username)) {
+            return grades;
+        }
+        final Map<String, Grade> overlaid = new LinkedHashMap<>(grades);
+        overlaid.put(username, Grade.builder().username(username).course(course).grade(pending.get(course)).build());
+        return overlaid;
+    }
+
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        final Map<String, Integer> pending = pendingGrades(username);
+        final Map<String, Grade[]> histories = delegate.getGrades(usernames, executor);
+        if (pending.isEmpty() || !histories.containsKey(username)) {
+            return histories;
+        }
+        final Map<String, Grade[]> overlaid = new LinkedHashMap<>(histories);
+        overlaid.put(username, overlay(histories.get(username), pending));
+        return overlaid;
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String student) {
+        final Map<String, Integer> pending = pendingGrades(student);
+        final Grade[] grades = delegate.getCachedGrades(student);
+        if (grades == null || pending.isEmpty()) {
+            return grades;
+        }
+        return overlay(grades, pending);
+    }
+
+    @Override
+    public Grade[] getGrades(String student) throws JSONException {
+        // The pending grades are read before the API, so that one confirmed in between is in the answer.
+        final Map<String, Integer> pending = pendingGrades(student);
+        final Grade[] grades = delegate.getGrades(student);
+        if (pending.isEmpty()) {
+            return grades;
+        }
+        return overlay(grades, pending);
+    }
+
+    // The latest grade in each course still in the log, if the student is the signed-in user.
+    private Map<String, Integer> pendingGrades(String student) {
+        if (username == null || !username.equals(student)) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Integer> pending = new HashMap<>();
+        for (GradeWriteAheadLog.Entry entry : log.pending()) {
+            pending.put(entry.getCourse(), entry.getGrade());
+        }
+        return pending;
+    }
+
+    private Grade[] overlay(Grade[] grades, Map<String, Integer> pending) {
+        final Map<String, Integer> remaining = new LinkedHashMap<>(pending);
+        final List<Grade> overlaid = new ArrayList<>();
+        for (Grade grade : grades) {
+            final Integer logged = remaining.remove(grade.getCourse());
+            if (logged == null) {
+                overlaid.add(grade);
+            }
+            else {
+                overlaid.add(Grade.builder().username(username).course(grade.getCourse()).grade(logged).build());
+            }
+        }
+        for (Map.Entry<String, Integer> entry : remaining.entrySet()) {
+            overlaid.add(Grade.builder().username(username).course(entry.getKey()).grade(entry.getValue()).build());
+        }
+        return overlaid.toArray(new Grade[0]);
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        return delegate.formTeam(name);
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        return delegate.joinTeam(name);
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        return delegate.getMyTeam();
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        delegate.leaveTeam();
+    }
+
+    /**
+     * Returns a new DurableGradeDataBaseBuilder instance.
+     * @param delegate the data base to send the logged grades to.
+     * @param log the write-ahead log to keep them in until they are sent.
+     * @return a new DurableGradeDataBaseBuilder instance.
+     */
+    public static DurableGradeDataBaseBuilder builder(GradeDataBase delegate, GradeWriteAheadLog log) {
+        return new DurableGradeDataBaseBuilder(delegate, log);
+    }
+
+    /**
+     * Represents a builder for creating instances of a DurableGradeDataBase.
+     */
+    public static class DurableGradeDataBaseBuilder {
+        private final GradeDataBase delegate;
+        private final GradeWriteAheadLog log;
+        private String username;
+        private long minBackoffMillis = DEFAULT_MIN_BACKOFF_MILLIS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+        private ScheduledExecutorService replayExecutor;
+
+        DurableGradeDataBaseBuilder(GradeDataBase delegate, GradeWriteAheadLog log) {
+            this.delegate = delegate;
+            this.log = log;
+        }
+
+        /**
+         * Sets the username of the signed-in user, whose grades logGrade logs.
+         * Without it, reads do not show the grades still in the log.
+         * @param usernameInput the username, or null if it is not known.
+         * @return the DurableGradeDataBaseBuilder instance.
+         */
+        public DurableGradeDataBaseBuilder username(String usernameInput) {
+            this.username = usernameInput;
+            return this;
+        }
+
+        /**
+         * Sets how long to wait before the first retry while the grade API cannot be reached.
+         * @param minBackoffMillisInput the first backoff in milliseconds.
+         * @return the DurableGradeDataBaseBuilder instance.
+         */
+        public DurableGradeDataBaseBuilder minBackoffMillis(long minBackoffMillisInput) {
+            this.minBackoffMillis = minBackoffMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the longest wait between retries; the wait doubles up to it.
+         * @param maxBackoffMillisInput the longest backoff in milliseconds.
+         * @return the DurableGradeDataBaseBuilder instance.
+         */
+        public DurableGradeDataBaseBuilder maxBackoffMillis(long maxBackoffMillisInput) {
+            this.maxBackoffMillis = maxBackoffMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the executor that replays the log; it is shut down when the data base is closed.
+         * @param replayExecutorInput the executor for the replay.
+         * @return the DurableGradeDataBaseBuilder instance.
+         */
+        public DurableGradeDataBaseBuilder replayExecutor(ScheduledExecutorService replayExecutorInput) {
+            this.replayExecutor = replayExecutorInput;
+            return this;
+        }
+
+        /**
+         * Builds a new DurableGradeDataBase instance, which starts replaying the grades left in the log.
+         * @return a new DurableGradeDataBase instance.
+         */
+        public DurableGradeDataBase build() {
+            if (minBackoffMillis <= 0 || maxBackoffMillis < minBackoffMillis) {
+                throw new IllegalArgumentException("backoffs must satisfy 0 < minBackoffMillis <= maxBackoffMillis");
+            }
+            if (replayExecutor == null) {
+                replayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "grade-log-replay");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            final DurableGradeDataBase durable = new DurableGradeDataBase(this);
+            if (log.getPendingCount() > 0) {
+                durable.scheduleReplay(0);
+            }
+            return durable;
+        }
+    }
+}
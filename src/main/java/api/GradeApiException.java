@@ -0,0 +1,24 @@
+package api;
+
+/**
+ * Thrown when the grade API answers a request with an error, with the status_code of its answer,
+ * so that callers can tell a request the API refused from one it could not serve at the time.
+ */
+public class GradeApiException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public GradeApiException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Returns the status_code the grade API answered with.
+     * @return the status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
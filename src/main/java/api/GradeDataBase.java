@@ -1,5 +1,10 @@
 package api;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
 import org.json.JSONException;
 
 import entity.Grade;
@@ -17,6 +22,60 @@ public interface GradeDataBase {
      */
     Grade getGrade(String username, String course);
 
+    /**
+     * A method that returns the grades of many students in a course in one call.
+     * The default implementation runs a getGrade for every student on the executor;
+     * implementations that can batch or pipeline the requests themselves may ignore it.
+     * @param usernames is the usernames of the students.
+     * @param course is the course that the students are taking.
+     * @param executor is the executor to run the single lookups on when there is no batched path.
+     * @return the grades by username, in the order the usernames were given.
+     *         Students without a grade in the course are left out.
+     */
+    default Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        return BulkLookup.run(usernames, username -> getGrade(username, course), executor);
+    }
+
+    /**
+     * A method that returns the grades of many students in a course, like getGrades(usernames, course,
+     * executor), but stops as soon as a grade satisfies stopWhen: lookups that have not started are
+     * skipped and those in flight are cancelled. The default implementation runs a getGrade for every
+     * student on the executor, so the grades pass through this data base's own getGrade.
+     * @param usernames is the usernames of the students.
+     * @param course is the course that the students are taking.
+     * @param executor is the executor to run the single lookups on when there is no batched path.
+     * @param stopWhen is the test for a grade that makes the other grades unnecessary.
+     * @return the grades by username, in the order the usernames were given. Students without a grade
+     *         in the course are left out, and so may students that were not looked up after stopping.
+     */
+    default Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor,
+                                         Predicate<Grade> stopWhen) {
+        return BulkLookup.run(usernames, username -> getGrade(username, course), executor, stopWhen);
+    }
+
+    /**
+     * A method that returns the grades of many students in all courses in one call.
+     * The default implementation runs a getGrades for every student on the executor;
+     * implementations that can batch or pipeline the requests themselves may ignore it.
+     * @param usernames is the usernames of the students.
+     * @param executor is the executor to run the single lookups on when there is no batched path.
+     * @return the grades of each student by username, in the order the usernames were given.
+     * @throws JSONException if an error occurs.
+     */
+    default Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        return BulkLookup.run(usernames, this::getGrades, executor);
+    }
+
+    /**
+     * A method that returns the grades of a student in all courses if this data base already
+     * holds them locally, without making a request to get them.
+     * @param username is the username of the student.
+     * @return the grades of the student in all courses, or null if they are not held locally.
+     */
+    default Grade[] getCachedGrades(String username) {
+        return null;
+    }
+
     /**
      * A method that logs the grade of a student in a course.
      * @param course is the course that the student is taking.
@@ -0,0 +1,12 @@
+package api;
+
+/**
+ * Thrown when the grade API has no grade for the requested username and course.
+ */
+public class GradeNotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public GradeNotFoundException(String message) {
+        super(message);
+    }
+}
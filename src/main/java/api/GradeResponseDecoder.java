@@ -0,0 +1,273 @@
+package api;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * Decodes the responses of the grade API straight from the response body into Grade and Team
+ * objects, without first reading the body into a String and building a JSONObject from it.
+ * The results and errors are the same as for the JSONObject based parsing: a status_code other than
+ * 200 becomes a GradeApiException with the API's message, and malformed JSON becomes a RuntimeException
+ * wrapping a JSONException. Only a 404 for a single grade becomes a GradeNotFoundException, so that
+ * callers that skip missing grades do not also skip errors such as an invalid token or a server error.
+ */
+public final class GradeResponseDecoder {
+    private static final String STATUS_CODE = "status_code";
+    private static final String GRADE = "grade";
+    private static final String GRADES = "grades";
+    private static final String MESSAGE = "message";
+    private static final String NAME = "name";
+    private static final String TEAM = "team";
+    private static final String MEMBERS = "members";
+    private static final String COURSE = "course";
+    private static final String USERNAME = "username";
+    private static final int SUCCESS_CODE = 200;
+    private static final int NOT_FOUND_CODE = 404;
+
+    private GradeResponseDecoder() {
+    }
+
+    /**
+     * Decodes the response to a request for the grade of a student in a course.
+     * @param body the response body.
+     * @param username the username that was asked for, for the error message.
+     * @param course the course that was asked for, for the error message.
+     * @return the grade.
+     * @throws GradeNotFoundException if the API did not find the grade.
+     * @throws GradeApiException with the API's message if the API answered with any other error.
+     */
+    public static Grade decodeGrade(Reader body, String username, String course) {
+        try {
+            final JsonPullParser parser = new JsonPullParser(body);
+            final Envelope envelope = new Envelope();
+            Grade grade = null;
+            parser.beginObject();
+            while (parser.nextField()) {
+                final String name = parser.nextName();
+                if (GRADE.equals(name) && parser.peekValue() == '{') {
+                    grade = readGrade(parser);
+                }
+                else {
+                    envelope.read(name, parser);
+                }
+            }
+            if (envelope.getStatusCode() == NOT_FOUND_CODE) {
+                throw new GradeNotFoundException("Grade could not be found for course: " + course
+                        + " and username: " + username);
+            }
+            envelope.checkSuccess();
+            return required(grade, GRADE);
+        }
+        catch (JSONException event) {
+            throw wrap(event);
+        }
+    }
+
+    /**
+     * Decodes the response to a request for all the grades of a student.
+     * @param body the response body.
+     * @return the grades.
+     */
+    public static Grade[] decodeGrades(Reader body) {
+        final List<Grade> grades = new ArrayList<>();
+        forEachGrade(body, grades::add);
+        return grades.toArray(new Grade[0]);
+    }
+
+    /**
+     * Decodes the response to a request for all the grades of a student, handing each grade to the
+     * consumer as soon as it has been read instead of collecting them into an array.
+     * If the API puts the status_code after the grades and it is not 200, the consumer will already
+     * have seen the grades before the error is thrown.
+     * @param body the response body.
+     * @param consumer the consumer of the grades.
+     */
+    public static void forEachGrade(Reader body, Consumer<Grade> consumer) {
+        try {
+            final JsonPullParser parser = new JsonPullParser(body);
+            final Envelope envelope = new Envelope();
+            boolean sawGrades = false;
+            parser.beginObject();
+            while (parser.nextField()) {
+                final String name = parser.nextName();
+                if (GRADES.equals(name) && parser.peekValue() == '[' && envelope.mayBeSuccess()) {
+                    sawGrades = true;
+                    parser.beginArray();
+                    while (parser.nextElement()) {
+                        consumer.accept(readGrade(parser));
+                    }
+                }
+                else {
+                    envelope.read(name, parser);
+                }
+            }
+            envelope.checkSuccess();
+            if (!sawGrades) {
+                throw notFound(GRADES);
+            }
+        }
+        catch (JSONException event) {
+            throw wrap(event);
+        }
+    }
+
+    /**
+     * Decodes a response that holds a team.
+     * @param body the response body.
+     * @return the team.
+     */
+    public static Team decodeTeam(Reader body) {
+        try {
+            final JsonPullParser parser = new JsonPullParser(body);
+            final Envelope envelope = new Envelope();
+            Team team = null;
+            parser.beginObject();
+            while (parser.nextField()) {
+                final String name = parser.nextName();
+                if (TEAM.equals(name) && parser.peekValue() == '{' && envelope.mayBeSuccess()) {
+                    team = readTeam(parser);
+                }
+                else {
+                    envelope.read(name, parser);
+                }
+            }
+            envelope.checkSuccess();
+            return required(team, TEAM);
+        }
+        catch (JSONException event) {
+            throw wrap(event);
+        }
+    }
+
+    /**
+     * Decodes a response that only reports whether the request succeeded.
+     * @param body the response body.
+     */
+    public static void checkSuccess(Reader body) {
+        try {
+            final JsonPullParser parser = new JsonPullParser(body);
+            final Envelope envelope = new Envelope();
+            parser.beginObject();
+            while (parser.nextField()) {
+                envelope.read(parser.nextName(), parser);
+            }
+            envelope.checkSuccess();
+        }
+        catch (JSONException event) {
+            throw wrap(event);
+        }
+    }
+
+    private static Grade readGrade(JsonPullParser parser) {
+        String username = null;
+        String course = null;
+        Integer grade = null;
+        parser.beginObject();
+        while (parser.nextField()) {
+            final String name = parser.nextName();
+            if (USERNAME.equals(name)) {
+                username = parser.nextString();
+            }
+            else if (COURSE.equals(name)) {
+                course = parser.nextString();
+            }
+            else if (GRADE.equals(name)) {
+                grade = parser.nextInt();
+            }
+            else {
+                parser.skipValue();
+            }
+        }
+        return Grade.builder()
+                .username(required(username, USERNAME))
+                .course(required(course, COURSE))
+                .grade(required(grade, GRADE))
+                .build();
+    }
+
+    private static Team readTeam(JsonPullParser parser) {
+        String teamName = null;
+        List<String> members = null;
+        parser.beginObject();
+        while (parser.nextField()) {
+            final String name = parser.nextName();
+            if (NAME.equals(name)) {
+                teamName = parser.nextString();
+            }
+            else if (MEMBERS.equals(name)) {
+                members = new ArrayList<>();
+                parser.beginArray();
+                while (parser.nextElement()) {
+                    members.add(parser.nextString());
+                }
+            }
+            else {
+                parser.skipValue();
+            }
+        }
+        return Team.builder()
+                .name(required(teamName, NAME))
+                .members(required(members, MEMBERS).toArray(new String[0]))
+                .build();
+    }
+
+    private static <T> T required(T value, String key) {
+        if (value == null) {
+            throw notFound(key);
+        }
+        return value;
+    }
+
+    private static JSONException notFound(String key) {
+        return new JSONException("JSONObject[\"" + key + "\"] not found.");
+    }
+
+    private static RuntimeException wrap(JSONException event) {
+        if (event.getCause() instanceof IOException) {
+            return new RuntimeException(event.getCause());
+        }
+        return new RuntimeException(event);
+    }
+
+    /**
+     * The status_code and message fields that every response of the API has.
+     */
+    private static final class Envelope {
+        private Integer statusCode;
+        private String message;
+
+        void read(String name, JsonPullParser parser) {
+            if (STATUS_CODE.equals(name)) {
+                statusCode = parser.nextInt();
+            }
+            else if (MESSAGE.equals(name) && parser.peekValue() == '"') {
+                message = parser.nextString();
+            }
+            else {
+                parser.skipValue();
+            }
+        }
+
+        boolean mayBeSuccess() {
+            return statusCode == null || statusCode == SUCCESS_CODE;
+        }
+
+        int getStatusCode() {
+            return required(statusCode, STATUS_CODE);
+        }
+
+        void checkSuccess() {
+            if (getStatusCode() != SUCCESS_CODE) {
+                throw new GradeApiException(statusCode, required(message, MESSAGE));
+            }
+        }
+    }
+}
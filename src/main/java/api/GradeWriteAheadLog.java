@@ -0,0 +1,314 @@
+package api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the grades logged locally that the grade API has not confirmed yet.
+ * An append returns once the entry is on the disk. Appends that arrive while the disk is being
+ * synced wait for the next sync and share it (group commit), so a burst of grades costs a few
+ * syncs rather than one each.
+ * <p>
+ * Each record is its length, a CRC32 of its body, and the body: the sequence number, the grade and
+ * the course. On open, the log is read up to the first record that is cut short or fails its
+ * checksum, and the file is truncated there. Confirmed entries are dropped from the front of the
+ * log; the file is rewritten without them once they take up enough of it and when the log is closed,
+ * or emptied when all are. Confirmed entries still in the file after a crash are read back as pending.
+ */
+public class GradeWriteAheadLog implements AutoCloseable {
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int BODY_FIXED_BYTES = 12;
+    private static final int MAX_COURSE_BYTES = 1024;
+    // Rewrite the log once this many bytes at its front have been confirmed.
+    private static final long COMPACT_AFTER_BYTES = 64 * 1024L;
+
+    private final Path file;
+    private final Object syncLock = new Object();
+
+    // Guarded by this.
+    private FileChannel channel;
+    private final Deque<Entry> pending = new ArrayDeque<>();
+    private long lastSeq;
+    private long confirmedBytes;
+    private long fileBytes;
+
+    // Guarded by syncLock.
+    private volatile long syncedSeq;
+    private long syncCount;
+
+    private GradeWriteAheadLog(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the log in a file, creating the file if it does not exist, and recovers its entries.
+     * @param file the file to keep the log in.
+     * @return the open log.
+     * @throws IOException if the file cannot be read or written.
+     */
+    public static GradeWriteAheadLog open(Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final GradeWriteAheadLog log = new GradeWriteAheadLog(file, channel);
+        try {
+            log.recover();
+        }
+        catch (IOException | RuntimeException event) {
+            channel.close();
+            throw event;
+        }
+        return log;
+    }
+
+    private void recover() throws IOException {
+        final ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+        while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {
+            // Keep reading until the buffer is full.
+        }
+        contents.flip();
+        long validBytes = 0;
+        while (contents.remaining() >= RECORD_HEADER_BYTES) {
+            final int length = contents.getInt();
+            final int checksum = contents.getInt();
+            if (length < BODY_FIXED_BYTES || length > BODY_FIXED_BYTES + MAX_COURSE_BYTES
+                    || contents.remaining() < length) {
+                break;
+            }
+            final byte[] body = new byte[length];
+            contents.get(body);
+            if (checksum != checksum(body)) {
+                break;
+            }
+            final Entry entry = decode(ByteBuffer.wrap(body), RECORD_HEADER_BYTES + length);
+            pending.addLast(entry);
+            lastSeq = entry.seq;
+            validBytes += entry.bytes;
+        }
+        if (validBytes < channel.size()) {
+            // Drop a record torn by a crash, and anything after it.
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+        channel.position(validBytes);
+        fileBytes = validBytes;
+        syncedSeq = lastSeq;
+    }
+
+    /**
+     * Appends a grade to the log and waits until it is on the disk.
+     * @param course is the course.
+     * @param grade is the grade.
+     * @return the sequence number of the entry.
+     * @throws IOException if the entry could not be written or synced.
+     */
+    public long append(String course, int grade) throws IOException {
+        final byte[] courseBytes = course.getBytes(StandardCharsets.UTF_8);
+        if (courseBytes.length > MAX_COURSE_BYTES) {
+            throw new IllegalArgumentException("course name is too long");
+        }
+        final long seq;
+        synchronized (this) {
+            seq = lastSeq + 1;
+            final ByteBuffer body = ByteBuffer.allocate(BODY_FIXED_BYTES + courseBytes.length);
+            body.putLong(seq).putInt(grade).put(courseBytes);
+            final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + body.capacity());
+            record.putInt(body.capacity()).putInt(checksum(body.array())).put(body.array());
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            lastSeq = seq;
+            fileBytes += record.capacity();
+            pending.addLast(new Entry(seq, course, grade, record.capacity()));
+        }
+        sync(seq);
+        return seq;
+    }
+
+    private void sync(long seq) throws IOException {
+        if (syncedSeq >= seq) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                // Another append synced this entry while we waited.
+                return;
+            }
+            final long target;
+            final FileChannel current;
+            synchronized (this) {
+                target = lastSeq;
+                current = channel;
+            }
+            current.force(false);
+            syncedSeq = target;
+            syncCount++;
+        }
+    }
+
+    /**
+     * Returns the entries the grade API has not confirmed yet, oldest first.
+     * @return the pending entries.
+     */
+    public synchronized List<Entry> pending() {
+        return new ArrayList<>(pending);
+    }
+
+    /**
+     * Returns the number of entries the grade API has not confirmed yet.
+     * @return the number of pending entries.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of times the log was synced to the disk, which is at most the number of appends.
+     * @return the number of syncs.
+     */
+    public long getSyncCount() {
+        synchronized (syncLock) {
+            return syncCount;
+        }
+    }
+
+    /**
+     * Drops the entries up to and including a sequence number, once the grade API has confirmed them.
+     * @param seq the sequence number of the last confirmed entry.
+     * @throws IOException if the log could not be compacted.
+     */
+    public void confirm(long seq) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                while (!pending.isEmpty() && pending.peekFirst().seq <= seq) {
+                    confirmedBytes += pending.pollFirst().bytes;
+                }
+                if (pending.isEmpty()) {
+                    channel.truncate(0);
+                    channel.position(0);
+                    channel.force(true);
+                    fileBytes = 0;
+                    confirmedBytes = 0;
+                }
+                else if (confirmedBytes >= COMPACT_AFTER_BYTES) {
+                    compact();
+                }
+            }
+        }
+    }
+
+    // Rewrites the log without its confirmed entries and swaps it in atomically.
+    private void compact() throws IOException {
+        final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer remaining = ByteBuffer.allocate((int) (fileBytes - confirmedBytes));
+            while (remaining.hasRemaining()
+                    && channel.read(remaining, confirmedBytes + remaining.position()) >= 0) {
+                // Keep reading until the buffer is full.
+            }
+            remaining.flip();
+            while (remaining.hasRemaining()) {
+                out.write(remaining);
+            }
+            out.force(true);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileBytes -= confirmedBytes;
+        confirmedBytes = 0;
+        channel.position(fileBytes);
+    }
+
+    /**
+     * Drops the confirmed entries from the file and closes it. The log cannot be used after it has been closed.
+     * @throws IOException if the file cannot be compacted or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                try {
+                    if (confirmedBytes > 0) {
+                        compact();
+                    }
+                }
+                finally {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    private static Entry decode(ByteBuffer body, int bytes) {
+        final long seq = body.getLong();
+        final int grade = body.getInt();
+        final byte[] course = new byte[body.remaining()];
+        body.get(course);
+        return new Entry(seq, new String(course, StandardCharsets.UTF_8), grade, bytes);
+    }
+
+    private static int checksum(byte[] body) {
+        final CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A grade in the log.
+     */
+    public static final class Entry {
+        private final long seq;
+        private final String course;
+        private final int grade;
+        private final int bytes;
+
+        Entry(long seq, String course, int grade, int bytes) {
+            this.seq = seq;
+            this.course = course;
+            this.grade = grade;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Returns the sequence number of the entry, which orders the entries of the log.
+         * @return the sequence number.
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * Returns the course of the grade.
+         * @return the course.
+         */
+        public String getCourse() {
+            return course;
+        }
+
+        /**
+         * Returns the grade.
+         * @return the grade.
+         */
+        public int getGrade() {
+            return grade;
+        }
+    }
+}
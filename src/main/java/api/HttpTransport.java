@@ -0,0 +1,510 @@
+package api;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * The HTTP transport shared by all the calls a GradeDataBase makes to the grade API.
+ * It owns a single OkHttpClient, so connections (and their TLS sessions) are pooled and
+ * reused across calls instead of being set up again for every request.
+ */
+public class HttpTransport {
+    // Defaults for the connection pool, dispatcher and timeouts.
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 8;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000L;
+    public static final int DEFAULT_MAX_REQUESTS = 64;
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000L;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = 10_000L;
+    public static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 10_000L;
+    public static final long DEFAULT_CALL_TIMEOUT_MILLIS = 30_000L;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+    private static final String METRICS_GROUP = "HTTP";
+
+    private final OkHttpClient client;
+    private final ResiliencePolicy resilience;
+    private final ConcurrencyLimiter readLimiter;
+    private final ConcurrencyLimiter writeLimiter;
+    private final NetworkPhaseProfiler phaseProfiler;
+
+    HttpTransport(OkHttpClient client, HttpTransportBuilder builder) {
+        this.client = client;
+        this.resilience = builder.resilience;
+        this.readLimiter = builder.readLimiter;
+        this.writeLimiter = builder.writeLimiter;
+        this.phaseProfiler = builder.phaseProfiler;
+    }
+
+    /**
+     * Returns the client shared by every call made through this transport.
+     * @return the shared OkHttpClient.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Returns the policy for retries, circuit breaking and hedging, if the transport has one.
+     * @return the resilience policy, or null.
+     */
+    public ResiliencePolicy getResilience() {
+        return resilience;
+    }
+
+    /**
+     * Returns the limiter of the number of reads (GET requests) in flight, if the transport has one.
+     * @return the read limiter, or null.
+     */
+    public ConcurrencyLimiter getReadLimiter() {
+        return readLimiter;
+    }
+
+    /**
+     * Returns the limiter of the number of writes in flight, if the transport has one.
+     * @return the write limiter, or null.
+     */
+    public ConcurrencyLimiter getWriteLimiter() {
+        return writeLimiter;
+    }
+
+    /**
+     * Returns the profiler timing the network phases of every call, if the transport has one.
+     * @return the network phase profiler, or null.
+     */
+    public NetworkPhaseProfiler getPhaseProfiler() {
+        return phaseProfiler;
+    }
+
+    /**
+     * Executes the request synchronously on the shared client, under the resilience policy if there is one.
+     * The caller is responsible for closing the returned response.
+     * @param request the request to execute.
+     * @return the response to the request.
+     * @throws IOException if there is a problem talking to the API.
+     */
+    public Response execute(Request request) throws IOException {
+        if (resilience == null) {
+            return send(request);
+        }
+        return resilience.execute(request, this::send);
+    }
+
+    /**
+     * Enqueues the request on the shared client's dispatcher without blocking the calling thread.
+     * The returned future completes with the response, which the caller is responsible for closing,
+     * or exceptionally with the IOException that stopped the call. Cancelling the future cancels the call.
+     * The resilience policy, if there is one, applies as for execute.
+     * @param request the request to execute.
+     * @return a future for the response to the request.
+     */
+    public CompletableFuture<Response> executeAsync(Request request) {
+        if (resilience == null) {
+            return sendAsync(request);
+        }
+        return resilience.executeAsync(request, this::sendAsync);
+    }
+
+    // Sends a single attempt of a request, once the concurrency limiter has let it through.
+
+    private Response send(Request request) throws IOException {
+        final ConcurrencyLimiter limiter = limiterFor(request);
+        if (limiter == null) {
+            return client.newCall(request).execute();
+        }
+        try {
+            limiter.acquire();
+        }
+        catch (InterruptedException event) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to send a request", event);
+        }
+        final long start = System.nanoTime();
+        try {
+            final Response response = client.newCall(request).execute();
+            release(limiter, response, start);
+            return response;
+        }
+        catch (IOException | RuntimeException event) {
+            limiter.onDropped();
+            throw event;
+        }
+    }
+
+    private CompletableFuture<Response> sendAsync(Request request) {
+        final ConcurrencyLimiter limiter = limiterFor(request);
+        if (limiter == null) {
+            return enqueue(request);
+        }
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        limiter.acquireAsync().thenRun(() -> {
+            if (result.isDone()) {
+                limiter.onIgnore();
+                return;
+            }
+            final long start = System.nanoTime();
+            final CompletableFuture<Response> call = enqueue(request);
+            result.whenComplete((response, failure) -> {
+                if (result.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+            call.whenComplete((response, failure) -> {
+                if (failure == null) {
+                    release(limiter, response, start);
+                    if (!result.complete(response)) {
+                        response.close();
+                    }
+                }
+                else {
+                    if (call.isCancelled()) {
+                        limiter.onIgnore();
+                    }
+                    else {
+                        limiter.onDropped();
+                    }
+                    result.completeExceptionally(failure);
+                }
+            });
+        });
+        return result;
+    }
+
+    private ConcurrencyLimiter limiterFor(Request request) {
+        if ("GET".equals(request.method())) {
+            return readLimiter;
+        }
+        return writeLimiter;
+    }
+
+    private static void release(ConcurrencyLimiter limiter, Response response, long start) {
+        if (response.code() == TOO_MANY_REQUESTS || response.code() >= SERVER_ERROR) {
+            limiter.onDropped();
+        }
+        else {
+            limiter.onSuccess(System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<Response> enqueue(Request request) {
+        final Call call = client.newCall(request);
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        result.whenComplete((response, failure) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException event) {
+                result.completeExceptionally(event);
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                if (!result.complete(response)) {
+                    response.close();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stops the dispatcher threads and closes the pooled connections.
+     * The transport cannot be used after it has been shut down.
+     */
+    public void shutdown() {
+        if (resilience != null) {
+            resilience.shutdown();
+        }
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    // Records the latency, failures and response bytes of every request in a MetricsRegistry.
+    private static final class MetricsInterceptor implements Interceptor {
+        private final MetricsRegistry registry;
+
+        MetricsInterceptor(MetricsRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            final Request request = chain.request();
+            final OperationMetrics operation = registry.operation(METRICS_GROUP,
+                    request.method() + " " + request.url().encodedPath());
+            final long start = System.nanoTime();
+            final Response response;
+            try {
+                response = chain.proceed(request);
+            }
+            catch (IOException | RuntimeException event) {
+                operation.record(System.nanoTime() - start, true);
+                throw event;
+            }
+            operation.record(System.nanoTime() - start, response.code() >= SERVER_ERROR);
+            final ResponseBody body = response.body();
+            if (body == null) {
+                return response;
+            }
+            return response.newBuilder().body(new CountingResponseBody(body, operation)).build();
+        }
+    }
+
+    // A response body that adds the number of bytes read from it to the metrics of its request.
+    private static final class CountingResponseBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        CountingResponseBody(ResponseBody body, OperationMetrics operation) {
+            this.body = body;
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    final long read = super.read(sink, byteCount);
+                    if (read > 0) {
+                        operation.recordBytes(read);
+                    }
+                    return read;
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    /**
+     * Returns a new HttpTransportBuilder instance.
+     * @return a new HttpTransportBuilder instance.
+     */
+    public static HttpTransportBuilder builder() {
+        return new HttpTransportBuilder();
+    }
+
+    /**
+     * Represents a builder for creating instances of an HttpTransport.
+     */
+    public static class HttpTransportBuilder {
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private long writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+        private long callTimeoutMillis = DEFAULT_CALL_TIMEOUT_MILLIS;
+        private boolean http2 = true;
+        private ResiliencePolicy resilience;
+        private ConcurrencyLimiter readLimiter;
+        private ConcurrencyLimiter writeLimiter;
+        private MetricsRegistry metrics;
+        private NetworkPhaseProfiler phaseProfiler;
+
+        HttpTransportBuilder() {
+        }
+
+        /**
+         * Sets the number of idle connections kept in the pool.
+         * @param maxIdleConnectionsInput the number of idle connections to keep.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder maxIdleConnections(int maxIdleConnectionsInput) {
+            this.maxIdleConnections = maxIdleConnectionsInput;
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept alive before it is evicted from the pool.
+         * @param keepAliveMillisInput the keep-alive duration in milliseconds.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder keepAliveMillis(long keepAliveMillisInput) {
+            this.keepAliveMillis = keepAliveMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous requests in flight across all hosts.
+         * @param maxRequestsInput the maximum number of requests.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder maxRequests(int maxRequestsInput) {
+            this.maxRequests = maxRequestsInput;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of asynchronous requests in flight to a single host.
+         * @param maxRequestsPerHostInput the maximum number of requests per host.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder maxRequestsPerHost(int maxRequestsPerHostInput) {
+            this.maxRequestsPerHost = maxRequestsPerHostInput;
+            return this;
+        }
+
+        /**
+         * Sets the connect timeout.
+         * @param connectTimeoutMillisInput the connect timeout in milliseconds.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder connectTimeoutMillis(long connectTimeoutMillisInput) {
+            this.connectTimeoutMillis = connectTimeoutMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the read timeout.
+         * @param readTimeoutMillisInput the read timeout in milliseconds.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder readTimeoutMillis(long readTimeoutMillisInput) {
+            this.readTimeoutMillis = readTimeoutMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the write timeout.
+         * @param writeTimeoutMillisInput the write timeout in milliseconds.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder writeTimeoutMillis(long writeTimeoutMillisInput) {
+            this.writeTimeoutMillis = writeTimeoutMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the timeout for a complete call, including redirects and retries.
+         * @param callTimeoutMillisInput the call timeout in milliseconds.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder callTimeoutMillis(long callTimeoutMillisInput) {
+            this.callTimeoutMillis = callTimeoutMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets whether HTTP/2 may be negotiated, so that concurrent calls share one connection.
+         * @param http2Input true to allow HTTP/2, false to only use HTTP/1.1.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder http2(boolean http2Input) {
+            this.http2 = http2Input;
+            return this;
+        }
+
+        /**
+         * Sets the policy for retrying failed reads, circuit breaking and hedging slow reads.
+         * @param resilienceInput the resilience policy, or null to send every request once.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder resilience(ResiliencePolicy resilienceInput) {
+            this.resilience = resilienceInput;
+            return this;
+        }
+
+        /**
+         * Sets the limiters of how many requests are in flight at the same time, separately for reads
+         * (GET requests: getGrade, getGrades and getMyTeam) and writes (logging grades and changing teams).
+         * @param readLimiterInput the read limiter, or null not to limit reads.
+         * @param writeLimiterInput the write limiter, or null not to limit writes.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder concurrencyLimits(ConcurrencyLimiter readLimiterInput,
+                                                      ConcurrencyLimiter writeLimiterInput) {
+            this.readLimiter = readLimiterInput;
+            this.writeLimiter = writeLimiterInput;
+            return this;
+        }
+
+        /**
+         * Sets the registry to record every request in, under the group HTTP and a name made of the
+         * method and path of the request, e.g. "GET /grade". Each attempt is recorded separately,
+         * with its latency up to the response headers and the number of response body bytes read.
+         * @param metricsInput the metrics registry, or null not to record requests.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder metrics(MetricsRegistry metricsInput) {
+            this.metrics = metricsInput;
+            return this;
+        }
+
+        /**
+         * Sets the profiler to time the DNS, connect, TLS, wait and body phases of every call with.
+         * @param phaseProfilerInput the network phase profiler, or null not to profile calls.
+         * @return the HttpTransportBuilder instance.
+         */
+        public HttpTransportBuilder phaseProfiler(NetworkPhaseProfiler phaseProfilerInput) {
+            this.phaseProfiler = phaseProfilerInput;
+            return this;
+        }
+
+        /**
+         * Builds a new HttpTransport instance.
+         * @return a new HttpTransport instance.
+         */
+        public HttpTransport build() {
+            final Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(maxRequests);
+            dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+            final OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                    .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (metrics != null) {
+                clientBuilder.addInterceptor(new MetricsInterceptor(metrics));
+            }
+            if (phaseProfiler != null) {
+                clientBuilder.eventListenerFactory(phaseProfiler);
+            }
+            if (http2) {
+                clientBuilder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+            }
+            else {
+                clientBuilder.protocols(Arrays.asList(Protocol.HTTP_1_1));
+            }
+            return new HttpTransport(clientBuilder.build(), this);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * A GradeDataBase that keeps everything in this process, with the same rules as the grade API: users
+ * are signed up and identified by a token, a user logs grades for themselves and has at most one grade
+ * per course, and a user is in at most one team, which is removed once its last member leaves.
+ * Failures are reported with the same exceptions MongoGradeDataBase throws for the API's answers.
+ * <p>
+ * It serves as a fast local backend and as a baseline to measure the remote stack against. Every
+ * InMemoryGradeDataBase built by one builder shares the same data, and each acts as one user; withToken
+ * returns another view on the same data acting as another user.
+ * <p>
+ * The grades are split over lock stripes by username, each guarded by a read-write lock, so reads and
+ * writes of different students do not wait for each other and reads of the same student run together.
+ * The tokens, and who is in which team, are kept in concurrent maps that are read without locking;
+ * team changes, which are rare, take a single lock so that a user can never end up in two teams.
+ */
+public class InMemoryGradeDataBase implements GradeDataBase {
+    public static final int DEFAULT_STRIPES = 64;
+    private static final int MAX_GRADE = 100;
+    // The status codes the grade API answers these failures with.
+    private static final int BAD_REQUEST = 400;
+    private static final int UNAUTHORIZED = 401;
+    private static final int NOT_FOUND = 404;
+
+    private final State state;
+    private final String username;
+
+    private InMemoryGradeDataBase(State state, String username) {
+        this.state = state;
+        this.username = username;
+    }
+
+    /**
+     * Signs up a user.
+     * @param newUsername the username.
+     * @return the token the user is identified by.
+     * @throws GradeApiException if the username is taken.
+     */
+    public String signUp(String newUsername) {
+        return state.signUp(newUsername);
+    }
+
+    /**
+     * Returns a view on the same data that acts as the user a token was handed out to.
+     * @param token the token.
+     * @return the data base acting as that user.
+     * @throws GradeApiException if the token is not valid.
+     */
+    public InMemoryGradeDataBase withToken(String token) {
+        final String user = state.usersByToken.get(token);
+        if (user == null) {
+            throw new GradeApiException(UNAUTHORIZED, "Invalid token");
+        }
+        return new InMemoryGradeDataBase(state, user);
+    }
+
+    /**
+     * Returns the user this data base acts as.
+     * @return the username, or null if it acts as no user.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public Grade getGrade(String student, String course) {
+        final Stripe stripe = state.stripeOf(student);
+        final Integer grade;
+        stripe.lock.readLock().lock();
+        try {
+            final Map<String, Integer> grades = stripe.gradesByUser.get(student);
+            if (grades == null) {
+                grade = null;
+            }
+            else {
+                grade = grades.get(course);
+            }
+        }
+        finally {
+            stripe.lock.readLock().unlock();
+        }
+        if (grade == null) {
+            throw new GradeNotFoundException("Grade could not be found for course: " + course
+                    + " and username: " + student);
+        }
+        return grade(student, course, grade);
+    }
+
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        // Every lookup is local, so running them on the executor would only add hand-offs.
+        final Map<String, Grade> result = new LinkedHashMap<>();
+        for (String student : usernames) {
+            final Stripe stripe = state.stripeOf(student);
+            stripe.lock.readLock().lock();
+            try {
+                final Map<String, Integer> grades = stripe.gradesByUser.get(student);
+                if (grades != null && grades.containsKey(course)) {
+                    result.put(student, grade(student, course, grades.get(course)));
+                }
+            }
+            finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        final Map<String, Grade[]> result = new LinkedHashMap<>();
+        for (String student : usernames) {
+            result.put(student, getGrades(student));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the grades of a student, since they are always held locally.
+     * @return the grades of the student, or null if there is no such student.
+     */
+    @Override
+    public Grade[] getCachedGrades(String student) {
+        return state.grades(student);
+    }
+
+    @Override
+    public Grade[] getGrades(String student) throws JSONException {
+        final Grade[] grades = state.grades(student);
+        if (grades == null) {
+            throw new GradeApiException(NOT_FOUND, "User not found");
+        }
+        return grades;
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        final String user = signedIn();
+        if (course == null || grade < 0 || grade > MAX_GRADE) {
+            throw new GradeApiException(BAD_REQUEST, "A course and a grade between 0 and 100 are required");
+        }
+        final Stripe stripe = state.stripeOf(user);
+        stripe.lock.writeLock().lock();
+        try {
+            stripe.gradesByUser.computeIfAbsent(user, key -> new LinkedHashMap<>()).put(course, grade);
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+        return grade(user, course, grade);
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        final String user = signedIn();
+        if (name == null) {
+            throw new GradeApiException(BAD_REQUEST, "name is required");
+        }
+        synchronized (state.teamLock) {
+            if (state.teams.containsKey(name)) {
+                throw new GradeApiException(BAD_REQUEST, "Team already exists");
+            }
+            if (state.teamOfUser.containsKey(user)) {
+                throw new GradeApiException(BAD_REQUEST, "You are already in a team");
+            }
+            final Team team = team(name, new String[]{user});
+            state.teams.put(name, team);
+            state.teamOfUser.put(user, name);
+            return team;
+        }
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        final String user = signedIn();
+        if (name == null) {
+            throw new GradeApiException(NOT_FOUND, "Team not found");
+        }
+        synchronized (state.teamLock) {
+            final Team current = state.teams.get(name);
+            if (current == null) {
+                throw new GradeApiException(NOT_FOUND, "Team not found");
+            }
+            if (state.teamOfUser.containsKey(user)) {
+                throw new GradeApiException(BAD_REQUEST, "You are already in a team");
+            }
+            final String[] members = Arrays.copyOf(current.getMembers(), current.getMembers().length + 1);
+            members[members.length - 1] = user;
+            final Team team = team(name, members);
+            // Teams are replaced rather than changed, so that getMyTeam can read them without locking.
+            state.teams.put(name, team);
+            state.teamOfUser.put(user, name);
+            return team;
+        }
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        final String user = signedIn();
+        final String name = state.teamOfUser.get(user);
+        final Team team;
+        if (name == null) {
+            team = null;
+        }
+        else {
+            team = state.teams.get(name);
+        }
+        if (team == null) {
+            throw new GradeApiException(NOT_FOUND, "You are not in a team");
+        }
+        return team;
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        final String user = signedIn();
+        synchronized (state.teamLock) {
+            final String name = state.teamOfUser.remove(user);
+            if (name == null) {
+                throw new GradeApiException(BAD_REQUEST, "You are not in a team");
+            }
+            final List<String> members = new ArrayList<>(Arrays.asList(state.teams.get(name).getMembers()));
+            members.remove(user);
+            if (members.isEmpty()) {
+                state.teams.remove(name);
+            }
+            else {
+                state.teams.put(name, team(name, members.toArray(new String[0])));
+            }
+        }
+    }
+
+    private String signedIn() {
+        if (username == null) {
+            throw new GradeApiException(UNAUTHORIZED, "Invalid token");
+        }
+        return username;
+    }
+
+    private static Grade grade(String student, String course, int grade) {
+        return Grade.builder().username(student).course(course).grade(grade).build();
+    }
+
+    private static Team team(String name, String[] members) {
+        return Team.builder().name(name).members(members).build();
+    }
+
+    /**
+     * Returns a new InMemoryGradeDataBaseBuilder instance.
+     * @return a new InMemoryGradeDataBaseBuilder instance.
+     */
+    public static InMemoryGradeDataBaseBuilder builder() {
+        return new InMemoryGradeDataBaseBuilder();
+    }
+
+    // The data shared by the views of one in-memory data base.
+    private static final class State {
+        private final Stripe[] stripes;
+        private final ConcurrentMap<String, String> usersByToken = new ConcurrentHashMap<>();
+        // Teams by name; a Team is never changed once it is in the map, only replaced.
+        private final ConcurrentMap<String, Team> teams = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, String> teamOfUser = new ConcurrentHashMap<>();
+        private final Object teamLock = new Object();
+
+        State(int stripeCount) {
+            stripes = new Stripe[stripeCount];
+            for (int i = 0; i < stripeCount; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        Stripe stripeOf(String student) {
+            final int hash = student.hashCode();
+            // Spread the high bits down, as HashMap does, since the stripe count is a power of two.
+            return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+        }
+
+        String signUp(String student) {
+            if (student == null || student.isEmpty()) {
+                throw new GradeApiException(BAD_REQUEST, "username is required");
+            }
+            final Stripe stripe = stripeOf(student);
+            stripe.lock.writeLock().lock();
+            try {
+                if (stripe.gradesByUser.containsKey(student)) {
+                    throw new GradeApiException(BAD_REQUEST, "Username already exists");
+                }
+                stripe.gradesByUser.put(student, new LinkedHashMap<>());
+            }
+            finally {
+                stripe.lock.writeLock().unlock();
+            }
+            final String token = UUID.randomUUID().toString();
+            usersByToken.put(token, student);
+            return token;
+        }
+
+        Grade[] grades(String student) {
+            final Stripe stripe = stripeOf(student);
+            stripe.lock.readLock().lock();
+            try {
+                final Map<String, Integer> grades = stripe.gradesByUser.get(student);
+                if (grades == null) {
+                    return null;
+                }
+                final Grade[] result = new Grade[grades.size()];
+                int i = 0;
+                for (Map.Entry<String, Integer> grade : grades.entrySet()) {
+                    result[i++] = grade(student, grade.getKey(), grade.getValue());
+                }
+                return result;
+            }
+            finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+    }
+
+    // The grades of the students whose usernames hash to one stripe, by username and then by course.
+    private static final class Stripe {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Map<String, Integer>> gradesByUser = new HashMap<>();
+    }
+
+    /**
+     * Represents a builder for creating instances of an InMemoryGradeDataBase.
+     */
+    public static class InMemoryGradeDataBaseBuilder {
+        private int stripes = DEFAULT_STRIPES;
+        private String username;
+        private final List<String> users = new ArrayList<>();
+        private final List<Grade> grades = new ArrayList<>();
+        private final Map<String, List<String>> teams = new LinkedHashMap<>();
+
+        InMemoryGradeDataBaseBuilder() {
+        }
+
+        /**
+         * Sets the number of lock stripes the grades are split over, rounded up to a power of two.
+         * @param stripesInput the number of stripes.
+         * @return the InMemoryGradeDataBaseBuilder instance.
+         */
+        public InMemoryGradeDataBaseBuilder stripes(int stripesInput) {
+            this.stripes = stripesInput;
+            return this;
+        }
+
+        /**
+         * Signs up a user, and makes the data base that is built act as them.
+         * @param usernameInput the username.
+         * @return the InMemoryGradeDataBaseBuilder instance.
+         */
+        public InMemoryGradeDataBaseBuilder signedInAs(String usernameInput) {
+            this.username = usernameInput;
+            return user(usernameInput);
+        }
+
+        /**
+         * Signs up a user.
+         * @param usernameInput the username.
+         * @return the InMemoryGradeDataBaseBuilder instance.
+         */
+        public InMemoryGradeDataBaseBuilder user(String usernameInput) {
+            if (!users.contains(usernameInput)) {
+                users.add(usernameInput);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a grade, signing up its user if needed.
+         * @param usernameInput the username of the student.
+         * @param courseInput the course.
+         * @param gradeInput the grade.
+         * @return the InMemoryGradeDataBaseBuilder instance.
+         */
+        public InMemoryGradeDataBaseBuilder grade(String usernameInput, String courseInput, int gradeInput) {
+            user(usernameInput);
+            grades.add(InMemoryGradeDataBase.grade(usernameInput, courseInput, gradeInput));
+            return this;
+        }
+
+        /**
+         * Adds a team, signing up its members if needed.
+         * @param nameInput the name of the team.
+         * @param membersInput the members of the team, who must not be in another team.
+         * @return the InMemoryGradeDataBaseBuilder instance.
+         */
+        public InMemoryGradeDataBaseBuilder team(String nameInput, String... membersInput) {
+            if (membersInput.length == 0) {
+                throw new IllegalArgumentException("a team needs at least one member");
+            }
+            for (String member : membersInput) {
+                user(member);
+            }
+            teams.put(nameInput, Arrays.asList(membersInput));
+            return this;
+        }
+
+        /**
+         * Builds a new InMemoryGradeDataBase instance.
+         * @return a new InMemoryGradeDataBase instance, acting as the user it was signed in as, if any.
+         */
+        public InMemoryGradeDataBase build() {
+            if (stripes < 1) {
+                throw new IllegalArgumentException("stripes must be at least 1");
+            }
+            int stripeCount = 1;
+            while (stripeCount < stripes) {
+                stripeCount <<= 1;
+            }
+            final State state = new State(stripeCount);
+            for (String user : users) {
+                state.signUp(user);
+            }
+            for (Grade grade : grades) {
+                new InMemoryGradeDataBase(state, grade.getUsername()).logGrade(grade.getCourse(), grade.getGrade());
+            }
+            for (Map.Entry<String, List<String>> team : teams.entrySet()) {
+                final String name = team.getKey();
+                final List<String> members = team.getValue();
+                new InMemoryGradeDataBase(state, members.get(0)).formTeam(name);
+                for (String member : members.subList(1, members.size())) {
+                    new InMemoryGradeDataBase(state, member).joinTeam(name);
+                }
+            }
+            return new InMemoryGradeDataBase(state, username);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package api;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * A GradeDataBase that records the latency and errors of every call to another GradeDataBase
+ * in a MetricsRegistry, under the group GradeDataBase and the name of the method.
+ * <p>
+ * The asynchronous methods are timed under the same names until their futures complete. They are sent
+ * through the asynchronous methods of the data base behind this one when it has them, and otherwise
+ * its blocking methods are called on the calling thread.
+ */
+public class InstrumentedGradeDataBase implements GradeDataBase, AsyncGradeDataBase {
+    private static final String GROUP = "GradeDataBase";
+
+    private final GradeDataBase delegate;
+    private final AsyncGradeDataBase asyncDelegate;
+    private final OperationMetrics getGrade;
+    private final OperationMetrics getGrades;
+    private final OperationMetrics getGradesBulk;
+    private final OperationMetrics getHistoriesBulk;
+    private final OperationMetrics logGrade;
+    private final OperationMetrics formTeam;
+    private final OperationMetrics joinTeam;
+    private final OperationMetrics getMyTeam;
+    private final OperationMetrics leaveTeam;
+
+    public InstrumentedGradeDataBase(GradeDataBase delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.asyncDelegate = AsyncGradeDataBase.of(delegate, Runnable::run);
+        this.getGrade = registry.operation(GROUP, "getGrade");
+        this.getGrades = registry.operation(GROUP, "getGrades");
+        this.getGradesBulk = registry.operation(GROUP, "getGrades(bulk, course)");
+        this.getHistoriesBulk = registry.operation(GROUP, "getGrades(bulk)");
+        this.logGrade = registry.operation(GROUP, "logGrade");
+        this.formTeam = registry.operation(GROUP, "formTeam");
+        this.joinTeam = registry.operation(GROUP, "joinTeam");
+        this.getMyTeam = registry.operation(GROUP, "getMyTeam");
+        this.leaveTeam = registry.operation(GROUP, "leaveTeam");
+    }
+
+    @Override
+    public Grade getGrade(String username, String course) {
+        return getGrade.time(() -> delegate.getGrade(username, course));
+    }
+
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        return getGradesBulk.time(() -> delegate.getGrades(usernames, course, executor));
+    }
+
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        return getHistoriesBulk.time(() -> delegate.getGrades(usernames, executor));
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String username) {
+        return delegate.getCachedGrades(username);
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        return logGrade.time(() -> delegate.logGrade(course, grade));
+    }
+
+    @Override
+    public Grade[] getGrades(String username) throws JSONException {
+        return getGrades.time(() -> delegate.getGrades(username));
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        return formTeam.time(() -> delegate.formTeam(name));
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        return joinTeam.time(() -> delegate.joinTeam(name));
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        return getMyTeam.time(delegate::getMyTeam);
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        leaveTeam.run(delegate::leaveTeam);
+    }
+
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+        return getGrade.timeAsync(() -> asyncDelegate.getGradeAsync(username, course));
+    }
+
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return logGrade.timeAsync(() -> asyncDelegate.logGradeAsync(course, grade));
+    }
+
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String username) {
+        return getGrades.timeAsync(() -> asyncDelegate.getGradesAsync(username));
+    }
+
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        return formTeam.timeAsync(() -> asyncDelegate.formTeamAsync(name));
+    }
+
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return joinTeam.timeAsync(() -> asyncDelegate.joinTeamAsync(name));
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        return getMyTeam.timeAsync(asyncDelegate::getMyTeamAsync);
+    }
+
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return leaveTeam.timeAsync(asyncDelegate::leaveTeamAsync);
+    }
+}
@@ -0,0 +1,298 @@
+package api;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONException;
+
+/**
+ * A small pull parser that reads JSON straight from a Reader, one token at a time,
+ * without building a tree of the whole document first.
+ * Malformed input is reported with a JSONException, like org.json does.
+ */
+final class JsonPullParser {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int HEX_RADIX = 16;
+    private static final int UNICODE_ESCAPE_LENGTH = 4;
+    private static final int MAX_DEPTH = 256;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final StringBuilder scratch = new StringBuilder();
+
+    // Whether the object or array at each depth has had its first member read yet.
+    private final boolean[] started = new boolean[MAX_DEPTH];
+    private int depth;
+
+    JsonPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Consumes the opening brace of an object.
+     */
+    void beginObject() {
+        expect('{');
+        push();
+    }
+
+    /**
+     * Moves to the next field of the current object.
+     * @return true if there is another field, false if the closing brace was consumed.
+     */
+    boolean nextField() {
+        return nextMember('}');
+    }
+
+    /**
+     * Reads the name of the current field, along with the colon after it.
+     * @return the field name.
+     */
+    String nextName() {
+        final String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Consumes the opening bracket of an array.
+     */
+    void beginArray() {
+        expect('[');
+        push();
+    }
+
+    /**
+     * Moves to the next element of the current array.
+     * @return true if there is another element, false if the closing bracket was consumed.
+     */
+    boolean nextElement() {
+        return nextMember(']');
+    }
+
+    /**
+     * Returns the first character of the next value without consuming it.
+     * @return the next non-whitespace character.
+     */
+    char peekValue() {
+        skipWhitespace();
+        if (!fill()) {
+            throw error("Unexpected end of input");
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Reads a string value.
+     * @return the string.
+     */
+    String nextString() {
+        expect('"');
+        scratch.setLength(0);
+        while (true) {
+            final char current = read();
+            if (current == '"') {
+                return scratch.toString();
+            }
+            if (current == '\\') {
+                scratch.append(readEscape());
+            }
+            else {
+                scratch.append(current);
+            }
+        }
+    }
+
+    /**
+     * Reads an int value, accepting numeric strings and truncating fractions like org.json's getInt.
+     * @return the int.
+     */
+    int nextInt() {
+        final String text;
+        if (peekValue() == '"') {
+            text = nextString().trim();
+        }
+        else {
+            text = readNumberText();
+        }
+        try {
+            return Integer.parseInt(text);
+        }
+        catch (NumberFormatException notAnInt) {
+            try {
+                return (int) Double.parseDouble(text);
+            }
+            catch (NumberFormatException event) {
+                throw error("Value is not an int: " + text);
+            }
+        }
+    }
+
+    /**
+     * Skips the next value, whatever its type.
+     */
+    void skipValue() {
+        final char first = peekValue();
+        if (first == '{') {
+            beginObject();
+            while (nextField()) {
+                nextName();
+                skipValue();
+            }
+        }
+        else if (first == '[') {
+            beginArray();
+            while (nextElement()) {
+                skipValue();
+            }
+        }
+        else if (first == '"') {
+            nextString();
+        }
+        else if (first == 't') {
+            expectLiteral("true");
+        }
+        else if (first == 'f') {
+            expectLiteral("false");
+        }
+        else if (first == 'n') {
+            expectLiteral("null");
+        }
+        else {
+            readNumberText();
+        }
+    }
+
+    private boolean nextMember(char closing) {
+        skipWhitespace();
+        if (!fill()) {
+            throw error("Unexpected end of input");
+        }
+        if (buffer[position] == closing) {
+            position++;
+            depth--;
+            return false;
+        }
+        if (started[depth - 1]) {
+            expect(',');
+        }
+        started[depth - 1] = true;
+        return true;
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw error("JSON is nested too deeply");
+        }
+        started[depth] = false;
+        depth++;
+    }
+
+    private String readNumberText() {
+        skipWhitespace();
+        scratch.setLength(0);
+        while (fill()) {
+            final char current = buffer[position];
+            if (current >= '0' && current <= '9' || current == '-' || current == '+' || current == '.'
+                    || current == 'e' || current == 'E') {
+                scratch.append(current);
+                position++;
+            }
+            else {
+                break;
+            }
+        }
+        if (scratch.length() == 0) {
+            throw error("Expected a value");
+        }
+        return scratch.toString();
+    }
+
+    private char readEscape() {
+        final char escaped = read();
+        switch (escaped) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                final char[] hex = new char[UNICODE_ESCAPE_LENGTH];
+                for (int i = 0; i < hex.length; i++) {
+                    hex[i] = read();
+                }
+                try {
+                    return (char) Integer.parseInt(new String(hex), HEX_RADIX);
+                }
+                catch (NumberFormatException event) {
+                    throw error("Illegal escape");
+                }
+            case '"':
+            case '\\':
+            case '/':
+                return escaped;
+            default:
+                throw error("Illegal escape");
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private void expect(char expected) {
+        skipWhitespace();
+        final char actual = read();
+        if (actual != expected) {
+            throw error("Expected '" + expected + "' but found '" + actual + "'");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (fill()) {
+            final char current = buffer[position];
+            if (current == ' ' || current == '\n' || current == '\r' || current == '\t') {
+                position++;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    private char read() {
+        if (!fill()) {
+            throw error("Unexpected end of input");
+        }
+        return buffer[position++];
+    }
+
+    private boolean fill() {
+        if (position < limit) {
+            return true;
+        }
+        try {
+            limit = reader.read(buffer, 0, buffer.length);
+        }
+        catch (IOException event) {
+            throw new JSONException(event);
+        }
+        position = 0;
+        return limit > 0;
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message);
+    }
+}
@@ -0,0 +1,505 @@
+package api;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * An on-disk store of grades and the current user's team, kept in a memory-mapped file so that
+ * it survives restarts and a lookup only touches the few bytes of the record it reads.
+ * <p>
+ * The file starts with a header holding the team, followed by fixed-size grade records.
+ * Each record holds a username of up to 32 bytes and a course of up to 16 bytes of UTF-8,
+ * the grade and the time it was stored; grades with longer names are not stored.
+ * A record whose course is empty marks that the student's whole grade history is stored.
+ * The index by username and course lives in memory and is rebuilt from the records on open.
+ * <p>
+ * Writes reach the file through the operating system's page cache, so they survive the
+ * process exiting; flush forces them to the disk as well.
+ * <p>
+ * The file is mapped, and grown, on a thread of its own, since interrupting a thread in the middle of
+ * FileChannel.map closes the channel for good. Once the channel is closed anyway, every lookup is a miss
+ * and nothing more is stored.
+ */
+public class MappedGradeStore implements AutoCloseable {
+    // The fixed layout of the file.
+    private static final int MAGIC = 0x47524453;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 1024;
+    private static final int RECORD_BYTES = 64;
+    private static final int USERNAME_BYTES = 32;
+    private static final int COURSE_BYTES = 16;
+    private static final int NAME_BYTES = 32;
+    private static final int MAX_TEAM_MEMBERS = 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Offsets in the header.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_COUNT_OFFSET = 8;
+    private static final int TEAM_PRESENT_OFFSET = 16;
+    private static final int TEAM_STORED_AT_OFFSET = 24;
+    private static final int TEAM_NAME_OFFSET = 32;
+    private static final int TEAM_MEMBER_COUNT_OFFSET = TEAM_NAME_OFFSET + 1 + NAME_BYTES;
+    private static final int TEAM_MEMBERS_OFFSET = TEAM_MEMBER_COUNT_OFFSET + 1;
+
+    // Offsets in a record.
+    private static final int FLAG_OFFSET = 0;
+    private static final int USERNAME_LENGTH_OFFSET = 1;
+    private static final int COURSE_LENGTH_OFFSET = 2;
+    private static final int GRADE_OFFSET = 4;
+    private static final int STORED_AT_OFFSET = 8;
+    private static final int USERNAME_OFFSET = 16;
+    private static final int COURSE_OFFSET = USERNAME_OFFSET + USERNAME_BYTES;
+
+    // The kinds of record.
+    private static final byte FREE = 0;
+    private static final byte GRADE = 1;
+    private static final byte HISTORY = 2;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int recordCount;
+    // Record slots by username and course; the history marker of a student is under the empty course.
+    private final Map<String, Map<String, Integer>> index = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int gradeCount;
+
+    private MappedGradeStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the store in a file, creating the file if it does not exist.
+     * @param file the file to keep the store in.
+     * @return the open store.
+     * @throws IOException if the file cannot be read or written, or is not a grade store.
+     */
+    public static MappedGradeStore open(Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final MappedGradeStore store = new MappedGradeStore(channel);
+        try {
+            store.load();
+        }
+        catch (IOException | RuntimeException event) {
+            channel.close();
+            throw event;
+        }
+        return store;
+    }
+
+    private void load() throws IOException {
+        final long size = channel.size();
+        if (size == 0) {
+            map(INITIAL_CAPACITY);
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            return;
+        }
+        if (size < HEADER_BYTES) {
+            throw new IOException("Not a grade store: the file is too short");
+        }
+        map((int) ((size - HEADER_BYTES) / RECORD_BYTES));
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Not a grade store, or a store of another version");
+        }
+        recordCount = Math.min(buffer.getInt(RECORD_COUNT_OFFSET), capacity);
+        for (int slot = 0; slot < recordCount; slot++) {
+            final int offset = offsetOf(slot);
+            final byte flag = buffer.get(offset + FLAG_OFFSET);
+            if (flag == FREE) {
+                freeSlots.add(slot);
+                continue;
+            }
+            final String username = readString(offset + USERNAME_OFFSET, buffer.get(offset + USERNAME_LENGTH_OFFSET));
+            final String course = readString(offset + COURSE_OFFSET, buffer.get(offset + COURSE_LENGTH_OFFSET));
+            index.computeIfAbsent(username, key -> new HashMap<>()).put(course, slot);
+            if (flag == GRADE) {
+                gradeCount++;
+            }
+        }
+    }
+
+    /**
+     * Returns the stored grade of a student in a course.
+     * @param username is the username of the student.
+     * @param course is the course.
+     * @return the grade and when it was stored, or null if it is not stored.
+     */
+    public synchronized Stored<Grade> getGrade(String username, String course) {
+        final Map<String, Integer> courses = index.get(username);
+        if (!channel.isOpen() || course.isEmpty() || courses == null || !courses.containsKey(course)) {
+            return null;
+        }
+        final int offset = offsetOf(courses.get(course));
+        return new Stored<>(new Grade(username, course, buffer.getInt(offset + GRADE_OFFSET)),
+                buffer.getLong(offset + STORED_AT_OFFSET));
+    }
+
+    /**
+     * Returns the stored grades of a student in all courses, if the whole history was stored.
+     * @param username is the username of the student.
+     * @return the grades and when the history was stored, or null if it is not stored.
+     */
+    public synchronized Stored<Grade[]> getGrades(String username) {
+        final Map<String, Integer> courses = index.get(username);
+        if (!channel.isOpen() || courses == null || !courses.containsKey("")) {
+            return null;
+        }
+        final List<Grade> grades = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : courses.entrySet()) {
+            if (!entry.getKey().isEmpty()) {
+                grades.add(new Grade(username, entry.getKey(), buffer.getInt(offsetOf(entry.getValue()) + GRADE_OFFSET)));
+            }
+        }
+        return new Stored<>(grades.toArray(new Grade[0]),
+                buffer.getLong(offsetOf(courses.get("")) + STORED_AT_OFFSET));
+    }
+
+    /**
+     * Returns the stored team of the current user.
+     * @return the team and when it was stored, or null if it is not stored.
+     */
+    public synchronized Stored<Team> getTeam() {
+        if (!channel.isOpen() || buffer.get(TEAM_PRESENT_OFFSET) == 0) {
+            return null;
+        }
+        final String[] members = new String[buffer.get(TEAM_MEMBER_COUNT_OFFSET)];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = readSlotString(TEAM_MEMBERS_OFFSET + i * (1 + NAME_BYTES));
+        }
+        return new Stored<>(new Team(readSlotString(TEAM_NAME_OFFSET), members),
+                buffer.getLong(TEAM_STORED_AT_OFFSET));
+    }
+
+    /**
+     * Stores the grade of a student in a course, replacing the one stored before.
+     * @param grade the grade, with its username and course.
+     * @param storedAtMillis the time the grade was read, in milliseconds since the epoch.
+     * @return false if the grade could not be stored because a name is too long or the store is closed.
+     * @throws IOException if the file could not be grown.
+     */
+    public synchronized boolean putGrade(Grade grade, long storedAtMillis) throws IOException {
+        if (!channel.isOpen() || !fits(grade)) {
+            return false;
+        }
+        write(grade.getUsername(), grade.getCourse(), GRADE, grade.getGrade(), storedAtMillis);
+        return true;
+    }
+
+    /**
+     * Stores the whole grade history of a student, dropping stored grades in courses it does not have.
+     * @param username is the username of the student.
+     * @param grades the grades of the student in all courses.
+     * @param storedAtMillis the time the grades were read, in milliseconds since the epoch.
+     * @return false if the history could not be stored because a name is too long or the store is closed.
+     * @throws IOException if the file could not be grown.
+     */
+    public synchronized boolean putGrades(String username, Grade[] grades, long storedAtMillis) throws IOException {
+        if (!channel.isOpen() || utf8Length(username) > USERNAME_BYTES) {
+            return false;
+        }
+        for (Grade grade : grades) {
+            if (!fits(grade) || !username.equals(grade.getUsername())) {
+                return false;
+            }
+        }
+        final Map<String, Grade> byCourse = new LinkedHashMap<>();
+        for (Grade grade : grades) {
+            byCourse.put(grade.getCourse(), grade);
+        }
+        final Map<String, Integer> courses = index.get(username);
+        if (courses != null) {
+            final Iterator<Map.Entry<String, Integer>> entries = courses.entrySet().iterator();
+            while (entries.hasNext()) {
+                final Map.Entry<String, Integer> entry = entries.next();
+                if (!entry.getKey().isEmpty() && !byCourse.containsKey(entry.getKey())) {
+                    free(entry.getValue(), true);
+                    entries.remove();
+                }
+            }
+        }
+        for (Grade grade : byCourse.values()) {
+            write(username, grade.getCourse(), GRADE, grade.getGrade(), storedAtMillis);
+        }
+        write(username, "", HISTORY, byCourse.size(), storedAtMillis);
+        return true;
+    }
+
+    /**
+     * Stores the team of the current user, replacing the one stored before.
+     * @param team the team.
+     * @param storedAtMillis the time the team was read, in milliseconds since the epoch.
+     * @return false if the team could not be stored because it has too many members, a name is too long
+     *         or the store is closed.
+     */
+    public synchronized boolean putTeam(Team team, long storedAtMillis) {
+        final String[] members = team.getMembers();
+        if (!channel.isOpen() || utf8Length(team.getName()) > NAME_BYTES || members.length > MAX_TEAM_MEMBERS) {
+            return false;
+        }
+        for (String member : members) {
+            if (utf8Length(member) > NAME_BYTES) {
+                return false;
+            }
+        }
+        buffer.put(TEAM_PRESENT_OFFSET, (byte) 0);
+        writeSlotString(TEAM_NAME_OFFSET, team.getName());
+        buffer.put(TEAM_MEMBER_COUNT_OFFSET, (byte) members.length);
+        for (int i = 0; i < members.length; i++) {
+            writeSlotString(TEAM_MEMBERS_OFFSET + i * (1 + NAME_BYTES), members[i]);
+        }
+        buffer.putLong(TEAM_STORED_AT_OFFSET, storedAtMillis);
+        buffer.put(TEAM_PRESENT_OFFSET, (byte) 1);
+        return true;
+    }
+
+    /**
+     * Drops the stored team.
+     */
+    public synchronized void removeTeam() {
+        buffer.put(TEAM_PRESENT_OFFSET, (byte) 0);
+    }
+
+    /**
+     * Drops the stored grade of a student in a course, along with the marker of the student's whole history.
+     * @param username is the username of the student.
+     * @param course is the course.
+     */
+    public synchronized void removeGrade(String username, String course) {
+        final Map<String, Integer> courses = index.get(username);
+        if (courses == null) {
+            return;
+        }
+        for (String key : new String[]{course, ""}) {
+            final Integer slot = courses.remove(key);
+            if (slot != null) {
+                free(slot, !key.isEmpty());
+            }
+        }
+        if (courses.isEmpty()) {
+            index.remove(username);
+        }
+    }
+
+    /**
+     * Drops every stored grade in a course and the markers of every student's whole history.
+     * @param course is the course.
+     */
+    public synchronized void removeCourse(String course) {
+        final Iterator<Map<String, Integer>> users = index.values().iterator();
+        while (users.hasNext()) {
+            final Map<String, Integer> courses = users.next();
+            for (String key : new String[]{course, ""}) {
+                final Integer slot = courses.remove(key);
+                if (slot != null) {
+                    free(slot, !key.isEmpty());
+                }
+            }
+            if (courses.isEmpty()) {
+                users.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stored grades.
+     * @return the number of grades.
+     */
+    public synchronized int size() {
+        return gradeCount;
+    }
+
+    /**
+     * Forces every write so far to the disk.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes the store and closes its file. The store cannot be used after it has been closed.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void write(String username, String course, byte flag, int grade, long storedAtMillis) throws IOException {
+        final Map<String, Integer> courses = index.computeIfAbsent(username, key -> new HashMap<>());
+        Integer slot = courses.get(course);
+        if (slot == null) {
+            slot = allocate();
+            courses.put(course, slot);
+            if (flag == GRADE) {
+                gradeCount++;
+            }
+        }
+        final int offset = offsetOf(slot);
+        // The flag is written last, so a record is only picked up on open once it is complete.
+        buffer.put(offset + FLAG_OFFSET, FREE);
+        writeString(offset + USERNAME_OFFSET, offset + USERNAME_LENGTH_OFFSET, username);
+        writeString(offset + COURSE_OFFSET, offset + COURSE_LENGTH_OFFSET, course);
+        buffer.putInt(offset + GRADE_OFFSET, grade);
+        buffer.putLong(offset + STORED_AT_OFFSET, storedAtMillis);
+        buffer.put(offset + FLAG_OFFSET, flag);
+    }
+
+    private int allocate() throws IOException {
+        final Integer free = freeSlots.pollFirst();
+        if (free != null) {
+            return free;
+        }
+        if (recordCount == capacity) {
+            map(capacity * 2);
+        }
+        final int slot = recordCount;
+        recordCount++;
+        buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+        return slot;
+    }
+
+    private void free(int slot, boolean isGrade) {
+        buffer.put(offsetOf(slot) + FLAG_OFFSET, FREE);
+        freeSlots.addLast(slot);
+        if (isGrade) {
+            gradeCount--;
+        }
+    }
+
+    private void map(int recordCapacity) throws IOException {
+        // Mapping past the end of the file grows it.
+        final long size = HEADER_BYTES + (long) recordCapacity * RECORD_BYTES;
+        final FutureTask<MappedByteBuffer> mapping = new FutureTask<>(
+                () -> channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        final Thread mapper = new Thread(mapping, "grade-store-map");
+        mapper.setDaemon(true);
+        mapper.start();
+        // The caller may be interrupted while it waits, but the mapping is not.
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    buffer = mapping.get();
+                    capacity = recordCapacity;
+                    return;
+                }
+                catch (InterruptedException event) {
+                    interrupted = true;
+                }
+                catch (ExecutionException event) {
+                    final Throwable cause = event.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException("Could not map " + size + " bytes of the store", cause);
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    private static boolean fits(Grade grade) {
+        return grade.getUsername() != null && grade.getCourse() != null && !grade.getCourse().isEmpty()
+                && utf8Length(grade.getUsername()) <= USERNAME_BYTES && utf8Length(grade.getCourse()) <= COURSE_BYTES;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private String readString(int offset, int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeString(int offset, int lengthOffset, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + i, bytes[i]);
+        }
+        buffer.put(lengthOffset, (byte) bytes.length);
+    }
+
+    // A string slot in the header is a length byte followed by the bytes of the string.
+
+    private String readSlotString(int offset) {
+        return readString(offset + 1, buffer.get(offset));
+    }
+
+    private void writeSlotString(int offset, String value) {
+        writeString(offset + 1, offset, value);
+    }
+
+    /**
+     * A stored value and the time it was stored.
+     * @param <T> the type of the value.
+     */
+    public static final class Stored<T> {
+        private final T value;
+        private final long storedAtMillis;
+
+        Stored(T value, long storedAtMillis) {
+            this.value = value;
+            this.storedAtMillis = storedAtMillis;
+        }
+
+        /**
+         * Returns the stored value.
+         * @return the value.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the time the value was stored at.
+         * @return the time in milliseconds since the epoch.
+         */
+        public long getStoredAtMillis() {
+            return storedAtMillis;
+        }
+    }
+}
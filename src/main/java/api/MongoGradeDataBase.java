@@ -1,15 +1,22 @@
 package api;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import entity.Grade;
 import entity.Team;
 import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
@@ -17,19 +24,46 @@ import okhttp3.Response;
 /**
  * MongoGradeDataBase class.
  */
-public class MongoGradeDataBase implements GradeDataBase {
+public class MongoGradeDataBase implements GradeDataBase, AsyncGradeDataBase {
     // Defining some constants.
-    private static final String API_URL = "https://grade-apis.panchen.ca";
+    public static final String DEFAULT_API_URL = "https://grade-apis.panchen.ca";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String APPLICATION_JSON = "application/json";
-    private static final String STATUS_CODE = "status_code";
     private static final String GRADE = "grade";
-    private static final String MESSAGE = "message";
     private static final String NAME = "name";
     private static final String TOKEN = "token";
     private static final String COURSE = "course";
-    private static final String USERNAME = "username";
-    private static final int SUCCESS_CODE = 200;
+
+    private final HttpTransport transport;
+    private final String apiUrl;
+    private final String token;
+
+    /**
+     * Creates a MongoGradeDataBase that talks to the API through its own default transport.
+     */
+    public MongoGradeDataBase() {
+        this(HttpTransport.builder().build());
+    }
+
+    /**
+     * Creates a MongoGradeDataBase that talks to the API through the given transport.
+     * @param transport the transport shared by every call this data base makes.
+     */
+    public MongoGradeDataBase(HttpTransport transport) {
+        this(transport, DEFAULT_API_URL, null);
+    }
+
+    /**
+     * Creates a MongoGradeDataBase that talks to the API at the given base URL, such as a local stand-in server.
+     * @param transport the transport shared by every call this data base makes.
+     * @param apiUrl the base URL of the API, without a trailing slash.
+     * @param token the token to authenticate with, or null to use the token environment variable.
+     */
+    public MongoGradeDataBase(HttpTransport transport, String apiUrl, String token) {
+        this.transport = transport;
+        this.apiUrl = apiUrl;
+        this.token = token;
+    }
 
     // load token from env variable.
     public static String getAPIToken() {
@@ -38,250 +72,241 @@ public class MongoGradeDataBase implements GradeDataBase {
 
     @Override
     public Grade getGrade(String username, String course) {
+        return call(getGradeRequest(username, course), body -> GradeResponseDecoder.decodeGrade(body, username, course));
+    }
 
-        // Build the request to get the grade.
-        // Note: The API requires the token to be passed as a header.
-        // Note: The API requires the course and username to be passed as query parameters.
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final Request request = new Request.Builder()
-                .url(String.format("%s/grade?course=%s&username=%s", API_URL, course, username))
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
-
-        // Hint: look at the API documentation to understand what the response looks like.
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
-
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                final JSONObject grade = responseBody.getJSONObject(GRADE);
-                return Grade.builder()
-                        .username(grade.getString(USERNAME))
-                        .course(grade.getString(COURSE))
-                        .grade(grade.getInt(GRADE))
-                        .build();
-            }
-            else {
-                throw new RuntimeException("Grade could not be found for course: " + course
-                                           + " and username: " + username);
-            }
-        }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
-        }
+    @Override
+    public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+        return enqueue(getGradeRequest(username, course),
+            body -> GradeResponseDecoder.decodeGrade(body, username, course));
     }
 
     @Override
     public Grade[] getGrades(String username) {
+        return call(getGradesRequest(username), GradeResponseDecoder::decodeGrades);
+    }
 
-        // Build the request to get all grades for a user.
-        // Note: The API requires the token to be passed as a header.
-        // Note: The API requires the username to be passed as a query parameter.
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final Request request = new Request.Builder()
-                .url(String.format("%s/grade?username=%s", API_URL, username))
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
+    /**
+     * Streams the grades of a student in all courses to the consumer one at a time, as they are
+     * read from the response, without holding all of them in memory at once.
+     * @param username is the username of the student.
+     * @param consumer is the consumer of the grades.
+     */
+    public void forEachGrade(String username, Consumer<Grade> consumer) {
+        call(getGradesRequest(username), body -> {
+            GradeResponseDecoder.forEachGrade(body, consumer);
+            return null;
+        });
+    }
 
-        // Note: you can look at the API documentation to understand what the response looks like
-        // to better understand how this parses the response.
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
-
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                final JSONArray grades = responseBody.getJSONArray("grades");
-                final Grade[] result = new Grade[grades.length()];
-                for (int i = 0; i < grades.length(); i++) {
-                    final JSONObject grade = grades.getJSONObject(i);
-                    result[i] = Grade.builder()
-                            .username(grade.getString(USERNAME))
-                            .course(grade.getString(COURSE))
-                            .grade(grade.getInt(GRADE))
-                            .build();
-                }
-                return result;
-            }
-            else {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
+    @Override
+    public CompletableFuture<Grade[]> getGradesAsync(String username) {
+        return enqueue(getGradesRequest(username), GradeResponseDecoder::decodeGrades);
+    }
+
+    /**
+     * Pipelines the requests: they are all enqueued at once on the shared transport, which
+     * bounds how many are in flight per host. The executor is not used.
+     */
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        final Map<String, CompletableFuture<Grade>> pending = new LinkedHashMap<>();
+        for (String username : usernames) {
+            pending.put(username, getGradeAsync(username, course));
         }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
+        return BulkLookup.collect(pending);
+    }
+
+    /**
+     * Pipelines the requests as for the bulk lookup without stopWhen, and cancels the calls still in flight
+     * once a grade satisfies it. The executor is not used.
+     */
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor,
+                                        Predicate<Grade> stopWhen) {
+        final Map<String, CompletableFuture<Grade>> pending = new LinkedHashMap<>();
+        for (String username : usernames) {
+            pending.put(username, getGradeAsync(username, course));
         }
+        return BulkLookup.collect(pending, stopWhen);
     }
 
+    /**
+     * Pipelines the requests: they are all enqueued at once on the shared transport, which
+     * bounds how many are in flight per host. The executor is not used.
+     */
     @Override
-    public Grade logGrade(String course, int grade) throws JSONException {
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final MediaType mediaType = MediaType.parse(APPLICATION_JSON);
-        final JSONObject requestBody = new JSONObject();
-        requestBody.put(COURSE, course);
-        requestBody.put(GRADE, grade);
-        final RequestBody body = RequestBody.create(mediaType, requestBody.toString());
-        final Request request = new Request.Builder()
-                .url(String.format("%s/grade", API_URL))
-                .method("POST", body)
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) {
+        final Map<String, CompletableFuture<Grade[]>> pending = new LinkedHashMap<>();
+        for (String username : usernames) {
+            pending.put(username, getGradesAsync(username));
+        }
+        return BulkLookup.collect(pending);
+    }
 
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        return call(logGradeRequest(course, grade), this::readSuccess);
+    }
 
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                return null;
-            }
-            else {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
-        }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
-        }
+    @Override
+    public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+        return enqueue(logGradeRequest(course, grade), this::readSuccess);
     }
 
     @Override
     public Team formTeam(String name) throws JSONException {
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final MediaType mediaType = MediaType.parse(APPLICATION_JSON);
-        final JSONObject requestBody = new JSONObject();
-        requestBody.put(NAME, name);
-        final RequestBody body = RequestBody.create(mediaType, requestBody.toString());
-        final Request request = new Request.Builder()
-                .url(String.format("%s/team", API_URL))
-                .method("POST", body)
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
+        return call(formTeamRequest(name), GradeResponseDecoder::decodeTeam);
+    }
 
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
-
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                final JSONObject team = responseBody.getJSONObject("team");
-                final JSONArray membersArray = team.getJSONArray("members");
-                final String[] members = new String[membersArray.length()];
-                for (int i = 0; i < membersArray.length(); i++) {
-                    members[i] = membersArray.getString(i);
-                }
-
-                return Team.builder()
-                        .name(team.getString(NAME))
-                        .members(members)
-                        .build();
-            }
-            else {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
-        }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
-        }
+    @Override
+    public CompletableFuture<Team> formTeamAsync(String name) {
+        return enqueue(formTeamRequest(name), GradeResponseDecoder::decodeTeam);
     }
 
     @Override
     public Team joinTeam(String name) throws JSONException {
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final MediaType mediaType = MediaType.parse(APPLICATION_JSON);
-        final JSONObject requestBody = new JSONObject();
-        requestBody.put(NAME, name);
-        final RequestBody body = RequestBody.create(mediaType, requestBody.toString());
-        final Request request = new Request.Builder()
-                .url(String.format("%s/team", API_URL))
-                .method("PUT", body)
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
-
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
+        return call(joinTeamRequest(name), this::readSuccess);
+    }
 
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                return null;
-            }
-            else {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
-        }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
-        }
+    @Override
+    public CompletableFuture<Team> joinTeamAsync(String name) {
+        return enqueue(joinTeamRequest(name), this::readSuccess);
     }
 
     @Override
     public void leaveTeam() throws JSONException {
-        final OkHttpClient client = new OkHttpClient().newBuilder()
-                .build();
-        final MediaType mediaType = MediaType.parse(APPLICATION_JSON);
-        final JSONObject requestBody = new JSONObject();
-        final RequestBody body = RequestBody.create(mediaType, requestBody.toString());
-        final Request request = new Request.Builder()
-                .url(String.format("%s/leaveTeam", API_URL))
-                .method("PUT", body)
-                .addHeader(TOKEN, getAPIToken())
-                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
-                .build();
-
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
+        call(leaveTeamRequest(), this::readSuccess);
+    }
 
-            if (responseBody.getInt(STATUS_CODE) != SUCCESS_CODE) {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
-        }
-        catch (IOException | JSONException event) {
-            throw new RuntimeException(event);
-        }
+    @Override
+    public CompletableFuture<Void> leaveTeamAsync() {
+        return enqueue(leaveTeamRequest(), this::readSuccess);
     }
 
     @Override
     //             https://www.postman.com/cloudy-astronaut-813156/csc207-grade-apis-demo/folder/isr2ymn/get-my-team
     public Team getMyTeam() {
-        final OkHttpClient client = new OkHttpClient().newBuilder()
+        return call(getMyTeamRequest(), GradeResponseDecoder::decodeTeam);
+    }
+
+    @Override
+    public CompletableFuture<Team> getMyTeamAsync() {
+        return enqueue(getMyTeamRequest(), GradeResponseDecoder::decodeTeam);
+    }
+
+    private String token() {
+        if (token == null) {
+            return getAPIToken();
+        }
+        return token;
+    }
+
+    // Building the requests.
+    // Note: The API requires the token to be passed as a header.
+
+    private Request getGradeRequest(String username, String course) {
+        // Note: The API requires the course and username to be passed as query parameters.
+        return new Request.Builder()
+                .url(String.format("%s/grade?course=%s&username=%s", apiUrl, course, username))
+                .addHeader(TOKEN, token())
+                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
                 .build();
-        final Request request = new Request.Builder()
-                .url(String.format("%s/team", API_URL))
+    }
+
+    private Request getGradesRequest(String username) {
+        // Note: The API requires the username to be passed as a query parameter.
+        return new Request.Builder()
+                .url(String.format("%s/grade?username=%s", apiUrl, username))
+                .addHeader(TOKEN, token())
+                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .build();
+    }
+
+    private Request logGradeRequest(String course, int grade) {
+        final JSONObject requestBody = new JSONObject();
+        requestBody.put(COURSE, course);
+        requestBody.put(GRADE, grade);
+        return jsonRequest("grade", "POST", requestBody);
+    }
+
+    private Request formTeamRequest(String name) {
+        final JSONObject requestBody = new JSONObject();
+        requestBody.put(NAME, name);
+        return jsonRequest("team", "POST", requestBody);
+    }
+
+    private Request joinTeamRequest(String name) {
+        final JSONObject requestBody = new JSONObject();
+        requestBody.put(NAME, name);
+        return jsonRequest("team", "PUT", requestBody);
+    }
+
+    private Request leaveTeamRequest() {
+        return jsonRequest("leaveTeam", "PUT", new JSONObject());
+    }
+
+    private Request getMyTeamRequest() {
+        return new Request.Builder()
+                .url(String.format("%s/team", apiUrl))
                 .method("GET", null)
-                .addHeader(TOKEN, getAPIToken())
+                .addHeader(TOKEN, token())
                 .addHeader(CONTENT_TYPE, APPLICATION_JSON)
                 .build();
+    }
+
+    private Request jsonRequest(String path, String method, JSONObject requestBody) {
+        final MediaType mediaType = MediaType.parse(APPLICATION_JSON);
+        final RequestBody body = RequestBody.create(mediaType, requestBody.toString());
+        return new Request.Builder()
+                .url(String.format("%s/%s", apiUrl, path))
+                .method(method, body)
+                .addHeader(TOKEN, token())
+                .addHeader(CONTENT_TYPE, APPLICATION_JSON)
+                .build();
+    }
 
-        try {
-            final Response response = client.newCall(request).execute();
-            final JSONObject responseBody = new JSONObject(response.body().string());
+    // Reading the responses.
+    // Hint: look at the API documentation to understand what the responses look like.
+    // The bodies are decoded as they are read; see GradeResponseDecoder.
 
-            if (responseBody.getInt(STATUS_CODE) == SUCCESS_CODE) {
-                final JSONObject team = responseBody.getJSONObject("team");
-                final JSONArray membersArray = team.getJSONArray("members");
-                final String[] members = new String[membersArray.length()];
+    private <T> T readSuccess(Reader body) {
+        GradeResponseDecoder.checkSuccess(body);
+        return null;
+    }
 
-                for (int i = 0; i < membersArray.length(); i++) {
-                    members[i] = membersArray.getString(i);
-                }
+    // Talking to the API.
 
-                return Team.builder()
-                        .name(team.getString(NAME))
-                        .members(members)
-                        .build();
-            }
-            else {
-                throw new RuntimeException(responseBody.getString(MESSAGE));
-            }
+    private <T> T call(Request request, Function<Reader, T> decoder) {
+        try (Response response = transport.execute(request)) {
+            return decoder.apply(response.body().charStream());
         }
-        catch (IOException | JSONException event) {
+        catch (IOException event) {
             throw new RuntimeException(event);
         }
     }
+
+    // Cancelling the returned future cancels the call.
+    private <T> CompletableFuture<T> enqueue(Request request, Function<Reader, T> decoder) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final CompletableFuture<Response> call = transport.executeAsync(request);
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        call.whenComplete((response, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(new RuntimeException(failure));
+                return;
+            }
+            try (Response closeable = response) {
+                result.complete(decoder.apply(closeable.body().charStream()));
+            }
+            catch (RuntimeException event) {
+                result.completeExceptionally(event);
+            }
+        });
+        return result;
+    }
 }
@@ -0,0 +1,261 @@
+package api;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import metrics.LatencyHistogram;
+
+/**
+ * Times the network phases of every call made through an HttpTransport: DNS lookup, TCP connect,
+ * TLS handshake, the wait for the first byte of the response and the download of its body.
+ * The timings are aggregated per endpoint (method and path), together with how many calls reused a
+ * pooled connection, so the summary shows whether pooling and prewarming pay off.
+ * <p>
+ * A call on a reused connection has no DNS, connect or TLS phase, so those histograms only count
+ * the calls that opened a new connection.
+ */
+public class NetworkPhaseProfiler implements EventListener.Factory {
+    private static final double P50 = 50;
+    private static final double P99 = 99;
+
+    private final Map<String, EndpointPhases> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public EventListener create(Call call) {
+        final Request request = call.request();
+        return new CallTimer(endpoints.computeIfAbsent(request.method() + " " + request.url().encodedPath(),
+            endpoint -> new EndpointPhases()));
+    }
+
+    /**
+     * Returns the phases of the calls to an endpoint.
+     * @param endpoint the method and path of the endpoint, e.g. "GET /grade".
+     * @return the phases, or null if no call was made to the endpoint.
+     */
+    public EndpointPhases getEndpoint(String endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * Returns a text summary of every endpoint, one line per phase, with latencies in microseconds.
+     * @return the summary.
+     */
+    public String summary() {
+        final List<String> names = new ArrayList<>(endpoints.keySet());
+        names.sort(null);
+        final StringBuilder summary = new StringBuilder();
+        for (String name : names) {
+            final EndpointPhases phases = endpoints.get(name);
+            summary.append(String.format("%s: %d calls, %d failed, %d on reused connections%n",
+                    name, phases.getCallCount(), phases.getFailedCount(), phases.getReusedCount()));
+            for (Phase phase : Phase.values()) {
+                final LatencyHistogram histogram = phases.getHistogram(phase);
+                if (histogram.getCount() > 0) {
+                    summary.append(String.format("  %-8s %8d samples  p50 %8d us  p99 %8d us  max %8d us%n",
+                            phase.name().toLowerCase(), histogram.getCount(),
+                            TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(P50)),
+                            TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(P99)),
+                            TimeUnit.NANOSECONDS.toMicros(histogram.getMax())));
+                }
+            }
+        }
+        return summary.toString();
+    }
+
+    /**
+     * A network phase of a call.
+     */
+    public enum Phase {
+        // Resolving the host name.
+        DNS,
+        // Opening the TCP connection, not counting the TLS handshake.
+        CONNECT,
+        // The TLS handshake.
+        TLS,
+        // From starting to send the request to the first byte of the response.
+        WAIT,
+        // Reading the response body.
+        BODY,
+        // The whole call, including retries and redirects made by the client.
+        TOTAL
+    }
+
+    /**
+     * The phase timings of the calls to one endpoint.
+     */
+    public static final class EndpointPhases {
+        private final Map<Phase, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+        private final LongAdder callCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder reusedCount = new LongAdder();
+
+        EndpointPhases() {
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new LatencyHistogram());
+            }
+        }
+
+        /**
+         * Returns the histogram of a phase.
+         * @param phase the phase.
+         * @return the histogram, in nanoseconds.
+         */
+        public LatencyHistogram getHistogram(Phase phase) {
+            return histograms.get(phase);
+        }
+
+        /**
+         * Returns the number of calls that finished, successfully or not.
+         * @return the number of calls.
+         */
+        public long getCallCount() {
+            return callCount.sum();
+        }
+
+        /**
+         * Returns the number of calls that failed or were cancelled.
+         * @return the number of failed calls.
+         */
+        public long getFailedCount() {
+            return failedCount.sum();
+        }
+
+        /**
+         * Returns the number of calls that were sent on a connection taken from the pool.
+         * @return the number of calls on reused connections.
+         */
+        public long getReusedCount() {
+            return reusedCount.sum();
+        }
+    }
+
+    // The timestamps of one call, recorded into the phases of its endpoint when the call ends.
+    private static final class CallTimer extends EventListener {
+        private final EndpointPhases phases;
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private long bodyStart;
+        private boolean connected;
+        private boolean reused;
+
+        CallTimer(EndpointPhases phases) {
+            this.phases = phases;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            record(Phase.DNS, dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connected = true;
+            connectStart = System.nanoTime();
+            secureConnectStart = 0;
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+            phases.getHistogram(Phase.CONNECT).record(secureConnectStart - connectStart);
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            record(Phase.TLS, secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (secureConnectStart == 0) {
+                record(Phase.CONNECT, connectStart);
+            }
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            // A connection acquired without connecting first came from the pool.
+            reused = !connected;
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            record(Phase.WAIT, requestStart);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            // A redirect or retry on the same call connects again only if it needs a new connection.
+            connected = false;
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            bodyStart = System.nanoTime();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            record(Phase.BODY, bodyStart);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finish(false);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            finish(true);
+        }
+
+        private void finish(boolean failed) {
+            record(Phase.TOTAL, callStart);
+            phases.callCount.increment();
+            if (failed) {
+                phases.failedCount.increment();
+            }
+            if (reused) {
+                phases.reusedCount.increment();
+            }
+        }
+
+        private void record(Phase phase, long start) {
+            phases.getHistogram(phase).record(System.nanoTime() - start);
+        }
+    }
+}
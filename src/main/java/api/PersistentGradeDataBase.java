@@ -0,0 +1,378 @@
+package api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.json.JSONException;
+
+import entity.Grade;
+import entity.Team;
+
+/**
+ * A GradeDataBase that keeps what it reads from another GradeDataBase in a MappedGradeStore,
+ * so that a restarted application answers from the disk instead of the network.
+ * A stored value is returned straight away however old it is; once it is older than the
+ * refresh time it is also reloaded in the background and the store is updated.
+ * Writes are passed on, and the store is updated with what they return.
+ * <p>
+ * The store is only a copy, so a failure to write to it never fails a call: the value read is
+ * returned all the same, and the failure is counted and kept for getLastStoreFailure.
+ */
+public class PersistentGradeDataBase implements GradeDataBase {
+    public static final long DEFAULT_REFRESH_AFTER_MILLIS = 60 * 1000L;
+    private static final String TEAM_KEY = "team";
+
+    private final GradeDataBase delegate;
+    private final MappedGradeStore store;
+    private final long refreshAfterMillis;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder refreshCount = new LongAdder();
+    private final LongAdder storeFailureCount = new LongAdder();
+    private volatile IOException lastStoreFailure;
+
+    PersistentGradeDataBase(PersistentGradeDataBaseBuilder builder) {
+        this.delegate = builder.delegate;
+        this.store = builder.store;
+        this.refreshAfterMillis = builder.refreshAfterMillis;
+        this.refreshExecutor = builder.refreshExecutor;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Returns the store behind this data base.
+     * @return the store.
+     */
+    public MappedGradeStore getStore() {
+        return store;
+    }
+
+    @Override
+    public Grade getGrade(String username, String course) {
+        final MappedGradeStore.Stored<Grade> stored = store.getGrade(username, course);
+        if (stored != null) {
+            hitCount.increment();
+            refreshIfStale(gradeKey(username, course), stored, () -> putGrade(delegate.getGrade(username, course)));
+            return stored.getValue();
+        }
+        missCount.increment();
+        final Grade loaded = delegate.getGrade(username, course);
+        putGrade(loaded);
+        return loaded;
+    }
+
+    @Override
+    public Grade[] getGrades(String username) throws JSONException {
+        final MappedGradeStore.Stored<Grade[]> stored = store.getGrades(username);
+        if (stored != null) {
+            hitCount.increment();
+            refreshIfStale(username, stored, () -> putGrades(username, delegate.getGrades(username)));
+            return stored.getValue();
+        }
+        missCount.increment();
+        final Grade[] loaded = delegate.getGrades(username);
+        putGrades(username, loaded);
+        return loaded;
+    }
+
+    /**
+     * Answers the students whose grade is stored straight away and asks the data base behind
+     * this one for the others in a single bulk call.
+     */
+    @Override
+    public Map<String, Grade> getGrades(Collection<String> usernames, String course, Executor executor) {
+        final Map<String, Grade> found = new LinkedHashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for (String username : usernames) {
+            final MappedGradeStore.Stored<Grade> stored = store.getGrade(username, course);
+            if (stored == null) {
+                misses.add(username);
+            }
+            else {
+                hitCount.increment();
+                refreshIfStale(gradeKey(username, course), stored,
+                    () -> putGrade(delegate.getGrade(username, course)));
+                found.put(username, stored.getValue());
+            }
+        }
+        if (!misses.isEmpty()) {
+            missCount.add(misses.size());
+            final Map<String, Grade> loaded = delegate.getGrades(misses, course, executor);
+            for (Grade grade : loaded.values()) {
+                putGrade(grade);
+            }
+            found.putAll(loaded);
+        }
+        return inOrder(usernames, found);
+    }
+
+    /**
+     * Answers the students whose grade history is stored straight away and asks the data base behind
+     * this one for the others in a single bulk call.
+     */
+    @Override
+    public Map<String, Grade[]> getGrades(Collection<String> usernames, Executor executor) throws JSONException {
+        final Map<String, Grade[]> found = new LinkedHashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for (String username : usernames) {
+            final MappedGradeStore.Stored<Grade[]> stored = store.getGrades(username);
+            if (stored == null) {
+                misses.add(username);
+            }
+            else {
+                hitCount.increment();
+                refreshIfStale(username, stored, () -> putGrades(username, delegate.getGrades(username)));
+                found.put(username, stored.getValue());
+            }
+        }
+        if (!misses.isEmpty()) {
+            missCount.add(misses.size());
+            final Map<String, Grade[]> loaded = delegate.getGrades(misses, executor);
+            for (Map.Entry<String, Grade[]> entry : loaded.entrySet()) {
+                putGrades(entry.getKey(), entry.getValue());
+            }
+            found.putAll(loaded);
+        }
+        return inOrder(usernames, found);
+    }
+
+    @Override
+    public Grade[] getCachedGrades(String username) {
+        final MappedGradeStore.Stored<Grade[]> stored = store.getGrades(username);
+        if (stored != null) {
+            return stored.getValue();
+        }
+        return delegate.getCachedGrades(username);
+    }
+
+    @Override
+    public Grade logGrade(String course, int grade) throws JSONException {
+        final Grade logged = delegate.logGrade(course, grade);
+        if (logged != null && logged.getUsername() != null) {
+            putGrade(logged);
+        }
+        else {
+            // We do not know whose grade it was, so drop everything the new grade could be part of.
+            store.removeCourse(course);
+        }
+        return logged;
+    }
+
+    @Override
+    public Team formTeam(String name) throws JSONException {
+        store.removeTeam();
+        final Team formed = delegate.formTeam(name);
+        putTeam(formed);
+        return formed;
+    }
+
+    @Override
+    public Team joinTeam(String name) throws JSONException {
+        try {
+            return delegate.joinTeam(name);
+        }
+        finally {
+            store.removeTeam();
+        }
+    }
+
+    @Override
+    public Team getMyTeam() throws JSONException {
+        final MappedGradeStore.Stored<Team> stored = store.getTeam();
+        if (stored != null) {
+            hitCount.increment();
+            refreshIfStale(TEAM_KEY, stored, () -> putTeam(delegate.getMyTeam()));
+            return stored.getValue();
+        }
+        missCount.increment();
+        final Team loaded = delegate.getMyTeam();
+        putTeam(loaded);
+        return loaded;
+    }
+
+    @Override
+    public void leaveTeam() throws JSONException {
+        try {
+            delegate.leaveTeam();
+        }
+        finally {
+            store.removeTeam();
+        }
+    }
+
+    /**
+     * Returns the hit, miss and refresh counts of this data base and the number of grades stored.
+     * Nothing is evicted from the store, so the eviction count is always 0.
+     * @return the statistics.
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, refreshCount.sum(), store.size());
+    }
+
+    /**
+     * Returns the number of values that could not be written to the store.
+     * @return the number of failed store writes.
+     */
+    public long getStoreFailureCount() {
+        return storeFailureCount.sum();
+    }
+
+    /**
+     * Returns why the last value that could not be written to the store was not written.
+     * @return the exception, or null if every write succeeded.
+     */
+    public IOException getLastStoreFailure() {
+        return lastStoreFailure;
+    }
+
+    private void refreshIfStale(String key, MappedGradeStore.Stored<?> stored, Runnable reload) {
+        if (clock.getAsLong() - stored.getStoredAtMillis() < refreshAfterMillis || !refreshing.add(key)) {
+            return;
+        }
+        refreshCount.increment();
+        refreshExecutor.execute(() -> {
+            try {
+                reload.run();
+            }
+            catch (RuntimeException event) {
+                // Keep serving the stored value; the next read will try again.
+            }
+            finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private void putGrade(Grade grade) {
+        if (grade == null) {
+            return;
+        }
+        try {
+            store.putGrade(grade, clock.getAsLong());
+        }
+        catch (IOException event) {
+            storeFailed(event);
+        }
+    }
+
+    private void putGrades(String username, Grade[] grades) {
+        try {
+            store.putGrades(username, grades, clock.getAsLong());
+        }
+        catch (IOException event) {
+            storeFailed(event);
+        }
+    }
+
+    private void storeFailed(IOException failure) {
+        lastStoreFailure = failure;
+        storeFailureCount.increment();
+    }
+
+    private void putTeam(Team team) {
+        if (team != null) {
+            store.putTeam(team, clock.getAsLong());
+        }
+    }
+
+    private static String gradeKey(String username, String course) {
+        return username + "\n" + course;
+    }
+
+    private static <T> Map<String, T> inOrder(Collection<String> usernames, Map<String, T> values) {
+        final Map<String, T> result = new LinkedHashMap<>();
+        for (String username : usernames) {
+            final T value = values.get(username);
+            if (value != null) {
+                result.put(username, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new PersistentGradeDataBaseBuilder instance.
+     * @param delegate the data base to read through to.
+     * @param store the store to keep what is read in.
+     * @return a new PersistentGradeDataBaseBuilder instance.
+     */
+    public static PersistentGradeDataBaseBuilder builder(GradeDataBase delegate, MappedGradeStore store) {
+        return new PersistentGradeDataBaseBuilder(delegate, store);
+    }
+
+    /**
+     * Represents a builder for creating instances of a PersistentGradeDataBase.
+     */
+    public static class PersistentGradeDataBaseBuilder {
+        private final GradeDataBase delegate;
+        private final MappedGradeStore store;
+        private long refreshAfterMillis = DEFAULT_REFRESH_AFTER_MILLIS;
+        private Executor refreshExecutor;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        PersistentGradeDataBaseBuilder(GradeDataBase delegate, MappedGradeStore store) {
+            this.delegate = delegate;
+            this.store = store;
+        }
+
+        /**
+         * Sets the age after which a stored value is still returned, but reloaded in the background.
+         * @param refreshAfterMillisInput the refresh age in milliseconds.
+         * @return the PersistentGradeDataBaseBuilder instance.
+         */
+        public PersistentGradeDataBaseBuilder refreshAfterMillis(long refreshAfterMillisInput) {
+            this.refreshAfterMillis = refreshAfterMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the executor that reloads stale values.
+         * @param refreshExecutorInput the executor for background refreshes.
+         * @return the PersistentGradeDataBaseBuilder instance.
+         */
+        public PersistentGradeDataBaseBuilder refreshExecutor(Executor refreshExecutorInput) {
+            this.refreshExecutor = refreshExecutorInput;
+            return this;
+        }
+
+        /**
+         * Sets the source of the current time in milliseconds since the epoch, so that tests can control it.
+         * Unlike an in-memory cache, the store needs wall-clock time, because it outlives the process.
+         * @param clockInput the time source.
+         * @return the PersistentGradeDataBaseBuilder instance.
+         */
+        public PersistentGradeDataBaseBuilder clock(LongSupplier clockInput) {
+            this.clock = clockInput;
+            return this;
+        }
+
+        /**
+         * Builds a new PersistentGradeDataBase instance.
+         * @return a new PersistentGradeDataBase instance.
+         */
+        public PersistentGradeDataBase build() {
+            if (refreshExecutor == null) {
+                refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "grade-store-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return new PersistentGradeDataBase(this);
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * How an HttpTransport copes with a slow or flaky grade API.
+ * <ul>
+ *     <li>Reads (GET requests) that fail with an IOException or a 5xx response are retried a bounded
+ *     number of times, after a backoff that doubles each time and is randomised so that retries from
+ *     many callers do not arrive together. Writes are never retried.</li>
+ *     <li>Every endpoint (method and path) has a circuit breaker. After a number of failures in a row
+ *     it opens, and requests to the endpoint fail straight away with a CircuitOpenException until the
+ *     open time has passed. Then a single trial request is let through, which closes the breaker again
+ *     if it succeeds.</li>
+ *     <li>Optionally, an asynchronous read that has taken longer than a percentile of the recent
+ *     latencies of its endpoint is hedged: a duplicate request is sent, and whichever answers first
+ *     is used.</li>
+ * </ul>
+ */
+public class ResiliencePolicy {
+    // Defaults for the retries, the circuit breakers and hedging.
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 100L;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 2_000L;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30_000L;
+    public static final int DEFAULT_LATENCY_SAMPLES = 128;
+    public static final int DEFAULT_MIN_HEDGE_SAMPLES = 20;
+    private static final int SERVER_ERROR = 500;
+    private static final int MAX_BACKOFF_SHIFT = 20;
+    private static final double PERCENT = 100.0;
+
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final double hedgePercentile;
+    private final int latencySamples;
+    private final int minHedgeSamples;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+
+    ResiliencePolicy(ResiliencePolicyBuilder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.baseBackoffMillis = builder.baseBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.failureThreshold = builder.failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(builder.openMillis);
+        this.hedgePercentile = builder.hedgePercentile;
+        this.latencySamples = builder.latencySamples;
+        this.minHedgeSamples = builder.minHedgeSamples;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "grade-api-resilience");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the number of requests that were sent again after a failure.
+     * @return the number of retries.
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * Returns the number of duplicate requests sent for slow reads.
+     * @return the number of hedged requests.
+     */
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * Returns the number of requests that were failed straight away because their circuit breaker was open.
+     * @return the number of rejected requests.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * Returns whether the circuit breaker of an endpoint is currently letting requests through.
+     * @param method the HTTP method of the endpoint.
+     * @param path the path of the endpoint, e.g. /grade.
+     * @return false if the breaker is open.
+     */
+    public boolean isClosed(String method, String path) {
+        final Endpoint endpoint = endpoints.get(method + " " + path);
+        return endpoint == null || endpoint.isClosed();
+    }
+
+    /**
+     * Sends a request synchronously under this policy.
+     * @param request the request.
+     * @param sender sends a single attempt of the request.
+     * @return the response, which the caller is responsible for closing.
+     * @throws IOException if every attempt failed, or the circuit breaker is open.
+     */
+    Response execute(Request request, SyncSender sender) throws IOException {
+        final Endpoint endpoint = endpoint(request);
+        final boolean retryable = isRetryable(request);
+        int attempt = 0;
+        while (true) {
+            endpoint.acquire();
+            final long start = System.nanoTime();
+            final boolean lastAttempt = !retryable || attempt >= maxRetries;
+            try {
+                final Response response = sender.send(request);
+                if (!isServerError(response)) {
+                    endpoint.onSuccess(System.nanoTime() - start);
+                    return response;
+                }
+                endpoint.onFailure();
+                if (lastAttempt) {
+                    return response;
+                }
+                response.close();
+            }
+            catch (IOException event) {
+                endpoint.onFailure();
+                if (lastAttempt) {
+                    throw event;
+                }
+            }
+            catch (RuntimeException | Error event) {
+                // Not an answer of the endpoint, so it neither closes nor opens the breaker, but a trial is over.
+                endpoint.release();
+                throw event;
+            }
+            sleep(backoffMillis(attempt));
+            attempt++;
+            retryCount.increment();
+        }
+    }
+
+    /**
+     * Sends a request asynchronously under this policy.
+     * @param request the request.
+     * @param sender sends a single attempt of the request.
+     * @return a future for the response, which the caller is responsible for closing.
+     */
+    CompletableFuture<Response> executeAsync(Request request, AsyncSender sender) {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        new AsyncCall(request, sender, result).attempt(0);
+        return result;
+    }
+
+    /**
+     * Stops the thread that runs backoffs and hedges.
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private Endpoint endpoint(Request request) {
+        return endpoints.computeIfAbsent(request.method() + " " + request.url().encodedPath(),
+            key -> new Endpoint(key));
+    }
+
+    private static boolean isRetryable(Request request) {
+        return "GET".equals(request.method());
+    }
+
+    private static boolean isServerError(Response response) {
+        return response.code() >= SERVER_ERROR;
+    }
+
+    private long backoffMillis(int attempt) {
+        final long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, MAX_BACKOFF_SHIFT));
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException event) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to retry", event);
+        }
+    }
+
+    /**
+     * Sends a single attempt of a request and waits for the response.
+     */
+    interface SyncSender {
+        Response send(Request request) throws IOException;
+    }
+
+    /**
+     * Sends a single attempt of a request without waiting for the response.
+     */
+    interface AsyncSender {
+        CompletableFuture<Response> send(Request request);
+    }
+
+    /**
+     * The attempts of one asynchronous request. Each attempt may be hedged; the attempt moves on
+     * once all its requests have failed.
+     */
+    private final class AsyncCall {
+        private final Request request;
+        private final AsyncSender sender;
+        private final CompletableFuture<Response> result;
+        private final Endpoint endpoint;
+        private final boolean retryable;
+        private final List<CompletableFuture<Response>> outstanding = new ArrayList<>();
+
+        AsyncCall(Request request, AsyncSender sender, CompletableFuture<Response> result) {
+            this.request = request;
+            this.sender = sender;
+            this.result = result;
+            this.endpoint = endpoint(request);
+            this.retryable = isRetryable(request);
+            result.whenComplete((response, failure) -> {
+                if (result.isCancelled()) {
+                    cancelOutstanding();
+                }
+            });
+        }
+
+        void attempt(int attempt) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                endpoint.acquire();
+            }
+            catch (CircuitOpenException event) {
+                result.completeExceptionally(event);
+                return;
+            }
+            final AtomicInteger pending = new AtomicInteger(1);
+            send(attempt, pending);
+
+            final long hedgeDelayNanos = endpoint.hedgeDelayNanos();
+            if (retryable && hedgeDelayNanos > 0) {
+                scheduler.schedule(() -> {
+                    if (!result.isDone() && pending.get() > 0) {
+                        pending.incrementAndGet();
+                        hedgeCount.increment();
+                        send(attempt, pending);
+                    }
+                }, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void send(int attempt, AtomicInteger pending) {
+            final long start = System.nanoTime();
+            CompletableFuture<Response> future;
+            try {
+                future = sender.send(request);
+            }
+            catch (RuntimeException event) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(event);
+            }
+            synchronized (outstanding) {
+                outstanding.add(future);
+            }
+            future.whenComplete((response, failure) -> {
+                if (failure == null && !isServerError(response)) {
+                    endpoint.onSuccess(System.nanoTime() - start);
+                    if (result.complete(response)) {
+                        cancelOutstanding();
+                    }
+                    else {
+                        response.close();
+                    }
+                    return;
+                }
+                if (failure == null || !result.isDone()) {
+                    endpoint.onFailure();
+                }
+                else {
+                    // Cancelled, or failed after the call was over; a trial request must still end its trial.
+                    endpoint.release();
+                }
+                if (pending.decrementAndGet() > 0) {
+                    // A hedged request of the same attempt may still succeed.
+                    if (response != null) {
+                        response.close();
+                    }
+                    return;
+                }
+                if (!retryable || attempt >= maxRetries || result.isDone()) {
+                    if (failure != null) {
+                        result.completeExceptionally(BulkLookup.unwrap(failure));
+                    }
+                    else if (!result.complete(response)) {
+                        response.close();
+                    }
+                    return;
+                }
+                if (response != null) {
+                    response.close();
+                }
+                retryCount.increment();
+                scheduler.schedule(() -> attempt(attempt + 1), backoffMillis(attempt), TimeUnit.MILLISECONDS);
+            });
+        }
+
+        private void cancelOutstanding() {
+            synchronized (outstanding) {
+                for (CompletableFuture<Response> future : outstanding) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * The circuit breaker and recent latencies of one endpoint.
+     */
+    private final class Endpoint {
+        private final String name;
+        private final long[] latencies = new long[latencySamples];
+        private int latencyCount;
+        private int latencyIndex;
+        private int failures;
+        private boolean open;
+        private boolean trialInFlight;
+        private long openedAt;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean isClosed() {
+            return !open;
+        }
+
+        synchronized void acquire() throws CircuitOpenException {
+            if (!open) {
+                return;
+            }
+            if (!trialInFlight && System.nanoTime() - openedAt >= openNanos) {
+                trialInFlight = true;
+                return;
+            }
+            rejectedCount.increment();
+            throw new CircuitOpenException("Circuit breaker open for " + name);
+        }
+
+        synchronized void onSuccess(long latencyNanos) {
+            failures = 0;
+            open = false;
+            trialInFlight = false;
+            latencies[latencyIndex] = latencyNanos;
+            latencyIndex = (latencyIndex + 1) % latencies.length;
+            latencyCount = Math.min(latencyCount + 1, latencies.length);
+        }
+
+        /**
+         * Ends a trial request that got no answer to judge the endpoint by, e.g. because it was cancelled,
+         * so that the next request after the open time is let through as a trial again.
+         */
+        synchronized void release() {
+            trialInFlight = false;
+        }
+
+        synchronized void onFailure() {
+            failures++;
+            if (trialInFlight || failures >= failureThreshold) {
+                open = true;
+                trialInFlight = false;
+                openedAt = System.nanoTime();
+            }
+        }
+
+        /**
+         * Returns how long to wait before hedging a read, or 0 not to hedge it.
+         */
+        synchronized long hedgeDelayNanos() {
+            if (hedgePercentile <= 0 || latencyCount < minHedgeSamples) {
+                return 0;
+            }
+            final long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(hedgePercentile / PERCENT * latencyCount) - 1;
+            return Math.max(1, sorted[Math.max(0, Math.min(index, latencyCount - 1))]);
+        }
+    }
+
+    /**
+     * Returns a new ResiliencePolicyBuilder instance.
+     * @return a new ResiliencePolicyBuilder instance.
+     */
+    public static ResiliencePolicyBuilder builder() {
+        return new ResiliencePolicyBuilder();
+    }
+
+    /**
+     * Represents a builder for creating instances of a ResiliencePolicy.
+     */
+    public static class ResiliencePolicyBuilder {
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private long baseBackoffMillis = DEFAULT_BASE_BACKOFF_MILLIS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private long openMillis = DEFAULT_OPEN_MILLIS;
+        private double hedgePercentile;
+        private int latencySamples = DEFAULT_LATENCY_SAMPLES;
+        private int minHedgeSamples = DEFAULT_MIN_HEDGE_SAMPLES;
+
+        ResiliencePolicyBuilder() {
+        }
+
+        /**
+         * Sets the number of times a failed read is sent again.
+         * @param maxRetriesInput the number of retries, 0 not to retry.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder maxRetries(int maxRetriesInput) {
+            this.maxRetries = maxRetriesInput;
+            return this;
+        }
+
+        /**
+         * Sets the longest backoff before the first retry; it doubles for every retry after that.
+         * @param baseBackoffMillisInput the base backoff in milliseconds.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder baseBackoffMillis(long baseBackoffMillisInput) {
+            this.baseBackoffMillis = baseBackoffMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the longest backoff before any retry.
+         * @param maxBackoffMillisInput the maximum backoff in milliseconds.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder maxBackoffMillis(long maxBackoffMillisInput) {
+            this.maxBackoffMillis = maxBackoffMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the number of failures in a row that open the circuit breaker of an endpoint.
+         * @param failureThresholdInput the number of failures.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder failureThreshold(int failureThresholdInput) {
+            this.failureThreshold = failureThresholdInput;
+            return this;
+        }
+
+        /**
+         * Sets how long an open circuit breaker fails requests before letting a trial request through.
+         * @param openMillisInput the open time in milliseconds.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder openMillis(long openMillisInput) {
+            this.openMillis = openMillisInput;
+            return this;
+        }
+
+        /**
+         * Sets the percentile of recent latencies after which an asynchronous read is hedged.
+         * @param hedgePercentileInput the percentile, e.g. 95, or 0 not to hedge.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder hedgePercentile(double hedgePercentileInput) {
+            this.hedgePercentile = hedgePercentileInput;
+            return this;
+        }
+
+        /**
+         * Sets how many recent latencies of an endpoint are kept, and how many are needed before hedging.
+         * @param latencySamplesInput the number of latencies kept.
+         * @param minHedgeSamplesInput the number of latencies needed before reads are hedged.
+         * @return the ResiliencePolicyBuilder instance.
+         */
+        public ResiliencePolicyBuilder latencySamples(int latencySamplesInput, int minHedgeSamplesInput) {
+            this.latencySamples = latencySamplesInput;
+            this.minHedgeSamples = minHedgeSamplesInput;
+            return this;
+        }
+
+        /**
+         * Builds a new ResiliencePolicy instance.
+         * @return a new ResiliencePolicy instance.
+         */
+        public ResiliencePolicy build() {
+            return new ResiliencePolicy(this);
+        }
+    }
+}
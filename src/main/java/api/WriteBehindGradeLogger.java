@@ -0,0 +1,253 @@
+package api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import entity.Grade;
+
+/**
+ * Logs grades in the background instead of making the caller wait for the API.
+ * Grades are accepted into a bounded queue and sent by a background thread in bursts of up to
+ * batchSize requests in flight at the same time. A grade for a course that is still waiting in the
+ * queue replaces the waiting one, so only the latest grade for the course is sent.
+ * <p>
+ * When the queue is full, submitGrade waits until there is room. Shutting the logger down stops it
+ * accepting grades and waits until every grade already accepted has been sent.
+ */
+public class WriteBehindGradeLogger implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final int DEFAULT_BATCH_SIZE = 8;
+
+    private final AsyncGradeDataBase gradeDataBase;
+    private final int capacity;
+    private final int batchSize;
+    private final Thread flusher;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Guarded by lock: the grades waiting to be sent, by course, in the order they were first queued.
+    private final Map<String, PendingGrade> queue = new LinkedHashMap<>();
+    private boolean shutdown;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public WriteBehindGradeLogger(AsyncGradeDataBase gradeDataBase) {
+        this(gradeDataBase, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a WriteBehindGradeLogger and starts its background thread.
+     * @param gradeDataBase the data base to log the grades to.
+     * @param capacity the number of courses that can have a grade waiting at the same time.
+     * @param batchSize the number of grades to send at the same time.
+     */
+    public WriteBehindGradeLogger(AsyncGradeDataBase gradeDataBase, int capacity, int batchSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.gradeDataBase = gradeDataBase;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flusher = new Thread(this::flushUntilShutdown, "grade-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a grade to be logged, waiting for room if the queue is full.
+     * @param course The course.
+     * @param grade The grade.
+     * @return a future that completes with the logged grade once it has been sent, or exceptionally
+     *         with the exception the data base reported.
+     * @throws IllegalStateException if the logger has been shut down.
+     */
+    public CompletableFuture<Grade> submitGrade(String course, int grade) {
+        final CompletableFuture<Grade> handle = new CompletableFuture<>();
+        lock.lock();
+        try {
+            PendingGrade pending = queue.get(course);
+            while (pending == null && queue.size() >= capacity && !shutdown) {
+                notFull.awaitUninterruptibly();
+                pending = queue.get(course);
+            }
+            if (shutdown) {
+                throw new IllegalStateException("WriteBehindGradeLogger has been shut down");
+            }
+            if (pending == null) {
+                pending = new PendingGrade(course);
+                queue.put(course, pending);
+                notEmpty.signal();
+            }
+            else {
+                coalescedCount.increment();
+            }
+            pending.grade = grade;
+            pending.handles.add(handle);
+        }
+        finally {
+            lock.unlock();
+        }
+        return handle;
+    }
+
+    /**
+     * Returns the number of grades waiting to be sent.
+     * @return the number of queued grades.
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of grades that have been sent to the data base.
+     * @return the number of grades sent.
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * Returns the number of grades that replaced a grade still waiting for the same course.
+     * @return the number of grades coalesced.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    /**
+     * Stops accepting grades and waits until every grade already accepted has been sent.
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @return true if every grade was sent, false if the timeout passed first.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        flusher.join(Math.max(1, unit.toMillis(timeout)));
+        return !flusher.isAlive();
+    }
+
+    /**
+     * Stops accepting grades and waits until every grade already accepted has been sent.
+     */
+    @Override
+    public void close() {
+        try {
+            shutdown(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException event) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushUntilShutdown() {
+        while (true) {
+            final List<PendingGrade> batch = nextBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            send(batch);
+        }
+    }
+
+    /**
+     * Takes up to batchSize grades off the queue, waiting for one if it is empty.
+     * Returns an empty batch once the logger is shut down and the queue is drained.
+     */
+    private List<PendingGrade> nextBatch() {
+        final List<PendingGrade> batch = new ArrayList<>();
+        lock.lock();
+        try {
+            while (queue.isEmpty() && !shutdown) {
+                notEmpty.awaitUninterruptibly();
+            }
+            final Iterator<PendingGrade> iterator = queue.values().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            notFull.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        return batch;
+    }
+
+    /**
+     * Sends a batch and waits for all of it, so that a later grade for the same course
+     * is never sent before an earlier one has been answered.
+     */
+    private void send(List<PendingGrade> batch) {
+        final List<CompletableFuture<Grade>> inFlight = new ArrayList<>();
+        for (PendingGrade pending : batch) {
+            CompletableFuture<Grade> future;
+            try {
+                future = gradeDataBase.logGradeAsync(pending.course, pending.grade);
+            }
+            catch (RuntimeException event) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(event);
+            }
+            inFlight.add(future.whenComplete((grade, failure) -> {
+                sentCount.increment();
+                for (CompletableFuture<Grade> handle : pending.handles) {
+                    if (failure == null) {
+                        handle.complete(grade);
+                    }
+                    else {
+                        handle.completeExceptionally(BulkLookup.unwrap(failure));
+                    }
+                }
+            }));
+        }
+        for (CompletableFuture<Grade> future : inFlight) {
+            try {
+                future.join();
+            }
+            catch (RuntimeException event) {
+                // Already reported through the handles of the grade.
+            }
+        }
+    }
+
+    /**
+     * The latest grade waiting to be sent for a course, and everyone waiting for it.
+     */
+    private static final class PendingGrade {
+        private final String course;
+        private final List<CompletableFuture<Grade>> handles = new ArrayList<>();
+        private int grade;
+
+        PendingGrade(String course) {
+            this.course = course;
+        }
+    }
+}
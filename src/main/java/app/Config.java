@@ -1,13 +1,47 @@
 package app;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import api.AggregatingGradeDataBase;
+import api.AsyncGradeDataBase;
+import api.CachingGradeDataBase;
+import api.CoalescingGradeDataBase;
+import api.DurableGradeDataBase;
+import api.ConcurrencyLimiter;
+import api.HttpTransport;
 import api.GradeDataBase;
+import api.GradeWriteAheadLog;
+import api.InMemoryGradeDataBase;
+import api.InstrumentedGradeDataBase;
+import api.MappedGradeStore;
 import api.MongoGradeDataBase;
+import api.NetworkPhaseProfiler;
+import api.PersistentGradeDataBase;
+import api.ResiliencePolicy;
+import api.WriteBehindGradeLogger;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import usecase.ExportGradesUseCase;
 import usecase.FormTeamUseCase;
+import usecase.GetAverageGradeAsyncUseCase;
 import usecase.GetAverageGradeUseCase;
+import usecase.GetGradeAsyncUseCase;
+import usecase.GetGradeHistoryUseCase;
 import usecase.GetGradeUseCase;
+import usecase.GetTopGradeAsyncUseCase;
 import usecase.GetTopGradeUseCase;
+import usecase.ImportGradesUseCase;
 import usecase.JoinTeamUseCase;
 import usecase.LeaveTeamUseCase;
+import usecase.LogGradeAsyncUseCase;
 import usecase.LogGradeUseCase;
 
 /**
@@ -15,7 +49,401 @@ import usecase.LogGradeUseCase;
  */
 
 public class Config {
-    private final GradeDataBase gradeDataBase = new MongoGradeDataBase();
+    // System property to point the application at another grade API, such as server.LocalGradeApiServer.
+    private static final String API_URL_PROPERTY = "grade.api.url";
+    // System property that, when true, times the network phases of every call and prints them on exit.
+    private static final String PROFILE_PROPERTY = "grade.api.profile";
+    // System property that, when true, keeps grades and the write-ahead log in files under ~/.grade-app.
+    private static final String PERSIST_PROPERTY = "grade.persist";
+    // System property naming the file grades are kept in across restarts; empty to keep nothing on disk.
+    private static final String STORE_FILE_PROPERTY = "grade.store.file";
+    // System property naming the write-ahead log of grades not yet sent to the API; empty to send them directly.
+    private static final String LOG_FILE_PROPERTY = "grade.log.file";
+    // System property that, when memory, serves everything from an InMemoryGradeDataBase instead of the grade API.
+    private static final String BACKEND_PROPERTY = "grade.backend";
+    private static final String MEMORY_BACKEND = "memory";
+    // System property naming the user the in-memory backend acts as; the OS user by default.
+    private static final String MEMORY_USER_PROPERTY = "grade.memory.user";
+    // System property naming the user the grade API token belongs to, so that their logged grades are known as theirs.
+    private static final String USERNAME_PROPERTY = "grade.username";
+
+    // Tuning for the HTTP transport shared by every call to the grade API.
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MILLIS = 5 * 60 * 1000L;
+    private static final int MAX_REQUESTS_PER_HOST = 16;
+    private static final long CONNECT_TIMEOUT_MILLIS = 5_000L;
+    private static final long READ_TIMEOUT_MILLIS = 10_000L;
+
+    // Retries, circuit breaking and hedging of calls to the grade API.
+    private static final int MAX_RETRIES = 2;
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 30_000L;
+    private static final double HEDGE_PERCENTILE = 95;
+
+    // Bounds of the adaptive limits on reads and writes in flight to the grade API.
+    private static final int READ_LIMIT_INITIAL = 8;
+    private static final int READ_LIMIT_MAX = 32;
+    private static final int WRITE_LIMIT_INITIAL = 2;
+    private static final int WRITE_LIMIT_MAX = 8;
+
+    // Size and freshness of the grade cache in front of the grade API.
+    private static final int GRADE_CACHE_MAX_ENTRIES = 4096;
+    private static final long GRADE_CACHE_REFRESH_AFTER_MILLIS = 60 * 1000L;
+    private static final long GRADE_CACHE_EXPIRE_AFTER_MILLIS = 15 * 60 * 1000L;
+    private static final long TEAM_CACHE_EXPIRE_AFTER_MILLIS = 10 * 60 * 1000L;
+
+    // Age after which grades kept on disk are reloaded in the background.
+    private static final long GRADE_STORE_REFRESH_AFTER_MILLIS = 60 * 1000L;
+
+    // Number of grades the write-behind logger holds before submitGrade waits for room.
+    private static final int WRITE_BEHIND_CAPACITY = 256;
+
+    // Longest time shutdown waits for the write-behind logger to send the grades it holds.
+    private static final long WRITE_BEHIND_DRAIN_MILLIS = 10 * 1000L;
+
+    // Number of team member lookups the team use cases run at the same time.
+    private static final int DEFAULT_TEAM_LOOKUP_PARALLELISM = 8;
+
+    private final NetworkPhaseProfiler phaseProfiler = createPhaseProfiler();
+    private final HttpTransport transport = HttpTransport.builder()
+            .maxIdleConnections(MAX_IDLE_CONNECTIONS)
+            .keepAliveMillis(KEEP_ALIVE_MILLIS)
+            .maxRequestsPerHost(MAX_REQUESTS_PER_HOST)
+            .connectTimeoutMillis(CONNECT_TIMEOUT_MILLIS)
+            .readTimeoutMillis(READ_TIMEOUT_MILLIS)
+            .http2(true)
+            .resilience(ResiliencePolicy.builder()
+                    .maxRetries(MAX_RETRIES)
+                    .failureThreshold(CIRCUIT_FAILURE_THRESHOLD)
+                    .openMillis(CIRCUIT_OPEN_MILLIS)
+                    .hedgePercentile(HEDGE_PERCENTILE)
+                    .build())
+            .concurrencyLimits(
+                    ConcurrencyLimiter.builder().initialLimit(READ_LIMIT_INITIAL).maxLimit(READ_LIMIT_MAX).build(),
+                    ConcurrencyLimiter.builder().initialLimit(WRITE_LIMIT_INITIAL).maxLimit(WRITE_LIMIT_MAX).build())
+            .metrics(MetricsRegistry.getDefault())
+            .phaseProfiler(phaseProfiler)
+            .build();
+    private final GradeDataBase backend;
+    private final String username;
+    private final CoalescingGradeDataBase requestCoalescer;
+    private final DurableGradeDataBase gradeLog;
+    private final PersistentGradeDataBase gradeStore;
+    private final CachingGradeDataBase gradeCache;
+    private final AsyncGradeDataBase asyncGradeDataBase;
+    private final int teamLookupParallelism;
+    private final ExecutorService teamLookupExecutor;
+    private final AggregatingGradeDataBase gradeDataBase;
+    private final WriteBehindGradeLogger gradeWriter;
+    private IOException gradeLogFailure;
+    private IOException gradeStoreFailure;
+
+    public Config() {
+        this(DEFAULT_TEAM_LOOKUP_PARALLELISM);
+    }
+
+    /**
+     * Creates a Config whose team use cases look up team members concurrently. Nothing is kept on disk
+     * unless the grade.persist, grade.store.file or grade.log.file system property asks for it.
+     * @param teamLookupParallelism the number of team member lookups to run at the same time;
+     *                              1 runs them one after the other on the calling thread.
+     */
+    public Config(int teamLookupParallelism) {
+        this(teamLookupParallelism, defaultFile(STORE_FILE_PROPERTY, "grades.store"),
+                defaultFile(LOG_FILE_PROPERTY, "grades.wal"));
+    }
+
+    /**
+     * Creates a Config that keeps the grades it reads in a file, so that the next run starts warm,
+     * and logs grades to a write-ahead log first, so that none are lost while the API is down.
+     * @param teamLookupParallelism the number of team member lookups to run at the same time;
+     *                              1 runs them one after the other on the calling thread.
+     * @param storeFile the file to keep grades in, or null to keep nothing on disk.
+     * @param logFile the file of the write-ahead log, or null to send logged grades to the API directly.
+     */
+    public Config(int teamLookupParallelism, Path storeFile, Path logFile) {
+        this(teamLookupParallelism, storeFile, logFile, defaultBackend());
+    }
+
+    /**
+     * Creates a Config that serves the use cases from a data base of its own choosing rather than the
+     * grade API, e.g. an InMemoryGradeDataBase to run without a network or to measure the layers above it.
+     * @param teamLookupParallelism the number of team member lookups to run at the same time;
+     *                              1 runs them one after the other on the calling thread.
+     * @param storeFile the file to keep grades in, or null to keep nothing on disk.
+     * @param logFile the file of the write-ahead log, or null to send logged grades to the backend directly.
+     * @param backend the data base at the bottom of the stack, or null for the grade API.
+     */
+    public Config(int teamLookupParallelism, Path storeFile, Path logFile, GradeDataBase backend) {
+        if (teamLookupParallelism < 1) {
+            throw new IllegalArgumentException("teamLookupParallelism must be at least 1");
+        }
+        this.teamLookupParallelism = teamLookupParallelism;
+        if (backend == null) {
+            this.backend = new MongoGradeDataBase(transport,
+                    System.getProperty(API_URL_PROPERTY, MongoGradeDataBase.DEFAULT_API_URL), null);
+        }
+        else {
+            this.backend = backend;
+        }
+        this.username = signedInUsername(this.backend);
+        this.requestCoalescer = new CoalescingGradeDataBase(
+                new InstrumentedGradeDataBase(this.backend, MetricsRegistry.getDefault()));
+        MetricsRegistry.getDefault().publish(MetricsRegistry.DEFAULT_DOMAIN);
+        if (teamLookupParallelism == 1) {
+            this.teamLookupExecutor = null;
+        }
+        else {
+            final AtomicInteger threadCount = new AtomicInteger();
+            this.teamLookupExecutor = Executors.newFixedThreadPool(teamLookupParallelism, runnable -> {
+                final Thread thread = new Thread(runnable, "team-lookup-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        final Executor asyncExecutor;
+        if (teamLookupExecutor == null) {
+            asyncExecutor = Runnable::run;
+        }
+        else {
+            asyncExecutor = teamLookupExecutor;
+        }
+        this.gradeLog = openGradeLog(logFile);
+        final GradeDataBase belowStore;
+        if (gradeLog == null) {
+            belowStore = requestCoalescer;
+        }
+        else {
+            belowStore = gradeLog;
+        }
+        this.gradeStore = openGradeStore(storeFile, belowStore);
+        final GradeDataBase belowCache;
+        if (gradeStore == null) {
+            belowCache = belowStore;
+        }
+        else {
+            belowCache = gradeStore;
+        }
+        this.gradeCache = CachingGradeDataBase.builder(belowCache)
+                .maxEntries(GRADE_CACHE_MAX_ENTRIES)
+                .refreshAfterMillis(GRADE_CACHE_REFRESH_AFTER_MILLIS)
+                .expireAfterMillis(GRADE_CACHE_EXPIRE_AFTER_MILLIS)
+                .teamExpireAfterMillis(TEAM_CACHE_EXPIRE_AFTER_MILLIS)
+                .asyncExecutor(asyncExecutor)
+                .build();
+        if (gradeLog != null) {
+            // The caches show a logged grade as soon as it is logged, so drop it again if the API refuses it.
+            gradeLog.addRejectionListener(this::forgetGrade);
+        }
+        // The aggregates are computed again as often as the cache refreshes what they are computed from.
+        this.gradeDataBase = new AggregatingGradeDataBase(gradeCache, teamLookupExecutor, username,
+                GRADE_CACHE_REFRESH_AFTER_MILLIS, System::nanoTime);
+        // The async use cases go through the same stack as the others, so that they see the same cache,
+        // aggregates and write-ahead log. Each layer passes their requests on asynchronously, down to the
+        // pipelined requests of the grade API; only the write-ahead log and the grade store are called
+        // blocking, on the team lookup threads, or on the calling thread with a parallelism of 1.
+        this.asyncGradeDataBase = AsyncGradeDataBase.of(gradeDataBase, asyncExecutor);
+        this.gradeWriter = new WriteBehindGradeLogger(asyncGradeDataBase, WRITE_BEHIND_CAPACITY, teamLookupParallelism);
+    }
+
+    private static boolean isInMemory() {
+        return MEMORY_BACKEND.equals(System.getProperty(BACKEND_PROPERTY));
+    }
+
+    private static String signedInUsername(GradeDataBase backend) {
+        if (backend instanceof InMemoryGradeDataBase) {
+            return ((InMemoryGradeDataBase) backend).getUsername();
+        }
+        final String name = System.getProperty(USERNAME_PROPERTY);
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        return name;
+    }
+
+    private void forgetGrade(Grade grade) {
+        if (grade.getUsername() == null) {
+            gradeCache.invalidateCourse(grade.getCourse());
+            if (gradeStore != null) {
+                gradeStore.getStore().removeCourse(grade.getCourse());
+            }
+        }
+        else {
+            gradeCache.invalidate(grade.getUsername(), grade.getCourse());
+            if (gradeStore != null) {
+                gradeStore.getStore().removeGrade(grade.getUsername(), grade.getCourse());
+            }
+        }
+    }
+
+    private static GradeDataBase defaultBackend() {
+        if (!isInMemory()) {
+            return null;
+        }
+        return InMemoryGradeDataBase.builder()
+                .signedInAs(System.getProperty(MEMORY_USER_PROPERTY, System.getProperty("user.name")))
+                .build();
+    }
+
+    private static Path defaultFile(String property, String name) {
+        if (isInMemory()) {
+            // Nothing served from memory is worth keeping on disk.
+            return null;
+        }
+        String file = System.getProperty(property);
+        if (file == null && Boolean.getBoolean(PERSIST_PROPERTY)) {
+            file = Paths.get(System.getProperty("user.home"), ".grade-app", name).toString();
+        }
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        return Paths.get(file);
+    }
+
+    private DurableGradeDataBase openGradeLog(Path logFile) {
+        if (logFile == null) {
+            return null;
+        }
+        try {
+            return DurableGradeDataBase.builder(requestCoalescer, GradeWriteAheadLog.open(logFile))
+                    .username(username)
+                    .build();
+        }
+        catch (IOException event) {
+            // Grades are still logged, just straight to the API.
+            gradeLogFailure = event;
+            return null;
+        }
+    }
+
+    private PersistentGradeDataBase openGradeStore(Path storeFile, GradeDataBase delegate) {
+        if (storeFile == null) {
+            return null;
+        }
+        try {
+            return PersistentGradeDataBase.builder(delegate, MappedGradeStore.open(storeFile))
+                    .refreshAfterMillis(GRADE_STORE_REFRESH_AFTER_MILLIS)
+                    .build();
+        }
+        catch (IOException event) {
+            // The application still works without the store, it just starts cold.
+            gradeStoreFailure = event;
+            return null;
+        }
+    }
+
+    private static NetworkPhaseProfiler createPhaseProfiler() {
+        if (!Boolean.getBoolean(PROFILE_PROPERTY)) {
+            return null;
+        }
+        final NetworkPhaseProfiler profiler = new NetworkPhaseProfiler();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(profiler.summary()),
+                "network-phase-summary"));
+        return profiler;
+    }
+
+    /**
+     * Get the cache in front of the grade API, e.g. to look at its statistics.
+     * @return CachingGradeDataBase object.
+     */
+    public CachingGradeDataBase gradeCache() {
+        return gradeCache;
+    }
+
+    /**
+     * Get the tier that logs grades to a write-ahead log before sending them to the API,
+     * e.g. to see whether it is offline and how many grades are waiting.
+     * @return DurableGradeDataBase object, or null if grades are sent to the API directly.
+     */
+    public DurableGradeDataBase gradeLog() {
+        return gradeLog;
+    }
+
+    /**
+     * Tells a listener about every logged grade the grade API refuses as invalid after logGrade returned.
+     * Without a write-ahead log logGrade itself throws for such a grade, so the listener is never called.
+     * @param listener the listener, called on a background thread with the refused grade.
+     */
+    public void onRejectedGrade(Consumer<Grade> listener) {
+        if (gradeLog != null) {
+            gradeLog.addRejectionListener(listener);
+        }
+    }
+
+    /**
+     * Get why the write-ahead log asked for could not be opened, so that grades are sent to the API directly.
+     * @return the exception, or null if the log was opened or none was asked for.
+     */
+    public IOException gradeLogFailure() {
+        return gradeLogFailure;
+    }
+
+    /**
+     * Get the tier that keeps grades on disk across restarts, e.g. to look at its statistics.
+     * @return PersistentGradeDataBase object, or null if grades are not kept on disk.
+     */
+    public PersistentGradeDataBase gradeStore() {
+        return gradeStore;
+    }
+
+    /**
+     * Get why the file asked for to keep grades in could not be opened, so that nothing is kept on disk.
+     * @return the exception, or null if the file was opened or none was asked for.
+     */
+    public IOException gradeStoreFailure() {
+        return gradeStoreFailure;
+    }
+
+    /**
+     * Get the layer that lets identical requests in flight to the grade API share one request,
+     * e.g. to see how many duplicates it saved.
+     * @return CoalescingGradeDataBase object.
+     */
+    public CoalescingGradeDataBase requestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Get the data base at the bottom of the stack: the grade API, or the one chosen instead of it.
+     * @return GradeDataBase object.
+     */
+    public GradeDataBase backend() {
+        return backend;
+    }
+
+    /**
+     * Get the registry the use cases, the grade data base and the HTTP transport record their
+     * latencies in. It is also published over JMX under the domain gradeapi.
+     * @return MetricsRegistry object.
+     */
+    public MetricsRegistry metrics() {
+        return MetricsRegistry.getDefault();
+    }
+
+    /**
+     * Get the profiler of the network phases of calls to the grade API, which is only attached
+     * when the grade.api.profile system property is true.
+     * @return NetworkPhaseProfiler object, or null.
+     */
+    public NetworkPhaseProfiler phaseProfiler() {
+        return phaseProfiler;
+    }
+
+    /**
+     * Get the number of team member lookups the team use cases run at the same time.
+     * @return the team lookup parallelism.
+     */
+    public int teamLookupParallelism() {
+        return teamLookupParallelism;
+    }
+
+    /**
+     * Get the HttpTransport shared by every call to the grade API.
+     * @return HttpTransport object.
+     */
+    public HttpTransport transport() {
+        return transport;
+    }
 
     /**
      * Get the GetGradeUseCase object.
@@ -33,6 +461,48 @@ public class Config {
         return new LogGradeUseCase(gradeDataBase);
     }
 
+    /**
+     * Get a LogGradeUseCase whose submitGrade logs grades in the background.
+     * @return LogGradeUseCase object.
+     */
+    public LogGradeUseCase writeBehindLogGradeUseCase() {
+        return new LogGradeUseCase(gradeDataBase, gradeWriter);
+    }
+
+    /**
+     * Get the background logger behind writeBehindLogGradeUseCase, e.g. to drain it before exiting.
+     * @return WriteBehindGradeLogger object.
+     */
+    public WriteBehindGradeLogger gradeWriter() {
+        return gradeWriter;
+    }
+
+    /**
+     * Sends the grades still waiting in the write-behind logger, then closes the write-ahead log.
+     * Grades still in the log are sent the next time it is opened. Call this before exiting, e.g. from
+     * a shutdown hook, since the background threads do not keep the application running.
+     * @return true if every grade the write-behind logger accepted was sent in time.
+     */
+    public boolean shutdown() {
+        boolean drained;
+        try {
+            drained = gradeWriter.shutdown(WRITE_BEHIND_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException event) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        if (gradeLog != null) {
+            try {
+                gradeLog.close();
+            }
+            catch (IOException event) {
+                // The log was already written to the disk entry by entry, so nothing is lost.
+            }
+        }
+        return drained;
+    }
+
     /**
      * Get the FormTeamUseCase object.
      * @return FormTeamUseCase object.
@@ -62,7 +532,7 @@ public class Config {
      * @return GetAverageGradeUseCase object.
      */
     public GetAverageGradeUseCase getAverageGradeUseCase() {
-        return new GetAverageGradeUseCase(gradeDataBase);
+        return new GetAverageGradeUseCase(gradeDataBase, teamLookupExecutor);
     }
 
     /**
@@ -70,6 +540,63 @@ public class Config {
      * @return GetTopGradeUseCase object.
      */
     public GetTopGradeUseCase getTopGradeUseCase() {
-        return new GetTopGradeUseCase(gradeDataBase);
+        return new GetTopGradeUseCase(gradeDataBase, teamLookupExecutor);
+    }
+
+    /**
+     * Get the GetGradeHistoryUseCase object.
+     * @return GetGradeHistoryUseCase object.
+     */
+    public GetGradeHistoryUseCase getGradeHistoryUseCase() {
+        return new GetGradeHistoryUseCase(gradeDataBase, teamLookupExecutor);
+    }
+
+    /**
+     * Get the ImportGradesUseCase object, which logs as many grades at the same time as team lookups run.
+     * With a write-ahead log, the grades it logs are reported as queued.
+     * @return ImportGradesUseCase object.
+     */
+    public ImportGradesUseCase importGradesUseCase() {
+        return new ImportGradesUseCase(gradeDataBase, teamLookupExecutor, teamLookupParallelism, gradeLog != null);
+    }
+
+    /**
+     * Get the ExportGradesUseCase object, which looks up as many team members at the same time as team lookups run.
+     * @return ExportGradesUseCase object.
+     */
+    public ExportGradesUseCase exportGradesUseCase() {
+        return new ExportGradesUseCase(gradeDataBase, teamLookupExecutor, teamLookupParallelism);
+    }
+
+    /**
+     * Get the GetGradeAsyncUseCase object.
+     * @return GetGradeAsyncUseCase object.
+     */
+    public GetGradeAsyncUseCase getGradeAsyncUseCase() {
+        return new GetGradeAsyncUseCase(asyncGradeDataBase);
+    }
+
+    /**
+     * Get the LogGradeAsyncUseCase object.
+     * @return LogGradeAsyncUseCase object.
+     */
+    public LogGradeAsyncUseCase logGradeAsyncUseCase() {
+        return new LogGradeAsyncUseCase(asyncGradeDataBase);
+    }
+
+    /**
+     * Get the GetAverageGradeAsyncUseCase object.
+     * @return GetAverageGradeAsyncUseCase object.
+     */
+    public GetAverageGradeAsyncUseCase getAverageGradeAsyncUseCase() {
+        return new GetAverageGradeAsyncUseCase(asyncGradeDataBase);
+    }
+
+    /**
+     * Get the GetTopGradeAsyncUseCase object.
+     * @return GetTopGradeAsyncUseCase object.
+     */
+    public GetTopGradeAsyncUseCase getTopGradeAsyncUseCase() {
+        return new GetTopGradeAsyncUseCase(asyncGradeDataBase);
     }
 }
@@ -6,17 +6,23 @@ import java.awt.GridBagLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Arrays;
+import java.util.function.Function;
 
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
-
-import org.json.JSONException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import api.MongoGradeDataBase;
 import app.Config;
@@ -31,6 +37,8 @@ public class Application {
     static final int COLS = 2;
     static final int WIDTH = 850;
     static final int HEIGHT = 300;
+    // Number of use case calls the GUI runs in the background at the same time.
+    static final int TASK_THREADS = 4;
 
     /**
      * Main method to run the GUI.
@@ -43,6 +51,11 @@ public class Application {
         // we are using in the program. If we were to use a different implementation
         // of GradeDB, this config is what we would change.
         final Config config = new Config();
+        // Grades accepted in the background are sent before the application exits.
+        Runtime.getRuntime().addShutdownHook(new Thread(config::shutdown, "config-shutdown"));
+        // Grades are refused after logGrade returned when they went through the write-ahead log.
+        config.onRejectedGrade(grade -> SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+                "The grade API refused the grade " + grade.getGrade() + " in " + grade.getCourse() + ".")));
 
         final GetGradeUseCase getGradeUseCase = config.getGradeUseCase();
         final LogGradeUseCase logGradeUseCase = config.logGradeUseCase();
@@ -51,6 +64,8 @@ public class Application {
         final LeaveTeamUseCase leaveTeamUseCase = config.leaveTeamUseCase();
         final GetAverageGradeUseCase getAverageGradeUseCase = config.getAverageGradeUseCase();
         final GetTopGradeUseCase getTopGradeUseCase = config.getTopGradeUseCase();
+        final GetGradeHistoryUseCase getGradeHistoryUseCase = config.getGradeHistoryUseCase();
+        final TaskRunner tasks = TaskRunner.forSwing(TASK_THREADS);
 
         // this is the code that runs to set up our GUI
         SwingUtilities.invokeLater(() -> {
@@ -62,11 +77,13 @@ public class Application {
             final JPanel cardPanel = new JPanel(cardLayout);
 
             final JPanel defaultCard = createDefaultCard();
-            final JPanel getGradeCard = createGetGradeCard(frame, getGradeUseCase);
-            final JPanel logGradeCard = createLogGradeCard(frame, logGradeUseCase);
-            final JPanel formTeamCard = createFormTeamCard(frame, formTeamUseCase);
-            final JPanel joinTeamCard = createJoinTeamCard(frame, joinTeamUseCase);
-            final JPanel manageTeamCard = createManageTeamCard(frame, leaveTeamUseCase, getAverageGradeUseCase, getTopGradeUseCase);
+            final JPanel getGradeCard = createGetGradeCard(frame, tasks, getGradeUseCase);
+            final JPanel logGradeCard = createLogGradeCard(frame, tasks, logGradeUseCase);
+            final JPanel formTeamCard = createFormTeamCard(frame, tasks, formTeamUseCase);
+            final JPanel joinTeamCard = createJoinTeamCard(frame, tasks, joinTeamUseCase);
+            final JPanel manageTeamCard = createManageTeamCard(frame, tasks, leaveTeamUseCase, getAverageGradeUseCase,
+                    getTopGradeUseCase);
+            final JPanel gradeTableCard = createGradeTableCard(tasks, getGradeHistoryUseCase);
 
             cardPanel.add(defaultCard, "DefaultCard");
             cardPanel.add(getGradeCard, "GetGradeCard");
@@ -74,6 +91,7 @@ public class Application {
             cardPanel.add(formTeamCard, "FormTeamCard");
             cardPanel.add(joinTeamCard, "JoinTeamCard");
             cardPanel.add(manageTeamCard, "ManageTeamCard");
+            cardPanel.add(gradeTableCard, "GradeTableCard");
 
             final JButton getGradeButton = new JButton("Get Grade");
             getGradeButton.addActionListener(new ActionListener() {
@@ -140,12 +158,26 @@ public class Application {
                 }
             });
 
+            final JButton gradeTableButton = new JButton("All Grades");
+            gradeTableButton.addActionListener(new ActionListener() {
+                /**
+                 * Invoked when an action occurs.
+                 *
+                 * @param e the event to be processed
+                 */
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    cardLayout.show(cardPanel, "GradeTableCard");
+                }
+            });
+
             final JPanel buttonPanel = new JPanel();
             buttonPanel.add(getGradeButton);
             buttonPanel.add(logGradeButton);
             buttonPanel.add(formTeamButton);
             buttonPanel.add(joinTeamButton);
             buttonPanel.add(manageTeamButton);
+            buttonPanel.add(gradeTableButton);
 
             frame.getContentPane().add(cardPanel, BorderLayout.CENTER);
             frame.getContentPane().add(buttonPanel, BorderLayout.SOUTH);
@@ -169,13 +201,62 @@ public class Application {
         return defaultCard;
     }
 
-    private static JPanel createGetGradeCard(JFrame jFrame, GetGradeUseCase getGradeUseCase) {
+    // Shows the progress of a background task in the status label and its result, or failure, in a dialog.
+    private static <T> TaskRunner.Listener<T> showResult(JFrame jFrame, JLabel statusLabel,
+                                                         Function<T, String> message) {
+        statusLabel.setText("Working...");
+        return new TaskRunner.Listener<T>() {
+            @Override
+            public void onProgress(String progress) {
+                statusLabel.setText(progress);
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                statusLabel.setText("");
+                JOptionPane.showMessageDialog(jFrame, message.apply(result));
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                statusLabel.setText("");
+                JOptionPane.showMessageDialog(jFrame, failure.getMessage());
+            }
+
+            @Override
+            public void onCancelled() {
+                statusLabel.setText("Cancelled.");
+            }
+        };
+    }
+
+    // A button that cancels the background tasks with the given keys.
+    private static JButton createCancelButton(TaskRunner tasks, String... keys) {
+        final JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(new ActionListener() {
+            /**
+             * Invoked when an action occurs.
+             *
+             * @param e the event to be processed
+             */
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                for (String key : keys) {
+                    tasks.cancel(key);
+                }
+            }
+        });
+        return cancelButton;
+    }
+
+    private static JPanel createGetGradeCard(JFrame jFrame, TaskRunner tasks, GetGradeUseCase getGradeUseCase) {
         final JPanel getGradeCard = new JPanel();
         getGradeCard.setLayout(new GridLayout(ROWS, COLS));
 
         final JTextField usernameField = new JTextField(20);
         final JTextField courseField = new JTextField(20);
         final JButton getButton = new JButton("Get");
+        final JButton cancelButton = createCancelButton(tasks, "getGrade");
 
         final JLabel resultLabel = new JLabel();
 
@@ -189,13 +270,9 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String username = usernameField.getText();
                 final String course = courseField.getText();
-                try {
-                    final Grade grade = getGradeUseCase.getGrade(username, course);
-                    JOptionPane.showMessageDialog(jFrame, String.format("Grade: %d", grade.getGrade()));
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                tasks.run("getGrade", Arrays.asList(username, course),
+                    progress -> getGradeUseCase.getGrade(username, course),
+                    showResult(jFrame, resultLabel, (Grade grade) -> String.format("Grade: %d", grade.getGrade())));
             }
         });
 
@@ -204,12 +281,13 @@ public class Application {
         getGradeCard.add(new JLabel("Course:"));
         getGradeCard.add(courseField);
         getGradeCard.add(getButton);
+        getGradeCard.add(cancelButton);
         getGradeCard.add(resultLabel);
 
         return getGradeCard;
     }
 
-    private static JPanel createLogGradeCard(JFrame jFrame, LogGradeUseCase logGradeUseCase) {
+    private static JPanel createLogGradeCard(JFrame jFrame, TaskRunner tasks, LogGradeUseCase logGradeUseCase) {
         final JPanel logGradeCard = new JPanel();
         logGradeCard.setLayout(new GridLayout(ROWS, COLS));
         final JTextField courseField = new JTextField(20);
@@ -227,17 +305,15 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String course = courseField.getText();
                 final String gradeStr = gradeField.getText();
-                final int grade = Integer.parseInt(gradeStr);
 
-                try {
-                    logGradeUseCase.logGrade(course, grade);
-                    JOptionPane.showMessageDialog(jFrame, "Grade Added successfully.");
+                tasks.runToCompletion("logGrade", Arrays.asList(course, gradeStr), progress -> {
+                    logGradeUseCase.logGrade(course, Integer.parseInt(gradeStr));
+                    return null;
+                }, showResult(jFrame, resultLabel, result -> {
                     courseField.setText("");
                     gradeField.setText("");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                    return "Grade Added successfully.";
+                }));
             }
         });
         logGradeCard.add(new JLabel("Course:"));
@@ -249,7 +325,7 @@ public class Application {
         return logGradeCard;
     }
 
-    private static JPanel createFormTeamCard(JFrame jFrame, FormTeamUseCase formTeamUseCase) {
+    private static JPanel createFormTeamCard(JFrame jFrame, TaskRunner tasks, FormTeamUseCase formTeamUseCase) {
         final JPanel theCard = new JPanel();
         theCard.setLayout(new GridLayout(ROWS, COLS));
         final JTextField nameField = new JTextField(20);
@@ -266,14 +342,12 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String name = nameField.getText();
 
-                try {
-                    formTeamUseCase.formTeam(name);
-                    JOptionPane.showMessageDialog(jFrame, "Team formed!");
-                    nameField.setText("");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                // Team changes share a key, so they are made one after the other in the order asked for.
+                tasks.runToCompletion("team", "form " + name, progress -> formTeamUseCase.formTeam(name),
+                    showResult(jFrame, resultLabel, team -> {
+                        nameField.setText("");
+                        return "Team formed!";
+                    }));
             }
         });
         theCard.add(new JLabel("Name (please choose a unique team name):"));
@@ -283,7 +357,7 @@ public class Application {
         return theCard;
     }
 
-    private static JPanel createJoinTeamCard(JFrame jFrame, JoinTeamUseCase joinTeamUseCase) {
+    private static JPanel createJoinTeamCard(JFrame jFrame, TaskRunner tasks, JoinTeamUseCase joinTeamUseCase) {
         final JPanel theCard = new JPanel();
         theCard.setLayout(new GridLayout(ROWS, COLS));
         final JTextField nameField = new JTextField(20);
@@ -300,14 +374,11 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String name = nameField.getText();
 
-                try {
-                    joinTeamUseCase.joinTeam(name);
-                    JOptionPane.showMessageDialog(jFrame, "Joined successfully");
-                    nameField.setText("");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                tasks.runToCompletion("team", "join " + name, progress -> joinTeamUseCase.joinTeam(name),
+                    showResult(jFrame, resultLabel, team -> {
+                        nameField.setText("");
+                        return "Joined successfully";
+                    }));
             }
         });
         theCard.add(new JLabel("The team name:"));
@@ -318,8 +389,9 @@ public class Application {
     }
 
 
-    private static JPanel createManageTeamCard(JFrame jFrame, LeaveTeamUseCase leaveTeamUseCase,
-                                               GetAverageGradeUseCase getAverageGradeUseCase, GetTopGradeUseCase getTopGradeUseCase ) {
+    private static JPanel createManageTeamCard(JFrame jFrame, TaskRunner tasks, LeaveTeamUseCase leaveTeamUseCase,
+                                               GetAverageGradeUseCase getAverageGradeUseCase,
+                                               GetTopGradeUseCase getTopGradeUseCase) {
         final JPanel theCard = new JPanel();
         theCard.setLayout(new GridLayout(ROWS, COLS));
         final JTextField courseField = new JTextField(20);
@@ -328,6 +400,7 @@ public class Application {
         final JButton getTopButton = new JButton("Get Top Grade");
 
         final JButton leaveTeamButton = new JButton("Leave Team");
+        final JButton cancelButton = createCancelButton(tasks, "teamGrade");
         final JLabel resultLabel = new JLabel();
 
         getAverageButton.addActionListener(new ActionListener() {
@@ -340,14 +413,13 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String course = courseField.getText();
 
-                try {
-                    final float avg = getAverageGradeUseCase.getAverageGrade(course);
-                    JOptionPane.showMessageDialog(jFrame, "Average Grade: " + avg);
+                tasks.run("teamGrade", "average " + course, progress -> {
+                    progress.publish("Looking up your team's grades in " + course + "...");
+                    return getAverageGradeUseCase.getAverageGrade(course);
+                }, showResult(jFrame, resultLabel, avg -> {
                     courseField.setText("");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                    return "Average Grade: " + avg;
+                }));
             }
         });
 
@@ -361,14 +433,16 @@ public class Application {
             public void actionPerformed(ActionEvent e) {
                 final String course = courseField.getText();
 
-                try {
-                    final float avg = getTopGradeUseCase.getTopGrade(course);
-                    JOptionPane.showMessageDialog(jFrame, "Average Grade: " + avg);
+                tasks.run("teamGrade", "top " + course, progress -> {
+                    progress.publish("Looking up your team's grades in " + course + "...");
+                    return getTopGradeUseCase.findTopGrade(course);
+                }, showResult(jFrame, resultLabel, (Grade top) -> {
                     courseField.setText("");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                    if (top == null) {
+                        return "No one on your team has a grade for " + course;
+                    }
+                    return String.format("Top Grade: %d (%s)", top.getGrade(), top.getUsername());
+                }));
             }
         });
 
@@ -380,22 +454,117 @@ public class Application {
              */
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
+                tasks.runToCompletion("team", "leave", progress -> {
                     leaveTeamUseCase.leaveTeam();
-                    JOptionPane.showMessageDialog(jFrame, "Left team successfully.");
-                }
-                catch (JSONException ex) {
-                    JOptionPane.showMessageDialog(jFrame, ex.getMessage());
-                }
+                    return null;
+                }, showResult(jFrame, resultLabel, result -> "Left team successfully."));
             }
         });
 
         theCard.add(new JLabel("The course you want to calculate the team average for:"));
         theCard.add(courseField);
         theCard.add(getAverageButton);
+        theCard.add(getTopButton);
         theCard.add(leaveTeamButton);
+        theCard.add(cancelButton);
         theCard.add(resultLabel);
         return theCard;
 
     }
+
+    private static JPanel createGradeTableCard(TaskRunner tasks, GetGradeHistoryUseCase getGradeHistoryUseCase) {
+        final JPanel theCard = new JPanel(new BorderLayout());
+        final GradeTableModel model = new GradeTableModel(tasks, "gradeTable");
+        final JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+
+        final JTextField usernameField = new JTextField(15);
+        final JButton historyButton = new JButton("Student's Grades");
+        final JButton teamButton = new JButton("Team's Grades");
+        final JTextField filterField = new JTextField(15);
+        final JLabel resultLabel = new JLabel();
+
+        final TaskRunner.Listener<Integer> loadListener = new TaskRunner.Listener<Integer>() {
+            @Override
+            public void onProgress(String message) {
+                resultLabel.setText(message);
+            }
+
+            @Override
+            public void onSuccess(Integer count) {
+                resultLabel.setText(String.format("%d grades", count));
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                resultLabel.setText(failure.getMessage());
+            }
+        };
+
+        historyButton.addActionListener(new ActionListener() {
+            /**
+             * Invoked when an action occurs.
+             *
+             * @param e the event to be processed
+             */
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final String username = usernameField.getText();
+                resultLabel.setText("Loading...");
+                model.load(username, progress -> getGradeHistoryUseCase.getGrades(username), loadListener);
+            }
+        });
+
+        teamButton.addActionListener(new ActionListener() {
+            /**
+             * Invoked when an action occurs.
+             *
+             * @param e the event to be processed
+             */
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                resultLabel.setText("Loading...");
+                model.load("team", progress -> getGradeHistoryUseCase.getTeamGrades(), loadListener);
+            }
+        });
+
+        // Clicking a column header sorts by that column, and clicking it again reverses the order.
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                model.sortBy(table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint())));
+            }
+        });
+
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                model.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                model.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                model.setFilter(filterField.getText());
+            }
+        });
+
+        final JPanel controls = new JPanel();
+        controls.add(new JLabel("Username:"));
+        controls.add(usernameField);
+        controls.add(historyButton);
+        controls.add(teamButton);
+        controls.add(new JLabel("Filter:"));
+        controls.add(filterField);
+
+        theCard.add(controls, BorderLayout.NORTH);
+        theCard.add(new JScrollPane(table), BorderLayout.CENTER);
+        theCard.add(resultLabel, BorderLayout.SOUTH);
+
+        return theCard;
+    }
 }
@@ -0,0 +1,347 @@
+package app.gui;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.swing.table.AbstractTableModel;
+
+import entity.Grade;
+import entity.GradeIndex;
+
+/**
+ * A table model for long lists of grades, such as full grade histories or the grades of a whole team.
+ * <p>
+ * The grades are compacted into columns by a GradeIndex once they are loaded: usernames and courses are
+ * dictionary encoded to int ids and the grades kept in int arrays, so no Grade objects are held and a cell
+ * is only turned into a value when the table asks for it, which JTable does for the rows on screen.
+ * As in the index, a student has one row per course, with their highest grade in it.
+ * Sorting and filtering compute a new order of the row ids on a background task over those arrays, and
+ * the table switches to it on the EDT once it is ready; a newer sort or filter supersedes one in flight.
+ * <p>
+ * Apart from the constructor, the methods of this class must be called on the EDT.
+ */
+public class GradeTableModel extends AbstractTableModel {
+    public static final int USERNAME_COLUMN = 0;
+    public static final int COURSE_COLUMN = 1;
+    public static final int GRADE_COLUMN = 2;
+    private static final String[] COLUMN_NAMES = {"Username", "Course", "Grade"};
+    private static final long ROW_MASK = 0xffffffffL;
+    private static final long serialVersionUID = 1L;
+
+    private final TaskRunner tasks;
+    private final String loadKey;
+    private final String viewKey;
+
+    private Rows rows = Rows.of(new Grade[0]);
+    // The ids of the rows shown, in the order shown.
+    private int[] view = new int[0];
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private String filter = "";
+    // Bumped on every change of the sort or the filter, so that a view computed for an older one is not shown.
+    private int viewVersion;
+
+    /**
+     * Creates an empty GradeTableModel.
+     * @param tasks the runner to load, sort and filter the grades on.
+     * @param taskKey the key of the tasks of this model, which must differ from the keys of other tasks.
+     */
+    public GradeTableModel(TaskRunner tasks, String taskKey) {
+        this.tasks = tasks;
+        this.loadKey = taskKey + " load";
+        this.viewKey = taskKey + " view";
+    }
+
+    /**
+     * Gets grades in the background and shows them once they are compacted, sorted and filtered.
+     * @param request what is loaded, e.g. the username; loading the same request twice at once loads it once.
+     * @param source the task that gets the grades, such as a use case call.
+     * @param listener the listener to tell about the progress of the load and the number of grades loaded.
+     */
+    public void load(Object request, TaskRunner.Task<Grade[]> source, TaskRunner.Listener<Integer> listener) {
+        final int version = viewVersion;
+        final int column = sortColumn;
+        final boolean order = ascending;
+        final String text = filter;
+        tasks.run(loadKey, request, progress -> {
+            final Grade[] grades = source.call(progress);
+            progress.publish(String.format("Sorting %d grades...", grades.length));
+            final Rows loaded = Rows.of(grades);
+            return new Snapshot(loaded, computeView(loaded, column, order, text, progress), version);
+        }, new TaskRunner.Listener<Snapshot>() {
+            @Override
+            public void onProgress(String message) {
+                listener.onProgress(message);
+            }
+
+            @Override
+            public void onSuccess(Snapshot snapshot) {
+                rows = snapshot.rows;
+                show(snapshot.view);
+                if (snapshot.version != viewVersion) {
+                    // The sort or the filter changed while loading.
+                    refreshView();
+                }
+                listener.onSuccess(rows.size());
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                listener.onFailure(failure);
+            }
+
+            @Override
+            public void onCancelled() {
+                listener.onCancelled();
+            }
+        });
+    }
+
+    /**
+     * Sorts the rows by a column, ascending, or descending if they are already sorted ascending by it.
+     * @param column the column to sort by.
+     */
+    public void sortBy(int column) {
+        if (column < 0 || column >= COLUMN_NAMES.length) {
+            return;
+        }
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        refreshView();
+    }
+
+    /**
+     * Shows only the rows whose username or course contains a text, ignoring case.
+     * @param text the text to look for, or an empty string to show all the rows.
+     */
+    public void setFilter(String text) {
+        final String normalized = text.trim().toLowerCase(Locale.ROOT);
+        if (normalized.equals(filter)) {
+            return;
+        }
+        filter = normalized;
+        refreshView();
+    }
+
+    private void refreshView() {
+        final int version = ++viewVersion;
+        final Rows current = rows;
+        final int column = sortColumn;
+        final boolean order = ascending;
+        final String text = filter;
+        tasks.run(viewKey, version, progress -> computeView(current, column, order, text, progress),
+                new TaskRunner.Listener<int[]>() {
+                    @Override
+                    public void onSuccess(int[] result) {
+                        // A load since then brings its own view, or refreshes it again.
+                        if (current == rows && version == viewVersion) {
+                            show(result);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable failure) {
+                        // Keep showing the previous view.
+                    }
+                });
+    }
+
+    private void show(int[] newView) {
+        view = newView;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Returns the column the rows are sorted by.
+     * @return the column, or -1 if the rows are in the order they were loaded in.
+     */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    /**
+     * Returns whether the rows are sorted in ascending order.
+     * @return true if ascending.
+     */
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * Returns the number of grades loaded, including those the filter hides.
+     * @return the number of grades.
+     */
+    public int getGradeCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getRowCount() {
+        return view.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        if (column == GRADE_COLUMN) {
+            return Integer.class;
+        }
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        final int row = view[rowIndex];
+        switch (columnIndex) {
+            case USERNAME_COLUMN:
+                return rows.users[rows.userColumn[row]];
+            case COURSE_COLUMN:
+                return rows.courses[rows.courseColumn[row]];
+            case GRADE_COLUMN:
+                return rows.gradeColumn[row];
+            default:
+                throw new IndexOutOfBoundsException("no column " + columnIndex);
+        }
+    }
+
+    // Filters the rows, then sorts them on keys holding the sort value in the high half and the row id
+    // in the low half, so that a sort of primitive longs does the work and equal values keep their order.
+    private static int[] computeView(Rows rows, int column, boolean ascending, String filter,
+                                     TaskRunner.Progress progress) {
+        int[] selected = new int[rows.size()];
+        int count = 0;
+        if (filter.isEmpty()) {
+            for (int row = 0; row < selected.length; row++) {
+                selected[row] = row;
+            }
+            count = selected.length;
+        }
+        else {
+            final boolean[] userMatches = matches(rows.users, filter);
+            final boolean[] courseMatches = matches(rows.courses, filter);
+            for (int row = 0; row < rows.size(); row++) {
+                if (userMatches[rows.userColumn[row]] || courseMatches[rows.courseColumn[row]]) {
+                    selected[count++] = row;
+                }
+            }
+            selected = Arrays.copyOf(selected, count);
+        }
+        if (column < 0 || progress.isCancelled()) {
+            return selected;
+        }
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            final int row = selected[i];
+            final long value;
+            switch (column) {
+                case USERNAME_COLUMN:
+                    value = rows.userRanks[rows.userColumn[row]];
+                    break;
+                case COURSE_COLUMN:
+                    value = rows.courseRanks[rows.courseColumn[row]];
+                    break;
+                default:
+                    value = rows.gradeColumn[row];
+            }
+            final long signed;
+            if (ascending) {
+                signed = value;
+            }
+            else {
+                signed = -value;
+            }
+            keys[i] = signed << Integer.SIZE | row;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < count; i++) {
+            selected[i] = (int) (keys[i] & ROW_MASK);
+        }
+        return selected;
+    }
+
+    private static boolean[] matches(String[] dictionary, String filter) {
+        final boolean[] matches = new boolean[dictionary.length];
+        for (int id = 0; id < dictionary.length; id++) {
+            matches[id] = dictionary[id].toLowerCase(Locale.ROOT).contains(filter);
+        }
+        return matches;
+    }
+
+    // Loaded rows, with a view of them computed for a version of the sort and filter.
+    private static final class Snapshot {
+        private final Rows rows;
+        private final int[] view;
+        private final int version;
+
+        Snapshot(Rows rows, int[] view, int version) {
+            this.rows = rows;
+            this.view = view;
+            this.version = version;
+        }
+    }
+
+    // The grades stored column by column, as a GradeIndex compacts them; never changed once built.
+    private static final class Rows {
+        private final String[] users;
+        private final String[] courses;
+        // The position of each username and course id in alphabetical order.
+        private final int[] userRanks;
+        private final int[] courseRanks;
+        private final int[] userColumn;
+        private final int[] courseColumn;
+        private final int[] gradeColumn;
+
+        private Rows(GradeIndex index) {
+            users = dictionary(index.getUsernames());
+            courses = dictionary(index.getCourses());
+            userColumn = index.getUserColumn();
+            courseColumn = index.getCourseColumn();
+            gradeColumn = index.getGradeColumn();
+            userRanks = ranks(users);
+            courseRanks = ranks(courses);
+        }
+
+        static Rows of(Grade[] grades) {
+            final GradeIndex index = new GradeIndex();
+            for (Grade grade : grades) {
+                index.add(grade);
+            }
+            return new Rows(index);
+        }
+
+        int size() {
+            return gradeColumn.length;
+        }
+
+        private static String[] dictionary(String[] values) {
+            for (int id = 0; id < values.length; id++) {
+                if (values[id] == null) {
+                    values[id] = "";
+                }
+            }
+            return values;
+        }
+
+        private static int[] ranks(String[] values) {
+            final Integer[] order = new Integer[values.length];
+            for (int id = 0; id < values.length; id++) {
+                order[id] = id;
+            }
+            Arrays.sort(order, (left, right) -> String.CASE_INSENSITIVE_ORDER.compare(values[left], values[right]));
+            final int[] ranks = new int[values.length];
+            for (int rank = 0; rank < order.length; rank++) {
+                ranks[order[rank]] = rank;
+            }
+            return ranks;
+        }
+    }
+}
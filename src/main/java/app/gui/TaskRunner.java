@@ -0,0 +1,413 @@
+package app.gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the use case calls of the GUI on worker threads, so that the event dispatch thread never waits
+ * for the network, and hands their progress and results back on another executor, normally the EDT.
+ * <p>
+ * Tasks are keyed, e.g. by the button that started them, and at most one task runs per key:
+ * <ul>
+ *     <li>running a task with the same key and the same request as the one in flight does not start
+ *     another one; the new listener is told the result of the one in flight;</li>
+ *     <li>running a task with the same key and another request supersedes the one in flight, which is
+ *     cancelled;</li>
+ *     <li>cancel cancels the task in flight for a key.</li>
+ * </ul>
+ * A cancelled task's thread is interrupted and nothing it publishes or returns is delivered; its listeners
+ * are told it was cancelled instead. A blocking HTTP call in the task may still run to completion.
+ * <p>
+ * Tasks that change something, such as logging a grade, are run with runToCompletion instead: they are
+ * never cancelled, superseded or interrupted, since the change may already have been made, and the
+ * ones with the same key run one after the other in the order they were asked for.
+ */
+public class TaskRunner {
+    private final ExecutorService workers;
+    private final Consumer<Runnable> resultExecutor;
+    private final Map<String, Run<?>> running = new HashMap<>();
+    // The tasks run to completion, by key: the first is in flight and the others wait for it in order.
+    private final Map<String, Deque<Queued<?>>> queued = new HashMap<>();
+
+    /**
+     * Creates a TaskRunner.
+     * @param workers the threads to run tasks on; they are shut down with the runner.
+     * @param resultExecutor where to call the listeners, e.g. SwingUtilities::invokeLater.
+     */
+    public TaskRunner(ExecutorService workers, Consumer<Runnable> resultExecutor) {
+        this.workers = workers;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Creates a TaskRunner with its own daemon worker threads that calls its listeners on the EDT.
+     * @param threads the number of tasks that can run at the same time.
+     * @return the TaskRunner.
+     */
+    public static TaskRunner forSwing(int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new TaskRunner(Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "gui-task-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }), SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Runs a task in the background, unless the same request is already in flight for the key.
+     * @param key the key of the task, e.g. the name of the button that started it.
+     * @param request what the task was asked for, e.g. its arguments; equal requests are merged.
+     * @param task the task.
+     * @param listener the listener to tell about the progress and result of the task.
+     * @param <T> the type of the result.
+     * @return true if a task was started, false if the request was merged into the one in flight.
+     */
+    public <T> boolean run(String key, Object request, Task<T> task, Listener<T> listener) {
+        final Run<T> run;
+        final Run<?> superseded;
+        synchronized (this) {
+            final Run<?> existing = running.get(key);
+            if (existing != null && Objects.equals(existing.request, request)) {
+                @SuppressWarnings("unchecked")
+                final Run<T> merged = (Run<T>) existing;
+                merged.add(listener);
+                return false;
+            }
+            if (existing != null && markCancelled(existing)) {
+                superseded = existing;
+            }
+            else {
+                superseded = null;
+            }
+            run = new Run<>(request, listener);
+            running.put(key, run);
+        }
+        if (superseded != null) {
+            stop(superseded);
+        }
+        final Future<?> future = workers.submit(() -> execute(key, run, task));
+        synchronized (this) {
+            run.future = future;
+            if (run.cancelled) {
+                future.cancel(true);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a task in the background that is never cancelled, superseded or interrupted, after the tasks
+     * already asked for with the same key, unless the last of them is the same request.
+     * @param key the key of the task, e.g. the name of the button that started it.
+     * @param request what the task was asked for, e.g. its arguments; equal requests in a row are merged.
+     * @param task the task.
+     * @param listener the listener to tell about the progress and result of the task.
+     * @param <T> the type of the result.
+     * @return true if the task was queued, false if the request was merged into the last one queued.
+     */
+    public <T> boolean runToCompletion(String key, Object request, Task<T> task, Listener<T> listener) {
+        final Queued<T> next = new Queued<>(new Run<>(request, listener), task);
+        synchronized (this) {
+            final Deque<Queued<?>> queue = queued.get(key);
+            if (queue != null) {
+                final Queued<?> last = queue.peekLast();
+                if (Objects.equals(last.run.request, request)) {
+                    @SuppressWarnings("unchecked")
+                    final Run<T> merged = (Run<T>) last.run;
+                    merged.add(listener);
+                    return false;
+                }
+                queue.addLast(next);
+                return true;
+            }
+            final Deque<Queued<?>> newQueue = new ArrayDeque<>();
+            newQueue.addLast(next);
+            queued.put(key, newQueue);
+        }
+        try {
+            workers.execute(() -> drain(key));
+        }
+        catch (RejectedExecutionException event) {
+            synchronized (this) {
+                queued.remove(key);
+            }
+            throw event;
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the task in flight for a key. Tasks run to completion are not cancelled.
+     * @param key the key of the task.
+     * @return true if a task was cancelled, false if none was in flight.
+     */
+    public boolean cancel(String key) {
+        final Run<?> run;
+        synchronized (this) {
+            run = running.remove(key);
+            if (run == null || !markCancelled(run)) {
+                return false;
+            }
+        }
+        stop(run);
+        return true;
+    }
+
+    /**
+     * Returns whether a task is in flight for a key.
+     * @param key the key of the task.
+     * @return true if a task is in flight.
+     */
+    public synchronized boolean isRunning(String key) {
+        return running.containsKey(key) || queued.containsKey(key);
+    }
+
+    /**
+     * Cancels every task in flight that can be cancelled and stops the worker threads once the tasks
+     * run to completion have finished.
+     */
+    public void shutdown() {
+        final List<String> keys;
+        synchronized (this) {
+            keys = new ArrayList<>(running.keySet());
+        }
+        for (String key : keys) {
+            cancel(key);
+        }
+        workers.shutdown();
+    }
+
+    private <T> void execute(String key, Run<T> run, Task<T> task) {
+        complete(run, task, () -> {
+            synchronized (this) {
+                if (run.cancelled) {
+                    return false;
+                }
+                // Once finished, the task can no longer be cancelled or superseded.
+                running.remove(key, run);
+                run.finished = true;
+                return true;
+            }
+        });
+    }
+
+    // Runs the tasks queued for a key one after the other, until there are none left.
+    private void drain(String key) {
+        while (true) {
+            final Deque<Queued<?>> queue;
+            final Queued<?> next;
+            synchronized (this) {
+                queue = queued.get(key);
+                next = queue.peekFirst();
+            }
+            complete(next, () -> {
+                synchronized (this) {
+                    // Once finished, no other request can be merged into it.
+                    queue.pollFirst();
+                    return true;
+                }
+            });
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    queued.remove(key);
+                    return;
+                }
+            }
+        }
+    }
+
+    private <T> void complete(Queued<T> next, BooleanSupplier finish) {
+        complete(next.run, next.task, finish);
+    }
+
+    // Runs a task and delivers its result, unless finish, called once the task has returned, says not to.
+    private <T> void complete(Run<T> run, Task<T> task, BooleanSupplier finish) {
+        T result = null;
+        Throwable failure = null;
+        try {
+            result = task.call(new Progress() {
+                @Override
+                public void publish(String message) {
+                    deliver(run, listener -> listener.onProgress(message));
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return run.isCancelled();
+                }
+            });
+        }
+        catch (Exception | Error event) {
+            failure = event;
+        }
+        if (!finish.getAsBoolean()) {
+            return;
+        }
+        final T value = result;
+        final Throwable error = failure;
+        deliver(run, listener -> {
+            if (error == null) {
+                listener.onSuccess(value);
+            }
+            else {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    // Called with the lock held; returns false if the task had already finished or been cancelled.
+    private boolean markCancelled(Run<?> run) {
+        if (run.cancelled || run.finished) {
+            return false;
+        }
+        run.cancelled = true;
+        return true;
+    }
+
+    // Interrupts a task marked cancelled and tells its listeners.
+    private void stop(Run<?> run) {
+        final Future<?> future;
+        synchronized (this) {
+            future = run.future;
+        }
+        if (future != null) {
+            future.cancel(true);
+        }
+        final List<? extends Listener<?>> listeners = run.snapshot();
+        resultExecutor.accept(() -> {
+            for (Listener<?> listener : listeners) {
+                listener.onCancelled();
+            }
+        });
+    }
+
+    private <T> void deliver(Run<T> run, Consumer<Listener<T>> action) {
+        resultExecutor.accept(() -> {
+            if (run.isCancelled()) {
+                return;
+            }
+            for (Listener<T> listener : run.snapshot()) {
+                action.accept(listener);
+            }
+        });
+    }
+
+    /**
+     * A task to run in the background, such as a use case call.
+     * @param <T> the type of the result.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        /**
+         * Runs the task on a worker thread.
+         * @param progress where to report progress and partial results.
+         * @return the result.
+         * @throws Exception if the task fails.
+         */
+        T call(Progress progress) throws Exception;
+    }
+
+    /**
+     * Lets a running task report on its progress and find out whether it was cancelled.
+     */
+    public interface Progress {
+        /**
+         * Reports progress or a partial result, which is delivered to the listeners unless the task is cancelled.
+         * @param message the progress message.
+         */
+        void publish(String message);
+
+        /**
+         * Returns whether the task was cancelled or superseded, so that it can stop early.
+         * @return true if the task was cancelled.
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Is told about the progress and the result of a task, on the result executor.
+     * @param <T> the type of the result.
+     */
+    public interface Listener<T> {
+        /**
+         * Called with the progress the task publishes.
+         * @param message the progress message.
+         */
+        default void onProgress(String message) {
+        }
+
+        /**
+         * Called with the result once the task has succeeded.
+         * @param result the result.
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called once the task has failed.
+         * @param failure what the task threw.
+         */
+        void onFailure(Throwable failure);
+
+        /**
+         * Called once the task has been cancelled or superseded.
+         */
+        default void onCancelled() {
+        }
+    }
+
+    // A task run to completion and what it was asked for, waiting for its turn.
+    private static final class Queued<T> {
+        private final Run<T> run;
+        private final Task<T> task;
+
+        Queued(Run<T> run, Task<T> task) {
+            this.run = run;
+            this.task = task;
+        }
+    }
+
+    // A task in flight and the listeners waiting for it.
+    private static final class Run<T> {
+        private final Object request;
+        private final List<Listener<T>> listeners = new ArrayList<>();
+        // Guarded by the TaskRunner.
+        private Future<?> future;
+        private volatile boolean cancelled;
+        private boolean finished;
+
+        Run(Object request, Listener<T> listener) {
+            this.request = request;
+            listeners.add(listener);
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void add(Listener<T> listener) {
+            synchronized (listeners) {
+                listeners.add(listener);
+            }
+        }
+
+        List<Listener<T>> snapshot() {
+            synchronized (listeners) {
+                return new ArrayList<>(listeners);
+            }
+        }
+    }
+}
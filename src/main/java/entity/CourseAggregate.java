@@ -0,0 +1,100 @@
+package entity;
+
+/**
+ * A snapshot of the grades of a team in one course: how many members have a grade,
+ * their sum, the lowest and the highest grade.
+ */
+public class CourseAggregate {
+    private final String course;
+    private final int teamSize;
+    private final int count;
+    private final long sum;
+    private final int min;
+    private final Grade top;
+
+    public CourseAggregate(String course, int teamSize, int count, long sum, int min, Grade top) {
+        this.course = course;
+        this.teamSize = teamSize;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.top = top;
+    }
+
+    @Override
+    public String toString() {
+        return "CourseAggregate{" + "course='" + course + '\''
+                + ", teamSize=" + teamSize
+                + ", count=" + count
+                + ", sum=" + sum
+                + ", min=" + min
+                + ", top=" + top + '}';
+    }
+
+    /**
+     * Returns the course.
+     * @return the course.
+     */
+    public String getCourse() {
+        return course;
+    }
+
+    /**
+     * Returns the number of members in the team.
+     * @return the team size.
+     */
+    public int getTeamSize() {
+        return teamSize;
+    }
+
+    /**
+     * Returns the number of team members with a grade in the course.
+     * @return the number of grades.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the grades in the course.
+     * @return the sum of the grades.
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the lowest grade in the course.
+     * @return the lowest grade, or 0 if there are no grades.
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the highest grade in the course, along with who earned it.
+     * @return the highest grade, or null if there are no grades.
+     */
+    public Grade getTop() {
+        return top;
+    }
+
+    /**
+     * Returns the average grade in the course.
+     * @return the average grade, or 0 if there are no grades.
+     */
+    public float getAverage() {
+        if (count == 0) {
+            return 0;
+        }
+        return (float) sum / count;
+    }
+
+    /**
+     * Returns whether every team member has a grade in the course.
+     * @return true if the aggregate covers the whole team.
+     */
+    public boolean isComplete() {
+        return count == teamSize;
+    }
+}
@@ -0,0 +1,399 @@
+package entity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of grades stored column by column.
+ * Usernames and courses are dictionary encoded to int ids, and the grades are kept in int arrays,
+ * so aggregations run over primitive arrays without creating Grade objects or comparing strings.
+ * A student has at most one grade per course, the highest one, as elsewhere in this code; a student who
+ * took a course again keeps the better grade.
+ * This class is thread safe.
+ */
+public class GradeIndex {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> userIds = new HashMap<>();
+    private final Map<String, Integer> courseIds = new HashMap<>();
+    private String[] users = new String[INITIAL_CAPACITY];
+    private String[] courses = new String[INITIAL_CAPACITY];
+    private IntList[] rowsByUser = new IntList[INITIAL_CAPACITY];
+    private IntList[] rowsByCourse = new IntList[INITIAL_CAPACITY];
+    private boolean[] historyLoaded = new boolean[INITIAL_CAPACITY];
+
+    // The grade columns: row i is the grade gradeColumn[i] of user userColumn[i] in course courseColumn[i].
+    private int[] userColumn = new int[INITIAL_CAPACITY];
+    private int[] courseColumn = new int[INITIAL_CAPACITY];
+    private int[] gradeColumn = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Adds a grade, keeping the student's earlier grade in the same course instead if it is higher.
+     * @param grade the grade to add.
+     */
+    public synchronized void add(Grade grade) {
+        final int user = userId(grade.getUsername());
+        final int course = courseId(grade.getCourse());
+        final int row = findRow(user, course);
+        if (row == NOT_FOUND) {
+            append(user, course, grade.getGrade());
+        }
+        else if (grade.getGrade() > gradeColumn[row]) {
+            gradeColumn[row] = grade.getGrade();
+        }
+    }
+
+    /**
+     * Replaces the grades of a student with their full history, as returned by GradeDataBase.getGrades,
+     * and remembers that the index holds it. Within the history, the highest grade in a course is kept.
+     * @param username the username of the student.
+     * @param grades all the grades of the student.
+     */
+    public synchronized void load(String username, Grade[] grades) {
+        final int user = userId(username);
+        // The courses seen in this history, whose grades are no longer compared with older ones.
+        final Set<Integer> loaded = new HashSet<>();
+        for (Grade grade : grades) {
+            final int course = courseId(grade.getCourse());
+            final int row = findRow(user, course);
+            final boolean first = loaded.add(course);
+            if (row == NOT_FOUND) {
+                append(user, course, grade.getGrade());
+            }
+            else if (first || grade.getGrade() > gradeColumn[row]) {
+                gradeColumn[row] = grade.getGrade();
+            }
+        }
+        historyLoaded[user] = true;
+    }
+
+    /**
+     * Forgets that the index holds the full history of a student, e.g. because the student logged a grade.
+     * The grades stay in the index until the history is loaded again.
+     * @param username the username of the student.
+     */
+    public synchronized void unload(String username) {
+        final int user = lookUp(userIds, username);
+        if (user != NOT_FOUND) {
+            historyLoaded[user] = false;
+        }
+    }
+
+    /**
+     * Returns whether the full grade history of a student has been loaded, so that a missing
+     * grade means the student has no grade in that course.
+     * @param username the username of the student.
+     * @return true if the student's history was loaded.
+     */
+    public synchronized boolean isLoaded(String username) {
+        final Integer user = userIds.get(username);
+        return user != null && historyLoaded[user];
+    }
+
+    /**
+     * Returns the number of grades in the index.
+     * @return the number of grades.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the usernames by id: the username of user id i is element i.
+     * @return a copy of the username dictionary.
+     */
+    public synchronized String[] getUsernames() {
+        return Arrays.copyOf(users, userIds.size());
+    }
+
+    /**
+     * Returns the courses by id: the course of course id i is element i.
+     * @return a copy of the course dictionary.
+     */
+    public synchronized String[] getCourses() {
+        return Arrays.copyOf(courses, courseIds.size());
+    }
+
+    /**
+     * Returns the user id of every row, in the order the rows were added.
+     * @return a copy of the user column.
+     */
+    public synchronized int[] getUserColumn() {
+        return Arrays.copyOf(userColumn, size);
+    }
+
+    /**
+     * Returns the course id of every row, in the order the rows were added.
+     * @return a copy of the course column.
+     */
+    public synchronized int[] getCourseColumn() {
+        return Arrays.copyOf(courseColumn, size);
+    }
+
+    /**
+     * Returns the grade of every row, in the order the rows were added.
+     * @return a copy of the grade column.
+     */
+    public synchronized int[] getGradeColumn() {
+        return Arrays.copyOf(gradeColumn, size);
+    }
+
+    /**
+     * Returns the grade of a student in a course.
+     * @param username the username of the student.
+     * @param course the course.
+     * @return the grade, or null if the index has none.
+     */
+    public synchronized Grade getGrade(String username, String course) {
+        final int row = findRow(lookUp(userIds, username), lookUp(courseIds, course));
+        if (row == NOT_FOUND) {
+            return null;
+        }
+        return toGrade(row);
+    }
+
+    /**
+     * Returns all the grades of a student.
+     * @param username the username of the student.
+     * @return the grades, empty if the index has none.
+     */
+    public synchronized Grade[] getGrades(String username) {
+        final int user = lookUp(userIds, username);
+        if (user == NOT_FOUND) {
+            return new Grade[0];
+        }
+        final IntList rows = rowsByUser[user];
+        final Grade[] result = new Grade[rows.size];
+        for (int i = 0; i < rows.size; i++) {
+            result[i] = toGrade(rows.values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the grades in a course as a primitive array.
+     * @param course the course.
+     * @return the grades in the course, in the order they were added.
+     */
+    public synchronized int[] getCourseGrades(String course) {
+        final int courseId = lookUp(courseIds, course);
+        if (courseId == NOT_FOUND) {
+            return new int[0];
+        }
+        final IntList rows = rowsByCourse[courseId];
+        final int[] result = new int[rows.size];
+        for (int i = 0; i < rows.size; i++) {
+            result[i] = gradeColumn[rows.values[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of grades in a course, among the given students only.
+     * @param course the course.
+     * @param usernames the students to count, or null for all of them.
+     * @return the number of grades.
+     */
+    public synchronized int count(String course, String[] usernames) {
+        final IntList rows = courseRows(course);
+        final boolean[] included = includedUsers(usernames);
+        int count = 0;
+        for (int i = 0; i < rows.size; i++) {
+            if (included == null || included[userColumn[rows.values[i]]]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of the grades in a course, among the given students only.
+     * @param course the course.
+     * @param usernames the students to include, or null for all of them.
+     * @return the sum of the grades.
+     */
+    public synchronized long sum(String course, String[] usernames) {
+        final IntList rows = courseRows(course);
+        final boolean[] included = includedUsers(usernames);
+        long sum = 0;
+        for (int i = 0; i < rows.size; i++) {
+            final int row = rows.values[i];
+            if (included == null || included[userColumn[row]]) {
+                sum += gradeColumn[row];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the average of the grades in a course, among the given students only.
+     * @param course the course.
+     * @param usernames the students to include, or null for all of them.
+     * @return the average grade, or 0 if there are none.
+     */
+    public synchronized float average(String course, String[] usernames) {
+        final int count = count(course, usernames);
+        if (count == 0) {
+            return 0;
+        }
+        return (float) sum(course, usernames) / count;
+    }
+
+    /**
+     * Returns the highest grade in a course, among the given students only.
+     * @param course the course.
+     * @param usernames the students to include, or null for all of them.
+     * @return the highest grade, or null if there are none.
+     */
+    public synchronized Grade max(String course, String[] usernames) {
+        return extreme(course, usernames, true);
+    }
+
+    /**
+     * Returns the lowest grade in a course, among the given students only.
+     * @param course the course.
+     * @param usernames the students to include, or null for all of them.
+     * @return the lowest grade, or null if there are none.
+     */
+    public synchronized Grade min(String course, String[] usernames) {
+        return extreme(course, usernames, false);
+    }
+
+    private Grade extreme(String course, String[] usernames, boolean highest) {
+        final IntList rows = courseRows(course);
+        final boolean[] included = includedUsers(usernames);
+        int best = NOT_FOUND;
+        for (int i = 0; i < rows.size; i++) {
+            final int row = rows.values[i];
+            if ((included == null || included[userColumn[row]]) && (best == NOT_FOUND
+                    || highest && gradeColumn[row] > gradeColumn[best]
+                    || !highest && gradeColumn[row] < gradeColumn[best])) {
+                best = row;
+            }
+        }
+        if (best == NOT_FOUND) {
+            return null;
+        }
+        return toGrade(best);
+    }
+
+    private void append(int user, int course, int grade) {
+        if (size == gradeColumn.length) {
+            final int capacity = size * 2;
+            userColumn = Arrays.copyOf(userColumn, capacity);
+            courseColumn = Arrays.copyOf(courseColumn, capacity);
+            gradeColumn = Arrays.copyOf(gradeColumn, capacity);
+        }
+        userColumn[size] = user;
+        courseColumn[size] = course;
+        gradeColumn[size] = grade;
+        rowsByUser[user].add(size);
+        rowsByCourse[course].add(size);
+        size++;
+    }
+
+    private IntList courseRows(String course) {
+        final int courseId = lookUp(courseIds, course);
+        if (courseId == NOT_FOUND) {
+            return IntList.EMPTY;
+        }
+        return rowsByCourse[courseId];
+    }
+
+    private boolean[] includedUsers(String[] usernames) {
+        if (usernames == null) {
+            return null;
+        }
+        final boolean[] included = new boolean[userIds.size()];
+        for (String username : usernames) {
+            final int user = lookUp(userIds, username);
+            if (user != NOT_FOUND) {
+                included[user] = true;
+            }
+        }
+        return included;
+    }
+
+    private int findRow(int user, int course) {
+        if (user == NOT_FOUND || course == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        final IntList rows = rowsByUser[user];
+        for (int i = 0; i < rows.size; i++) {
+            if (courseColumn[rows.values[i]] == course) {
+                return rows.values[i];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private Grade toGrade(int row) {
+        return Grade.builder()
+                .username(users[userColumn[row]])
+                .course(courses[courseColumn[row]])
+                .grade(gradeColumn[row])
+                .build();
+    }
+
+    private int userId(String username) {
+        Integer id = userIds.get(username);
+        if (id == null) {
+            id = userIds.size();
+            if (id == users.length) {
+                users = Arrays.copyOf(users, id * 2);
+                rowsByUser = Arrays.copyOf(rowsByUser, id * 2);
+                historyLoaded = Arrays.copyOf(historyLoaded, id * 2);
+            }
+            users[id] = username;
+            rowsByUser[id] = new IntList();
+            userIds.put(username, id);
+        }
+        return id;
+    }
+
+    private int courseId(String course) {
+        Integer id = courseIds.get(course);
+        if (id == null) {
+            id = courseIds.size();
+            if (id == courses.length) {
+                courses = Arrays.copyOf(courses, id * 2);
+                rowsByCourse = Arrays.copyOf(rowsByCourse, id * 2);
+            }
+            courses[id] = course;
+            rowsByCourse[id] = new IntList();
+            courseIds.put(course, id);
+        }
+        return id;
+    }
+
+    private static int lookUp(Map<String, Integer> ids, String key) {
+        final Integer id = ids.get(key);
+        if (id == null) {
+            return NOT_FOUND;
+        }
+        return id;
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList {
+        private static final IntList EMPTY = new IntList();
+        private static final int INITIAL_LIST_CAPACITY = 4;
+
+        private int[] values = new int[INITIAL_LIST_CAPACITY];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of all the operations of the application, by group and name.
+ * Once published, every operation is registered as an MBean named
+ * {@code <domain>:type=<group>,name=<name>}, including operations first used after publishing.
+ */
+public class MetricsRegistry {
+    public static final String DEFAULT_DOMAIN = "gradeapi";
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private MBeanServer mbeanServer;
+    private String domain;
+
+    /**
+     * Returns the registry the use cases record into.
+     * @return the default registry.
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the metrics of an operation, creating them the first time.
+     * @param group the group of the operation, e.g. GradeDataBase.
+     * @param name the name of the operation, e.g. getGrade.
+     * @return the metrics of the operation.
+     */
+    public OperationMetrics operation(String group, String name) {
+        final String key = group + "." + name;
+        OperationMetrics metrics = operations.get(key);
+        if (metrics == null) {
+            final OperationMetrics created = new OperationMetrics(group, name);
+            metrics = operations.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+                register(created);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of all the operations used so far.
+     * @return the metrics, sorted by group and name.
+     */
+    public List<OperationMetrics> getOperations() {
+        final List<OperationMetrics> result = new ArrayList<>(operations.values());
+        result.sort((first, second) -> {
+            final int byGroup = first.getGroup().compareTo(second.getGroup());
+            if (byGroup != 0) {
+                return byGroup;
+            }
+            return first.getName().compareTo(second.getName());
+        });
+        return result;
+    }
+
+    /**
+     * Registers every operation as an MBean on the platform MBean server.
+     * @param domainInput the JMX domain to register them under.
+     */
+    public void publish(String domainInput) {
+        synchronized (this) {
+            this.domain = domainInput;
+            this.mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        }
+        for (OperationMetrics metrics : getOperations()) {
+            register(metrics);
+        }
+    }
+
+    /**
+     * Returns a text report of every operation, one line each, with latencies in microseconds.
+     * @return the report.
+     */
+    public String report() {
+        final StringBuilder report = new StringBuilder(String.format("%-48s %10s %8s %12s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "bytes", "p50(us)", "p99(us)", "p999(us)", "max(us)"));
+        for (OperationMetrics metrics : getOperations()) {
+            report.append(String.format("%-48s %10d %8d %12d %10d %10d %10d %10d%n",
+                    metrics.getGroup() + "." + metrics.getName(), metrics.getCount(), metrics.getErrorCount(),
+                    metrics.getBytesReceived(), metrics.getP50Micros(), metrics.getP99Micros(),
+                    metrics.getP999Micros(), metrics.getMaxMicros()));
+        }
+        return report.toString();
+    }
+
+    private void register(OperationMetrics metrics) {
+        final MBeanServer server;
+        final String registerDomain;
+        synchronized (this) {
+            server = mbeanServer;
+            registerDomain = domain;
+        }
+        if (server == null) {
+            return;
+        }
+        try {
+            final ObjectName objectName = new ObjectName(registerDomain + ":type=" + ObjectName.quote(metrics.getGroup())
+                    + ",name=" + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        }
+        catch (JMException event) {
+            // Another registry in the same JVM may have taken the name; the metrics are still recorded.
+        }
+    }
+}
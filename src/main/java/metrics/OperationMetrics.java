@@ -0,0 +1,161 @@
+package metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The call count, error count, bytes received and latency histogram of one operation,
+ * such as a GradeDataBase method, a use case or an endpoint of the grade API.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+    private static final double P50 = 50;
+    private static final double P99 = 99;
+    private static final double P999 = 99.9;
+
+    private final String group;
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    OperationMetrics(String group, String name) {
+        this.group = group;
+        this.name = name;
+    }
+
+    /**
+     * Returns the group of the operation, e.g. GradeDataBase.
+     * @return the group.
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns the name of the operation, e.g. getGrade.
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the latency histogram of the operation.
+     * @return the histogram, in nanoseconds.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Records a call.
+     * @param latencyNanos how long the call took.
+     * @param failed whether the call failed.
+     */
+    public void record(long latencyNanos, boolean failed) {
+        latencies.record(latencyNanos);
+        if (failed) {
+            errorCount.increment();
+        }
+    }
+
+    /**
+     * Records a number of response bytes read by the operation.
+     * @param bytes the number of bytes.
+     */
+    public void recordBytes(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Runs a call and records it.
+     * @param call the call.
+     * @param <T> the type of the result.
+     * @return the result of the call.
+     */
+    public <T> T time(Supplier<T> call) {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final T result = call.get();
+            failed = false;
+            return result;
+        }
+        finally {
+            record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Runs a call without a result and records it.
+     * @param call the call.
+     */
+    public void run(Runnable call) {
+        time(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Starts an asynchronous call and records it once its future completes.
+     * @param call the call.
+     * @param <T> the type of the result.
+     * @return the future of the call.
+     */
+    public <T> CompletableFuture<T> timeAsync(Supplier<CompletableFuture<T>> call) {
+        final long start = System.nanoTime();
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        }
+        catch (RuntimeException | Error event) {
+            record(System.nanoTime() - start, true);
+            throw event;
+        }
+        future.whenComplete((result, failure) -> record(System.nanoTime() - start, failure != null));
+        return future;
+    }
+
+    @Override
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMean());
+    }
+
+    @Override
+    public long getP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(P50));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(P99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getPercentile(P999));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getMax());
+    }
+}
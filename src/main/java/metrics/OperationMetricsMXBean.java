@@ -0,0 +1,54 @@
+package metrics;
+
+/**
+ * The JMX view of the metrics of one operation. Latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+    /**
+     * Returns the number of calls.
+     * @return the number of calls.
+     */
+    long getCount();
+
+    /**
+     * Returns the number of calls that threw or completed exceptionally.
+     * @return the number of errors.
+     */
+    long getErrorCount();
+
+    /**
+     * Returns the number of response bytes read, for operations that talk to the API.
+     * @return the number of bytes received.
+     */
+    long getBytesReceived();
+
+    /**
+     * Returns the mean latency.
+     * @return the mean latency in microseconds.
+     */
+    long getMeanMicros();
+
+    /**
+     * Returns the median latency.
+     * @return the 50th percentile latency in microseconds.
+     */
+    long getP50Micros();
+
+    /**
+     * Returns the 99th percentile latency.
+     * @return the 99th percentile latency in microseconds.
+     */
+    long getP99Micros();
+
+    /**
+     * Returns the 99.9th percentile latency.
+     * @return the 99.9th percentile latency in microseconds.
+     */
+    long getP999Micros();
+
+    /**
+     * Returns the highest latency.
+     * @return the maximum latency in microseconds.
+     */
+    long getMaxMicros();
+}
@@ -0,0 +1,44 @@
+package server;
+
+import java.util.Random;
+
+/**
+ * A distribution of response latencies for an endpoint of the LocalGradeApiServer.
+ */
+public interface Latency {
+    /**
+     * Returns the next latency drawn from the distribution.
+     * @param random the source of randomness.
+     * @return the latency in milliseconds.
+     */
+    long nextMillis(Random random);
+
+    /**
+     * Returns a distribution that is always the same latency.
+     * @param millis the latency in milliseconds.
+     * @return the distribution.
+     */
+    static Latency fixed(long millis) {
+        return random -> millis;
+    }
+
+    /**
+     * Returns a distribution of latencies spread evenly between two bounds.
+     * @param minMillis the lowest latency in milliseconds.
+     * @param maxMillis the highest latency in milliseconds.
+     * @return the distribution.
+     */
+    static Latency uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Returns a log-normal distribution of latencies, which has the long tail real services show.
+     * @param medianMillis the median latency in milliseconds.
+     * @param sigma the spread; 0.5 gives a 99th percentile of about three times the median.
+     * @return the distribution.
+     */
+    static Latency logNormal(long medianMillis, double sigma) {
+        return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+}
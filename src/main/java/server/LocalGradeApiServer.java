@@ -0,0 +1,608 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the grade API, for load testing and benchmarking without the real service.
+ * It serves the same /signUp, /grade, /team and /leaveTeam endpoints with the same response shapes,
+ * status_code and message included, from an in-memory data set that can be seeded.
+ * <p>
+ * Every endpoint can be given a latency distribution, an error rate (answered with status 500) and
+ * a throttle (requests per second above which it answers with status 429). Point a MongoGradeDataBase
+ * at it with the base URL from getUrl() and one of the seeded tokens.
+ */
+public class LocalGradeApiServer {
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int UNAUTHORIZED = 401;
+    private static final int NOT_FOUND = 404;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int INTERNAL_ERROR = 500;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int MAX_GRADE = 100;
+    private static final int DEFAULT_PORT = 8080;
+
+    private static final String STATUS_CODE = "status_code";
+    private static final String MESSAGE = "message";
+    private static final String USERNAME = "username";
+    private static final String COURSE = "course";
+    private static final String GRADE = "grade";
+    private static final String NAME = "name";
+    private static final String TOKEN = "token";
+
+    /**
+     * The endpoints of the grade API.
+     */
+    public enum Endpoint {
+        SIGN_UP("GET", "/signUp"),
+        GET_GRADE("GET", "/grade"),
+        LOG_GRADE("POST", "/grade"),
+        GET_TEAM("GET", "/team"),
+        FORM_TEAM("POST", "/team"),
+        JOIN_TEAM("PUT", "/team"),
+        LEAVE_TEAM("PUT", "/leaveTeam");
+
+        private final String method;
+        private final String path;
+
+        Endpoint(String method, String path) {
+            this.method = method;
+            this.path = path;
+        }
+
+        static Endpoint of(String method, String path) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.method.equals(method) && endpoint.path.equals(path)) {
+                    return endpoint;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random;
+    private final Map<Endpoint, Faults> faults;
+
+    // The data set, guarded by this.
+    private final Map<String, String> usersByToken = new HashMap<>();
+    private final Map<String, Map<String, Integer>> grades = new HashMap<>();
+    private final Map<String, List<String>> teams = new LinkedHashMap<>();
+    private final Map<String, String> teamOfUser = new HashMap<>();
+
+    LocalGradeApiServer(LocalGradeApiServerBuilder builder) throws IOException {
+        this.random = new Random(builder.seed);
+        this.faults = builder.faults;
+        this.usersByToken.putAll(builder.usersByToken);
+        for (String username : usersByToken.values()) {
+            grades.put(username, new LinkedHashMap<>());
+        }
+        for (String[] grade : builder.grades) {
+            gradesOf(grade[0]).put(grade[1], Integer.parseInt(grade[2]));
+        }
+        for (Map.Entry<String, List<String>> team : builder.teams.entrySet()) {
+            teams.put(team.getKey(), new ArrayList<>(team.getValue()));
+            for (String member : team.getValue()) {
+                teamOfUser.put(member, team.getKey());
+            }
+        }
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "local-grade-api");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", builder.port), 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts serving requests.
+     * @return this server.
+     */
+    public LocalGradeApiServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * Stops serving requests.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the base URL of the server, to pass to MongoGradeDataBase.
+     * @return the base URL, without a trailing slash.
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the number of requests an endpoint has received, including failed and throttled ones.
+     * @param endpoint the endpoint.
+     * @return the number of requests.
+     */
+    public long getRequestCount(Endpoint endpoint) {
+        return faults.get(endpoint).requestCount();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final Endpoint endpoint = Endpoint.of(exchange.getRequestMethod(), exchange.getRequestURI().getPath());
+            if (endpoint == null) {
+                respond(exchange, error(NOT_FOUND, "No such endpoint"));
+                return;
+            }
+            final Faults endpointFaults = faults.get(endpoint);
+            final JSONObject fault = endpointFaults.inject(random);
+            if (fault != null) {
+                respond(exchange, fault);
+                return;
+            }
+            respond(exchange, answer(endpoint, exchange));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private JSONObject answer(Endpoint endpoint, HttpExchange exchange) throws IOException {
+        final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (endpoint == Endpoint.SIGN_UP) {
+            return signUp(query.get(USERNAME));
+        }
+        final String user;
+        synchronized (this) {
+            user = usersByToken.get(exchange.getRequestHeaders().getFirst(TOKEN));
+        }
+        if (user == null) {
+            return error(UNAUTHORIZED, "Invalid token");
+        }
+        final JSONObject body;
+        try {
+            body = readBody(exchange);
+        }
+        catch (JSONException event) {
+            return error(BAD_REQUEST, "Invalid request body");
+        }
+        switch (endpoint) {
+            case GET_GRADE:
+                if (query.containsKey(COURSE)) {
+                    return getGrade(query.get(USERNAME), query.get(COURSE));
+                }
+                return getGrades(query.get(USERNAME));
+            case LOG_GRADE:
+                return logGrade(user, body.optString(COURSE, null), body.optInt(GRADE, -1));
+            case GET_TEAM:
+                return getTeam(user);
+            case FORM_TEAM:
+                return formTeam(user, body.optString(NAME, null));
+            case JOIN_TEAM:
+                return joinTeam(user, body.optString(NAME, null));
+            case LEAVE_TEAM:
+                return leaveTeam(user);
+            default:
+                return error(NOT_FOUND, "No such endpoint");
+        }
+    }
+
+    // The endpoints, answered from the data set.
+
+    private synchronized JSONObject signUp(String username) {
+        if (username == null || username.isEmpty()) {
+            return error(BAD_REQUEST, "username is required");
+        }
+        if (grades.containsKey(username)) {
+            return error(BAD_REQUEST, "Username already exists");
+        }
+        final String token = tokenFor(username);
+        usersByToken.put(token, username);
+        grades.put(username, new LinkedHashMap<>());
+        return ok("User created").put(TOKEN, token);
+    }
+
+    private synchronized JSONObject getGrade(String username, String course) {
+        final Integer grade = grades.getOrDefault(username, Map.of()).get(course);
+        if (grade == null) {
+            return error(NOT_FOUND, "Grade not found");
+        }
+        return ok("Grade found").put(GRADE, grade(username, course, grade));
+    }
+
+    private synchronized JSONObject getGrades(String username) {
+        if (!grades.containsKey(username)) {
+            return error(NOT_FOUND, "User not found");
+        }
+        final JSONArray result = new JSONArray();
+        for (Map.Entry<String, Integer> grade : gradesOf(username).entrySet()) {
+            result.put(grade(username, grade.getKey(), grade.getValue()));
+        }
+        return ok("Grades found").put("grades", result);
+    }
+
+    private synchronized JSONObject logGrade(String user, String course, int grade) {
+        if (course == null || grade < 0 || grade > MAX_GRADE) {
+            return error(BAD_REQUEST, "A course and a grade between 0 and 100 are required");
+        }
+        gradesOf(user).put(course, grade);
+        return ok("Grade logged");
+    }
+
+    private synchronized JSONObject getTeam(String user) {
+        final String team = teamOfUser.get(user);
+        if (team == null) {
+            return error(NOT_FOUND, "You are not in a team");
+        }
+        return ok("Team found").put("team", team(team));
+    }
+
+    private synchronized JSONObject formTeam(String user, String name) {
+        if (name == null) {
+            return error(BAD_REQUEST, "name is required");
+        }
+        if (teams.containsKey(name)) {
+            return error(BAD_REQUEST, "Team already exists");
+        }
+        if (teamOfUser.containsKey(user)) {
+            return error(BAD_REQUEST, "You are already in a team");
+        }
+        final List<String> members = new ArrayList<>();
+        members.add(user);
+        teams.put(name, members);
+        teamOfUser.put(user, name);
+        return ok("Team formed").put("team", team(name));
+    }
+
+    private synchronized JSONObject joinTeam(String user, String name) {
+        if (!teams.containsKey(name)) {
+            return error(NOT_FOUND, "Team not found");
+        }
+        if (teamOfUser.containsKey(user)) {
+            return error(BAD_REQUEST, "You are already in a team");
+        }
+        teams.get(name).add(user);
+        teamOfUser.put(user, name);
+        return ok("Joined team");
+    }
+
+    private synchronized JSONObject leaveTeam(String user) {
+        final String name = teamOfUser.remove(user);
+        if (name == null) {
+            return error(BAD_REQUEST, "You are not in a team");
+        }
+        teams.get(name).remove(user);
+        if (teams.get(name).isEmpty()) {
+            teams.remove(name);
+        }
+        return ok("Left team");
+    }
+
+    private Map<String, Integer> gradesOf(String username) {
+        return grades.computeIfAbsent(username, key -> new LinkedHashMap<>());
+    }
+
+    private JSONObject team(String name) {
+        return new JSONObject().put(NAME, name).put("members", new JSONArray(teams.get(name)));
+    }
+
+    private static JSONObject grade(String username, String course, int grade) {
+        return new JSONObject().put(USERNAME, username).put(COURSE, course).put(GRADE, grade);
+    }
+
+    private static JSONObject ok(String message) {
+        return new JSONObject().put(STATUS_CODE, OK).put(MESSAGE, message);
+    }
+
+    private static JSONObject error(int statusCode, String message) {
+        return new JSONObject().put(STATUS_CODE, statusCode).put(MESSAGE, message);
+    }
+
+    /**
+     * Returns the token the server hands out for a user, for seeded and signed up users alike.
+     * @param username the username.
+     * @return the token of the user.
+     */
+    public static String tokenFor(String username) {
+        return "token-" + username;
+    }
+
+    // Reading requests and writing responses.
+
+    private static JSONObject readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            if (body.isBlank()) {
+                return new JSONObject();
+            }
+            return new JSONObject(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        final Map<String, String> result = new HashMap<>();
+        if (query == null) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static void respond(HttpExchange exchange, JSONObject body) throws IOException {
+        final byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(body.getInt(STATUS_CODE), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs a server with a seeded data set, for trying the application or load testing against it.
+     * @param args the port to listen on, 8080 if not given.
+     * @throws IOException if the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        final int port;
+        if (args.length > 0) {
+            port = Integer.parseInt(args[0]);
+        }
+        else {
+            port = DEFAULT_PORT;
+        }
+        final LocalGradeApiServer server = builder().port(port).seed(1L, 8, 4).build().start();
+        System.out.println("Grade API stand-in listening on " + server.getUrl()
+                + "; use the token " + tokenFor("user0"));
+    }
+
+    /**
+     * The latency, error rate and throttle of one endpoint.
+     */
+    private static final class Faults {
+        private Latency latency = Latency.fixed(0);
+        private double errorRate;
+        private int maxRequestsPerSecond;
+        private long windowStart;
+        private int windowCount;
+        private long requestCount;
+
+        /**
+         * Waits for the latency of the request, then returns the error to answer with, if any.
+         */
+        JSONObject inject(Random random) {
+            final long delay;
+            final boolean fail;
+            final boolean throttled;
+            synchronized (this) {
+                requestCount++;
+                delay = latency.nextMillis(random);
+                fail = errorRate > 0 && random.nextDouble() < errorRate;
+                final long now = System.nanoTime();
+                if (now - windowStart >= NANOS_PER_SECOND) {
+                    windowStart = now;
+                    windowCount = 0;
+                }
+                windowCount++;
+                throttled = maxRequestsPerSecond > 0 && windowCount > maxRequestsPerSecond;
+            }
+            if (throttled) {
+                return error(TOO_MANY_REQUESTS, "Too many requests");
+            }
+            if (delay > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                }
+                catch (InterruptedException event) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (fail) {
+                return error(INTERNAL_ERROR, "Injected failure");
+            }
+            return null;
+        }
+
+        synchronized long requestCount() {
+            return requestCount;
+        }
+    }
+
+    /**
+     * Returns a new LocalGradeApiServerBuilder instance.
+     * @return a new LocalGradeApiServerBuilder instance.
+     */
+    public static LocalGradeApiServerBuilder builder() {
+        return new LocalGradeApiServerBuilder();
+    }
+
+    /**
+     * Represents a builder for creating instances of a LocalGradeApiServer.
+     */
+    public static class LocalGradeApiServerBuilder {
+        private static final String[] SEED_COURSES = {"CSC207", "CSC236", "CSC258", "CSC263", "MAT223", "STA247"};
+        private static final int SEED_TEAM_SIZE = 4;
+
+        private int port;
+        private long seed;
+        private final Map<String, String> usersByToken = new LinkedHashMap<>();
+        private final List<String[]> grades = new ArrayList<>();
+        private final Map<String, List<String>> teams = new LinkedHashMap<>();
+        private final Map<Endpoint, Faults> faults = new EnumMap<>(Endpoint.class);
+
+        LocalGradeApiServerBuilder() {
+            for (Endpoint endpoint : Endpoint.values()) {
+                faults.put(endpoint, new Faults());
+            }
+        }
+
+        /**
+         * Sets the port to listen on.
+         * @param portInput the port, or 0 for any free port.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder port(int portInput) {
+            this.port = portInput;
+            return this;
+        }
+
+        /**
+         * Adds a user, whose token is tokenFor(username).
+         * @param username the username.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder user(String username) {
+            usersByToken.put(tokenFor(username), username);
+            return this;
+        }
+
+        /**
+         * Adds a grade, and its user if it is new.
+         * @param username the username of the student.
+         * @param course the course.
+         * @param grade the grade.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder grade(String username, String course, int grade) {
+            user(username);
+            grades.add(new String[]{username, course, Integer.toString(grade)});
+            return this;
+        }
+
+        /**
+         * Adds a team, and its members if they are new.
+         * @param name the name of the team.
+         * @param members the usernames of the members.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder team(String name, String... members) {
+            final List<String> memberList = new ArrayList<>();
+            for (String member : members) {
+                user(member);
+                memberList.add(member);
+            }
+            teams.put(name, memberList);
+            return this;
+        }
+
+        /**
+         * Adds a generated data set: users named user0, user1 and so on, each with grades in a number
+         * of courses, in teams of four named team0, team1 and so on. The same seed gives the same data
+         * set, and also seeds the latencies and injected errors.
+         * @param seedInput the random seed.
+         * @param users the number of users.
+         * @param coursesPerUser the number of courses each user has a grade in.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder seed(long seedInput, int users, int coursesPerUser) {
+            this.seed = seedInput;
+            final Random random = new Random(seedInput);
+            List<String> team = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                final String username = "user" + i;
+                for (int j = 0; j < coursesPerUser; j++) {
+                    grade(username, SEED_COURSES[j % SEED_COURSES.length] + suffix(j), random.nextInt(MAX_GRADE + 1));
+                }
+                user(username);
+                team.add(username);
+                if (team.size() == SEED_TEAM_SIZE || i == users - 1) {
+                    team("team" + i / SEED_TEAM_SIZE, team.toArray(new String[0]));
+                    team = new ArrayList<>();
+                }
+            }
+            return this;
+        }
+
+        private static String suffix(int j) {
+            if (j < SEED_COURSES.length) {
+                return "";
+            }
+            return "-" + j / SEED_COURSES.length;
+        }
+
+        /**
+         * Sets the latency distribution of an endpoint.
+         * @param endpoint the endpoint.
+         * @param latency the latency distribution.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder latency(Endpoint endpoint, Latency latency) {
+            faults.get(endpoint).latency = latency;
+            return this;
+        }
+
+        /**
+         * Sets the latency distribution of every endpoint.
+         * @param latency the latency distribution.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder latency(Latency latency) {
+            for (Endpoint endpoint : Endpoint.values()) {
+                latency(endpoint, latency);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the fraction of requests to an endpoint that fail with status 500.
+         * @param endpoint the endpoint.
+         * @param errorRate the error rate, between 0 and 1.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder errorRate(Endpoint endpoint, double errorRate) {
+            faults.get(endpoint).errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests per second an endpoint answers before it answers with status 429.
+         * @param endpoint the endpoint.
+         * @param maxRequestsPerSecond the number of requests per second, or 0 not to throttle.
+         * @return the LocalGradeApiServerBuilder instance.
+         */
+        public LocalGradeApiServerBuilder throttle(Endpoint endpoint, int maxRequestsPerSecond) {
+            faults.get(endpoint).maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        /**
+         * Builds a new LocalGradeApiServer instance; call start() to start serving.
+         * @return a new LocalGradeApiServer instance.
+         * @throws IOException if the port cannot be bound.
+         */
+        public LocalGradeApiServer build() throws IOException {
+            return new LocalGradeApiServer(this);
+        }
+    }
+}
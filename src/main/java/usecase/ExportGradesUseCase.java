@@ -0,0 +1,357 @@
+package usecase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.json.JSONObject;
+
+import api.ConcurrencyLimiter;
+import api.GradeDataBase;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * The use case that exports the full grade histories of your team, as NDJSON or CSV.
+ * <p>
+ * The histories of the team members are looked up concurrently, and every grade is written to the sink
+ * as soon as its history arrives, so the records of different members can come in any order. The lookups
+ * hand their records to the writing thread through a bounded queue, so memory stays bounded however large
+ * the team is: a lookup whose records do not fit waits for the sink to catch up.
+ * <p>
+ * How many lookups run at the same time adapts to the sink with a ConcurrencyLimiter: a lookup that had to
+ * wait for room in the queue shows the sink is the bottleneck and shrinks the limit, while one that did not
+ * lets it grow, up to maxParallelism. A member whose history cannot be looked up is left out and reported
+ * in the summary; the export goes on with the others.
+ */
+public final class ExportGradesUseCase {
+    private static final OperationMetrics EXPORT_TEAM_GRADES =
+            MetricsRegistry.getDefault().operation("ExportGradesUseCase", "exportTeamGrades");
+    // Number of grades that can wait for the sink, for every lookup that can be in flight.
+    private static final int QUEUE_CAPACITY_PER_LOOKUP = 256;
+    private static final String CSV_HEADER = "username,course,grade";
+    private static final String USERNAME = "username";
+    private static final String COURSE = "course";
+    private static final String GRADE = "grade";
+
+    /**
+     * The formats grades can be exported in.
+     */
+    public enum Format {
+        // One JSON object per line.
+        NDJSON,
+        // A header row, then one row per grade.
+        CSV
+    }
+
+    private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+    private final int maxParallelism;
+
+    public ExportGradesUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null, 1);
+    }
+
+    /**
+     * Creates an ExportGradesUseCase that looks up the histories of the team members concurrently.
+     * @param gradeDataBase the data base to get the team and the grades from.
+     * @param executor the executor to run the lookups on, or null to run them one after the other.
+     * @param maxParallelism the largest number of lookups to run at the same time.
+     */
+    public ExportGradesUseCase(GradeDataBase gradeDataBase, Executor executor, int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.gradeDataBase = gradeDataBase;
+        this.executor = executor;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Export the grades of your team to a file, replacing it.
+     * @param file The file.
+     * @param format The format to write.
+     * @return The summary of the export.
+     * @throws IOException if the file cannot be written.
+     * @throws InterruptedException if the export is interrupted.
+     */
+    public ExportSummary exportTeamGrades(Path file, Format format) throws IOException, InterruptedException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return exportTeamGrades(out, format);
+        }
+    }
+
+    /**
+     * Export the grades of your team to a stream, which is flushed but left open.
+     * @param out The stream.
+     * @param format The format to write.
+     * @return The summary of the export.
+     * @throws IOException if the stream cannot be written.
+     * @throws InterruptedException if the export is interrupted.
+     */
+    public ExportSummary exportTeamGrades(OutputStream out, Format format) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final String[] members = gradeDataBase.getMyTeam().getMembers();
+            final ExportSummary summary = new Run(members, format).writeTo(out);
+            failed = false;
+            return summary;
+        }
+        finally {
+            EXPORT_TEAM_GRADES.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    // One export: lookups put grades, and an end marker per member, on the queue; the calling thread writes them.
+    private final class Run {
+        private final String[] members;
+        private final Format format;
+        private final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                .initialLimit(1)
+                .maxLimit(maxParallelism)
+                .build();
+        private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(maxParallelism * QUEUE_CAPACITY_PER_LOOKUP);
+        private final List<String> failedMembers = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean stopped;
+        private int peakLimit = 1;
+
+        Run(String[] members, Format format) {
+            this.members = members;
+            this.format = format;
+        }
+
+        ExportSummary writeTo(OutputStream out) throws IOException, InterruptedException {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            final long recordCount;
+            if (executor == null) {
+                recordCount = writeOneByOne(writer);
+            }
+            else {
+                recordCount = writeConcurrently(writer);
+            }
+            writer.flush();
+            return new ExportSummary(members.length, recordCount, new ArrayList<>(failedMembers), peakLimit);
+        }
+
+        // Without an executor the calling thread looks every member up itself, so nothing needs a queue.
+        private long writeOneByOne(Writer writer) throws IOException {
+            long recordCount = 0;
+            for (String member : members) {
+                final Grade[] grades;
+                try {
+                    grades = gradeDataBase.getGrades(member);
+                }
+                catch (RuntimeException event) {
+                    failedMembers.add(member);
+                    continue;
+                }
+                for (Grade grade : grades) {
+                    write(writer, new Record(member, grade));
+                    recordCount++;
+                }
+            }
+            return recordCount;
+        }
+
+        private long writeConcurrently(Writer writer) throws IOException, InterruptedException {
+            long recordCount = 0;
+            int next = 0;
+            int inFlight = 0;
+            CompletableFuture<Void> permit = null;
+            try {
+                while (next < members.length || inFlight > 0) {
+                    // Start as many lookups as the limit allows; a finishing lookup wakes this thread up again.
+                    while (next < members.length) {
+                        if (permit == null) {
+                            permit = limiter.acquireAsync();
+                        }
+                        if (!permit.isDone()) {
+                            break;
+                        }
+                        permit = null;
+                        lookUp(members[next++]);
+                        inFlight++;
+                        peakLimit = Math.max(peakLimit, limiter.getLimit());
+                    }
+                    final Record record = queue.take();
+                    if (record.grade == null) {
+                        inFlight--;
+                    }
+                    else {
+                        write(writer, record);
+                        recordCount++;
+                    }
+                    if (queue.isEmpty()) {
+                        // Nothing else has arrived yet, so let the sink see what has.
+                        writer.flush();
+                    }
+                }
+            }
+            finally {
+                stop(permit);
+            }
+            return recordCount;
+        }
+
+        // Called with a permit of the limiter, which the lookup gives back.
+        private void lookUp(String member) {
+            try {
+                executor.execute(() -> {
+                    final long start = System.nanoTime();
+                    boolean waited = false;
+                    try {
+                        for (Grade grade : gradeDataBase.getGrades(member)) {
+                            waited |= hand(new Record(member, grade));
+                        }
+                        if (waited) {
+                            // The sink drains slower than the lookups fill the queue.
+                            limiter.onDropped();
+                        }
+                        else {
+                            limiter.onSuccess(System.nanoTime() - start);
+                        }
+                    }
+                    catch (Throwable event) {
+                        // Even an Error must not keep the export waiting for this member.
+                        failedMembers.add(member);
+                        limiter.onIgnore();
+                    }
+                    finally {
+                        try {
+                            hand(Record.end(member));
+                        }
+                        catch (InterruptedException event) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException event) {
+                limiter.onIgnore();
+                throw event;
+            }
+        }
+
+        // Puts a record on the queue, and returns whether there was no room for it at first.
+        private boolean hand(Record record) throws InterruptedException {
+            if (stopped || queue.offer(record)) {
+                return false;
+            }
+            queue.put(record);
+            return true;
+        }
+
+        // Lets the lookups still running finish without anyone draining the queue: once stopped, each
+        // can put at most the one record it was putting, and the cleared queue has room for it.
+        private void stop(CompletableFuture<Void> permit) {
+            stopped = true;
+            queue.clear();
+            if (permit != null && !permit.cancel(false)) {
+                limiter.onIgnore();
+            }
+        }
+
+        private void write(Writer writer, Record record) throws IOException {
+            if (format == Format.CSV) {
+                writer.write(GradeFileReader.csvField(record.username));
+                writer.write(',');
+                writer.write(GradeFileReader.csvField(record.grade.getCourse()));
+                writer.write(',');
+                writer.write(Integer.toString(record.grade.getGrade()));
+            }
+            else {
+                writer.write("{\"" + USERNAME + "\":");
+                writer.write(JSONObject.quote(record.username));
+                writer.write(",\"" + COURSE + "\":");
+                writer.write(JSONObject.quote(record.grade.getCourse()));
+                writer.write(",\"" + GRADE + "\":");
+                writer.write(Integer.toString(record.grade.getGrade()));
+                writer.write('}');
+            }
+            writer.write('\n');
+        }
+    }
+
+    // A grade of a member on its way to the sink, or the end of a member's grades when grade is null.
+    private static final class Record {
+        private final String username;
+        private final Grade grade;
+
+        Record(String username, Grade grade) {
+            this.username = username;
+            this.grade = grade;
+        }
+
+        static Record end(String username) {
+            return new Record(username, null);
+        }
+    }
+
+    /**
+     * What an export did.
+     */
+    public static final class ExportSummary {
+        private final int memberCount;
+        private final long recordCount;
+        private final List<String> failedMembers;
+        private final int peakParallelism;
+
+        ExportSummary(int memberCount, long recordCount, List<String> failedMembers, int peakParallelism) {
+            this.memberCount = memberCount;
+            this.recordCount = recordCount;
+            this.failedMembers = failedMembers;
+            this.peakParallelism = peakParallelism;
+        }
+
+        /**
+         * Returns the number of members of the team.
+         * @return the number of members.
+         */
+        public int getMemberCount() {
+            return memberCount;
+        }
+
+        /**
+         * Returns the number of grades written.
+         * @return the number of records.
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Returns the members whose grades could not be looked up and were left out.
+         * @return the usernames of the failed members.
+         */
+        public List<String> getFailedMembers() {
+            return failedMembers;
+        }
+
+        /**
+         * Returns the largest number of lookups that were allowed to run at the same time.
+         * @return the peak parallelism.
+         */
+        public int getPeakParallelism() {
+            return peakParallelism;
+        }
+    }
+}
@@ -2,11 +2,15 @@ package usecase;
 
 import api.GradeDataBase;
 import entity.Team;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * FormTeamUseCase class.
  */
 public final class FormTeamUseCase {
+    private static final OperationMetrics FORM_TEAM =
+            MetricsRegistry.getDefault().operation("FormTeamUseCase", "formTeam");
     private final GradeDataBase gradeDataBase;
 
     public FormTeamUseCase(GradeDataBase gradeDataBase) {
@@ -19,7 +23,7 @@ public final class FormTeamUseCase {
      * @return The team that was formed. Note that if there is error, the team will not be formed.
      */
     public Team formTeam(String name) {
-        return gradeDataBase.formTeam(name);
+        return FORM_TEAM.time(() -> gradeDataBase.formTeam(name));
         // Need to calculate the average. every grade has a field called grade (which is an int).
         // We need to sum all the grades and divide by the number of grades.
     }
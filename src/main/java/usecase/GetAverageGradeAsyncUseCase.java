@@ -0,0 +1,49 @@
+package usecase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import api.AsyncGradeDataBase;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * GetAverageGradeAsyncUseCase class, the get average grade usecase that does not block the calling thread.
+ * The grades of all the team members are requested at once.
+ */
+public final class GetAverageGradeAsyncUseCase {
+    private static final OperationMetrics AVERAGE_GRADE =
+            MetricsRegistry.getDefault().operation("GetAverageGradeAsyncUseCase", "getAverageGrade");
+    private final AsyncGradeDataBase gradeDataBase;
+
+    public GetAverageGradeAsyncUseCase(AsyncGradeDataBase gradeDataBase) {
+        this.gradeDataBase = gradeDataBase;
+    }
+
+    /**
+     * Get the average grade for a course across your team.
+     * @param course The course.
+     * @return a future for the average grade. It fails the same way GetAverageGradeUseCase does.
+     */
+    public CompletableFuture<Float> getAverageGrade(String course) {
+        return AVERAGE_GRADE.timeAsync(() -> gradeDataBase.getMyTeamAsync().thenCompose(team -> {
+            final String[] members = team.getMembers();
+            if (members.length == 0) {
+                return CompletableFuture.completedFuture(0f);
+            }
+            final List<CompletableFuture<Grade>> lookups = new ArrayList<>(members.length);
+            for (String member : members) {
+                lookups.add(gradeDataBase.getGradeAsync(member, course));
+            }
+            return CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                float sum = 0;
+                for (CompletableFuture<Grade> lookup : lookups) {
+                    sum = sum + lookup.join().getGrade();
+                }
+                return sum / members.length;
+            });
+        }));
+    }
+}
@@ -1,26 +1,85 @@
 package usecase;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import api.AggregatingGradeDataBase;
 import api.GradeDataBase;
+import api.GradeNotFoundException;
+import entity.CourseAggregate;
 import entity.Grade;
 import entity.Team;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 
 /**
  * GetAverageGradeUseCase class.
  */
 public final class GetAverageGradeUseCase {
+    private static final OperationMetrics AVERAGE_GRADE =
+            MetricsRegistry.getDefault().operation("GetAverageGradeUseCase", "getAverageGrade");
     private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+    private final AggregatingGradeDataBase aggregates;
 
     public GetAverageGradeUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null);
+    }
+
+    /**
+     * Creates a GetAverageGradeUseCase that answers from the team aggregates the data base maintains
+     * whenever every team member has a grade in the course.
+     * The data base computes those from the grade histories it has indexed, such as the ones
+     * GetGradeHistoryUseCase gets, before it looks up any grades.
+     * @param gradeDataBase the data base to get the grades and aggregates from.
+     * @param executor the bounded executor to run the lookups on when the data base cannot batch them,
+     *                 or null to run them one after the other.
+     */
+    public GetAverageGradeUseCase(AggregatingGradeDataBase gradeDataBase, Executor executor) {
+        this(gradeDataBase, executor, gradeDataBase);
+    }
+
+    /**
+     * Creates a GetAverageGradeUseCase that looks up the grades of the team members concurrently.
+     * @param gradeDataBase the data base to get the grades from.
+     * @param executor the bounded executor to run the lookups on when the data base cannot batch them,
+     *                 or null to run them one after the other.
+     */
+    public GetAverageGradeUseCase(GradeDataBase gradeDataBase, Executor executor) {
+        this(gradeDataBase, executor, null);
+    }
+
+    private GetAverageGradeUseCase(GradeDataBase gradeDataBase, Executor executor,
+                                   AggregatingGradeDataBase aggregates) {
         this.gradeDataBase = gradeDataBase;
+        this.aggregates = aggregates;
+        if (executor == null) {
+            this.executor = Runnable::run;
+        }
+        else {
+            this.executor = executor;
+        }
     }
 
     /**
      * Get the average grade for a course across your team.
      * @param course The course.
      * @return The average grade.
+     * @throws GradeNotFoundException if a team member has no grade in the course.
      */
     public float getAverageGrade(String course) {
+        return AVERAGE_GRADE.time(() -> averageGrade(course));
+    }
+
+    private float averageGrade(String course) {
+        if (aggregates != null) {
+            final CourseAggregate aggregate = aggregates.getCourseAggregate(course);
+            if (aggregate.isComplete()) {
+                return aggregate.getAverage();
+            }
+        }
         // Call the API to get usernames of all your team members
         float sum = 0;
         int count = 0;
@@ -29,9 +88,15 @@ public final class GetAverageGradeUseCase {
 
    
         String[] teamMembers = team.getMembers();
+        final Map<String, Grade> grades = gradeDataBase.getGrades(Arrays.asList(teamMembers), course, executor);
         for  (String member : teamMembers) {
             count++;
-            Grade grade = gradeDataBase.getGrade(member, course);
+            final Grade grade = grades.get(member);
+            if (grade == null) {
+                // The bulk lookup leaves out members without a grade; every member needs one for an average.
+                throw new GradeNotFoundException("Grade could not be found for course: " + course
+                        + " and username: " + member);
+            }
             sum = sum + grade.getGrade();
         }
         if (count == 0) {
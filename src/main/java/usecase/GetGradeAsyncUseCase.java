@@ -0,0 +1,31 @@
+package usecase;
+
+import java.util.concurrent.CompletableFuture;
+
+import api.AsyncGradeDataBase;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * The class for the get grade usecase that does not block the calling thread.
+ */
+public final class GetGradeAsyncUseCase {
+    private static final OperationMetrics GET_GRADE =
+            MetricsRegistry.getDefault().operation("GetGradeAsyncUseCase", "getGrade");
+    private final AsyncGradeDataBase gradeDatabase;
+
+    public GetGradeAsyncUseCase(AsyncGradeDataBase gradeDatabase) {
+        this.gradeDatabase = gradeDatabase;
+    }
+
+    /**
+     * Run the get grade action.
+     * @param username The username.
+     * @param course The course (i.e., CSC207).
+     * @return a future for the grade object.
+     */
+    public CompletableFuture<Grade> getGrade(String username, String course) {
+        return GET_GRADE.timeAsync(() -> gradeDatabase.getGradeAsync(username, course));
+    }
+}
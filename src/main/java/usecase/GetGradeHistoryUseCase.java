@@ -0,0 +1,75 @@
+package usecase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import api.GradeDataBase;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * The class for the use case that gets full grade histories, of a student or of your whole team.
+ */
+public final class GetGradeHistoryUseCase {
+    private static final OperationMetrics GET_GRADES =
+            MetricsRegistry.getDefault().operation("GetGradeHistoryUseCase", "getGrades");
+    private static final OperationMetrics GET_TEAM_GRADES =
+            MetricsRegistry.getDefault().operation("GetGradeHistoryUseCase", "getTeamGrades");
+
+    private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+
+    public GetGradeHistoryUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null);
+    }
+
+    /**
+     * Creates a GetGradeHistoryUseCase that looks up the histories of the team members concurrently.
+     * @param gradeDataBase the data base to get the grades from.
+     * @param executor the bounded executor to run the lookups on when the data base cannot batch them,
+     *                 or null to run them one after the other.
+     */
+    public GetGradeHistoryUseCase(GradeDataBase gradeDataBase, Executor executor) {
+        this.gradeDataBase = gradeDataBase;
+        if (executor == null) {
+            this.executor = Runnable::run;
+        }
+        else {
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Get all the grades of a student.
+     * @param username The username.
+     * @return The grades of the student in all courses.
+     */
+    public Grade[] getGrades(String username) {
+        return GET_GRADES.time(() -> gradeDataBase.getGrades(username));
+    }
+
+    /**
+     * Get all the grades of every member of your team.
+     * @return The grades, grouped by team member in the order of the team.
+     */
+    public Grade[] getTeamGrades() {
+        return GET_TEAM_GRADES.time(this::teamGrades);
+    }
+
+    private Grade[] teamGrades() {
+        final String[] members = gradeDataBase.getMyTeam().getMembers();
+        final Map<String, Grade[]> histories = gradeDataBase.getGrades(Arrays.asList(members), executor);
+        final List<Grade> grades = new ArrayList<>();
+        for (String member : members) {
+            final Grade[] history = histories.get(member);
+            if (history != null) {
+                grades.addAll(Arrays.asList(history));
+            }
+        }
+        return grades.toArray(new Grade[0]);
+    }
+}
@@ -2,11 +2,15 @@ package usecase;
 
 import api.GradeDataBase;
 import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * The class for the get grade usecase.
  */
 public final class GetGradeUseCase {
+    private static final OperationMetrics GET_GRADE =
+            MetricsRegistry.getDefault().operation("GetGradeUseCase", "getGrade");
     private final GradeDataBase gradeDatabase;
 
     public GetGradeUseCase(GradeDataBase gradeDatabase) {
@@ -20,6 +24,6 @@ public final class GetGradeUseCase {
      * @return a grade object if successful.
      */
     public Grade getGrade(String username, String course) {
-        return gradeDatabase.getGrade(username, course);
+        return GET_GRADE.time(() -> gradeDatabase.getGrade(username, course));
     }
 }
@@ -0,0 +1,93 @@
+package usecase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import api.AsyncGradeDataBase;
+import api.GradeNotFoundException;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * GetTopGradeAsyncUseCase class, the get top grade usecase that does not block the calling thread.
+ * The grades of all the team members are requested at once.
+ */
+public final class GetTopGradeAsyncUseCase {
+    private static final OperationMetrics TOP_GRADE =
+            MetricsRegistry.getDefault().operation("GetTopGradeAsyncUseCase", "findTopGrade");
+    // No grade can be higher than this, so once it is seen there is no need to wait for the others.
+    private static final int MAX_POSSIBLE_GRADE = 100;
+
+    private final AsyncGradeDataBase gradeDataBase;
+
+    public GetTopGradeAsyncUseCase(AsyncGradeDataBase gradeDataBase) {
+        this.gradeDataBase = gradeDataBase;
+    }
+
+    /**
+     * Find the highest grade for a course across your team, along with who earned it.
+     * Members without a grade for the course are skipped.
+     * @param course The course.
+     * @return a future for the top grade, which is null if no team member has a grade for the course.
+     */
+    public CompletableFuture<Grade> findTopGrade(String course) {
+        return TOP_GRADE.timeAsync(() -> gradeDataBase.getMyTeamAsync().thenCompose(team -> {
+            final String[] members = team.getMembers();
+            final CompletableFuture<Grade> result = new CompletableFuture<>();
+            final List<CompletableFuture<Grade>> requests = new ArrayList<>(members.length);
+            final List<CompletableFuture<Grade>> lookups = new ArrayList<>(members.length);
+            for (String member : members) {
+                final CompletableFuture<Grade> request = gradeDataBase.getGradeAsync(member, course);
+                final CompletableFuture<Grade> lookup = request.handle(GetTopGradeAsyncUseCase::skipNotFound);
+                lookup.thenAccept(grade -> {
+                    if (grade != null && grade.getGrade() >= MAX_POSSIBLE_GRADE) {
+                        result.complete(grade);
+                    }
+                });
+                requests.add(request);
+                lookups.add(lookup);
+            }
+
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                    return;
+                }
+                Grade best = null;
+                for (CompletableFuture<Grade> lookup : lookups) {
+                    final Grade grade = lookup.join();
+                    if (grade != null && (best == null || grade.getGrade() > best.getGrade())) {
+                        best = grade;
+                    }
+                }
+                result.complete(best);
+            });
+            result.whenComplete((grade, failure) -> {
+                for (CompletableFuture<Grade> request : requests) {
+                    request.cancel(true);
+                }
+            });
+            return result;
+        }));
+    }
+
+    private static Grade skipNotFound(Grade grade, Throwable failure) {
+        if (failure == null) {
+            return grade;
+        }
+        final Throwable cause;
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            cause = failure.getCause();
+        }
+        else {
+            cause = failure;
+        }
+        if (cause instanceof GradeNotFoundException) {
+            return null;
+        }
+        throw new CompletionException(cause);
+    }
+}
@@ -1,17 +1,66 @@
 package usecase;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import api.AggregatingGradeDataBase;
 import api.GradeDataBase;
 import entity.Grade;
 import entity.Team;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * GetTopGradeUseCase class.
  */
 public final class GetTopGradeUseCase {
+    private static final OperationMetrics TOP_GRADE =
+            MetricsRegistry.getDefault().operation("GetTopGradeUseCase", "findTopGrade");
+    // No grade can be higher than this, so once it is seen there is no need to look any further.
+    private static final int MAX_POSSIBLE_GRADE = 100;
+
     private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+    private final AggregatingGradeDataBase aggregates;
 
     public GetTopGradeUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null);
+    }
+
+    /**
+     * Creates a GetTopGradeUseCase that answers from the team aggregates the data base maintains.
+     * The data base computes those from the grade histories it has indexed, such as the ones
+     * GetGradeHistoryUseCase gets, before it looks up any grades.
+     * @param gradeDataBase the data base to get the grades and aggregates from.
+     * @param executor the bounded executor to run the lookups on when the data base cannot batch them,
+     *                 or null to run them one after the other.
+     */
+    public GetTopGradeUseCase(AggregatingGradeDataBase gradeDataBase, Executor executor) {
+        this(gradeDataBase, executor, gradeDataBase);
+    }
+
+    /**
+     * Creates a GetTopGradeUseCase that looks up the grades of the team members concurrently.
+     * @param gradeDataBase the data base to get the grades from.
+     * @param executor the bounded executor to run the lookups on when the data base cannot batch them,
+     *                 or null to run them one after the other.
+     */
+    public GetTopGradeUseCase(GradeDataBase gradeDataBase, Executor executor) {
+        this(gradeDataBase, executor, null);
+    }
+
+    private GetTopGradeUseCase(GradeDataBase gradeDataBase, Executor executor,
+                               AggregatingGradeDataBase aggregates) {
         this.gradeDataBase = gradeDataBase;
+        this.aggregates = aggregates;
+        if (executor == null) {
+            this.executor = Runnable::run;
+        }
+        else {
+            this.executor = executor;
+        }
     }
 
     /**
@@ -20,23 +69,76 @@ public final class GetTopGradeUseCase {
      * @return The top grade.
      */
     public float getTopGrade(String course) {
+        final Grade topGrade = findTopGrade(course);
+        if (topGrade == null) {
+            return 0;
+        }
+        return topGrade.getGrade();
+    }
+
+    /**
+     * Find the highest grade for a course across your team, along with who earned it.
+     * Ties go to the team member who comes first in the team, except that when the lookups run
+     * concurrently the first grade of 100 to arrive is returned.
+     * @param course The course.
+     * @return The top grade, or null if no team member has a grade for the course.
+     */
+    public Grade findTopGrade(String course) {
+        return TOP_GRADE.time(() -> topGrade(course));
+    }
+
+    private Grade topGrade(String course) {
+        if (aggregates != null) {
+            return aggregates.getCourseAggregate(course).getTop();
+        }
         // Call the API to get the usernames of all your team members
-        float max = 0;
         final Team team = gradeDataBase.getMyTeam();
-        // Call the API to get all the grades for the course for all your team members
-        for (String username : team.getMembers()) {
-            // Call the API to get the grade for the course for the username
-            final Grade[] grades = gradeDataBase.getGrades(username);
-            for (Grade grade : grades) {
-
-                if (grade.getCourse().equals(course)) {
-                    // Sum all the grades
-                    if (grade.getGrade() > max) {
-                        max = grade.getGrade();
-                    }
+        final String[] members = team.getMembers();
+        final Grade[] grades = new Grade[members.length];
+
+        // The full grade history is only used when the data base already holds it.
+        final List<String> toLookUp = new ArrayList<>();
+        for (int i = 0; i < members.length; i++) {
+            final Grade[] cachedGrades = gradeDataBase.getCachedGrades(members[i]);
+            if (cachedGrades == null) {
+                toLookUp.add(members[i]);
+            }
+            else {
+                grades[i] = bestInCourse(cachedGrades, course);
+                if (grades[i] != null && grades[i].getGrade() >= MAX_POSSIBLE_GRADE) {
+                    return grades[i];
+                }
+            }
+        }
+
+        // Otherwise only the grade for the course is requested, for all the other members at once,
+        // and the lookups left are dropped as soon as one of them finds the highest possible grade.
+        if (!toLookUp.isEmpty()) {
+            final Map<String, Grade> lookedUp = gradeDataBase.getGrades(toLookUp, course, executor,
+                grade -> grade.getGrade() >= MAX_POSSIBLE_GRADE);
+            for (int i = 0; i < members.length; i++) {
+                if (grades[i] == null) {
+                    grades[i] = lookedUp.get(members[i]);
                 }
             }
         }
-        return max;
+
+        Grade best = null;
+        for (Grade grade : grades) {
+            if (grade != null && (best == null || grade.getGrade() > best.getGrade())) {
+                best = grade;
+            }
+        }
+        return best;
+    }
+
+    private static Grade bestInCourse(Grade[] grades, String course) {
+        Grade best = null;
+        for (Grade grade : grades) {
+            if (grade.getCourse().equals(course) && (best == null || grade.getGrade() > best.getGrade())) {
+                best = grade;
+            }
+        }
+        return best;
     }
 }
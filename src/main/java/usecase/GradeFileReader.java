@@ -0,0 +1,277 @@
+package usecase;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads the grades of an import file one row at a time, so that the file is never held in memory.
+ * A file whose name ends in .ndjson, .jsonl or .json holds one JSON object per line with a course and
+ * a grade; any other file is CSV with a header row naming a course and a grade column, in any order.
+ * Other columns and fields are ignored, as are blank lines. CSV fields may be quoted, but not span lines.
+ * <p>
+ * Rows are numbered from 1, not counting the header or blank lines. A row that cannot be read as a grade
+ * is still returned, with the reason it is invalid, so that it can be reported.
+ */
+final class GradeFileReader implements Closeable {
+    private static final String COURSE = "course";
+    private static final String GRADE = "grade";
+    private static final int MAX_GRADE = 100;
+
+    private final BufferedReader reader;
+    private final boolean json;
+    private int courseColumn = -1;
+    private int gradeColumn = -1;
+    private long rowNumber;
+
+    private GradeFileReader(BufferedReader reader, boolean json) {
+        this.reader = reader;
+        this.json = json;
+    }
+
+    /**
+     * Opens an import file and reads its header, if it has one.
+     * @param file the file.
+     * @return the reader, positioned before the first row.
+     * @throws IOException if the file cannot be read or has no course and grade columns.
+     */
+    static GradeFileReader open(Path file) throws IOException {
+        final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        final boolean json = name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json");
+        final GradeFileReader fileReader = new GradeFileReader(
+                Files.newBufferedReader(file, StandardCharsets.UTF_8), json);
+        try {
+            if (!json) {
+                fileReader.readHeader();
+            }
+        }
+        catch (IOException event) {
+            fileReader.close();
+            throw event;
+        }
+        return fileReader;
+    }
+
+    private void readHeader() throws IOException {
+        final String header = nextLine();
+        if (header == null) {
+            throw new IOException("The file is empty");
+        }
+        final List<String> columns = splitCsv(header);
+        for (int i = 0; i < columns.size(); i++) {
+            final String column = columns.get(i).trim().toLowerCase(Locale.ROOT);
+            if (COURSE.equals(column)) {
+                courseColumn = i;
+            }
+            else if (GRADE.equals(column)) {
+                gradeColumn = i;
+            }
+        }
+        if (courseColumn < 0 || gradeColumn < 0) {
+            throw new IOException("The header must name a course and a grade column");
+        }
+    }
+
+    /**
+     * Reads the next row.
+     * @return the row, or null at the end of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    Row next() throws IOException {
+        final String line = nextLine();
+        if (line == null) {
+            return null;
+        }
+        rowNumber++;
+        if (json) {
+            return parseJson(line);
+        }
+        return parseCsv(line);
+    }
+
+    /**
+     * Skips rows without parsing them, e.g. the rows done before a checkpoint.
+     * @param rows the number of rows to skip.
+     * @return the number of rows skipped, fewer if the file ends first.
+     * @throws IOException if the file cannot be read.
+     */
+    long skip(long rows) throws IOException {
+        long skipped = 0;
+        while (skipped < rows && nextLine() != null) {
+            rowNumber++;
+            skipped++;
+        }
+        return skipped;
+    }
+
+    private String nextLine() throws IOException {
+        String line = reader.readLine();
+        while (line != null && line.trim().isEmpty()) {
+            line = reader.readLine();
+        }
+        return line;
+    }
+
+    private Row parseCsv(String line) {
+        final List<String> fields = splitCsv(line);
+        if (fields.size() <= Math.max(courseColumn, gradeColumn)) {
+            return Row.invalid(rowNumber, null, null, "The row has too few fields");
+        }
+        return validate(fields.get(courseColumn).trim(), fields.get(gradeColumn).trim());
+    }
+
+    private Row parseJson(String line) {
+        final JSONObject object;
+        try {
+            object = new JSONObject(line);
+        }
+        catch (JSONException event) {
+            return Row.invalid(rowNumber, null, null, "The row is not a JSON object");
+        }
+        final Object course = object.opt(COURSE);
+        final Object grade = object.opt(GRADE);
+        final String courseText;
+        if (course == null) {
+            courseText = "";
+        }
+        else {
+            courseText = course.toString().trim();
+        }
+        final String gradeText;
+        if (grade == null) {
+            gradeText = "";
+        }
+        else {
+            gradeText = grade.toString().trim();
+        }
+        return validate(courseText, gradeText);
+    }
+
+    private Row validate(String course, String gradeText) {
+        if (course.isEmpty()) {
+            return Row.invalid(rowNumber, course, gradeText, "The course is missing");
+        }
+        final int grade;
+        try {
+            grade = Integer.parseInt(gradeText);
+        }
+        catch (NumberFormatException event) {
+            return Row.invalid(rowNumber, course, gradeText, "The grade is not a whole number");
+        }
+        if (grade < 0 || grade > MAX_GRADE) {
+            return Row.invalid(rowNumber, course, gradeText, "The grade is not between 0 and 100");
+        }
+        return new Row(rowNumber, course, gradeText, grade, null);
+    }
+
+    // Splits a CSV line into its fields, unquoting quoted fields and their doubled quotes.
+    private static List<String> splitCsv(String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"') {
+                    quoted = false;
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Quotes a value for a CSV file if it needs it. Line breaks become spaces, so that a record stays on one line.
+     * @param value the value, or null for an empty field.
+     * @return the CSV field.
+     */
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"").replace('\n', ' ').replace('\r', ' ') + '"';
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * A row of an import file.
+     */
+    static final class Row {
+        private final long number;
+        private final String course;
+        private final String gradeText;
+        private final int grade;
+        private final String error;
+
+        Row(long number, String course, String gradeText, int grade, String error) {
+            this.number = number;
+            this.course = course;
+            this.gradeText = gradeText;
+            this.grade = grade;
+            this.error = error;
+        }
+
+        static Row invalid(long number, String course, String gradeText, String error) {
+            return new Row(number, course, gradeText, -1, error);
+        }
+
+        long getNumber() {
+            return number;
+        }
+
+        String getCourse() {
+            return course;
+        }
+
+        String getGradeText() {
+            return gradeText;
+        }
+
+        int getGrade() {
+            return grade;
+        }
+
+        /**
+         * Returns why the row is not a valid grade.
+         * @return the reason, or null if the row is valid.
+         */
+        String getError() {
+            return error;
+        }
+    }
+}
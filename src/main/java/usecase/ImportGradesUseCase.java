@@ -0,0 +1,438 @@
+package usecase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import api.GradeDataBase;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * The use case that imports a file of grades, such as a term's worth, instead of logging them one by one.
+ * <p>
+ * The file, CSV or NDJSON (see GradeFileReader), is read one row at a time and each valid row is logged
+ * with GradeDataBase.logGrade, with up to parallelism calls in flight. The rows of one course are sent one
+ * after the other, in the order of the file, since the grade API keeps the last grade logged in a course;
+ * a row waits while a row of its course is in flight. Calls finish in any order, but the report gets one
+ * line per row in the order of the file: a finished row waits until every row before it has finished too.
+ * Only a bounded window of rows can be waiting, so the import runs in constant memory however large the
+ * file is.
+ * <p>
+ * Every so often the number of rows reported, and the length of the report so far, are saved to a
+ * checkpoint file. An import that finds a checkpoint resumes after the rows it covers, cutting the report
+ * back to where the checkpoint left it. Rows sent after the last checkpoint are sent again, still in file
+ * order within a course, so each course still ends with its last grade in the file; but a grade logged for
+ * one of those courses elsewhere in the meantime is overwritten. The checkpoint is deleted once the whole
+ * file has been imported. Grades are logged for the user the data base acts as; a username column is ignored.
+ * <p>
+ * When the data base only queues the grades, as a write-ahead log in front of the grade API does, a logged
+ * row is reported as queued rather than ok, since the API has not taken the grade yet.
+ */
+public final class ImportGradesUseCase {
+    private static final OperationMetrics IMPORT_GRADES =
+            MetricsRegistry.getDefault().operation("ImportGradesUseCase", "importGrades");
+    // Rows that may have finished ahead of the first unfinished row, for every call in flight.
+    private static final int WINDOW_PER_CALL = 16;
+    // Save a checkpoint once this many more rows have been reported.
+    private static final int CHECKPOINT_EVERY_ROWS = 256;
+    private static final String REPORT_HEADER = "row,course,grade,status,message";
+    private static final String OK = "ok";
+    private static final String QUEUED = "queued";
+    private static final String FAILED = "failed";
+    private static final String INVALID = "invalid";
+
+    private final GradeDataBase gradeDataBase;
+    private final Executor executor;
+    private final int parallelism;
+    private final String loggedStatus;
+
+    public ImportGradesUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null, 1);
+    }
+
+    /**
+     * Creates an ImportGradesUseCase that logs several grades at the same time.
+     * @param gradeDataBase the data base to log the grades to.
+     * @param executor the executor to log the grades on, or null to log them one after the other.
+     * @param parallelism the number of grades to log at the same time.
+     */
+    public ImportGradesUseCase(GradeDataBase gradeDataBase, Executor executor, int parallelism) {
+        this(gradeDataBase, executor, parallelism, false);
+    }
+
+    /**
+     * Creates an ImportGradesUseCase that logs several grades at the same time.
+     * @param gradeDataBase the data base to log the grades to.
+     * @param executor the executor to log the grades on, or null to log them one after the other.
+     * @param parallelism the number of grades to log at the same time.
+     * @param queued whether logGrade of the data base returns once the grade is queued, e.g. in a write-ahead
+     *               log, rather than once the grade API has taken it; its rows are then reported as queued.
+     */
+    public ImportGradesUseCase(GradeDataBase gradeDataBase, Executor executor, int parallelism, boolean queued) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.gradeDataBase = gradeDataBase;
+        if (executor == null) {
+            this.executor = Runnable::run;
+        }
+        else {
+            this.executor = executor;
+        }
+        this.parallelism = parallelism;
+        if (queued) {
+            this.loggedStatus = QUEUED;
+        }
+        else {
+            this.loggedStatus = OK;
+        }
+    }
+
+    /**
+     * Import the grades in a file, resuming from the checkpoint if there is one.
+     * @param input The CSV or NDJSON file of grades.
+     * @param report The file to write the outcome of every row to, as CSV.
+     * @param checkpoint The checkpoint file of this import.
+     * @return The summary of the import.
+     * @throws IOException if a file cannot be read or written.
+     * @throws InterruptedException if the import is interrupted; it can be resumed from its checkpoint.
+     */
+    public ImportSummary importGrades(Path input, Path report, Path checkpoint)
+            throws IOException, InterruptedException {
+        return importGrades(input, report, checkpoint, rows -> { });
+    }
+
+    /**
+     * Import the grades in a file, resuming from the checkpoint if there is one.
+     * @param input The CSV or NDJSON file of grades.
+     * @param report The file to write the outcome of every row to, as CSV.
+     * @param checkpoint The checkpoint file of this import.
+     * @param progress Told the number of rows of the file reported so far, from time to time.
+     * @return The summary of the import.
+     * @throws IOException if a file cannot be read or written.
+     * @throws InterruptedException if the import is interrupted; it can be resumed from its checkpoint.
+     */
+    public ImportSummary importGrades(Path input, Path report, Path checkpoint, LongConsumer progress)
+            throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final ImportSummary summary = new Run(report, checkpoint, progress).importFrom(input);
+            failed = false;
+            return summary;
+        }
+        finally {
+            IMPORT_GRADES.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private static long[] readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return new long[]{0, 0};
+        }
+        final String[] fields = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim().split(" ");
+        try {
+            return new long[]{Long.parseLong(fields[0]), Long.parseLong(fields[1])};
+        }
+        catch (NumberFormatException | ArrayIndexOutOfBoundsException event) {
+            throw new IOException("The checkpoint " + checkpoint + " is not valid", event);
+        }
+    }
+
+    // One import of one file.
+    private final class Run {
+        private final Path checkpoint;
+        private final LongConsumer progress;
+        private final int window = parallelism * WINDOW_PER_CALL;
+        private final Semaphore calls = new Semaphore(parallelism);
+        private final Semaphore windowPermits = new Semaphore(window);
+        private final LongAdder loggedCount = new LongAdder();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder invalidCount = new LongAdder();
+
+        // The rows waiting for the row of their course in flight, by course; a course has a lane while
+        // one of its rows is in flight. Guarded by itself.
+        private final Map<String, Deque<GradeFileReader.Row>> lanes = new HashMap<>();
+
+        private final Object lock = new Object();
+        // Guarded by lock: the report lines of the rows finished ahead of nextToReport, by row number.
+        private final Map<Long, String> finished = new HashMap<>();
+        private FileChannel reportChannel;
+        private Writer reportWriter;
+        private long nextToReport;
+        private long reportBytes;
+        private long checkpointedRows;
+        private IOException reportFailure;
+
+        Run(Path report, Path checkpoint, LongConsumer progress) throws IOException {
+            this.checkpoint = checkpoint;
+            this.progress = progress;
+            final long[] resumeFrom = readCheckpoint(checkpoint);
+            checkpointedRows = resumeFrom[0];
+            reportBytes = resumeFrom[1];
+            nextToReport = checkpointedRows + 1;
+            reportChannel = FileChannel.open(report, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                if (reportChannel.size() < reportBytes) {
+                    throw new IOException("The report " + report + " is shorter than its checkpoint says");
+                }
+                // Drop what was reported after the checkpoint; those rows are imported again.
+                reportChannel.truncate(reportBytes);
+                reportChannel.position(reportBytes);
+                reportWriter = new BufferedWriter(Channels.newWriter(reportChannel, StandardCharsets.UTF_8));
+                if (reportBytes == 0) {
+                    write(REPORT_HEADER);
+                }
+            }
+            catch (IOException event) {
+                reportChannel.close();
+                throw event;
+            }
+        }
+
+        ImportSummary importFrom(Path input) throws IOException, InterruptedException {
+            final long resumed;
+            boolean complete = false;
+            try (GradeFileReader reader = GradeFileReader.open(input)) {
+                resumed = reader.skip(checkpointedRows);
+                synchronized (lock) {
+                    nextToReport = resumed + 1;
+                }
+                try {
+                    GradeFileReader.Row row = reader.next();
+                    while (row != null) {
+                        windowPermits.acquire();
+                        if (row.getError() == null) {
+                            send(row);
+                        }
+                        else {
+                            invalidCount.increment();
+                            finish(row, INVALID, row.getError());
+                        }
+                        row = reader.next();
+                    }
+                    complete = true;
+                }
+                finally {
+                    // Let the calls in flight finish, so that the report and the checkpoint cover every row sent.
+                    windowPermits.acquireUninterruptibly(window);
+                    synchronized (lock) {
+                        saveCheckpoint();
+                        reportWriter.close();
+                    }
+                }
+            }
+            finally {
+                reportChannel.close();
+            }
+            if (reportFailure != null) {
+                throw reportFailure;
+            }
+            if (complete) {
+                Files.deleteIfExists(checkpoint);
+            }
+            return new ImportSummary(resumed, loggedCount.sum(), failedCount.sum(), invalidCount.sum());
+        }
+
+        private void send(GradeFileReader.Row row) throws InterruptedException {
+            synchronized (lanes) {
+                final Deque<GradeFileReader.Row> lane = lanes.get(row.getCourse());
+                if (lane != null) {
+                    // The call for the row of this course in flight sends this one after it.
+                    lane.addLast(row);
+                    return;
+                }
+                lanes.put(row.getCourse(), new ArrayDeque<>());
+            }
+            try {
+                calls.acquire();
+            }
+            catch (InterruptedException event) {
+                closeLane(row);
+                throw event;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        GradeFileReader.Row next = row;
+                        while (next != null) {
+                            log(next);
+                            next = nextInLane(next);
+                        }
+                    }
+                    finally {
+                        calls.release();
+                    }
+                });
+            }
+            catch (RejectedExecutionException event) {
+                calls.release();
+                closeLane(row);
+                throw event;
+            }
+        }
+
+        // Only the reader adds to a lane, so no row was added to the lane of a row that was not sent.
+        private void closeLane(GradeFileReader.Row row) {
+            synchronized (lanes) {
+                lanes.remove(row.getCourse());
+            }
+            windowPermits.release();
+        }
+
+        private GradeFileReader.Row nextInLane(GradeFileReader.Row row) {
+            synchronized (lanes) {
+                final Deque<GradeFileReader.Row> lane = lanes.get(row.getCourse());
+                final GradeFileReader.Row next = lane.pollFirst();
+                if (next == null) {
+                    lanes.remove(row.getCourse());
+                }
+                return next;
+            }
+        }
+
+        private void log(GradeFileReader.Row row) {
+            try {
+                gradeDataBase.logGrade(row.getCourse(), row.getGrade());
+                loggedCount.increment();
+                finish(row, loggedStatus, "");
+            }
+            catch (Throwable event) {
+                // Whatever the call throws, the row must be finished, or the import waits for it forever.
+                failedCount.increment();
+                finish(row, FAILED, event.getMessage());
+            }
+        }
+
+        private void finish(GradeFileReader.Row row, String status, String message) {
+            final String line = row.getNumber() + "," + GradeFileReader.csvField(row.getCourse())
+                    + "," + GradeFileReader.csvField(row.getGradeText())
+                    + "," + status + "," + GradeFileReader.csvField(message);
+            int reported = 0;
+            synchronized (lock) {
+                finished.put(row.getNumber(), line);
+                String next = finished.remove(nextToReport);
+                while (next != null) {
+                    write(next);
+                    nextToReport++;
+                    reported++;
+                    next = finished.remove(nextToReport);
+                }
+                if (nextToReport - 1 - checkpointedRows >= CHECKPOINT_EVERY_ROWS) {
+                    saveCheckpoint();
+                }
+            }
+            windowPermits.release(reported);
+        }
+
+        // Called with the lock held.
+        private void write(String line) {
+            if (reportFailure != null) {
+                return;
+            }
+            try {
+                reportWriter.write(line);
+                reportWriter.write('\n');
+                reportBytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+            catch (IOException event) {
+                reportFailure = event;
+            }
+        }
+
+        // Called with the lock held. The report is on the disk before the checkpoint says it is.
+        private void saveCheckpoint() {
+            if (reportFailure != null) {
+                return;
+            }
+            final long rows = nextToReport - 1;
+            try {
+                reportWriter.flush();
+                reportChannel.force(false);
+                final Path saved = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+                Files.write(saved, (rows + " " + reportBytes).getBytes(StandardCharsets.UTF_8));
+                Files.move(saved, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                checkpointedRows = rows;
+            }
+            catch (IOException event) {
+                reportFailure = event;
+                return;
+            }
+            progress.accept(rows);
+        }
+    }
+
+    /**
+     * What an import did.
+     */
+    public static final class ImportSummary {
+        private final long resumedCount;
+        private final long loggedCount;
+        private final long failedCount;
+        private final long invalidCount;
+
+        ImportSummary(long resumedCount, long loggedCount, long failedCount, long invalidCount) {
+            this.resumedCount = resumedCount;
+            this.loggedCount = loggedCount;
+            this.failedCount = failedCount;
+            this.invalidCount = invalidCount;
+        }
+
+        /**
+         * Returns the number of rows skipped because an earlier, interrupted import had done them.
+         * @return the number of rows resumed after.
+         */
+        public long getResumedCount() {
+            return resumedCount;
+        }
+
+        /**
+         * Returns the number of grades logged by this import, or queued to be logged if the data base queues them.
+         * @return the number of grades logged.
+         */
+        public long getLoggedCount() {
+            return loggedCount;
+        }
+
+        /**
+         * Returns the number of valid grades the data base failed to log.
+         * @return the number of failed grades.
+         */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * Returns the number of rows that could not be read as a grade.
+         * @return the number of invalid rows.
+         */
+        public long getInvalidCount() {
+            return invalidCount;
+        }
+
+        @Override
+        public String toString() {
+            return "ImportSummary{" + "resumed=" + resumedCount
+                    + ", logged=" + loggedCount
+                    + ", failed=" + failedCount
+                    + ", invalid=" + invalidCount + '}';
+        }
+    }
+}
@@ -2,11 +2,15 @@ package usecase;
 
 import api.GradeDataBase;
 import entity.Team;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * JoinTeamUseCase class.
  */
 public final class JoinTeamUseCase {
+    private static final OperationMetrics JOIN_TEAM =
+            MetricsRegistry.getDefault().operation("JoinTeamUseCase", "joinTeam");
     private final GradeDataBase gradeDataBase;
 
     public JoinTeamUseCase(GradeDataBase gradeDataBase) {
@@ -19,6 +23,6 @@ public final class JoinTeamUseCase {
      * @return The team that the student joined.
      */
     public Team joinTeam(String name) {
-        return gradeDataBase.joinTeam(name);
+        return JOIN_TEAM.time(() -> gradeDataBase.joinTeam(name));
     }
 }
@@ -1,12 +1,16 @@
 package usecase;
 
 import api.GradeDataBase;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * The class for the leave team use case.
  */
 
 public final class LeaveTeamUseCase {
+    private static final OperationMetrics LEAVE_TEAM =
+            MetricsRegistry.getDefault().operation("LeaveTeamUseCase", "leaveTeam");
     private final GradeDataBase gradeDataBase;
 
     public LeaveTeamUseCase(GradeDataBase gradeDataBase) {
@@ -17,6 +21,6 @@ public final class LeaveTeamUseCase {
      * Call the database to run the action to leave a team.
      */
     public void leaveTeam() {
-        gradeDataBase.leaveTeam();
+        LEAVE_TEAM.run(gradeDataBase::leaveTeam);
     }
 }
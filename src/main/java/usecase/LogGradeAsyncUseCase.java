@@ -0,0 +1,31 @@
+package usecase;
+
+import java.util.concurrent.CompletableFuture;
+
+import api.AsyncGradeDataBase;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+/**
+ * LogGradeAsyncUseCase class, the log grade usecase that does not block the calling thread.
+ */
+public final class LogGradeAsyncUseCase {
+    private static final OperationMetrics LOG_GRADE =
+            MetricsRegistry.getDefault().operation("LogGradeAsyncUseCase", "logGrade");
+    private final AsyncGradeDataBase gradeDataBase;
+
+    public LogGradeAsyncUseCase(AsyncGradeDataBase gradeDataBase) {
+        this.gradeDataBase = gradeDataBase;
+    }
+
+    /**
+     * Log a grade.
+     * @param course The course.
+     * @param grade The grade.
+     * @return a future that completes once the grade has been logged.
+     */
+    public CompletableFuture<Grade> logGrade(String course, int grade) {
+        return LOG_GRADE.timeAsync(() -> gradeDataBase.logGradeAsync(course, grade));
+    }
+}
@@ -1,17 +1,38 @@
 package usecase;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.json.JSONException;
 
 import api.GradeDataBase;
+import api.WriteBehindGradeLogger;
+import entity.Grade;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
 
 /**
  * LogGradeUseCase class.
  */
 public final class LogGradeUseCase {
+    private static final OperationMetrics LOG_GRADE =
+            MetricsRegistry.getDefault().operation("LogGradeUseCase", "logGrade");
+    private static final OperationMetrics SUBMIT_GRADE =
+            MetricsRegistry.getDefault().operation("LogGradeUseCase", "submitGrade");
     private final GradeDataBase gradeDataBase;
+    private final WriteBehindGradeLogger writeBehind;
 
     public LogGradeUseCase(GradeDataBase gradeDataBase) {
+        this(gradeDataBase, null);
+    }
+
+    /**
+     * Creates a LogGradeUseCase whose submitGrade hands the grades to a write-behind logger.
+     * @param gradeDataBase the data base to log the grades to.
+     * @param writeBehind the logger that sends the grades in the background, or null to send them straight away.
+     */
+    public LogGradeUseCase(GradeDataBase gradeDataBase, WriteBehindGradeLogger writeBehind) {
         this.gradeDataBase = gradeDataBase;
+        this.writeBehind = writeBehind;
     }
 
     /**
@@ -21,6 +42,26 @@ public final class LogGradeUseCase {
      * @throws JSONException if an error occurs.
      */
     public void logGrade(String course, int grade) throws JSONException {
-        gradeDataBase.logGrade(course, grade);
+        LOG_GRADE.time(() -> gradeDataBase.logGrade(course, grade));
+    }
+
+    /**
+     * Log a grade without waiting for it to be sent, when this use case has a write-behind logger.
+     * @param course The course.
+     * @param grade The grade.
+     * @return a future that completes once the grade has been logged.
+     */
+    public CompletableFuture<Grade> submitGrade(String course, int grade) {
+        if (writeBehind != null) {
+            return SUBMIT_GRADE.timeAsync(() -> writeBehind.submitGrade(course, grade));
+        }
+        final CompletableFuture<Grade> result = new CompletableFuture<>();
+        try {
+            result.complete(gradeDataBase.logGrade(course, grade));
+        }
+        catch (RuntimeException event) {
+            result.completeExceptionally(event);
+        }
+        return result;
     }
 }
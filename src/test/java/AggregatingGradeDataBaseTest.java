@@ -0,0 +1,232 @@
+import api.AggregatingGradeDataBase;
+import api.GradeDataBase;
+import api.GradeNotFoundException;
+import entity.CourseAggregate;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import usecase.GetAverageGradeUseCase;
+import usecase.GetTopGradeUseCase;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the per-course team aggregates kept by AggregatingGradeDataBase.
+ */
+public class AggregatingGradeDataBaseTest {
+
+    private GradeDataBaseStub stub;
+    private AggregatingGradeDataBase gradeDB;
+
+    @BeforeEach
+    void setUp() {
+        stub = new GradeDataBaseStub();
+        gradeDB = new AggregatingGradeDataBase(stub, null, "t1chenpa");
+    }
+
+    @Test
+    void testColdAggregateIsComputedOnce() {
+        CourseAggregate aggregate = gradeDB.getCourseAggregate("CSC207");
+
+        assertEquals(3, aggregate.getCount());
+        assertTrue(aggregate.isComplete());
+        assertEquals(257, aggregate.getSum());
+        assertEquals(81, aggregate.getMin());
+        assertEquals("t3chenpa", aggregate.getTop().getUsername());
+        assertEquals(3, stub.requests.get());
+
+        gradeDB.getCourseAggregate("CSC207");
+        assertEquals(3, stub.requests.get());
+    }
+
+    @Test
+    void testLoggedGradesUpdateTheAggregate() {
+        gradeDB.getCourseAggregate("CSC207");
+
+        gradeDB.logGrade("CSC207", 99);
+        CourseAggregate aggregate = gradeDB.getCourseAggregate("CSC207");
+        assertEquals(271, aggregate.getSum());
+        assertEquals("t1chenpa", aggregate.getTop().getUsername());
+
+        gradeDB.logGrade("CSC207", 50);
+        aggregate = gradeDB.getCourseAggregate("CSC207");
+        assertEquals(222, aggregate.getSum());
+        assertEquals(50, aggregate.getMin());
+        assertEquals("t3chenpa", aggregate.getTop().getUsername());
+        assertEquals(3, stub.requests.get());
+    }
+
+    @Test
+    void testChangingTeamDropsTheAggregates() {
+        gradeDB.getCourseAggregate("CSC207");
+
+        gradeDB.leaveTeam();
+        gradeDB.getCourseAggregate("CSC207");
+
+        assertEquals(6, stub.requests.get());
+    }
+
+    @Test
+    void testTeamChangeDuringTheTeamLookupIsNotKept() {
+        stub.onTeamLookup = () -> {
+            stub.onTeamLookup = null;
+            gradeDB.leaveTeam();
+        };
+        gradeDB.getCourseAggregate("CSC207");
+        gradeDB.getCourseAggregate("CSC207");
+
+        assertEquals(6, stub.requests.get());
+    }
+
+    @Test
+    void testUseCasesAnswerFromTheAggregates() {
+        GetAverageGradeUseCase average = new GetAverageGradeUseCase(gradeDB, null);
+        GetTopGradeUseCase top = new GetTopGradeUseCase(gradeDB, null);
+
+        assertEquals(257 / 3f, average.getAverageGrade("CSC207"), 0.01);
+        assertEquals(91.0, top.getTopGrade("CSC207"));
+        assertEquals(89.0, top.getTopGrade("CSC148"));
+        assertNull(top.findTopGrade("MAT137"));
+    }
+
+    @Test
+    void testAggregateIsComputedAgainAfterMaxAge() {
+        AtomicLong now = new AtomicLong();
+        gradeDB = new AggregatingGradeDataBase(stub, null, "t1chenpa", 1000, now::get);
+        gradeDB.getCourseAggregate("CSC207");
+
+        // A teammate logs a grade somewhere else, and a new member joins.
+        stub.add("t2chenpa", "CSC207", 95);
+        stub.add("t4chenpa", "CSC207", 70);
+        stub.members = new String[]{"t1chenpa", "t2chenpa", "t3chenpa", "t4chenpa"};
+        now.addAndGet(999 * 1_000_000L);
+        assertEquals(257, gradeDB.getCourseAggregate("CSC207").getSum());
+        assertEquals(3, stub.requests.get());
+
+        now.addAndGet(1_000_000L);
+        CourseAggregate aggregate = gradeDB.getCourseAggregate("CSC207");
+        assertEquals(7, stub.requests.get());
+        assertEquals(4, aggregate.getCount());
+        assertEquals(341, aggregate.getSum());
+        assertEquals(70, aggregate.getMin());
+        assertEquals("t2chenpa", aggregate.getTop().getUsername());
+    }
+
+    @Test
+    void testAggregateIsComputedFromTheIndexedHistories() {
+        AtomicLong now = new AtomicLong();
+        gradeDB = new AggregatingGradeDataBase(stub, null, "t1chenpa", 1000, now::get);
+        gradeDB.getGrades(Arrays.asList(stub.members), Runnable::run);
+
+        CourseAggregate aggregate = gradeDB.getCourseAggregate("CSC207");
+        assertEquals(0, stub.requests.get());
+        assertEquals(257, aggregate.getSum());
+        assertEquals("t3chenpa", aggregate.getTop().getUsername());
+        assertEquals(89, gradeDB.getCourseAggregate("CSC148").getSum());
+        assertEquals(0, stub.requests.get());
+
+        // Once the histories are too old, the grades are looked up again.
+        now.addAndGet(1000 * 1_000_000L);
+        gradeDB.getCourseAggregate("CSC207");
+        assertEquals(3, stub.requests.get());
+    }
+
+    @Test
+    void testLoggingAGradeForgetsTheIndexedHistory() {
+        gradeDB.getGrades(Arrays.asList(stub.members), Runnable::run);
+        gradeDB.logGrade("MAT137", 70);
+
+        assertEquals(70, gradeDB.getCourseAggregate("MAT137").getSum());
+        assertEquals(3, stub.requests.get());
+    }
+
+    @Test
+    void testAsyncHistoriesAreIndexed() {
+        for (String member : stub.members) {
+            gradeDB.getGradesAsync(member).join();
+        }
+
+        assertEquals(257, gradeDB.getCourseAggregate("CSC207").getSum());
+        assertEquals(0, stub.requests.get());
+    }
+
+    // Stub class for GradeDataBase
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final Map<String, Grade> grades = new ConcurrentHashMap<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile String[] members = {"t1chenpa", "t2chenpa", "t3chenpa"};
+        private volatile Runnable onTeamLookup;
+
+        GradeDataBaseStub() {
+            add("t1chenpa", "CSC207", 85);
+            add("t2chenpa", "CSC207", 81);
+            add("t2chenpa", "CSC148", 89);
+            add("t3chenpa", "CSC207", 91);
+        }
+
+        private void add(String username, String course, int grade) {
+            grades.put(username + "/" + course,
+                    Grade.builder().username(username).course(course).grade(grade).build());
+        }
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            requests.incrementAndGet();
+            Grade grade = grades.get(username + "/" + course);
+            if (grade == null) {
+                throw new GradeNotFoundException("Grade could not be found for course: " + course
+                        + " and username: " + username);
+            }
+            return grade;
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            add("t1chenpa", course, grade);
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return grades.values().stream()
+                    .filter(grade -> grade.getUsername().equals(username))
+                    .toArray(Grade[]::new);
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            final Runnable hook = onTeamLookup;
+            if (hook != null) {
+                hook.run();
+            }
+            return Team.builder()
+                    .name("team1")
+                    .members(members)
+                    .build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import api.AsyncGradeDataBase;
+import api.CacheStats;
+import api.CachingGradeDataBase;
+import api.GradeDataBase;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the read-through grade cache.
+ */
+public class CachingGradeDataBaseTest {
+    private static final long MILLI = 1_000_000L;
+
+    private GradeDataBaseStub stub;
+    private AtomicLong now;
+    private CachingGradeDataBase cache;
+
+    @BeforeEach
+    void setUp() {
+        stub = new GradeDataBaseStub();
+        now = new AtomicLong();
+        cache = CachingGradeDataBase.builder(stub)
+                .maxEntries(2)
+                .refreshAfterMillis(100)
+                .expireAfterMillis(1000)
+                .refreshExecutor(Runnable::run)
+                .ticker(now::get)
+                .build();
+    }
+
+    @Test
+    void testRepeatedLookupsAreServedFromCache() {
+        assertEquals(85, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(85, cache.getGrade("t1chenpa", "CSC207").getGrade());
+
+        assertEquals(1, stub.gradeRequests.get());
+        CacheStats stats = cache.stats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+    }
+
+    @Test
+    void testStaleEntryIsReturnedAndRefreshed() {
+        cache.getGrade("t1chenpa", "CSC207");
+        stub.grade = 90;
+        now.set(200 * MILLI);
+
+        // The stale value comes back straight away, and the refresh replaces it.
+        assertEquals(85, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(90, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(1, cache.stats().getRefreshCount());
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() {
+        cache.getGrade("t1chenpa", "CSC207");
+        stub.grade = 90;
+        now.set(2000 * MILLI);
+
+        assertEquals(90, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(2, cache.stats().getMissCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        cache.getGrade("t1chenpa", "CSC207");
+        cache.getGrade("t2chenpa", "CSC207");
+        cache.getGrade("t1chenpa", "CSC207");
+        cache.getGrade("t3chenpa", "CSC207");
+
+        assertEquals(1, cache.stats().getEvictionCount());
+        cache.getGrade("t1chenpa", "CSC207");
+        assertEquals(3, stub.gradeRequests.get());
+        cache.getGrade("t2chenpa", "CSC207");
+        assertEquals(4, stub.gradeRequests.get());
+    }
+
+    @Test
+    void testLogGradeInvalidatesCourse() {
+        cache.getGrade("t1chenpa", "CSC207");
+        cache.getGrades("t1chenpa");
+        assertNotNull(cache.getCachedGrades("t1chenpa"));
+
+        cache.logGrade("CSC207", 90);
+
+        assertNull(cache.getCachedGrades("t1chenpa"));
+        assertEquals(90, cache.getGrade("t1chenpa", "CSC207").getGrade());
+    }
+
+    @Test
+    void testTeamIsKeptUntilChangedThroughCache() {
+        cache.getMyTeam();
+        cache.getMyTeam();
+        assertEquals(1, stub.teamRequests.get());
+
+        cache.joinTeam("team2");
+        assertEquals("team2", cache.getMyTeam().getName());
+        assertEquals(2, stub.teamRequests.get());
+
+        cache.leaveTeam();
+        cache.getMyTeam();
+        assertEquals(3, stub.teamRequests.get());
+    }
+
+    @Test
+    void testFormedTeamIsCached() {
+        Team formed = cache.formTeam("team3");
+
+        assertSame(formed, cache.getMyTeam());
+        assertEquals(0, stub.teamRequests.get());
+    }
+
+    @Test
+    void testRefreshIsKeptAfterAnUnrelatedInvalidation() {
+        List<Runnable> refreshes = new ArrayList<>();
+        CachingGradeDataBase deferred = CachingGradeDataBase.builder(stub)
+                .refreshAfterMillis(100)
+                .refreshExecutor(refreshes::add)
+                .ticker(now::get)
+                .build();
+        deferred.getGrade("t1chenpa", "CSC207");
+        stub.grade = 90;
+        now.set(200 * MILLI);
+
+        deferred.getGrade("t1chenpa", "CSC207");
+        deferred.invalidate("t2chenpa", "CSC148");
+        refreshes.get(0).run();
+
+        assertEquals(90, deferred.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(1, refreshes.size());
+    }
+
+    @Test
+    void testFailedRefreshIsTriedAgain() {
+        cache.getGrade("t1chenpa", "CSC207");
+        stub.broken = true;
+        now.set(200 * MILLI);
+
+        assertEquals(85, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        stub.broken = false;
+        stub.grade = 90;
+        assertEquals(85, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(90, cache.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(2, cache.stats().getRefreshCount());
+    }
+
+    @Test
+    void testCachedHistoriesAreCopied() {
+        cache.getGrades("t1chenpa")[0] = null;
+
+        assertNotNull(cache.getGrades("t1chenpa")[0]);
+        cache.getCachedGrades("t1chenpa")[0] = null;
+        assertNotNull(cache.getGrades(List.of("t1chenpa"), Runnable::run).get("t1chenpa")[0]);
+        assertEquals(1, stub.gradeRequests.get());
+    }
+
+    @Test
+    void testTeamExpires() {
+        CachingGradeDataBase shortLived = CachingGradeDataBase.builder(stub)
+                .teamExpireAfterMillis(50)
+                .ticker(now::get)
+                .build();
+        shortLived.getMyTeam();
+        now.set(100 * MILLI);
+        shortLived.getMyTeam();
+
+        assertEquals(2, stub.teamRequests.get());
+    }
+
+    @Test
+    void testAsyncMissIsStoredOnceItArrives() {
+        AsyncGradeDataBaseStub async = new AsyncGradeDataBaseStub();
+        CachingGradeDataBase asyncCache = CachingGradeDataBase.builder(async).ticker(now::get).build();
+
+        CompletableFuture<Grade> miss = asyncCache.getGradeAsync("t1chenpa", "CSC207");
+        assertFalse(miss.isDone());
+        async.pending.complete(Grade.builder().username("t1chenpa").course("CSC207").grade(85).build());
+
+        assertEquals(85, miss.join().getGrade());
+        CompletableFuture<Grade> hit = asyncCache.getGradeAsync("t1chenpa", "CSC207");
+        assertTrue(hit.isDone());
+        assertSame(miss.join(), hit.join());
+        assertEquals(1, async.asyncRequests.get());
+        assertEquals(0, ((GradeDataBaseStub) async).gradeRequests.get());
+    }
+
+    // Stub class for GradeDataBase that can be made to throw an Error
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final AtomicInteger gradeRequests = new AtomicInteger();
+        private final AtomicInteger teamRequests = new AtomicInteger();
+        private volatile int grade = 85;
+        private volatile String teamName = "team1";
+        private volatile boolean broken;
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            if (broken) {
+                throw new StackOverflowError("Out of stack");
+            }
+            gradeRequests.incrementAndGet();
+            return Grade.builder().username(username).course(course).grade(grade).build();
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            this.grade = grade;
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[]{getGrade(username, "CSC207")};
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            teamName = name;
+            return Team.builder().name(name).members(new String[]{"t1chenpa"}).build();
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            teamName = name;
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            teamRequests.incrementAndGet();
+            return Team.builder().name(teamName).members(new String[]{"t1chenpa", "t2chenpa"}).build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+            teamName = null;
+        }
+    }
+
+    // Stub class for AsyncGradeDataBase whose grade lookups complete when the test completes them
+    private static class AsyncGradeDataBaseStub extends GradeDataBaseStub implements AsyncGradeDataBase {
+        private final CompletableFuture<Grade> pending = new CompletableFuture<>();
+        private final AtomicInteger asyncRequests = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+            asyncRequests.incrementAndGet();
+            return pending;
+        }
+
+        @Override
+        public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Grade[]> getGradesAsync(String username) {
+            return CompletableFuture.completedFuture(new Grade[0]);
+        }
+
+        @Override
+        public CompletableFuture<Team> formTeamAsync(String name) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Team> joinTeamAsync(String name) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Team> getMyTeamAsync() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> leaveTeamAsync() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import api.AsyncGradeDataBase;
+import api.CoalescingGradeDataBase;
+import api.GradeDataBase;
+import api.GradeNotFoundException;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing that concurrent identical reads share one request.
+ */
+public class CoalescingGradeDataBaseTest {
+
+    private GradeDataBaseStub stub;
+    private CoalescingGradeDataBase gradeDB;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        stub = new GradeDataBaseStub();
+        gradeDB = new CoalescingGradeDataBase(stub);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentReadsShareOneRequest() throws Exception {
+        Future<Grade> first = executor.submit(() -> gradeDB.getGrade("t1chenpa", "CSC207"));
+        assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+        Future<Grade> second = executor.submit(() -> gradeDB.getGrade("t1chenpa", "CSC207"));
+        waitForCoalesced(1);
+        stub.release.countDown();
+
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, stub.requests.get());
+        assertEquals(1, gradeDB.getRequestCount());
+    }
+
+    @Test
+    void testConcurrentReadsShareTheFailure() throws Exception {
+        Future<Grade> first = executor.submit(() -> gradeDB.getGrade("t1chenpa", "MAT137"));
+        assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+        Future<Grade> second = executor.submit(() -> gradeDB.getGrade("t1chenpa", "MAT137"));
+        waitForCoalesced(1);
+        stub.release.countDown();
+
+        Exception firstFailure = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+        Exception secondFailure = assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(GradeNotFoundException.class, firstFailure.getCause());
+        assertSame(firstFailure.getCause(), secondFailure.getCause());
+        assertEquals(1, stub.requests.get());
+    }
+
+    @Test
+    void testBulkLookupJoinsRequestsInFlight() throws Exception {
+        Future<Grade> single = executor.submit(() -> gradeDB.getGrade("t1chenpa", "CSC207"));
+        assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+        Future<Map<String, Grade>> bulk = executor.submit(() ->
+                gradeDB.getGrades(Arrays.asList("t1chenpa", "t2chenpa", "t3chenpa"), "CSC207", Runnable::run));
+        waitForCoalesced(1);
+        stub.release.countDown();
+
+        Map<String, Grade> grades = bulk.get(5, TimeUnit.SECONDS);
+        assertSame(single.get(5, TimeUnit.SECONDS), grades.get("t1chenpa"));
+        assertEquals(Arrays.asList("t1chenpa", "t2chenpa"), Arrays.asList(grades.keySet().toArray()));
+        assertEquals(3, stub.requests.get());
+    }
+
+    @Test
+    void testFinishedRequestsAreNotReused() {
+        stub.release.countDown();
+
+        gradeDB.getMyTeam();
+        gradeDB.getMyTeam();
+
+        assertEquals(2, stub.requests.get());
+        assertEquals(0, gradeDB.getCoalescedCount());
+    }
+
+    @Test
+    void testConcurrentAsyncReadsShareOneRequest() {
+        AsyncGradeDataBaseStub async = new AsyncGradeDataBaseStub();
+        gradeDB = new CoalescingGradeDataBase(async);
+
+        CompletableFuture<Grade> first = gradeDB.getGradeAsync("t1chenpa", "CSC207");
+        CompletableFuture<Grade> second = gradeDB.getGradeAsync("t1chenpa", "CSC207");
+        assertFalse(second.isDone());
+        async.pending.complete(Grade.builder().username("t1chenpa").course("CSC207").grade(85).build());
+
+        assertSame(first.join(), second.join());
+        assertEquals(1, async.asyncRequests.get());
+        assertEquals(0, ((GradeDataBaseStub) async).requests.get());
+        assertEquals(1, gradeDB.getCoalescedCount());
+    }
+
+    private void waitForCoalesced(long count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (gradeDB.getCoalescedCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, gradeDB.getCoalescedCount());
+    }
+
+    // Stub class for GradeDataBase whose requests wait until they are released
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger requests = new AtomicInteger();
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            requests.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException event) {
+                throw new RuntimeException(event);
+            }
+            if (!"CSC207".equals(course) || "t3chenpa".equals(username)) {
+                throw new GradeNotFoundException("Grade could not be found for course: " + course
+                        + " and username: " + username);
+            }
+            return Grade.builder().username(username).course(course).grade(85).build();
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[0];
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            requests.incrementAndGet();
+            return Team.builder().name("team1").members(new String[]{"t1chenpa"}).build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+
+        }
+    }
+
+    // Stub class for AsyncGradeDataBase whose grade lookups complete when the test completes them
+    private static class AsyncGradeDataBaseStub extends GradeDataBaseStub implements AsyncGradeDataBase {
+        private final CompletableFuture<Grade> pending = new CompletableFuture<>();
+        private final AtomicInteger asyncRequests = new AtomicInteger();
+
+        @Override
+        public CompletableFuture<Grade> getGradeAsync(String username, String course) {
+            asyncRequests.incrementAndGet();
+            return pending;
+        }
+
+        @Override
+        public CompletableFuture<Grade> logGradeAsync(String course, int grade) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Grade[]> getGradesAsync(String username) {
+            return CompletableFuture.completedFuture(new Grade[0]);
+        }
+
+        @Override
+        public CompletableFuture<Team> formTeamAsync(String name) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Team> joinTeamAsync(String name) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Team> getMyTeamAsync() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> leaveTeamAsync() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
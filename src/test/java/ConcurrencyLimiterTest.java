@@ -0,0 +1,83 @@
+import api.ConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the adaptive limit on requests in flight.
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    void testRequestsOverTheLimitWaitInOrder() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(2).maxLimit(2).build();
+
+        CompletableFuture<Void> first = limiter.acquireAsync();
+        CompletableFuture<Void> second = limiter.acquireAsync();
+        CompletableFuture<Void> third = limiter.acquireAsync();
+        CompletableFuture<Void> fourth = limiter.acquireAsync();
+
+        assertTrue(first.isDone() && second.isDone());
+        assertFalse(third.isDone() || fourth.isDone());
+        assertEquals(2, limiter.getQueueDepth());
+
+        limiter.onSuccess(0);
+        assertTrue(third.isDone());
+        assertFalse(fourth.isDone());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueueDepth());
+    }
+
+    @Test
+    void testLimitGrowsWhileRequestsSucceed() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(2).maxLimit(10).build();
+
+        for (int i = 0; i < 20; i++) {
+            limiter.acquireAsync();
+            limiter.acquireAsync();
+            limiter.onSuccess(0);
+            limiter.onSuccess(0);
+        }
+
+        assertTrue(limiter.getLimit() > 2);
+        assertTrue(limiter.getLimit() <= 10);
+    }
+
+    @Test
+    void testLimitShrinksOnFailuresAndSlowRequests() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                .initialLimit(10).backoffRatio(0.5).maxLatencyMillis(100).build();
+
+        limiter.acquireAsync();
+        limiter.onDropped();
+        assertEquals(5, limiter.getLimit());
+
+        limiter.acquireAsync();
+        limiter.onSuccess(1_000_000_000L);
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquireAsync();
+            limiter.onDropped();
+        }
+        assertEquals(1, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testCancelledWaitersAreSkipped() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(1).maxLimit(1).build();
+
+        limiter.acquireAsync();
+        CompletableFuture<Void> cancelled = limiter.acquireAsync();
+        CompletableFuture<Void> waiting = limiter.acquireAsync();
+        cancelled.cancel(false);
+        limiter.onIgnore();
+
+        assertTrue(waiting.isDone());
+        assertEquals(1, limiter.getInFlight());
+    }
+}
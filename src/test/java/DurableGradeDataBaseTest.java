@@ -0,0 +1,299 @@
+import api.DurableGradeDataBase;
+import api.GradeDataBase;
+import api.GradeResponseDecoder;
+import api.GradeWriteAheadLog;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the write-ahead log of grades and replaying it to the grade API.
+ */
+public class DurableGradeDataBaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testUnconfirmedEntriesSurviveReopening() throws IOException {
+        Path file = directory.resolve("grades.wal");
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            log.append("CSC207", 80);
+            long second = log.append("CSC148", 70);
+            log.append("MAT137", 60);
+            log.confirm(second - 1);
+        }
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            List<GradeWriteAheadLog.Entry> pending = log.pending();
+            assertEquals(2, pending.size());
+            assertEquals("CSC148", pending.get(0).getCourse());
+            assertEquals(60, pending.get(1).getGrade());
+            assertTrue(pending.get(0).getSeq() < pending.get(1).getSeq());
+
+            log.confirm(pending.get(1).getSeq());
+            assertEquals(0, Files.size(file));
+        }
+    }
+
+    @Test
+    void testTornRecordIsDroppedOnOpen() throws IOException {
+        Path file = directory.resolve("grades.wal");
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            log.append("CSC207", 80);
+            log.append("CSC148", 70);
+        }
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Flip the last byte of the second record, as if the crash came in the middle of writing it.
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), size - 1);
+        }
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            assertEquals(1, log.getPendingCount());
+            assertEquals("CSC207", log.pending().get(0).getCourse());
+            assertTrue(Files.size(file) < size);
+            log.append("MAT137", 60);
+        }
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            assertEquals(2, log.getPendingCount());
+            assertEquals("MAT137", log.pending().get(1).getCourse());
+        }
+    }
+
+    @Test
+    void testConfirmedEntriesAreCompactedAway() throws IOException {
+        Path file = directory.resolve("grades.wal");
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            long last = 0;
+            for (int i = 0; i < 5000; i++) {
+                last = log.append("CSC" + i, i % 100);
+            }
+            long size = Files.size(file);
+            log.confirm(last - 1000);
+            assertTrue(Files.size(file) < size / 2, "the confirmed front of the log is rewritten away");
+            log.append("CSC207", 99);
+        }
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            List<GradeWriteAheadLog.Entry> pending = log.pending();
+            assertEquals(1001, pending.size());
+            assertEquals("CSC4000", pending.get(0).getCourse());
+            assertEquals("CSC207", pending.get(1000).getCourse());
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsShareSyncs() throws Exception {
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(directory.resolve("grades.wal"))) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> appends = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                final int course = thread;
+                appends.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        log.append("CSC" + course, i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> append : appends) {
+                append.get();
+            }
+            executor.shutdown();
+
+            List<GradeWriteAheadLog.Entry> pending = log.pending();
+            assertEquals(800, pending.size());
+            for (int i = 1; i < pending.size(); i++) {
+                assertTrue(pending.get(i - 1).getSeq() < pending.get(i).getSeq());
+            }
+            assertTrue(log.getSyncCount() <= 800);
+        }
+    }
+
+    @Test
+    void testGradesLoggedOfflineAreReplayedInOrder() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.reachable = false;
+        try (DurableGradeDataBase gradeDB = DurableGradeDataBase.builder(stub,
+                GradeWriteAheadLog.open(directory.resolve("grades.wal")))
+                .minBackoffMillis(10)
+                .maxBackoffMillis(50)
+                .build()) {
+            gradeDB.logGrade("CSC207", 80);
+            gradeDB.logGrade("MAT137", 50);
+            gradeDB.logGrade("CSC148", 70);
+            awaitTrue(gradeDB::isOffline);
+            assertEquals(3, gradeDB.getPendingCount());
+
+            stub.reachable = true;
+            awaitTrue(() -> gradeDB.getPendingCount() == 0);
+            assertFalse(gradeDB.isOffline());
+            assertEquals(List.of("CSC207/80", "CSC148/70"), stub.logged);
+            assertEquals(2, gradeDB.getReplayedCount());
+            assertEquals(1, gradeDB.getRejectedCount());
+        }
+    }
+
+    @Test
+    void testGradesTheApiCannotTakeYetStayInTheLog() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.answer = "{\"status_code\":503,\"message\":\"Service unavailable\"}";
+        try (DurableGradeDataBase gradeDB = DurableGradeDataBase.builder(stub,
+                GradeWriteAheadLog.open(directory.resolve("grades.wal")))
+                .minBackoffMillis(10)
+                .maxBackoffMillis(50)
+                .build()) {
+            gradeDB.logGrade("CSC207", 80);
+            awaitTrue(gradeDB::isOffline);
+            assertEquals(1, gradeDB.replay());
+
+            stub.answer = "{\"status_code\":429,\"message\":\"Too many requests\"}";
+            assertEquals(1, gradeDB.replay());
+            stub.answer = "<html><body>502 Bad Gateway</body></html>";
+            assertEquals(1, gradeDB.replay());
+            assertEquals(0, gradeDB.getRejectedCount());
+
+            stub.answer = null;
+            awaitTrue(() -> gradeDB.getPendingCount() == 0);
+            assertEquals(List.of("CSC207/80"), stub.logged);
+        }
+    }
+
+    @Test
+    void testGradesLeftInTheLogAreReplayedOnTheNextStart() throws Exception {
+        Path file = directory.resolve("grades.wal");
+        try (GradeWriteAheadLog log = GradeWriteAheadLog.open(file)) {
+            log.append("CSC207", 80);
+        }
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        try (DurableGradeDataBase gradeDB = DurableGradeDataBase.builder(stub, GradeWriteAheadLog.open(file)).build()) {
+            awaitTrue(() -> gradeDB.getPendingCount() == 0);
+            assertEquals(List.of("CSC207/80"), stub.logged);
+        }
+    }
+
+    @Test
+    void testSignedInUserSeesTheGradesStillInTheLog() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.reachable = false;
+        try (DurableGradeDataBase gradeDB = DurableGradeDataBase.builder(stub,
+                GradeWriteAheadLog.open(directory.resolve("grades.wal")))
+                .username("t1chenpa")
+                .minBackoffMillis(10)
+                .maxBackoffMillis(50)
+                .build()) {
+            assertEquals("t1chenpa", gradeDB.logGrade("CSC207", 80).getUsername());
+            gradeDB.logGrade("CSC148", 70);
+            gradeDB.logGrade("CSC148", 75);
+            awaitTrue(gradeDB::isOffline);
+
+            assertEquals(80, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+            assertNull(gradeDB.getGrade("t2chenpa", "CSC207"));
+            Grade[] history = gradeDB.getGrades("t1chenpa");
+            assertEquals(3, history.length);
+            assertEquals("CSC108", history[0].getCourse());
+            assertEquals(80, history[1].getGrade());
+            assertEquals(75, history[2].getGrade());
+            assertEquals(1, gradeDB.getGrades("t2chenpa").length);
+        }
+    }
+
+    @Test
+    void testRejectedGradesAreHandedToTheListeners() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        List<Grade> rejected = new CopyOnWriteArrayList<>();
+        try (DurableGradeDataBase gradeDB = DurableGradeDataBase.builder(stub,
+                GradeWriteAheadLog.open(directory.resolve("grades.wal")))
+                .username("t1chenpa")
+                .build()) {
+            gradeDB.addRejectionListener(rejected::add);
+            gradeDB.logGrade("MAT137", 50);
+            gradeDB.logGrade("CSC207", 80);
+            awaitTrue(() -> gradeDB.getPendingCount() == 0);
+
+            assertEquals(1, rejected.size());
+            assertEquals("t1chenpa", rejected.get(0).getUsername());
+            assertEquals("MAT137", rejected.get(0).getCourse());
+            assertEquals(50, rejected.get(0).getGrade());
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    // Stub class for GradeDataBase that can be made unreachable or to answer with another body,
+    // and refuses grades in MAT137
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final List<String> logged = new CopyOnWriteArrayList<>();
+        private volatile boolean reachable = true;
+        private volatile String answer;
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            return null;
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            if (!reachable) {
+                throw new RuntimeException(new IOException("Connection refused"));
+            }
+            if (answer != null) {
+                GradeResponseDecoder.checkSuccess(new StringReader(answer));
+            }
+            if ("MAT137".equals(course)) {
+                GradeResponseDecoder.checkSuccess(new StringReader(
+                        "{\"status_code\":400,\"message\":\"Course not found\"}"));
+            }
+            logged.add(course + "/" + grade);
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[]{Grade.builder().username(username).course("CSC108").grade(60).build()};
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            return null;
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+        }
+    }
+}
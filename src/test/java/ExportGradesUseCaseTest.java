@@ -0,0 +1,221 @@
+import api.GradeDataBase;
+import api.InMemoryGradeDataBase;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import usecase.ExportGradesUseCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing exporting the grades of a team as they arrive, in either format, with a bounded number of lookups.
+ */
+public class ExportGradesUseCaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testNdjsonExportHasEveryGradeOfTheTeam() throws Exception {
+        InMemoryGradeDataBase.InMemoryGradeDataBaseBuilder builder = InMemoryGradeDataBase.builder();
+        String[] members = new String[20];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = "user" + i;
+            for (int course = 0; course < 5; course++) {
+                builder.grade(members[i], "CSC" + course, (i + course) % 101);
+            }
+        }
+        InMemoryGradeDataBase gradeDB = builder.team("team1", members).signedInAs("user0").build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportGradesUseCase.ExportSummary summary = new ExportGradesUseCase(gradeDB, executor, 4)
+                .exportTeamGrades(out, ExportGradesUseCase.Format.NDJSON);
+        executor.shutdown();
+
+        assertEquals(20, summary.getMemberCount());
+        assertEquals(100, summary.getRecordCount());
+        assertTrue(summary.getFailedMembers().isEmpty());
+        Set<String> exported = new HashSet<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            JSONObject record = new JSONObject(line);
+            String username = record.getString("username");
+            String course = record.getString("course");
+            int grade = record.getInt("grade");
+            assertEquals(gradeDB.getGrade(username, course).getGrade(), grade);
+            exported.add(username + "/" + course);
+        }
+        assertEquals(100, exported.size());
+    }
+
+    @Test
+    void testCsvExportToFile() throws Exception {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder()
+                .grade("me", "CSC207", 80)
+                .grade("bob", "CSC, 148", 70)
+                .team("team1", "me", "bob")
+                .signedInAs("me")
+                .build();
+        Path file = directory.resolve("team.csv");
+
+        ExportGradesUseCase.ExportSummary summary = new ExportGradesUseCase(gradeDB)
+                .exportTeamGrades(file, ExportGradesUseCase.Format.CSV);
+
+        assertEquals(2, summary.getRecordCount());
+        assertEquals(List.of("username,course,grade", "me,CSC207,80", "bob,\"CSC, 148\",70"),
+                Files.readAllLines(file));
+    }
+
+    @Test
+    void testFailedMemberIsLeftOut() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub(6, 10);
+        stub.refused = "user3";
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportGradesUseCase.ExportSummary summary = new ExportGradesUseCase(stub, executor, 3)
+                .exportTeamGrades(out, ExportGradesUseCase.Format.CSV);
+        executor.shutdown();
+
+        assertEquals(List.of("user3"), summary.getFailedMembers());
+        assertEquals(50, summary.getRecordCount());
+        assertEquals(51, out.toString(StandardCharsets.UTF_8).split("\n").length);
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("user3,"));
+    }
+
+    @Test
+    void testErrorInALookupDoesNotHangTheExport() {
+        GradeDataBaseStub stub = new GradeDataBaseStub(4, 10);
+        stub.broken = "user2";
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        ExportGradesUseCase.ExportSummary summary = assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                new ExportGradesUseCase(stub, executor, 2).exportTeamGrades(out, ExportGradesUseCase.Format.CSV));
+        executor.shutdownNow();
+
+        assertEquals(List.of("user2"), summary.getFailedMembers());
+        assertEquals(30, summary.getRecordCount());
+    }
+
+    @Test
+    void testSlowSinkBoundsTheLookupsInFlight() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub(16, 2000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger bytes = new AtomicInteger();
+        OutputStream slowSink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException event) {
+                    throw new IOException(event);
+                }
+                bytes.addAndGet(len);
+            }
+        };
+
+        ExportGradesUseCase.ExportSummary summary = new ExportGradesUseCase(stub, executor, 8)
+                .exportTeamGrades(slowSink, ExportGradesUseCase.Format.NDJSON);
+        executor.shutdown();
+
+        assertEquals(32000, summary.getRecordCount());
+        assertTrue(summary.getFailedMembers().isEmpty());
+        assertTrue(stub.maxInFlight.get() <= 8, "in flight " + stub.maxInFlight.get());
+        assertTrue(summary.getPeakParallelism() <= 8);
+        assertTrue(bytes.get() > 32000 * 30);
+    }
+
+    // Stub class for GradeDataBase with a team of members that each have the same number of grades
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final String[] members;
+        private final int gradesPerMember;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private volatile String refused;
+        private volatile String broken;
+
+        GradeDataBaseStub(int memberCount, int gradesPerMember) {
+            this.members = new String[memberCount];
+            for (int i = 0; i < memberCount; i++) {
+                members[i] = "user" + i;
+            }
+            this.gradesPerMember = gradesPerMember;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                if (username.equals(refused)) {
+                    throw new RuntimeException("User not found");
+                }
+                if (username.equals(broken)) {
+                    throw new StackOverflowError("Out of stack");
+                }
+                Grade[] grades = new Grade[gradesPerMember];
+                for (int i = 0; i < gradesPerMember; i++) {
+                    grades[i] = Grade.builder().username(username).course("CSC" + i).grade(i % 101).build();
+                }
+                return grades;
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            return null;
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            return Team.builder().name("team1").members(members).build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+        }
+    }
+}
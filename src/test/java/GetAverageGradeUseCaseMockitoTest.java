@@ -77,6 +77,8 @@ public class GetAverageGradeUseCaseMockitoTest {
         when(gradeDB.getGrades("t1chenpa")).thenReturn(expectedTeammember1Grades);
         when(gradeDB.getGrades("t2chenpa")).thenReturn(expectedTeammember2Grades);
         when(gradeDB.getMyTeam()).thenReturn(expectedTeam);
+        // The team's grades are looked up in bulk, which by default looks up each member.
+        when(gradeDB.getGrades(anyCollection(), anyString(), any())).thenCallRealMethod();
 
         // Act
         float result = getAverageGradeUseCase.getAverageGrade("CSC207");
@@ -1,7 +1,13 @@
+import api.AsyncGradeDataBase;
 import api.GradeDataBase;
+import api.GradeNotFoundException;
 import org.json.JSONException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import usecase.GetAverageGradeAsyncUseCase;
 import usecase.GetAverageGradeUseCase;
 import entity.Grade;
 import entity.Team;
@@ -38,6 +44,42 @@ public class GetAverageGradeUseCaseTest {
         assertEquals(83.0, result);
     }
 
+    @Test
+    void testGetAverageGradeConcurrently() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GetAverageGradeUseCase concurrentUseCase = new GetAverageGradeUseCase(gradeDB, executor);
+
+            // Act
+            float result = concurrentUseCase.getAverageGrade("CSC207");
+
+            // Assert
+            assertEquals(83.0, result);
+            assertThrows(GradeNotFoundException.class, () -> concurrentUseCase.getAverageGrade("CSC148"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testGetAverageGradeAsync() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            GetAverageGradeAsyncUseCase asyncUseCase =
+                    new GetAverageGradeAsyncUseCase(AsyncGradeDataBase.of(gradeDB, executor));
+
+            // Act
+            float result = asyncUseCase.getAverageGrade("CSC207").join();
+
+            // Assert
+            assertEquals(83.0, result);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
     // Stub class for GradeDataBase
     private static class GradeDataBaseStub implements GradeDataBase {
 
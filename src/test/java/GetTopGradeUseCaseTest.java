@@ -0,0 +1,242 @@
+import api.AsyncGradeDataBase;
+import api.GradeDataBase;
+import api.GradeNotFoundException;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import usecase.GetTopGradeAsyncUseCase;
+import usecase.GetTopGradeUseCase;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing get top grade across your team, one member at a time, concurrently and asynchronously.
+ */
+public class GetTopGradeUseCaseTest {
+
+    private GradeDataBaseStub gradeDB;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        gradeDB = new GradeDataBaseStub();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testGetTopGrade() {
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB);
+
+        assertEquals(91.0, getTopGradeUseCase.getTopGrade("CSC207"));
+        assertEquals("t3chenpa", getTopGradeUseCase.findTopGrade("CSC207").getUsername());
+    }
+
+    @Test
+    void testGetTopGradeConcurrently() {
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB, executor);
+
+        Grade top = getTopGradeUseCase.findTopGrade("CSC207");
+
+        assertEquals("t3chenpa", top.getUsername());
+        assertEquals(91, top.getGrade());
+    }
+
+    @Test
+    void testMembersWithoutAGradeAreSkipped() {
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB, executor);
+
+        assertEquals(89.0, getTopGradeUseCase.getTopGrade("CSC148"));
+        assertNull(getTopGradeUseCase.findTopGrade("MAT137"));
+        assertEquals(0.0, getTopGradeUseCase.getTopGrade("MAT137"));
+    }
+
+    @Test
+    void testStopsAtMaximumGrade() {
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB);
+
+        Grade top = getTopGradeUseCase.findTopGrade("CSC165");
+
+        assertEquals("t1chenpa", top.getUsername());
+        assertEquals(1, gradeDB.requests.get());
+    }
+
+    @Test
+    void testStopsAtMaximumGradeConcurrently() {
+        CountDownLatch release = new CountDownLatch(1);
+        gradeDB.blocked = "t3chenpa";
+        gradeDB.release = release;
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB, executor);
+
+        try {
+            Grade top = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> getTopGradeUseCase.findTopGrade("CSC165"));
+            assertEquals("t1chenpa", top.getUsername());
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testStopsAtMaximumGradeInCachedHistory() {
+        gradeDB.cached.put("t1chenpa", new Grade[]{
+                Grade.builder().username("t1chenpa").course("CSC165").grade(100).build()});
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB);
+
+        Grade top = getTopGradeUseCase.findTopGrade("CSC165");
+
+        assertEquals("t1chenpa", top.getUsername());
+        assertEquals(0, gradeDB.requests.get());
+    }
+
+    @Test
+    void testUsesCachedHistoryInsteadOfRequesting() {
+        gradeDB.cached.put("t1chenpa", new Grade[]{
+                Grade.builder().username("t1chenpa").course("CSC207").grade(95).build()});
+        GetTopGradeUseCase getTopGradeUseCase = new GetTopGradeUseCase(gradeDB);
+
+        assertEquals(95.0, getTopGradeUseCase.getTopGrade("CSC207"));
+        assertEquals(2, gradeDB.requests.get());
+    }
+
+    @Test
+    void testFindTopGradeAsync() {
+        GetTopGradeAsyncUseCase asyncUseCase = new GetTopGradeAsyncUseCase(AsyncGradeDataBase.of(gradeDB, executor));
+
+        Grade top = asyncUseCase.findTopGrade("CSC207").join();
+
+        assertEquals("t3chenpa", top.getUsername());
+        assertEquals(91, top.getGrade());
+        assertEquals(89, asyncUseCase.findTopGrade("CSC148").join().getGrade());
+        assertNull(asyncUseCase.findTopGrade("MAT137").join());
+    }
+
+    @Test
+    void testFindTopGradeAsyncDoesNotWaitPastMaximumGrade() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        gradeDB.blocked = "t3chenpa";
+        gradeDB.release = release;
+        GetTopGradeAsyncUseCase asyncUseCase = new GetTopGradeAsyncUseCase(AsyncGradeDataBase.of(gradeDB, executor));
+
+        try {
+            Grade top = asyncUseCase.findTopGrade("CSC165").get(5, TimeUnit.SECONDS);
+            assertEquals("t1chenpa", top.getUsername());
+            assertEquals(100, top.getGrade());
+        }
+        finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testFindTopGradeAsyncReportsErrors() {
+        gradeDB.failing = "t2chenpa";
+        GetTopGradeAsyncUseCase asyncUseCase = new GetTopGradeAsyncUseCase(AsyncGradeDataBase.of(gradeDB, executor));
+
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> asyncUseCase.findTopGrade("CSC207").join());
+        assertEquals("Invalid token", error.getCause().getMessage());
+    }
+
+    // Stub class for GradeDataBase
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final Map<String, Grade> grades = new ConcurrentHashMap<>();
+        private final Map<String, Grade[]> cached = new ConcurrentHashMap<>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile String blocked;
+        private volatile CountDownLatch release;
+        private volatile String failing;
+
+        GradeDataBaseStub() {
+            add("t1chenpa", "CSC207", 85);
+            add("t1chenpa", "CSC165", 100);
+            add("t2chenpa", "CSC207", 81);
+            add("t2chenpa", "CSC148", 89);
+            add("t3chenpa", "CSC207", 91);
+        }
+
+        private void add(String username, String course, int grade) {
+            grades.put(username + "/" + course,
+                    Grade.builder().username(username).course(course).grade(grade).build());
+        }
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            requests.incrementAndGet();
+            if (username.equals(blocked)) {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException event) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (username.equals(failing)) {
+                throw new RuntimeException("Invalid token");
+            }
+            Grade grade = grades.get(username + "/" + course);
+            if (grade == null) {
+                throw new GradeNotFoundException("Grade could not be found for course: " + course
+                        + " and username: " + username);
+            }
+            return grade;
+        }
+
+        @Override
+        public Grade[] getCachedGrades(String username) {
+            return cached.get(username);
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            throw new AssertionError("the full grade history should not be requested");
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            return Team.builder()
+                    .name("team1")
+                    .members(new String[]{"t1chenpa", "t2chenpa", "t3chenpa"})
+                    .build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import entity.Grade;
+import entity.GradeIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the columnar grade index.
+ */
+public class GradeIndexTest {
+
+    private GradeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new GradeIndex();
+        index.load("t1chenpa", new Grade[]{
+                grade("t1chenpa", "CSC207", 85),
+                grade("t1chenpa", "CSC148", 86)});
+        index.load("t2chenpa", new Grade[]{
+                grade("t2chenpa", "CSC207", 81)});
+        index.add(grade("t3chenpa", "CSC207", 95));
+    }
+
+    private static Grade grade(String username, String course, int grade) {
+        return Grade.builder().username(username).course(course).grade(grade).build();
+    }
+
+    @Test
+    void testLookups() {
+        assertEquals(86, index.getGrade("t1chenpa", "CSC148").getGrade());
+        assertNull(index.getGrade("t2chenpa", "CSC148"));
+        assertEquals(2, index.getGrades("t1chenpa").length);
+        assertArrayEquals(new int[]{85, 81, 95}, index.getCourseGrades("CSC207"));
+        assertTrue(index.isLoaded("t2chenpa"));
+        assertFalse(index.isLoaded("t3chenpa"));
+    }
+
+    @Test
+    void testAggregationsOverTeam() {
+        String[] team = {"t1chenpa", "t2chenpa"};
+
+        assertEquals(2, index.count("CSC207", team));
+        assertEquals(166, index.sum("CSC207", team));
+        assertEquals(83.0f, index.average("CSC207", team));
+        assertEquals("t1chenpa", index.max("CSC207", team).getUsername());
+        assertEquals(81, index.min("CSC207", team).getGrade());
+        assertEquals(95, index.max("CSC207", null).getGrade());
+        assertNull(index.max("MAT137", team));
+    }
+
+    @Test
+    void testAddingAGradeAgainKeepsTheHigherOne() {
+        index.add(grade("t2chenpa", "CSC207", 99));
+        index.add(grade("t2chenpa", "CSC207", 60));
+
+        assertEquals(4, index.size());
+        assertEquals(99, index.getGrade("t2chenpa", "CSC207").getGrade());
+    }
+
+    @Test
+    void testLoadingAHistoryReplacesTheStudentsGrades() {
+        index.unload("t1chenpa");
+        assertFalse(index.isLoaded("t1chenpa"));
+
+        index.load("t1chenpa", new Grade[]{
+                grade("t1chenpa", "CSC207", 70),
+                grade("t1chenpa", "CSC207", 75),
+                grade("t1chenpa", "CSC207", 72)});
+
+        assertTrue(index.isLoaded("t1chenpa"));
+        assertEquals(75, index.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void testColumns() {
+        assertArrayEquals(new String[]{"t1chenpa", "t2chenpa", "t3chenpa"}, index.getUsernames());
+        assertArrayEquals(new String[]{"CSC207", "CSC148"}, index.getCourses());
+        assertArrayEquals(new int[]{0, 0, 1, 2}, index.getUserColumn());
+        assertArrayEquals(new int[]{0, 1, 0, 0}, index.getCourseColumn());
+        assertArrayEquals(new int[]{85, 86, 81, 95}, index.getGradeColumn());
+    }
+}
@@ -0,0 +1,107 @@
+import api.GradeNotFoundException;
+import api.GradeResponseDecoder;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing that the streaming decoder reads the grade API responses the same way
+ * the JSONObject based parsing did.
+ */
+public class GradeResponseDecoderTest {
+
+    @Test
+    void testDecodeGrade() {
+        String body = "{\"status_code\": 200, \"message\": \"ok\", "
+                + "\"grade\": {\"_id\": \"x\", \"username\": \"t1chenpa\", \"course\": \"CSC207\", \"grade\": 85}}";
+
+        Grade grade = GradeResponseDecoder.decodeGrade(new StringReader(body), "t1chenpa", "CSC207");
+
+        assertEquals("t1chenpa", grade.getUsername());
+        assertEquals("CSC207", grade.getCourse());
+        assertEquals(85, grade.getGrade());
+    }
+
+    @Test
+    void testDecodeGradeNotFound() {
+        String body = "{\"status_code\": 404, \"message\": \"Grade not found\"}";
+
+        assertThrows(GradeNotFoundException.class,
+                () -> GradeResponseDecoder.decodeGrade(new StringReader(body), "t1chenpa", "CSC207"));
+    }
+
+    @Test
+    void testDecodeGradeErrorIsNotNotFound() {
+        for (String body : List.of("{\"status_code\": 401, \"message\": \"Invalid token\"}",
+                "{\"status_code\": 429, \"message\": \"Too many requests\"}",
+                "{\"message\": \"Server error\", \"status_code\": 500}")) {
+            RuntimeException error = assertThrows(RuntimeException.class,
+                    () -> GradeResponseDecoder.decodeGrade(new StringReader(body), "t1chenpa", "CSC207"));
+            assertFalse(error instanceof GradeNotFoundException, body);
+            assertEquals(new JSONObject(body).getString("message"), error.getMessage());
+        }
+    }
+
+    @Test
+    void testDecodeGrades() {
+        String body = "{\"grades\": [{\"username\": \"t1chenpa\", \"course\": \"CSC207\", \"grade\": 85, "
+                + "\"extra\": [1, {\"a\": null}, true]}, "
+                + "{\"username\": \"t1chenpa\", \"course\": \"CSC\\u0031\\\"48\", \"grade\": \"86\"}], "
+                + "\"status_code\": 200}";
+
+        Grade[] grades = GradeResponseDecoder.decodeGrades(new StringReader(body));
+
+        assertEquals(2, grades.length);
+        assertEquals(85, grades[0].getGrade());
+        assertEquals("CSC1\"48", grades[1].getCourse());
+        assertEquals(86, grades[1].getGrade());
+    }
+
+    @Test
+    void testForEachGradeStreamsGrades() {
+        String body = "{\"status_code\": 200, \"grades\": [{\"username\": \"a\", \"course\": \"c1\", \"grade\": 1}, "
+                + "{\"username\": \"a\", \"course\": \"c2\", \"grade\": 2}]}";
+        List<String> courses = new ArrayList<>();
+
+        GradeResponseDecoder.forEachGrade(new StringReader(body), grade -> courses.add(grade.getCourse()));
+
+        assertEquals(List.of("c1", "c2"), courses);
+    }
+
+    @Test
+    void testErrorMessageIsReported() {
+        String body = "{\"status_code\": 401, \"message\": \"Invalid token\"}";
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> GradeResponseDecoder.decodeGrades(new StringReader(body)));
+        assertEquals("Invalid token", error.getMessage());
+    }
+
+    @Test
+    void testMalformedJsonIsWrapped() {
+        String body = "{\"status_code\": 200, \"grades\": [{\"username\": \"a\",";
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> GradeResponseDecoder.decodeGrades(new StringReader(body)));
+        assertInstanceOf(JSONException.class, error.getCause());
+    }
+
+    @Test
+    void testDecodeTeam() {
+        String body = "{\"status_code\": 200, \"team\": {\"name\": \"team1\", \"members\": [\"t1chenpa\", \"t2chenpa\"]}}";
+
+        Team team = GradeResponseDecoder.decodeTeam(new StringReader(body));
+
+        assertEquals("team1", team.getName());
+        assertArrayEquals(new String[]{"t1chenpa", "t2chenpa"}, team.getMembers());
+    }
+}
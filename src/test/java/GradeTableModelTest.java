@@ -0,0 +1,187 @@
+import app.gui.GradeTableModel;
+import app.gui.TaskRunner;
+import entity.Grade;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing loading, sorting and filtering grades in the grade table.
+ */
+public class GradeTableModelTest {
+
+    private static final int GRADES = 50_000;
+
+    // Stands in for the EDT, which the model's methods must be called on.
+    private ExecutorService edt;
+    private TaskRunner tasks;
+    private GradeTableModel model;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        edt = Executors.newSingleThreadExecutor();
+        tasks = new TaskRunner(Executors.newFixedThreadPool(2), edt::execute);
+        model = onEdt(() -> new GradeTableModel(tasks, "grades"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        tasks.shutdown();
+        edt.shutdownNow();
+    }
+
+    @Test
+    void testLoadedGradesAreShownInOrder() throws Exception {
+        load(grades());
+        assertEquals(GRADES, (int) onEdt(model::getRowCount));
+        assertEquals("user0", onEdt(() -> model.getValueAt(0, GradeTableModel.USERNAME_COLUMN)));
+        assertEquals("CSC1", onEdt(() -> model.getValueAt(1, GradeTableModel.COURSE_COLUMN)));
+        assertEquals(2, onEdt(() -> model.getValueAt(2, GradeTableModel.GRADE_COLUMN)));
+        assertEquals(Integer.class, model.getColumnClass(GradeTableModel.GRADE_COLUMN));
+    }
+
+    @Test
+    void testSortingByGradeTogglesTheOrder() throws Exception {
+        load(grades());
+        onEdt(() -> {
+            model.sortBy(GradeTableModel.GRADE_COLUMN);
+            return null;
+        });
+        awaitValue(1, GradeTableModel.GRADE_COLUMN, 0);
+        assertEquals(0, onEdt(() -> model.getValueAt(GRADES / 101, GradeTableModel.GRADE_COLUMN)));
+        assertEquals(100, onEdt(() -> model.getValueAt(GRADES - 1, GradeTableModel.GRADE_COLUMN)));
+        // Equal grades keep the order they were loaded in.
+        assertEquals("user0", onEdt(() -> model.getValueAt(0, GradeTableModel.USERNAME_COLUMN)));
+        assertEquals("user101", onEdt(() -> model.getValueAt(1, GradeTableModel.USERNAME_COLUMN)));
+
+        onEdt(() -> {
+            model.sortBy(GradeTableModel.GRADE_COLUMN);
+            return null;
+        });
+        awaitValue(0, GradeTableModel.GRADE_COLUMN, 100);
+        assertFalse(onEdt(model::isAscending));
+    }
+
+    @Test
+    void testSortingByCourseIgnoresCase() throws Exception {
+        load(new Grade[]{grade("b", "mat137", 1), grade("a", "CSC207", 2), grade("c", "Bio130", 3)});
+        onEdt(() -> {
+            model.sortBy(GradeTableModel.COURSE_COLUMN);
+            return null;
+        });
+        awaitValue(0, GradeTableModel.COURSE_COLUMN, "Bio130");
+        assertEquals("CSC207", onEdt(() -> model.getValueAt(1, GradeTableModel.COURSE_COLUMN)));
+        assertEquals("mat137", onEdt(() -> model.getValueAt(2, GradeTableModel.COURSE_COLUMN)));
+    }
+
+    @Test
+    void testFilterMatchesUsernamesAndCourses() throws Exception {
+        load(grades());
+        onEdt(() -> {
+            model.setFilter("csc7");
+            return null;
+        });
+        awaitRowCount(GRADES / 10);
+        assertEquals("CSC7", onEdt(() -> model.getValueAt(0, GradeTableModel.COURSE_COLUMN)));
+        assertEquals(GRADES, (int) onEdt(model::getGradeCount));
+
+        onEdt(() -> {
+            model.setFilter("USER4999");
+            return null;
+        });
+        // user4999 and user49990 to user49999
+        awaitRowCount(11);
+
+        onEdt(() -> {
+            model.setFilter("");
+            return null;
+        });
+        awaitRowCount(GRADES);
+    }
+
+    @Test
+    void testSortAndFilterChosenWhileLoadingAreApplied() throws Exception {
+        onEdt(() -> {
+            model.load("all", progress -> {
+                Thread.sleep(100);
+                return grades();
+            }, new CountingListener());
+            model.setFilter("CSC3");
+            model.sortBy(GradeTableModel.GRADE_COLUMN);
+            model.sortBy(GradeTableModel.GRADE_COLUMN);
+            return null;
+        });
+        awaitRowCount(GRADES / 10);
+        awaitValue(0, GradeTableModel.GRADE_COLUMN, 100);
+        assertEquals("CSC3", onEdt(() -> model.getValueAt(0, GradeTableModel.COURSE_COLUMN)));
+    }
+
+    private void load(Grade[] grades) throws Exception {
+        CountingListener listener = new CountingListener();
+        onEdt(() -> {
+            model.load("all", progress -> grades, listener);
+            return null;
+        });
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (listener.loaded.get() != grades.length) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitRowCount(int expected) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (onEdt(model::getRowCount) != expected) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitValue(int row, int column, Object expected) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!expected.equals(onEdt(() -> model.getRowCount() > row ? model.getValueAt(row, column) : null))) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private <T> T onEdt(Callable<T> action) throws Exception {
+        return edt.submit(action).get();
+    }
+
+    // user i has grade i % 101 in course CSC(i % 10)
+    private static Grade[] grades() {
+        Grade[] grades = new Grade[GRADES];
+        for (int i = 0; i < GRADES; i++) {
+            grades[i] = grade("user" + i, "CSC" + (i % 10), i % 101);
+        }
+        return grades;
+    }
+
+    private static Grade grade(String username, String course, int grade) {
+        return Grade.builder().username(username).course(course).grade(grade).build();
+    }
+
+    // Listener that remembers how many grades were loaded
+    private static class CountingListener implements TaskRunner.Listener<Integer> {
+        private final AtomicInteger loaded = new AtomicInteger(-1);
+
+        @Override
+        public void onSuccess(Integer count) {
+            loaded.set(count);
+        }
+
+        @Override
+        public void onFailure(Throwable failure) {
+            fail(failure);
+        }
+    }
+}
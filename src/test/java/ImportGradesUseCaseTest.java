@@ -0,0 +1,291 @@
+import api.GradeDataBase;
+import api.InMemoryGradeDataBase;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import usecase.ImportGradesUseCase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing importing files of grades, reporting every row and resuming from a checkpoint.
+ */
+public class ImportGradesUseCaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCsvRowsAreValidatedAndReported() throws Exception {
+        Path input = write("grades.csv",
+                "username,Grade,course,comment",
+                "me,80,CSC207,first",
+                "",
+                "me,\"70\",\"CSC, 148\",\"said \"\"hi\"\"\"",
+                "me,101,MAT137,",
+                "me,eighty,MAT223,",
+                "me,50,,",
+                "me,60");
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().signedInAs("me").build();
+        Path report = directory.resolve("report.csv");
+        Path checkpoint = directory.resolve("import.checkpoint");
+
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(gradeDB)
+                .importGrades(input, report, checkpoint);
+
+        assertEquals(2, summary.getLoggedCount());
+        assertEquals(4, summary.getInvalidCount());
+        assertEquals(0, summary.getFailedCount());
+        assertEquals(70, gradeDB.getGrade("me", "CSC, 148").getGrade());
+        List<String> lines = Files.readAllLines(report);
+        assertEquals("row,course,grade,status,message", lines.get(0));
+        assertEquals("1,CSC207,80,ok,", lines.get(1));
+        assertEquals("2,\"CSC, 148\",70,ok,", lines.get(2));
+        assertEquals("3,MAT137,101,invalid,The grade is not between 0 and 100", lines.get(3));
+        assertEquals("4,MAT223,eighty,invalid,The grade is not a whole number", lines.get(4));
+        assertEquals("5,,50,invalid,The course is missing", lines.get(5));
+        assertEquals("6,,,invalid,The row has too few fields", lines.get(6));
+        assertFalse(Files.exists(checkpoint), "a finished import leaves no checkpoint");
+    }
+
+    @Test
+    void testNdjsonRowsAreImported() throws Exception {
+        Path input = write("grades.ndjson",
+                "{\"course\": \"CSC207\", \"grade\": 80}",
+                "{\"course\": \"CSC148\"}",
+                "not json",
+                "{\"grade\": \"90\", \"course\": \"MAT137\", \"username\": \"someone-else\"}");
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().signedInAs("me").build();
+
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(gradeDB)
+                .importGrades(input, directory.resolve("report.csv"), directory.resolve("import.checkpoint"));
+
+        assertEquals(2, summary.getLoggedCount());
+        assertEquals(2, summary.getInvalidCount());
+        assertEquals(90, gradeDB.getGrade("me", "MAT137").getGrade());
+    }
+
+    @Test
+    void testParallelImportReportsRowsInFileOrder() throws Exception {
+        Path input = directory.resolve("grades.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("course,grade\n");
+            for (int i = 1; i <= 2000; i++) {
+                writer.write("CSC" + i + "," + (i % 101) + "\n");
+            }
+        }
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.refused = "CSC1000";
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Path report = directory.resolve("report.csv");
+
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(stub, executor, 8)
+                .importGrades(input, report, directory.resolve("import.checkpoint"));
+        executor.shutdown();
+
+        assertEquals(1999, summary.getLoggedCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(1999, stub.logged.size());
+        assertTrue(stub.maxInFlight.get() <= 8);
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(2001, lines.size());
+        for (int i = 1; i <= 2000; i++) {
+            assertTrue(lines.get(i).startsWith(i + ",CSC" + i + ","), lines.get(i));
+        }
+        assertEquals("1000,CSC1000,91,failed,Course not found", lines.get(1000));
+    }
+
+    @Test
+    void testInterruptedImportResumesFromItsCheckpoint() throws Exception {
+        Path input = directory.resolve("grades.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(input)) {
+            writer.write("course,grade\n");
+            for (int i = 1; i <= 3000; i++) {
+                writer.write("CSC" + i + "," + (i % 101) + "\n");
+            }
+        }
+        Path report = directory.resolve("report.csv");
+        Path checkpoint = directory.resolve("import.checkpoint");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        GradeDataBaseStub first = new GradeDataBaseStub();
+        AtomicReference<Thread> importer = new AtomicReference<>(Thread.currentThread());
+        first.interruptAfter = 1000;
+        first.importer = importer;
+        assertThrows(InterruptedException.class, () -> new ImportGradesUseCase(first, executor, 4)
+                .importGrades(input, report, checkpoint));
+        Thread.interrupted();
+        assertTrue(Files.exists(checkpoint));
+
+        GradeDataBaseStub second = new GradeDataBaseStub();
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(second, executor, 4)
+                .importGrades(input, report, checkpoint);
+        executor.shutdown();
+
+        assertTrue(summary.getResumedCount() >= 256, "resumed after " + summary.getResumedCount());
+        assertEquals(3000 - summary.getResumedCount(), summary.getLoggedCount());
+        assertFalse(second.logged.containsKey("CSC1"));
+        for (int i = 1; i <= 3000; i++) {
+            assertTrue(first.logged.containsKey("CSC" + i) || second.logged.containsKey("CSC" + i));
+        }
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(3001, lines.size());
+        for (int i = 1; i <= 3000; i++) {
+            assertEquals(i + ",CSC" + i + "," + (i % 101) + ",ok,", lines.get(i));
+        }
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void testGradesOnlyQueuedAreReportedAsQueued() throws Exception {
+        Path input = write("grades.csv", "course,grade", "CSC207,80", "CSC148,70");
+        Path report = directory.resolve("report.csv");
+
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(new GradeDataBaseStub(), null, 1, true)
+                .importGrades(input, report, directory.resolve("import.checkpoint"));
+
+        assertEquals(2, summary.getLoggedCount());
+        assertEquals(List.of("row,course,grade,status,message", "1,CSC207,80,queued,", "2,CSC148,70,queued,"),
+                Files.readAllLines(report));
+    }
+
+    @Test
+    void testErrorInACallFailsItsRowInsteadOfHanging() throws Exception {
+        Path input = write("grades.csv", "course,grade", "CSC207,80", "CSC148,70", "MAT137,60");
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.broken = "CSC148";
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Path report = directory.resolve("report.csv");
+
+        ImportGradesUseCase.ImportSummary summary = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> new ImportGradesUseCase(stub, executor, 2)
+                        .importGrades(input, report, directory.resolve("import.checkpoint")));
+        executor.shutdown();
+
+        assertEquals(2, summary.getLoggedCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals("2,CSC148,70,failed,Out of stack", Files.readAllLines(report).get(2));
+    }
+
+    @Test
+    void testRowsOfOneCourseAreLoggedInFileOrder() throws Exception {
+        Path input = write("grades.csv", "course,grade", "CSC207,80", "CSC148,70", "CSC207,90");
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.slow = "CSC207/80";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        ImportGradesUseCase.ImportSummary summary = new ImportGradesUseCase(stub, executor, 4)
+                .importGrades(input, directory.resolve("report.csv"), directory.resolve("import.checkpoint"));
+        executor.shutdown();
+
+        assertEquals(3, summary.getLoggedCount());
+        assertEquals(90, stub.logged.get("CSC207"));
+        assertEquals(70, stub.logged.get("CSC148"));
+    }
+
+    @Test
+    void testFileWithoutGradeColumnIsRefused() throws IOException {
+        Path input = write("grades.csv", "course,mark", "CSC207,80");
+        ImportGradesUseCase useCase = new ImportGradesUseCase(new GradeDataBaseStub());
+        assertThrows(IOException.class, () -> useCase.importGrades(input, directory.resolve("report.csv"),
+                directory.resolve("import.checkpoint")));
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, List.of(lines));
+        return file;
+    }
+
+    // Stub class for GradeDataBase that logs grades slowly and out of order, and can refuse a course
+    // or hold up one grade
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final Map<String, Integer> logged = new ConcurrentHashMap<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile String refused;
+        private volatile String broken;
+        private volatile String slow;
+        private volatile int interruptAfter = -1;
+        private volatile AtomicReference<Thread> importer;
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                    Thread.yield();
+                }
+                if (calls.incrementAndGet() == interruptAfter) {
+                    importer.get().interrupt();
+                }
+                if ((course + "/" + grade).equals(slow)) {
+                    Thread.sleep(200);
+                }
+                if (course.equals(refused)) {
+                    throw new RuntimeException("Course not found");
+                }
+                if (course.equals(broken)) {
+                    throw new StackOverflowError("Out of stack");
+                }
+                logged.put(course, grade);
+                return null;
+            }
+            catch (InterruptedException event) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(event);
+            }
+            finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            return null;
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[0];
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            return null;
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+        }
+    }
+}
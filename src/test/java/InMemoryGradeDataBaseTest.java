@@ -0,0 +1,212 @@
+import api.GradeNotFoundException;
+import api.InMemoryGradeDataBase;
+import app.Config;
+import entity.Grade;
+import entity.Team;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the in-memory grade data base: identity, grades, teams and concurrent use.
+ */
+public class InMemoryGradeDataBaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testGradesAreLoggedForTheSignedInUser() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().signedInAs("alice").build();
+        Grade logged = gradeDB.logGrade("CSC207", 80);
+        gradeDB.logGrade("CSC148", 70);
+        gradeDB.logGrade("CSC207", 85);
+
+        assertEquals("alice", logged.getUsername());
+        assertEquals(85, gradeDB.getGrade("alice", "CSC207").getGrade());
+        Grade[] grades = gradeDB.getGrades("alice");
+        assertEquals(2, grades.length);
+        assertEquals("CSC207", grades[0].getCourse());
+        assertEquals(70, grades[1].getGrade());
+        assertEquals(2, gradeDB.getCachedGrades("alice").length);
+
+        assertThrows(GradeNotFoundException.class, () -> gradeDB.getGrade("alice", "MAT137"));
+        assertThrows(RuntimeException.class, () -> gradeDB.getGrades("bob"));
+        assertNull(gradeDB.getCachedGrades("bob"));
+        assertThrows(RuntimeException.class, () -> gradeDB.logGrade("CSC207", 101));
+    }
+
+    @Test
+    void testTokensIdentifyUsers() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().build();
+        String aliceToken = gradeDB.signUp("alice");
+        String bobToken = gradeDB.signUp("bob");
+        assertNotEquals(aliceToken, bobToken);
+        assertThrows(RuntimeException.class, () -> gradeDB.signUp("alice"));
+        assertThrows(RuntimeException.class, () -> gradeDB.logGrade("CSC207", 80), "no user is signed in");
+        assertThrows(RuntimeException.class, () -> gradeDB.withToken("not-a-token"));
+
+        InMemoryGradeDataBase alice = gradeDB.withToken(aliceToken);
+        InMemoryGradeDataBase bob = gradeDB.withToken(bobToken);
+        alice.logGrade("CSC207", 80);
+        bob.logGrade("CSC207", 60);
+        assertEquals("alice", alice.getUsername());
+        assertEquals(80, bob.getGrade("alice", "CSC207").getGrade());
+        assertEquals(60, gradeDB.getGrade("bob", "CSC207").getGrade());
+    }
+
+    @Test
+    void testTeamRules() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().user("bob").user("carol").build();
+        InMemoryGradeDataBase alice = gradeDB.withToken(gradeDB.signUp("alice"));
+        InMemoryGradeDataBase bob = InMemoryGradeDataBase.builder().signedInAs("bob").build();
+        assertThrows(RuntimeException.class, alice::getMyTeam);
+
+        Team formed = alice.formTeam("team1");
+        assertArrayEquals(new String[]{"alice"}, formed.getMembers());
+        assertThrows(RuntimeException.class, () -> alice.formTeam("team2"), "already in a team");
+        assertThrows(RuntimeException.class, () -> alice.joinTeam("nope"));
+
+        InMemoryGradeDataBase carol = InMemoryGradeDataBase.builder().team("team2", "carol", "dave").build();
+        assertThrows(RuntimeException.class, bob::getMyTeam, "a separate builder makes separate data");
+        assertThrows(RuntimeException.class, carol::getMyTeam, "the built data base acts as nobody");
+
+        String bobToken = gradeDB.signUp("bobby");
+        gradeDB.withToken(bobToken).joinTeam("team1");
+        assertArrayEquals(new String[]{"alice", "bobby"}, alice.getMyTeam().getMembers());
+
+        alice.leaveTeam();
+        assertThrows(RuntimeException.class, alice::getMyTeam);
+        assertArrayEquals(new String[]{"bobby"}, gradeDB.withToken(bobToken).getMyTeam().getMembers());
+        gradeDB.withToken(bobToken).leaveTeam();
+        assertThrows(RuntimeException.class, () -> alice.joinTeam("team1"), "an empty team is removed");
+        assertThrows(RuntimeException.class, alice::leaveTeam);
+    }
+
+    @Test
+    void testBulkLookupsLeaveOutMissingGrades() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder()
+                .grade("alice", "CSC207", 80)
+                .grade("bob", "CSC148", 70)
+                .grade("carol", "CSC207", 90)
+                .build();
+        Map<String, Grade> grades = gradeDB.getGrades(List.of("carol", "bob", "alice"), "CSC207", null);
+        assertEquals(List.of("carol", "alice"), new ArrayList<>(grades.keySet()));
+        assertEquals(90, grades.get("carol").getGrade());
+        assertEquals(1, gradeDB.getGrades(List.of("bob"), null).get("bob").length);
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().stripes(8).build();
+        int threads = 8;
+        int usersPerThread = 50;
+        List<InMemoryGradeDataBase> users = new ArrayList<>();
+        for (int i = 0; i < threads * usersPerThread; i++) {
+            users.add(gradeDB.withToken(gradeDB.signUp("user" + i)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> work = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int first = thread * usersPerThread;
+            work.add(executor.submit(() -> {
+                for (int round = 0; round < 20; round++) {
+                    for (int i = first; i < first + usersPerThread; i++) {
+                        users.get(i).logGrade("CSC" + round, i % 101);
+                        // Read another thread's user while it is being written.
+                        gradeDB.getCachedGrades("user" + ((i + usersPerThread) % users.size()));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : work) {
+            future.get();
+        }
+        executor.shutdown();
+
+        for (int i = 0; i < users.size(); i++) {
+            Grade[] grades = gradeDB.getGrades("user" + i);
+            assertEquals(20, grades.length);
+            assertEquals(i % 101, grades[19].getGrade());
+        }
+    }
+
+    @Test
+    void testConfigServesTheUseCasesFromTheChosenBackend() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder()
+                .grade("bob", "CSC207", 70)
+                .team("team1", "me", "bob")
+                .signedInAs("me")
+                .build();
+        Config config = new Config(1, null, null, gradeDB);
+        config.logGradeUseCase().logGrade("CSC207", 90);
+
+        assertSame(gradeDB, config.backend());
+        assertEquals(90, gradeDB.getGrade("me", "CSC207").getGrade());
+        assertEquals(80f, config.getAverageGradeUseCase().getAverageGrade("CSC207"));
+        assertEquals("me", config.getTopGradeUseCase().findTopGrade("CSC207").getUsername());
+
+        // The async use cases see the same stack, so a grade logged through them is seen by the others.
+        config.logGradeAsyncUseCase().logGrade("CSC207", 60).join();
+        assertEquals(65f, config.getAverageGradeUseCase().getAverageGrade("CSC207"));
+        assertEquals(65f, config.getAverageGradeAsyncUseCase().getAverageGrade("CSC207").join());
+        assertEquals("bob", config.getTopGradeAsyncUseCase().findTopGrade("CSC207").join().getUsername());
+    }
+
+    @Test
+    void testConfigShutdownSendsTheGradesLoggedInTheBackground() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().signedInAs("me").build();
+        Config config = new Config(2, null, null, gradeDB);
+        for (int i = 0; i < 20; i++) {
+            config.writeBehindLogGradeUseCase().submitGrade("CSC" + i, i);
+        }
+
+        assertTrue(config.shutdown());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, gradeDB.getGrade("me", "CSC" + i).getGrade());
+        }
+    }
+
+    @Test
+    void testDefaultConfigKeepsNothingOnDisk() {
+        String home = System.getProperty("user.home");
+        System.setProperty("user.home", directory.toString());
+        try {
+            Config config = new Config(1);
+
+            assertNull(config.gradeStore());
+            assertNull(config.gradeLog());
+            assertFalse(Files.exists(directory.resolve(".grade-app")));
+        }
+        finally {
+            System.setProperty("user.home", home);
+        }
+    }
+
+    @Test
+    void testConfigReportsAStoreItCannotOpen() {
+        InMemoryGradeDataBase gradeDB = InMemoryGradeDataBase.builder().signedInAs("me").build();
+
+        // A directory cannot be opened as the file of the store or of the log.
+        Config config = new Config(1, directory, directory, gradeDB);
+
+        assertNull(config.gradeStore());
+        assertNull(config.gradeLog());
+        assertNotNull(config.gradeStoreFailure());
+        assertNotNull(config.gradeLogFailure());
+        config.logGradeUseCase().logGrade("CSC207", 90);
+        assertEquals(90, gradeDB.getGrade("me", "CSC207").getGrade());
+    }
+}
@@ -0,0 +1,141 @@
+import api.GradeNotFoundException;
+import api.HttpTransport;
+import api.MongoGradeDataBase;
+import entity.Grade;
+import entity.Team;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import server.Latency;
+import server.LocalGradeApiServer;
+import usecase.GetAverageGradeUseCase;
+import usecase.GetTopGradeUseCase;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing MongoGradeDataBase against the local stand-in for the grade API.
+ */
+public class LocalGradeApiServerTest {
+
+    private LocalGradeApiServer server;
+    private final HttpTransport transport = HttpTransport.builder().build();
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        transport.shutdown();
+    }
+
+    private MongoGradeDataBase start(LocalGradeApiServer.LocalGradeApiServerBuilder builder) throws IOException {
+        return start(builder, "t1chenpa");
+    }
+
+    private MongoGradeDataBase start(LocalGradeApiServer.LocalGradeApiServerBuilder builder, String username)
+            throws IOException {
+        server = builder.build().start();
+        return new MongoGradeDataBase(transport, server.getUrl(), LocalGradeApiServer.tokenFor(username));
+    }
+
+    private static LocalGradeApiServer.LocalGradeApiServerBuilder seeded() {
+        return LocalGradeApiServer.builder()
+                .grade("t1chenpa", "CSC207", 85)
+                .grade("t2chenpa", "CSC207", 81)
+                .grade("t3chenpa", "CSC207", 91)
+                .grade("t3chenpa", "CSC148", 77)
+                .team("team1", "t1chenpa", "t2chenpa", "t3chenpa");
+    }
+
+    @Test
+    void testReadsMatchTheApi() throws IOException {
+        MongoGradeDataBase gradeDB = start(seeded());
+
+        assertEquals(91, gradeDB.getGrade("t3chenpa", "CSC207").getGrade());
+        assertEquals(2, gradeDB.getGrades("t3chenpa").length);
+        Team team = gradeDB.getMyTeam();
+        assertEquals("team1", team.getName());
+        assertArrayEquals(new String[]{"t1chenpa", "t2chenpa", "t3chenpa"}, team.getMembers());
+        assertThrows(GradeNotFoundException.class, () -> gradeDB.getGrade("t1chenpa", "MAT137"));
+    }
+
+    @Test
+    void testUseCasesRunAgainstTheServer() throws IOException {
+        MongoGradeDataBase gradeDB = start(seeded());
+
+        assertEquals(257 / 3f, new GetAverageGradeUseCase(gradeDB).getAverageGrade("CSC207"), 0.01);
+        Grade top = new GetTopGradeUseCase(gradeDB).findTopGrade("CSC207");
+        assertEquals("t3chenpa", top.getUsername());
+    }
+
+    @Test
+    void testWritesChangeTheDataSet() throws IOException {
+        MongoGradeDataBase gradeDB = start(seeded());
+
+        gradeDB.logGrade("MAT137", 64);
+        assertEquals(64, gradeDB.getGrade("t1chenpa", "MAT137").getGrade());
+
+        gradeDB.leaveTeam();
+        RuntimeException failure = assertThrows(RuntimeException.class, gradeDB::getMyTeam);
+        assertEquals("You are not in a team", failure.getMessage());
+        gradeDB.joinTeam("team1");
+        assertEquals(3, gradeDB.getMyTeam().getMembers().length);
+    }
+
+    @Test
+    void testSeededDataSetIsRepeatable() throws IOException {
+        MongoGradeDataBase gradeDB = start(LocalGradeApiServer.builder().seed(7L, 6, 3), "user0");
+        Grade[] first = gradeDB.getGrades("user5");
+        server.stop();
+
+        gradeDB = start(LocalGradeApiServer.builder().seed(7L, 6, 3), "user0");
+        Grade[] second = gradeDB.getGrades("user5");
+
+        assertEquals(3, first.length);
+        for (int i = 0; i < first.length; i++) {
+            assertEquals(first[i].getGrade(), second[i].getGrade());
+        }
+    }
+
+    @Test
+    void testFaultsAreInjected() throws IOException {
+        MongoGradeDataBase gradeDB = start(seeded()
+                .errorRate(LocalGradeApiServer.Endpoint.GET_TEAM, 1.0)
+                .throttle(LocalGradeApiServer.Endpoint.GET_GRADE, 1)
+                .latency(LocalGradeApiServer.Endpoint.LOG_GRADE, Latency.fixed(200)));
+
+        RuntimeException failure = assertThrows(RuntimeException.class, gradeDB::getMyTeam);
+        assertEquals("Injected failure", failure.getMessage());
+
+        gradeDB.getGrades("t1chenpa");
+        failure = assertThrows(RuntimeException.class, () -> gradeDB.getGrades("t1chenpa"));
+        assertEquals("Too many requests", failure.getMessage());
+        assertEquals(2, server.getRequestCount(LocalGradeApiServer.Endpoint.GET_GRADE));
+
+        final long start = System.nanoTime();
+        gradeDB.logGrade("CSC207", 90);
+        assertTrue(System.nanoTime() - start >= 200_000_000L);
+    }
+
+    @Test
+    void testCancellingAnAsyncLookupCancelsTheCall() throws Exception {
+        MongoGradeDataBase gradeDB = start(seeded()
+                .latency(LocalGradeApiServer.Endpoint.GET_GRADE, Latency.fixed(5_000)));
+
+        CompletableFuture<Grade> lookup = gradeDB.getGradeAsync("t1chenpa", "CSC207");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (transport.getClient().dispatcher().runningCallsCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, transport.getClient().dispatcher().runningCallsCount());
+
+        lookup.cancel(true);
+        while (transport.getClient().dispatcher().runningCallsCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, transport.getClient().dispatcher().runningCallsCount(), "the call was cancelled");
+    }
+}
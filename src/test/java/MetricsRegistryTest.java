@@ -0,0 +1,90 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.OperationMetrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsRegistryTest {
+
+    @Test
+    void percentilesAreWithinTheBucketResolution() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10_000; value++) {
+            histogram.record(value * 1_000L);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000L, histogram.getMax());
+        assertWithin(5_000_000L, histogram.getPercentile(50));
+        assertWithin(9_900_000L, histogram.getPercentile(99));
+        assertWithin(9_990_000L, histogram.getPercentile(99.9));
+    }
+
+    @Test
+    void concurrentRecordingLosesNothing() throws InterruptedException {
+        final OperationMetrics operation = new MetricsRegistry().operation("Test", "concurrent");
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    operation.record(i, i % 10 == 0);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(80_000, operation.getCount());
+        assertEquals(8_000, operation.getErrorCount());
+    }
+
+    @Test
+    void timedCallsAreRecordedWithTheirFailures() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final OperationMetrics operation = registry.operation("Test", "timed");
+        assertSame(operation, registry.operation("Test", "timed"));
+
+        assertEquals("ok", operation.time(() -> "ok"));
+        assertThrows(IllegalStateException.class, () -> operation.time(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        final CompletableFuture<String> pending = new CompletableFuture<>();
+        operation.timeAsync(() -> pending);
+        assertEquals(2, operation.getCount());
+        pending.completeExceptionally(new IllegalStateException("late"));
+        assertEquals(3, operation.getCount());
+        assertEquals(2, operation.getErrorCount());
+        assertTrue(registry.report().contains("Test.timed"));
+    }
+
+    @Test
+    void publishedOperationsAreReadableOverJmx() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.operation("Test", "before").record(1_000_000L, false);
+        registry.publish("metricstest");
+        registry.operation("Test", "after").recordBytes(42);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName before = new ObjectName("metricstest:type=\"Test\",name=\"before\"");
+        final ObjectName after = new ObjectName("metricstest:type=\"Test\",name=\"after\"");
+        assertEquals(1L, server.getAttribute(before, "Count"));
+        assertEquals(42L, server.getAttribute(after, "BytesReceived"));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // 32 sub-buckets per power of two keep the error of a percentile under about 3%.
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, "expected about " + expected + " but was " + actual);
+    }
+}
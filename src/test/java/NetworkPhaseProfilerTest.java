@@ -0,0 +1,56 @@
+import api.HttpTransport;
+import api.MongoGradeDataBase;
+import api.NetworkPhaseProfiler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import server.LocalGradeApiServer;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the network phase profiler against the local stand-in for the grade API.
+ */
+public class NetworkPhaseProfilerTest {
+
+    private final NetworkPhaseProfiler profiler = new NetworkPhaseProfiler();
+    private final HttpTransport transport = HttpTransport.builder().phaseProfiler(profiler).build();
+    private LocalGradeApiServer server;
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        transport.shutdown();
+    }
+
+    @Test
+    void testPooledConnectionIsReused() throws IOException {
+        server = LocalGradeApiServer.builder()
+                .grade("t1chenpa", "CSC207", 85)
+                .grade("t2chenpa", "CSC207", 81)
+                .build().start();
+        MongoGradeDataBase gradeDB = new MongoGradeDataBase(transport, server.getUrl(),
+                LocalGradeApiServer.tokenFor("t1chenpa"));
+
+        assertEquals(85, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(81, gradeDB.getGrade("t2chenpa", "CSC207").getGrade());
+        assertEquals(1, gradeDB.getGrades("t1chenpa").length);
+
+        NetworkPhaseProfiler.EndpointPhases phases = profiler.getEndpoint("GET /grade");
+        assertEquals(3, phases.getCallCount());
+        assertEquals(0, phases.getFailedCount());
+        // Only the first call opens a connection; the others take it from the pool.
+        assertEquals(2, phases.getReusedCount());
+        assertEquals(1, phases.getHistogram(NetworkPhaseProfiler.Phase.CONNECT).getCount());
+        assertEquals(0, phases.getHistogram(NetworkPhaseProfiler.Phase.TLS).getCount());
+        assertEquals(3, phases.getHistogram(NetworkPhaseProfiler.Phase.WAIT).getCount());
+        assertEquals(3, phases.getHistogram(NetworkPhaseProfiler.Phase.BODY).getCount());
+        assertEquals(3, phases.getHistogram(NetworkPhaseProfiler.Phase.TOTAL).getCount());
+
+        String summary = profiler.summary();
+        assertTrue(summary.contains("GET /grade: 3 calls, 0 failed, 2 on reused connections"), summary);
+        assertFalse(summary.contains("tls"), summary);
+    }
+}
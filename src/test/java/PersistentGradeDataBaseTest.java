@@ -0,0 +1,252 @@
+import api.GradeDataBase;
+import api.MappedGradeStore;
+import api.PersistentGradeDataBase;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing the memory-mapped grade store and the data base tier in front of the grade API that uses it.
+ */
+public class PersistentGradeDataBaseTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testStoreSurvivesReopening() throws IOException {
+        Path file = directory.resolve("grades.store");
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            assertTrue(store.putGrade(new Grade("t1chenpa", "CSC207", 85), 1000));
+            assertTrue(store.putGrades("t3chenpa", new Grade[]{
+                new Grade("t3chenpa", "CSC207", 91), new Grade("t3chenpa", "CSC148", 77)}, 2000));
+            assertTrue(store.putTeam(new Team("team1", new String[]{"t1chenpa", "t3chenpa"}), 3000));
+        }
+
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            MappedGradeStore.Stored<Grade> grade = store.getGrade("t1chenpa", "CSC207");
+            assertEquals(85, grade.getValue().getGrade());
+            assertEquals(1000, grade.getStoredAtMillis());
+            assertNull(store.getGrades("t1chenpa"), "only a single grade of t1chenpa was stored");
+            assertEquals(2, store.getGrades("t3chenpa").getValue().length);
+            assertEquals(2000, store.getGrades("t3chenpa").getStoredAtMillis());
+            Team team = store.getTeam().getValue();
+            assertEquals("team1", team.getName());
+            assertArrayEquals(new String[]{"t1chenpa", "t3chenpa"}, team.getMembers());
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    void testStoreGrowsAndReusesFreedRecords() throws IOException {
+        Path file = directory.resolve("grades.store");
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            for (int i = 0; i < 1000; i++) {
+                store.putGrade(new Grade("user" + i, "CSC207", i % 100), i);
+            }
+            long size = Files.size(file);
+            store.removeGrade("user0", "CSC207");
+            store.putGrade(new Grade("user1000", "CSC207", 50), 0);
+            assertEquals(size, Files.size(file));
+            assertEquals(1000, store.size());
+        }
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            assertNull(store.getGrade("user0", "CSC207"));
+            assertEquals(99, store.getGrade("user999", "CSC207").getValue().getGrade());
+            assertEquals(50, store.getGrade("user1000", "CSC207").getValue().getGrade());
+        }
+    }
+
+    @Test
+    void testGrowingWhileInterruptedKeepsTheStoreOpen() throws IOException {
+        try (MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"))) {
+            Thread.currentThread().interrupt();
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(store.putGrade(new Grade("user" + i, "CSC207", i % 100), i));
+                }
+            }
+            finally {
+                assertTrue(Thread.interrupted(), "the interrupt is kept for the caller");
+            }
+            assertEquals(99, store.getGrade("user999", "CSC207").getValue().getGrade());
+        }
+    }
+
+    @Test
+    void testHistoryDropsCoursesItNoLongerHas() throws IOException {
+        try (MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"))) {
+            store.putGrades("t3chenpa", new Grade[]{
+                new Grade("t3chenpa", "CSC207", 91), new Grade("t3chenpa", "CSC148", 77)}, 0);
+            store.putGrades("t3chenpa", new Grade[]{new Grade("t3chenpa", "CSC207", 92)}, 0);
+
+            Grade[] grades = store.getGrades("t3chenpa").getValue();
+            assertEquals(1, grades.length);
+            assertEquals(92, grades[0].getGrade());
+            assertNull(store.getGrade("t3chenpa", "CSC148"));
+
+            // A logged grade with an unknown owner leaves no history complete.
+            store.removeCourse("CSC207");
+            assertNull(store.getGrades("t3chenpa"));
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    void testNamesThatDoNotFitAreNotStored() throws IOException {
+        try (MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"))) {
+            assertFalse(store.putGrade(new Grade("t1chenpa", "A-COURSE-CODE-THAT-IS-FAR-TOO-LONG", 85), 0));
+            assertFalse(store.putTeam(new Team("team1", new String[17]), 0));
+            assertEquals(0, store.size());
+            assertNull(store.getTeam());
+        }
+    }
+
+    @Test
+    void testOtherFilesAreRejected() throws IOException {
+        Path file = directory.resolve("notes.txt");
+        Files.write(file, new byte[2048]);
+        assertThrows(IOException.class, () -> MappedGradeStore.open(file));
+    }
+
+    @Test
+    void testWarmStartAnswersFromDisk() throws IOException {
+        Path file = directory.resolve("grades.store");
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        AtomicLong now = new AtomicLong(10_000);
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            PersistentGradeDataBase gradeDB = build(stub, store, now);
+            assertEquals(85, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+            assertEquals("team1", gradeDB.getMyTeam().getName());
+            assertEquals(1, gradeDB.getGrades("t1chenpa").length);
+        }
+        assertEquals(1, stub.gradeRequests.get());
+        assertEquals(1, stub.teamRequests.get());
+
+        // A restarted application answers the same reads without asking the API.
+        try (MappedGradeStore store = MappedGradeStore.open(file)) {
+            PersistentGradeDataBase gradeDB = build(stub, store, now);
+            assertEquals(85, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+            assertEquals("team1", gradeDB.getMyTeam().getName());
+            assertEquals(1, gradeDB.getCachedGrades("t1chenpa").length);
+            assertEquals(1, stub.gradeRequests.get());
+            assertEquals(1, stub.teamRequests.get());
+            assertEquals(2, gradeDB.stats().getHitCount());
+        }
+    }
+
+    @Test
+    void testStaleValueIsReturnedAndRefreshed() throws IOException {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        AtomicLong now = new AtomicLong(10_000);
+        try (MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"))) {
+            PersistentGradeDataBase gradeDB = build(stub, store, now);
+            gradeDB.getGrade("t1chenpa", "CSC207");
+            stub.grade = 90;
+            now.addAndGet(200);
+
+            // The stored value comes back straight away, and the refresh replaces it.
+            assertEquals(85, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+            assertEquals(90, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+            assertEquals(1, gradeDB.stats().getRefreshCount());
+        }
+    }
+
+    @Test
+    void testWritesUpdateTheStore() throws IOException {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        try (MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"))) {
+            PersistentGradeDataBase gradeDB = build(stub, store, new AtomicLong());
+            gradeDB.getMyTeam();
+            gradeDB.leaveTeam();
+            assertNull(store.getTeam());
+            gradeDB.formTeam("team2");
+            assertEquals("team2", store.getTeam().getValue().getName());
+
+            gradeDB.getGrade("t1chenpa", "CSC207");
+            gradeDB.logGrade("CSC207", 95);
+            assertEquals(95, store.getGrade("t1chenpa", "CSC207").getValue().getGrade());
+        }
+    }
+
+    @Test
+    void testClosedStoreIsAMiss() throws IOException {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        MappedGradeStore store = MappedGradeStore.open(directory.resolve("grades.store"));
+        PersistentGradeDataBase gradeDB = build(stub, store, new AtomicLong());
+        gradeDB.getGrade("t1chenpa", "CSC207");
+        store.close();
+
+        assertEquals(85, gradeDB.getGrade("t1chenpa", "CSC207").getGrade());
+        assertEquals(1, gradeDB.getGrades("t1chenpa").length);
+        assertEquals("team1", gradeDB.getMyTeam().getName());
+        assertEquals(2, stub.gradeRequests.get());
+        assertEquals(0, gradeDB.getStoreFailureCount());
+    }
+
+    private static PersistentGradeDataBase build(GradeDataBase delegate, MappedGradeStore store, AtomicLong now) {
+        return PersistentGradeDataBase.builder(delegate, store)
+                .refreshAfterMillis(100)
+                .refreshExecutor(Runnable::run)
+                .clock(now::get)
+                .build();
+    }
+
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final AtomicInteger gradeRequests = new AtomicInteger();
+        private final AtomicInteger teamRequests = new AtomicInteger();
+        private volatile int grade = 85;
+        private volatile String teamName = "team1";
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            gradeRequests.incrementAndGet();
+            return Grade.builder().username(username).course(course).grade(grade).build();
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            this.grade = grade;
+            return Grade.builder().username("t1chenpa").course(course).grade(grade).build();
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[]{Grade.builder().username(username).course("CSC207").grade(grade).build()};
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            teamName = name;
+            return Team.builder().name(name).members(new String[]{"t1chenpa"}).build();
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            teamName = name;
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            teamRequests.incrementAndGet();
+            return Team.builder().name(teamName).members(new String[]{"t1chenpa", "t2chenpa"}).build();
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+            teamName = null;
+        }
+    }
+}
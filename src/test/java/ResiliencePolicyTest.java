@@ -0,0 +1,176 @@
+import api.CircuitOpenException;
+import api.HttpTransport;
+import api.ResiliencePolicy;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing retries, circuit breaking and hedging against a local HTTP server.
+ */
+public class ResiliencePolicyTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    // Maps the number of the request, counting from 1, to the status code to answer with.
+    private volatile IntUnaryOperator status = request -> 200;
+    // Maps the number of the request, counting from 1, to how long to wait before answering.
+    private volatile IntUnaryOperator delayMillis = request -> 0;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            final int request = requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis.applyAsInt(request));
+            }
+            catch (InterruptedException event) {
+                Thread.currentThread().interrupt();
+            }
+            final byte[] body = ("{\"request\":" + request + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status.applyAsInt(request), body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testReadsAreRetried() throws IOException {
+        status = request -> request <= 2 ? 503 : 200;
+        ResiliencePolicy policy = ResiliencePolicy.builder().maxRetries(2).baseBackoffMillis(1).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+
+        try (Response response = transport.execute(get("/grade"))) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(3, requests.get());
+        assertEquals(2, policy.getRetryCount());
+        transport.shutdown();
+    }
+
+    @Test
+    void testWritesAreNotRetried() throws IOException {
+        status = request -> 503;
+        ResiliencePolicy policy = ResiliencePolicy.builder().maxRetries(2).baseBackoffMillis(1).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+
+        Request post = new Request.Builder().url(url("/grade"))
+                .post(RequestBody.create("{}", MediaType.get("application/json"))).build();
+        try (Response response = transport.execute(post)) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(1, requests.get());
+        transport.shutdown();
+    }
+
+    @Test
+    void testCircuitOpensAfterRepeatedFailures() throws Exception {
+        status = request -> 503;
+        ResiliencePolicy policy = ResiliencePolicy.builder()
+                .maxRetries(0).failureThreshold(2).openMillis(60_000).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+
+        transport.execute(get("/team")).close();
+        transport.execute(get("/team")).close();
+        assertThrows(CircuitOpenException.class, () -> transport.execute(get("/team")));
+        assertThrows(Exception.class, () -> transport.executeAsync(get("/team")).get(5, TimeUnit.SECONDS));
+
+        assertFalse(policy.isClosed("GET", "/team"));
+        assertTrue(policy.isClosed("GET", "/grade"));
+        assertEquals(2, requests.get());
+        assertEquals(2, policy.getRejectedCount());
+        transport.shutdown();
+    }
+
+    @Test
+    void testCancelledTrialLetsTheNextTrialThrough() throws Exception {
+        status = request -> request == 1 ? 503 : 200;
+        delayMillis = request -> request == 2 ? 2_000 : 0;
+        ResiliencePolicy policy = ResiliencePolicy.builder()
+                .maxRetries(0).failureThreshold(1).openMillis(50).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+
+        transport.execute(get("/team")).close();
+        Thread.sleep(100);
+        CompletableFuture<Response> trial = transport.executeAsync(get("/team"));
+        assertThrows(CircuitOpenException.class, () -> transport.execute(get("/team")));
+        trial.cancel(true);
+
+        try (Response response = transport.execute(get("/team"))) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(policy.isClosed("GET", "/team"));
+        transport.shutdown();
+    }
+
+    @Test
+    void testCircuitClosesAfterASuccessfulTrial() throws Exception {
+        status = request -> request == 1 ? 503 : 200;
+        ResiliencePolicy policy = ResiliencePolicy.builder()
+                .maxRetries(0).failureThreshold(1).openMillis(50).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+
+        transport.execute(get("/team")).close();
+        assertThrows(CircuitOpenException.class, () -> transport.execute(get("/team")));
+        Thread.sleep(100);
+        transport.execute(get("/team")).close();
+
+        assertTrue(policy.isClosed("GET", "/team"));
+        transport.shutdown();
+    }
+
+    @Test
+    void testSlowReadsAreHedged() throws Exception {
+        ResiliencePolicy policy = ResiliencePolicy.builder()
+                .hedgePercentile(50).latencySamples(16, 3).build();
+        HttpTransport transport = HttpTransport.builder().resilience(policy).build();
+        for (int i = 0; i < 3; i++) {
+            transport.executeAsync(get("/grade")).get(5, TimeUnit.SECONDS).close();
+        }
+
+        delayMillis = request -> request == 4 ? 5_000 : 0;
+        final long start = System.nanoTime();
+        try (Response response = transport.executeAsync(get("/grade")).get(5, TimeUnit.SECONDS)) {
+            assertEquals("{\"request\":5}", response.body().string());
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(1, policy.getHedgeCount());
+        transport.shutdown();
+    }
+
+    private Request get(String path) {
+        return new Request.Builder().url(url(path)).build();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
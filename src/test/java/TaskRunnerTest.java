@@ -0,0 +1,187 @@
+import app.gui.TaskRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing running, merging and cancelling the background tasks of the GUI.
+ */
+public class TaskRunnerTest {
+
+    private TaskRunner tasks;
+
+    @BeforeEach
+    void setUp() {
+        // Run the listeners on the worker threads, since there is no EDT in the tests.
+        tasks = new TaskRunner(Executors.newFixedThreadPool(4), Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tasks.shutdown();
+    }
+
+    @Test
+    void testResultAndProgressAreDelivered() throws Exception {
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        assertTrue(tasks.run("grade", "CSC207", progress -> {
+            progress.publish("Looking up CSC207...");
+            return 80;
+        }, listener));
+        awaitTrue(() -> listener.events.size() == 2);
+        assertEquals(List.of("progress Looking up CSC207...", "success 80"), listener.events);
+        assertFalse(tasks.isRunning("grade"));
+    }
+
+    @Test
+    void testFailureIsDelivered() throws Exception {
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        tasks.run("grade", "CSC207", progress -> {
+            throw new IllegalStateException("Course not found");
+        }, listener);
+        awaitTrue(() -> !listener.events.isEmpty());
+        assertEquals(List.of("failure Course not found"), listener.events);
+    }
+
+    @Test
+    void testEqualRequestsAreMerged() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        TaskRunner.Task<Integer> task = progress -> {
+            calls.incrementAndGet();
+            release.await();
+            return 80;
+        };
+        RecordingListener<Integer> first = new RecordingListener<>();
+        RecordingListener<Integer> second = new RecordingListener<>();
+        assertTrue(tasks.run("grade", List.of("alice", "CSC207"), task, first));
+        assertFalse(tasks.run("grade", List.of("alice", "CSC207"), task, second));
+        release.countDown();
+
+        awaitTrue(() -> !first.events.isEmpty() && !second.events.isEmpty());
+        assertEquals(1, calls.get());
+        assertEquals(List.of("success 80"), first.events);
+        assertEquals(List.of("success 80"), second.events);
+    }
+
+    @Test
+    void testNewRequestSupersedesTheOneInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        RecordingListener<Integer> first = new RecordingListener<>();
+        RecordingListener<Integer> second = new RecordingListener<>();
+        tasks.run("grade", "CSC207", progress -> {
+            started.countDown();
+            Thread.sleep(10_000);
+            return 80;
+        }, first);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        tasks.run("grade", "CSC148", progress -> 70, second);
+
+        awaitTrue(() -> !first.events.isEmpty() && !second.events.isEmpty());
+        assertEquals(List.of("cancelled"), first.events);
+        assertEquals(List.of("success 70"), second.events);
+    }
+
+    @Test
+    void testCancelledTaskDeliversNothingElse() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch stopped = new CountDownLatch(1);
+        RecordingListener<Integer> listener = new RecordingListener<>();
+        tasks.run("grade", "CSC207", progress -> {
+            started.countDown();
+            while (!progress.isCancelled()) {
+                Thread.onSpinWait();
+            }
+            progress.publish("too late");
+            stopped.countDown();
+            return 80;
+        }, listener);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(tasks.cancel("grade"));
+        assertFalse(tasks.cancel("grade"));
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+
+        Thread.sleep(50);
+        assertEquals(List.of("cancelled"), listener.events);
+        assertFalse(tasks.isRunning("grade"));
+    }
+
+    @Test
+    void testTasksRunToCompletionAreQueuedInsteadOfSuperseded() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        RecordingListener<Integer> first = new RecordingListener<>();
+        RecordingListener<Integer> second = new RecordingListener<>();
+        RecordingListener<Integer> merged = new RecordingListener<>();
+        assertTrue(tasks.runToCompletion("logGrade", "CSC207", progress -> {
+            started.countDown();
+            release.await();
+            calls.add("CSC207");
+            return 80;
+        }, first));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(tasks.runToCompletion("logGrade", "CSC148", progress -> {
+            calls.add("CSC148");
+            return 70;
+        }, second));
+        assertFalse(tasks.runToCompletion("logGrade", "CSC148", progress -> 0, merged));
+
+        // Neither cancelling nor shutting down interrupts the task in flight or drops the queued one.
+        assertFalse(tasks.cancel("logGrade"));
+        tasks.shutdown();
+        assertTrue(tasks.isRunning("logGrade"));
+        release.countDown();
+
+        awaitTrue(() -> !second.events.isEmpty() && !merged.events.isEmpty());
+        assertEquals(List.of("success 80"), first.events);
+        assertEquals(List.of("success 70"), second.events);
+        assertEquals(List.of("success 70"), merged.events);
+        assertEquals(List.of("CSC207", "CSC148"), calls);
+        awaitTrue(() -> !tasks.isRunning("logGrade"));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    // Listener that records what it is told
+    private static class RecordingListener<T> implements TaskRunner.Listener<T> {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onProgress(String message) {
+            events.add("progress " + message);
+        }
+
+        @Override
+        public void onSuccess(T result) {
+            events.add("success " + result);
+        }
+
+        @Override
+        public void onFailure(Throwable failure) {
+            events.add("failure " + failure.getMessage());
+        }
+
+        @Override
+        public void onCancelled() {
+            events.add("cancelled");
+        }
+    }
+}
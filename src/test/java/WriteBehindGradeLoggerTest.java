@@ -0,0 +1,144 @@
+import api.AsyncGradeDataBase;
+import api.GradeDataBase;
+import api.WriteBehindGradeLogger;
+import entity.Grade;
+import entity.Team;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * Testing logging grades in the background.
+ */
+public class WriteBehindGradeLoggerTest {
+
+    @Test
+    void testQueuedGradesForTheSameCourseAreCoalesced() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        WriteBehindGradeLogger logger = new WriteBehindGradeLogger(AsyncGradeDataBase.of(stub, Runnable::run), 16, 4);
+
+        // The first grade holds the background thread up, so the next ones wait in the queue.
+        CompletableFuture<Grade> blocking = logger.submitGrade("CSC148", 70);
+        assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Grade> first = logger.submitGrade("CSC207", 80);
+        CompletableFuture<Grade> second = logger.submitGrade("CSC207", 90);
+        stub.release.countDown();
+
+        assertEquals(90, first.get(5, TimeUnit.SECONDS).getGrade());
+        assertEquals(90, second.get(5, TimeUnit.SECONDS).getGrade());
+        assertEquals(70, blocking.get(5, TimeUnit.SECONDS).getGrade());
+        assertEquals(List.of("CSC148/70", "CSC207/90"), stub.logged);
+        assertEquals(1, logger.getCoalescedCount());
+        assertTrue(logger.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testShutdownDrainsTheQueue() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.release.countDown();
+        WriteBehindGradeLogger logger = new WriteBehindGradeLogger(AsyncGradeDataBase.of(stub, Runnable::run), 1, 1);
+
+        for (int i = 0; i < 10; i++) {
+            logger.submitGrade("CSC" + i, i);
+        }
+        assertTrue(logger.shutdown(5, TimeUnit.SECONDS));
+
+        assertEquals(10, stub.logged.size());
+        assertEquals(10, logger.getSentCount());
+        assertThrows(IllegalStateException.class, () -> logger.submitGrade("CSC207", 1));
+    }
+
+    @Test
+    void testCloseWaitsForTheQueueToDrain() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        WriteBehindGradeLogger logger = new WriteBehindGradeLogger(AsyncGradeDataBase.of(stub, Runnable::run), 16, 1);
+
+        CompletableFuture<Grade> blocking = logger.submitGrade("CSC148", 70);
+        assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Grade> queued = logger.submitGrade("CSC207", 80);
+        Thread closer = new Thread(logger::close);
+        closer.start();
+        stub.release.countDown();
+        closer.join(5000);
+
+        assertFalse(closer.isAlive());
+        assertTrue(blocking.isDone());
+        assertTrue(queued.isDone());
+        assertEquals(List.of("CSC148/70", "CSC207/80"), stub.logged);
+    }
+
+    @Test
+    void testFailuresAreReportedThroughTheHandle() throws Exception {
+        GradeDataBaseStub stub = new GradeDataBaseStub();
+        stub.release.countDown();
+        WriteBehindGradeLogger logger = new WriteBehindGradeLogger(AsyncGradeDataBase.of(stub, Runnable::run));
+
+        CompletableFuture<Grade> handle = logger.submitGrade("MAT137", 50);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> handle.get(5, TimeUnit.SECONDS));
+        assertEquals("Course not found", failure.getCause().getMessage());
+        logger.close();
+    }
+
+    // Stub class for GradeDataBase whose logGrade waits until it is released
+    private static class GradeDataBaseStub implements GradeDataBase {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> logged = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Grade getGrade(String username, String course) {
+            return null;
+        }
+
+        @Override
+        public Grade logGrade(String course, int grade) throws JSONException {
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (InterruptedException event) {
+                throw new RuntimeException(event);
+            }
+            if ("MAT137".equals(course)) {
+                throw new RuntimeException("Course not found");
+            }
+            logged.add(course + "/" + grade);
+            return Grade.builder().username("t1chenpa").course(course).grade(grade).build();
+        }
+
+        @Override
+        public Grade[] getGrades(String username) {
+            return new Grade[0];
+        }
+
+        @Override
+        public Team formTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team joinTeam(String name) throws JSONException {
+            return null;
+        }
+
+        @Override
+        public Team getMyTeam() {
+            return null;
+        }
+
+        @Override
+        public void leaveTeam() throws JSONException {
+
+        }
+    }
+}